@@ -22,11 +22,14 @@ dependencies {
     implementation(libs.annotations)
 
     testImplementation(libs.jupiter)
+    testImplementation(libs.jupiterParams)
     testImplementation(libs.mockserverNetty)
     testImplementation(libs.mockserverClient)
     testImplementation(libs.logback)
     testCompileOnly(libs.gson)
     testRuntimeOnly(libs.junitPlatform)
+    // Generates the codecs of the @JsonEntity classes used in tests
+    testAnnotationProcessor(sourceSets.main.get().output)
 }
 
 java {
@@ -37,6 +40,35 @@ tasks.compileJava.configure {
     options.release.set(8)
 }
 
+// The Flow adapters require Java 9. They add public API, which the versioned entries of a
+// multi-release jar may not do, so they are published as a separate jar with the "flow" classifier
+val java9: SourceSet by sourceSets.creating {
+    java.srcDir("src/main/java9")
+    compileClasspath += sourceSets.main.get().output + sourceSets.main.get().compileClasspath
+}
+
+tasks.named<JavaCompile>(java9.compileJavaTaskName).configure {
+    options.release.set(9)
+    options.encoding = "UTF-8"
+}
+
+// Classes that replace their Java 8 counterparts on newer Java versions are packaged as a multi-release jar
+val java11: SourceSet by sourceSets.creating {
+    java.srcDir("src/main/java11")
+    compileClasspath += sourceSets.main.get().output + sourceSets.main.get().compileClasspath
+}
+
+tasks.named<JavaCompile>(java11.compileJavaTaskName).configure {
+    options.release.set(11)
+    options.encoding = "UTF-8"
+}
+
+sourceSets.test {
+    compileClasspath += java9.output
+    // Classes in java11 replace those in main, as they do in the jar
+    runtimeClasspath = java11.output + runtimeClasspath + java9.output
+}
+
 group = "com.intellectualsites.http"
 version = "1.9-SNAPSHOT"
 
@@ -57,7 +89,19 @@ tasks {
         options.encoding = "UTF-8"
     }
 
+    val flowJar by registering(Jar::class) {
+        archiveClassifier.set("flow")
+        from(java9.output)
+    }
+
+    assemble {
+        dependsOn(flowJar)
+    }
+
     javadoc {
+        // Documents the Flow adapters along with the rest of the API
+        source(java9.allJava)
+        classpath += java9.compileClasspath
         title = project.name
         val opt = options as StandardJavadocDocletOptions
         opt.addStringOption("Xdoclint:none", "-quiet")
@@ -71,12 +115,32 @@ tasks {
         opt.noTimestamp()
     }
 
+    jar {
+        into("META-INF/versions/11") {
+            from(java11.output)
+        }
+        manifest {
+            attributes("Multi-Release" to "true")
+        }
+    }
+
+    compileTestJava {
+        // The processor is not registered as a service, and has to be named
+        options.compilerArgs.addAll(listOf("-processor", "com.intellectualsites.http.json.processor.JsonEntityProcessor"))
+    }
+
     withType<AbstractArchiveTask>().configureEach {
         isPreserveFileTimestamps = false
         isReproducibleFileOrder = true
     }
 }
 
+publishing {
+    publications.withType<MavenPublication>().configureEach {
+        artifact(tasks.named("flowJar"))
+    }
+}
+
 signing {
     if (!project.hasProperty("skip.signing") && !version.toString().endsWith("-SNAPSHOT")) {
         val signingKey: String? by project
@@ -0,0 +1,92 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 IntellectualSites
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.intellectualsites.http;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Thrown when one or more requests in a batch fail. The responses of the
+ * requests that completed successfully are retained
+ *
+ * @see HttpClient#executeAll(java.util.Collection, int, BatchMode)
+ */
+public final class BatchException extends RuntimeException {
+
+    private static final long serialVersionUID = -6457105393437296417L;
+
+    private final transient List<HttpResponse> responses;
+    private final transient Map<Integer, Throwable> failures;
+
+    BatchException(@NotNull final List<HttpResponse> responses, @NotNull final Map<Integer, Throwable> failures) {
+        this(String.format("%d request(s) in the batch failed", failures.size()),
+            failures.isEmpty() ? null : failures.values().iterator().next(), responses, failures);
+    }
+
+    /**
+     * Create an exception for a batch that was interrupted. The interrupt is the cause,
+     * as it does not belong to any of the requests
+     */
+    BatchException(@NotNull final List<HttpResponse> responses, @NotNull final Map<Integer, Throwable> failures,
+        @NotNull final InterruptedException interrupt) {
+        this(String.format("Batch was interrupted, %d request(s) failed", failures.size()), interrupt, responses,
+            failures);
+    }
+
+    private BatchException(@NotNull final String message, @Nullable final Throwable cause,
+        @NotNull final List<HttpResponse> responses, @NotNull final Map<Integer, Throwable> failures) {
+        super(message, cause);
+        this.responses = Collections.unmodifiableList(responses);
+        this.failures = Collections.unmodifiableMap(failures);
+        for (final Throwable failure : failures.values()) {
+            if (failure != this.getCause()) {
+                this.addSuppressed(failure);
+            }
+        }
+    }
+
+    /**
+     * Get the responses of the batch, in the same order as the requests. Requests that
+     * failed, or that were never executed, have a {@code null} response
+     *
+     * @return Unmodifiable list of responses
+     */
+    @NotNull public List<HttpResponse> getResponses() {
+        return this.responses;
+    }
+
+    /**
+     * Get the failures, keyed by the index of the request that failed
+     *
+     * @return Unmodifiable map of failures
+     */
+    @NotNull public Map<Integer, Throwable> getFailures() {
+        return this.failures;
+    }
+
+}
@@ -0,0 +1,67 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 IntellectualSites
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.intellectualsites.http;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Handles response bodies that should not be buffered in memory. A handler
+ * is used for a single request
+ */
+interface BodyHandler {
+
+    /**
+     * Check whether the handler should receive the body of a response
+     * with the given status. Bodies that are not accepted are buffered
+     * in memory, as usual
+     *
+     * @param status Status code
+     * @return {@code true} if the handler accepts the body
+     */
+    boolean accepts(int status);
+
+    /**
+     * Read the body from a blocking stream. The stream must be read until
+     * it is exhausted
+     *
+     * @param stream        Body stream
+     * @param contentLength Value of the Content-Length header, or {@code -1}
+     * @throws IOException If the body could not be handled
+     */
+    void transfer(@NotNull InputStream stream, long contentLength) throws IOException;
+
+    /**
+     * Create a consumer that receives the body as it is read by
+     * the non-blocking transport
+     *
+     * @param contentLength Value of the Content-Length header, or {@code -1}
+     * @return Body consumer
+     * @throws IOException If the consumer could not be created
+     */
+    @NotNull ResponseParser.BodyConsumer consumer(long contentLength) throws IOException;
+
+}
@@ -0,0 +1,184 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 IntellectualSites
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.intellectualsites.http;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+/**
+ * Request body that is streamed to the connection, rather than being
+ * serialized into memory by an {@link EntityMapper}
+ *
+ * @see HttpClient.WrappedRequestBuilder#withInput(BodySource)
+ */
+public abstract class BodySource {
+
+    private static final int BUFFER_SIZE = 16384;
+
+    BodySource() {
+    }
+
+    /**
+     * Create a body source that streams the contents of a file, with
+     * the content type {@link ContentType#OCTET_STREAM}
+     *
+     * @param file File to upload
+     * @return Body source
+     */
+    @NotNull public static BodySource ofFile(@NotNull final Path file) {
+        return ofFile(file, ContentType.OCTET_STREAM);
+    }
+
+    /**
+     * Create a body source that streams the contents of a file. The file is read when the
+     * request is performed, and is sent using {@link FileChannel#transferTo(long, long, WritableByteChannel)}
+     * so that it never has to be buffered on the heap
+     *
+     * @param file        File to upload
+     * @param contentType Content type of the file
+     * @return Body source
+     */
+    @NotNull public static BodySource ofFile(@NotNull final Path file, @NotNull final ContentType contentType) {
+        return new FileBodySource(Objects.requireNonNull(file, "File may not be null"),
+            Objects.requireNonNull(contentType, "Content type may not be null"));
+    }
+
+    /**
+     * Get the content type of the body
+     *
+     * @return Content type
+     */
+    @NotNull abstract ContentType contentType();
+
+    /**
+     * Get the length of the body
+     *
+     * @return Length, in bytes, or {@code -1} if it is not known in advance
+     * @throws IOException If the length could not be determined
+     */
+    abstract long contentLength() throws IOException;
+
+    /**
+     * Open a new channel that reads the body from the start
+     *
+     * @return Opened channel
+     * @throws IOException If the channel could not be opened
+     */
+    @NotNull abstract ReadableByteChannel open() throws IOException;
+
+    /**
+     * Open a new channel for the non-blocking transport. Reads from the channel must not
+     * block: when no data is available they return {@code 0}, and the callback is invoked
+     * once more data can be read. By default, this is the same as {@link #open()}, which is
+     * suitable for sources that never have to wait for data, such as files
+     *
+     * @param onAvailable Callback that is invoked when data becomes available. This may be
+     *                    invoked by any thread, and may also be invoked spuriously
+     * @return Opened channel
+     * @throws IOException If the channel could not be opened
+     */
+    @NotNull ReadableByteChannel openNonBlocking(@NotNull final Runnable onAvailable) throws IOException {
+        return this.open();
+    }
+
+    /**
+     * Copy a body to a blocking channel
+     *
+     * @param source Source channel, as returned by {@link #open()}
+     * @param target Target channel
+     * @param length Length of the body, or {@code -1} to copy until the source is exhausted
+     * @throws IOException If the body could not be copied
+     */
+    static void copy(@NotNull final ReadableByteChannel source, @NotNull final WritableByteChannel target,
+        final long length) throws IOException {
+        if (source instanceof FileChannel && length >= 0) {
+            final FileChannel file = (FileChannel) source;
+            long position = 0;
+            while (position < length) {
+                final long transferred = file.transferTo(position, length - position, target);
+                if (transferred == 0 && position >= file.size()) {
+                    throw new EOFException("The body is shorter than its declared length");
+                }
+                position += transferred;
+            }
+            return;
+        }
+        final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long remaining = length;
+        while (length < 0 || remaining > 0) {
+            if (length >= 0 && remaining < buffer.capacity()) {
+                buffer.limit((int) remaining);
+            }
+            final int read = source.read(buffer);
+            if (read == -1) {
+                if (length >= 0) {
+                    throw new EOFException("The body is shorter than its declared length");
+                }
+                return;
+            }
+            remaining -= read;
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                target.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+
+    private static final class FileBodySource extends BodySource {
+
+        private final Path file;
+        private final ContentType contentType;
+
+        private FileBodySource(@NotNull final Path file, @NotNull final ContentType contentType) {
+            this.file = file;
+            this.contentType = contentType;
+        }
+
+        @NotNull @Override ContentType contentType() {
+            return this.contentType;
+        }
+
+        @Override long contentLength() throws IOException {
+            return Files.size(this.file);
+        }
+
+        @NotNull @Override ReadableByteChannel open() throws IOException {
+            return FileChannel.open(this.file, StandardOpenOption.READ);
+        }
+
+    }
+
+}
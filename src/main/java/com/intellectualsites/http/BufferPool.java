@@ -0,0 +1,102 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 IntellectualSites
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.intellectualsites.http;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of equally sized {@link ByteBuffer buffers}
+ */
+final class BufferPool {
+
+    private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+    private final int bufferSize;
+    private final int maxPooled;
+    private final boolean direct;
+
+    /**
+     * Create a new pool
+     *
+     * @param bufferSize Size of each buffer, in bytes
+     * @param maxPooled  Maximum amount of idle buffers kept in the pool
+     * @param direct     Whether the buffers are allocated outside of the heap
+     */
+    BufferPool(final int bufferSize, final int maxPooled, final boolean direct) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+        this.direct = direct;
+    }
+
+    /**
+     * Take a cleared buffer from the pool, or allocate a new one if the pool is empty
+     *
+     * @return Buffer
+     */
+    @NotNull ByteBuffer acquire() {
+        final ByteBuffer buffer = this.poll();
+        if (buffer == null) {
+            return this.direct ? ByteBuffer.allocateDirect(this.bufferSize) : ByteBuffer.allocate(this.bufferSize);
+        }
+        return buffer;
+    }
+
+    /**
+     * Take a cleared buffer from the pool, without allocating a new one
+     *
+     * @return Buffer, or {@code null} if the pool is empty
+     */
+    @Nullable ByteBuffer poll() {
+        final ByteBuffer buffer = this.buffers.poll();
+        if (buffer == null) {
+            return null;
+        }
+        this.pooled.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Return a buffer to the pool. The buffer may not be used after it has been released
+     *
+     * @param buffer Buffer to return
+     */
+    void release(@NotNull final ByteBuffer buffer) {
+        if (buffer.capacity() != this.bufferSize) {
+            return;
+        }
+        if (this.pooled.incrementAndGet() > this.maxPooled) {
+            this.pooled.decrementAndGet();
+            return;
+        }
+        this.buffers.add(buffer);
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 IntellectualSites
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.intellectualsites.http;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts how response bodies were buffered by a client that uses
+ * {@link HttpClient.Builder#withPooledResponseBuffers(boolean, boolean) pooled response buffers}.
+ * A hit reuses a buffer that was returned by a closed response, while a miss allocates a new one
+ *
+ * @see HttpClient#getBufferPoolMetrics()
+ */
+public final class BufferPoolMetrics {
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder leaks = new LongAdder();
+    @Nullable private volatile Throwable lastLeak;
+
+    BufferPoolMetrics() {
+    }
+
+    void recordAcquire(final boolean hit) {
+        if (hit) {
+            this.hits.increment();
+        } else {
+            this.misses.increment();
+        }
+    }
+
+    void recordLeak(@NotNull final Throwable allocationSite) {
+        this.lastLeak = allocationSite;
+        this.leaks.increment();
+    }
+
+    /**
+     * Get the amount of buffers that were taken from the pool
+     *
+     * @return Pool hits
+     */
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    /**
+     * Get the amount of buffers that had to be allocated
+     *
+     * @return Pool misses
+     */
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    /**
+     * Get the amount of responses that were garbage collected without being closed. This
+     * is only tracked if leak detection is enabled
+     *
+     * @return Leaked responses
+     */
+    public long getLeaks() {
+        return this.leaks.sum();
+    }
+
+    /**
+     * Get where the most recently leaked response was created. The stack trace of the returned
+     * exception points at the code that executed the request
+     *
+     * @return Allocation site of the last leak, or {@code null} if no response has been leaked
+     */
+    @Nullable public Throwable getLastLeak() {
+        return this.lastLeak;
+    }
+
+    /**
+     * Get the share of buffers that were taken from the pool
+     *
+     * @return Hit rate, between {@code 0} and {@code 1}
+     */
+    public double getHitRate() {
+        final long hits = this.getHits();
+        final long total = hits + this.getMisses();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override public String toString() {
+        return "BufferPoolMetrics{hits=" + this.getHits() + ", misses=" + this.getMisses()
+            + ", leaks=" + this.getLeaks() + '}';
+    }
+
+}
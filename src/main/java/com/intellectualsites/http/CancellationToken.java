@@ -0,0 +1,87 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 IntellectualSites
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.intellectualsites.http;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cancellation signal shared by the executions of a request. Executions bind an
+ * action that aborts their connection, and unbind it once the connection is released
+ */
+final class CancellationToken {
+
+    private final List<Runnable> actions = new ArrayList<>(1);
+    private volatile boolean cancelled;
+
+    boolean isCancelled() {
+        return this.cancelled;
+    }
+
+    /**
+     * Cancel the request, and run the bound actions
+     *
+     * @return {@code true} if the request was not cancelled before
+     */
+    boolean cancel() {
+        final Runnable[] actions;
+        synchronized (this) {
+            if (this.cancelled) {
+                return false;
+            }
+            this.cancelled = true;
+            actions = this.actions.toArray(new Runnable[0]);
+            this.actions.clear();
+        }
+        for (final Runnable action : actions) {
+            action.run();
+        }
+        return true;
+    }
+
+    /**
+     * Bind an action that is run once the request is cancelled. If the
+     * request has already been cancelled, the action is run immediately
+     *
+     * @param action Action
+     */
+    void bind(@NotNull final Runnable action) {
+        synchronized (this) {
+            if (!this.cancelled) {
+                this.actions.add(action);
+                return;
+            }
+        }
+        action.run();
+    }
+
+    void unbind(@NotNull final Runnable action) {
+        synchronized (this) {
+            this.actions.remove(action);
+        }
+    }
+
+}
@@ -0,0 +1,542 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 IntellectualSites
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.intellectualsites.http;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * {@link EntityMapper Mappers} for CBOR (RFC 8949), a binary encoding of the JSON data model that
+ * is smaller and cheaper to parse than JSON text. Values are represented using the following types:
+ * <ul>
+ *     <li>{@code null}, {@link Boolean}, {@link String} and {@code byte[]}</li>
+ *     <li>Integers, which are decoded as {@link Long}, or {@link BigInteger} if they do not fit</li>
+ *     <li>Floating point numbers, which are decoded as {@link Double}</li>
+ *     <li>Arrays, which are decoded as {@link List}. Any {@link Collection} or object array can be encoded</li>
+ *     <li>Maps, which are decoded as {@link LinkedHashMap}</li>
+ * </ul>
+ * Other types are mapped using a conversion function, for example:
+ * <pre>{@code
+ * mapper.registerSerializer(User.class, CborMapper.serializer(User.class, User::toMap))
+ *     .registerDeserializer(User.class, ContentType.CBOR, CborMapper.deserializer(User.class, User::fromMap));
+ * }</pre>
+ */
+public final class CborMapper {
+
+    private static final int MAX_DEPTH = 512;
+
+    private static final int UNSIGNED = 0;
+    private static final int NEGATIVE = 1;
+    private static final int BYTES = 2;
+    private static final int TEXT = 3;
+    private static final int ARRAY = 4;
+    private static final int MAP = 5;
+    private static final int TAG = 6;
+    private static final int SIMPLE = 7;
+
+    private static final int INDEFINITE = 31;
+    private static final int BREAK = 0xFF;
+
+    private CborMapper() {
+    }
+
+    /**
+     * Create a serializer for values that are represented using the CBOR data model
+     *
+     * @param clazz Input class
+     * @param <T>   Input type
+     * @return Serializer for the input type
+     */
+    @NotNull public static <T> EntityMapper.EntitySerializer<T> serializer(@NotNull final Class<T> clazz) {
+        return serializer(clazz, Function.identity());
+    }
+
+    /**
+     * Create a serializer that converts values to the CBOR data model before encoding them
+     *
+     * @param clazz     Input class
+     * @param converter Converts a value to the data model
+     * @param <T>       Input type
+     * @return Serializer for the input type
+     */
+    @NotNull public static <T> EntityMapper.EntitySerializer<T> serializer(@NotNull final Class<T> clazz,
+        @NotNull final Function<? super T, ?> converter) {
+        Objects.requireNonNull(clazz, "Class may not be null");
+        Objects.requireNonNull(converter, "Converter may not be null");
+        return new CborSerializer<>(converter);
+    }
+
+    /**
+     * Create a deserializer for values that are represented using the CBOR data model
+     *
+     * @param clazz Output class, such as {@link Map} or {@link List}
+     * @param <T>   Output type
+     * @return Deserializer for the output type
+     */
+    @NotNull public static <T> EntityMapper.EntityDeserializer<T> deserializer(@NotNull final Class<T> clazz) {
+        return deserializer(clazz, clazz::cast);
+    }
+
+    /**
+     * Create a deserializer that converts decoded values from the CBOR data model
+     *
+     * @param clazz     Output class
+     * @param converter Converts a decoded value
+     * @param <T>       Output type
+     * @return Deserializer for the output type
+     */
+    @NotNull public static <T> EntityMapper.EntityDeserializer<T> deserializer(@NotNull final Class<T> clazz,
+        @NotNull final Function<Object, ? extends T> converter) {
+        Objects.requireNonNull(clazz, "Class may not be null");
+        Objects.requireNonNull(converter, "Converter may not be null");
+        return new CborDeserializer<>(converter);
+    }
+
+    /**
+     * Encode a value
+     *
+     * @param value Value, represented using the CBOR data model
+     * @return Encoded value
+     * @throws IllegalArgumentException If the value contains a type that cannot be encoded
+     */
+    @NotNull public static byte[] encode(@Nullable final Object value) {
+        final Encoder encoder = new Encoder();
+        encoder.write(value, 0);
+        return encoder.toByteArray();
+    }
+
+    /**
+     * Decode a single value. The position of the buffer is not modified
+     *
+     * @param input Encoded value
+     * @return Decoded value
+     * @throws IllegalArgumentException If the input is not well-formed CBOR
+     */
+    @Nullable public static Object decode(@NotNull final ByteBuffer input) {
+        final ByteBuffer buffer = input.duplicate();
+        try {
+            final Object value = read(buffer, 0);
+            if (value == Break.INSTANCE) {
+                throw new IllegalArgumentException("Unexpected break");
+            }
+            if (buffer.hasRemaining()) {
+                throw new IllegalArgumentException(String.format("%d trailing byte(s)", buffer.remaining()));
+            }
+            return value;
+        } catch (final BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated CBOR input", e);
+        }
+    }
+
+    @Nullable private static Object read(@NotNull final ByteBuffer buffer, final int depth) {
+        if (depth > MAX_DEPTH) {
+            throw new IllegalArgumentException("CBOR input is nested too deeply");
+        }
+        final int initial = buffer.get() & 0xFF;
+        if (initial == BREAK) {
+            return Break.INSTANCE;
+        }
+        final int major = initial >>> 5;
+        final int info = initial & 0x1F;
+        if (major == SIMPLE) {
+            return readSimple(buffer, info);
+        }
+        if (info == INDEFINITE) {
+            return readIndefinite(buffer, major, depth);
+        }
+        final long argument = readArgument(buffer, info);
+        switch (major) {
+            case UNSIGNED:
+                return argument >= 0 ? (Object) argument : toUnsigned(argument);
+            case NEGATIVE:
+                // The value is -1 - argument, where the argument is an unsigned 64 bit integer
+                return argument >= 0 ? (Object) (-1 - argument) : toUnsigned(argument).not();
+            case BYTES: {
+                final byte[] bytes = new byte[length(buffer, argument)];
+                buffer.get(bytes);
+                return bytes;
+            }
+            case TEXT: {
+                final int length = length(buffer, argument);
+                final String text;
+                if (buffer.hasArray()) {
+                    text = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+                        StandardCharsets.UTF_8);
+                    buffer.position(buffer.position() + length);
+                } else {
+                    final byte[] bytes = new byte[length];
+                    buffer.get(bytes);
+                    text = new String(bytes, StandardCharsets.UTF_8);
+                }
+                return text;
+            }
+            case ARRAY: {
+                final int size = count(buffer, argument, 1);
+                final List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readItem(buffer, depth));
+                }
+                return list;
+            }
+            case MAP: {
+                final int size = count(buffer, argument, 2);
+                final Map<Object, Object> map = new LinkedHashMap<>(Math.max(16, (int) (size / 0.75f) + 1));
+                for (int i = 0; i < size; i++) {
+                    final Object key = readItem(buffer, depth);
+                    map.put(key, readItem(buffer, depth));
+                }
+                return map;
+            }
+            default:
+                // Tags carry semantics that we do not interpret, so the tagged item is returned as is
+                return readItem(buffer, depth);
+        }
+    }
+
+    @Nullable private static Object readItem(@NotNull final ByteBuffer buffer, final int depth) {
+        final Object item = read(buffer, depth + 1);
+        if (item == Break.INSTANCE) {
+            throw new IllegalArgumentException("Unexpected break");
+        }
+        return item;
+    }
+
+    @NotNull private static Object readIndefinite(@NotNull final ByteBuffer buffer, final int major, final int depth) {
+        switch (major) {
+            case BYTES:
+            case TEXT: {
+                final Encoder chunks = new Encoder();
+                Object chunk;
+                while ((chunk = read(buffer, depth + 1)) != Break.INSTANCE) {
+                    if (major == BYTES && chunk instanceof byte[]) {
+                        chunks.writeBytes((byte[]) chunk);
+                    } else if (major == TEXT && chunk instanceof String) {
+                        chunks.writeBytes(((String) chunk).getBytes(StandardCharsets.UTF_8));
+                    } else {
+                        throw new IllegalArgumentException("Invalid chunk in indefinite length string");
+                    }
+                }
+                final byte[] bytes = chunks.toByteArray();
+                return major == BYTES ? bytes : new String(bytes, StandardCharsets.UTF_8);
+            }
+            case ARRAY: {
+                final List<Object> list = new ArrayList<>();
+                Object item;
+                while ((item = read(buffer, depth + 1)) != Break.INSTANCE) {
+                    list.add(item);
+                }
+                return list;
+            }
+            case MAP: {
+                final Map<Object, Object> map = new LinkedHashMap<>();
+                Object key;
+                while ((key = read(buffer, depth + 1)) != Break.INSTANCE) {
+                    map.put(key, readItem(buffer, depth));
+                }
+                return map;
+            }
+            default:
+                throw new IllegalArgumentException(String.format("Major type %d has no indefinite length", major));
+        }
+    }
+
+    @Nullable private static Object readSimple(@NotNull final ByteBuffer buffer, final int info) {
+        switch (info) {
+            case 20:
+                return Boolean.FALSE;
+            case 21:
+                return Boolean.TRUE;
+            case 22:
+            case 23:
+                return null;
+            case 24:
+                buffer.get();
+                return null;
+            case 25:
+                return halfToDouble(buffer.getShort() & 0xFFFF);
+            case 26:
+                return (double) buffer.getFloat();
+            case 27:
+                return buffer.getDouble();
+            default:
+                if (info < 20) {
+                    return null;
+                }
+                throw new IllegalArgumentException(String.format("Invalid simple value %d", info));
+        }
+    }
+
+    private static long readArgument(@NotNull final ByteBuffer buffer, final int info) {
+        if (info < 24) {
+            return info;
+        }
+        switch (info) {
+            case 24:
+                return buffer.get() & 0xFFL;
+            case 25:
+                return buffer.getShort() & 0xFFFFL;
+            case 26:
+                return buffer.getInt() & 0xFFFFFFFFL;
+            case 27:
+                return buffer.getLong();
+            default:
+                throw new IllegalArgumentException(String.format("Invalid additional information %d", info));
+        }
+    }
+
+    /**
+     * Validate the length of a string against the remaining input, so that a corrupt
+     * length does not cause a large allocation
+     */
+    private static int length(@NotNull final ByteBuffer buffer, final long length) {
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("Truncated CBOR input");
+        }
+        return (int) length;
+    }
+
+    /**
+     * Validate the size of an array or map, each item of which takes at least one byte
+     */
+    private static int count(@NotNull final ByteBuffer buffer, final long size, final int itemsPerEntry) {
+        if (size < 0 || size * itemsPerEntry > buffer.remaining()) {
+            throw new IllegalArgumentException("Truncated CBOR input");
+        }
+        return (int) size;
+    }
+
+    @NotNull private static BigInteger toUnsigned(final long value) {
+        return BigInteger.valueOf(value & Long.MAX_VALUE).setBit(63);
+    }
+
+    private static double halfToDouble(final int half) {
+        final int exponent = (half >>> 10) & 0x1F;
+        final int mantissa = half & 0x3FF;
+        final double value;
+        if (exponent == 0) {
+            value = mantissa * Math.pow(2, -24);
+        } else if (exponent == 0x1F) {
+            value = mantissa == 0 ? Double.POSITIVE_INFINITY : Double.NaN;
+        } else {
+            value = (mantissa + 1024) * Math.pow(2, exponent - 25);
+        }
+        return (half & 0x8000) == 0 ? value : -value;
+    }
+
+
+    /**
+     * Marks the end of an indefinite length item
+     */
+    private enum Break {
+        INSTANCE
+    }
+
+
+    private static final class Encoder {
+
+        private byte[] bytes = new byte[64];
+        private int size;
+
+        private void write(@Nullable final Object value, final int depth) {
+            if (depth > MAX_DEPTH) {
+                throw new IllegalArgumentException("The value is nested too deeply");
+            }
+            if (value == null) {
+                this.writeByte(0xF6);
+            } else if (value instanceof Boolean) {
+                this.writeByte((Boolean) value ? 0xF5 : 0xF4);
+            } else if (value instanceof String) {
+                final byte[] text = ((String) value).getBytes(StandardCharsets.UTF_8);
+                this.writeHead(TEXT, text.length);
+                this.writeBytes(text);
+            } else if (value instanceof Long || value instanceof Integer || value instanceof Short
+                || value instanceof Byte) {
+                final long number = ((Number) value).longValue();
+                if (number >= 0) {
+                    this.writeHead(UNSIGNED, number);
+                } else {
+                    this.writeHead(NEGATIVE, -1 - number);
+                }
+            } else if (value instanceof Double || value instanceof Float) {
+                this.writeFloat(((Number) value).doubleValue());
+            } else if (value instanceof BigInteger) {
+                final BigInteger number = (BigInteger) value;
+                if (number.bitLength() > 64) {
+                    throw new IllegalArgumentException("Integers are limited to 64 bits");
+                }
+                final boolean negative = number.signum() < 0;
+                this.writeHead(negative ? NEGATIVE : UNSIGNED, (negative ? number.not() : number).longValue());
+            } else if (value instanceof byte[]) {
+                final byte[] data = (byte[]) value;
+                this.writeHead(BYTES, data.length);
+                this.writeBytes(data);
+            } else if (value instanceof Collection) {
+                final Collection<?> collection = (Collection<?>) value;
+                this.writeHead(ARRAY, collection.size());
+                for (final Object item : collection) {
+                    this.write(item, depth + 1);
+                }
+            } else if (value instanceof Object[]) {
+                this.write(Arrays.asList((Object[]) value), depth);
+            } else if (value instanceof Map) {
+                final Map<?, ?> map = (Map<?, ?>) value;
+                this.writeHead(MAP, map.size());
+                for (final Map.Entry<?, ?> entry : map.entrySet()) {
+                    this.write(entry.getKey(), depth + 1);
+                    this.write(entry.getValue(), depth + 1);
+                }
+            } else {
+                throw new IllegalArgumentException(String.format("Cannot encode values of type '%s'",
+                    value.getClass().getCanonicalName()));
+            }
+        }
+
+        /**
+         * Write a head, using the shortest encoding of the argument. The argument
+         * is treated as an unsigned 64 bit integer
+         */
+        private void writeHead(final int major, final long argument) {
+            final int type = major << 5;
+            if (argument >= 0 && argument < 24) {
+                this.writeByte(type | (int) argument);
+            } else if (argument >= 0 && argument <= 0xFF) {
+                this.writeByte(type | 24);
+                this.writeByte((int) argument);
+            } else if (argument >= 0 && argument <= 0xFFFF) {
+                this.writeByte(type | 25);
+                this.writeByte((int) (argument >>> 8));
+                this.writeByte((int) argument);
+            } else if (argument >= 0 && argument <= 0xFFFFFFFFL) {
+                this.writeByte(type | 26);
+                this.writeInt((int) argument);
+            } else {
+                this.writeByte(type | 27);
+                this.writeInt((int) (argument >>> 32));
+                this.writeInt((int) argument);
+            }
+        }
+
+        /**
+         * Write a floating point number, using single precision if that is lossless
+         */
+        private void writeFloat(final double value) {
+            final float single = (float) value;
+            if (single == value || Double.isNaN(value)) {
+                this.writeByte(0xFA);
+                this.writeInt(Float.floatToIntBits(single));
+            } else {
+                final long bits = Double.doubleToLongBits(value);
+                this.writeByte(0xFB);
+                this.writeInt((int) (bits >>> 32));
+                this.writeInt((int) bits);
+            }
+        }
+
+        private void writeInt(final int value) {
+            this.ensure(4);
+            this.bytes[this.size++] = (byte) (value >>> 24);
+            this.bytes[this.size++] = (byte) (value >>> 16);
+            this.bytes[this.size++] = (byte) (value >>> 8);
+            this.bytes[this.size++] = (byte) value;
+        }
+
+        private void writeByte(final int value) {
+            this.ensure(1);
+            this.bytes[this.size++] = (byte) value;
+        }
+
+        private void writeBytes(@NotNull final byte[] data) {
+            this.ensure(data.length);
+            System.arraycopy(data, 0, this.bytes, this.size, data.length);
+            this.size += data.length;
+        }
+
+        private void ensure(final int length) {
+            if (this.size + length > this.bytes.length) {
+                this.bytes = Arrays.copyOf(this.bytes, Math.max(this.bytes.length * 2, this.size + length));
+            }
+        }
+
+        @NotNull private byte[] toByteArray() {
+            return Arrays.copyOf(this.bytes, this.size);
+        }
+
+    }
+
+
+    private static final class CborSerializer<T> implements EntityMapper.EntitySerializer<T> {
+
+        private final Function<? super T, ?> converter;
+
+        private CborSerializer(@NotNull final Function<? super T, ?> converter) {
+            this.converter = converter;
+        }
+
+        @NotNull @Override public byte[] serialize(@NotNull final T input) {
+            return encode(this.converter.apply(input));
+        }
+
+        @Override public ContentType getContentType() {
+            return ContentType.CBOR;
+        }
+
+    }
+
+
+    private static final class CborDeserializer<T> implements EntityMapper.EntityDeserializer<T> {
+
+        private final Function<Object, ? extends T> converter;
+
+        private CborDeserializer(@NotNull final Function<Object, ? extends T> converter) {
+            this.converter = converter;
+        }
+
+        @NotNull @Override public T deserialize(@Nullable final ContentType contentType, @NotNull final byte[] input) {
+            return this.deserialize(contentType, ByteBuffer.wrap(input));
+        }
+
+        @NotNull @Override public T deserialize(@Nullable final ContentType contentType, @NotNull final ByteBuffer input) {
+            final T value = this.converter.apply(decode(input));
+            if (value == null) {
+                throw new IllegalArgumentException("The entity is null");
+            }
+            return value;
+        }
+
+    }
+
+}
@@ -26,10 +26,17 @@ package com.intellectualsites.http;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.Executor;
 import java.util.function.Consumer;
 
 /**
@@ -38,8 +45,34 @@ import java.util.function.Consumer;
 final class ClientSettings {
 
     private final Collection<Consumer<HttpClient.WrappedRequestBuilder>> decorators = new LinkedList<>();
+    private final List<Interceptor> interceptors = new ArrayList<>();
     private String baseURL;
     private EntityMapper entityMapper;
+    private Executor executor;
+    private int selectorThreads;
+    private DnsResolver dnsResolver;
+    private AddressSelection addressSelection = AddressSelection.ROUND_ROBIN;
+    private final List<String> prewarmURLs = new ArrayList<>();
+    private int prewarmConnections;
+    private Consumer<HttpClient> warmUp;
+    private SSLContext sslContext;
+    private SSLSocketFactory sslSocketFactory;
+    private HostnameVerifier hostnameVerifier;
+    private int sessionCacheSize = -1;
+    private Duration sessionTimeout;
+    private boolean pooledResponseBuffers;
+    private boolean directResponseBuffers;
+    private boolean leakDetection;
+    private final List<String> baseURLs = new ArrayList<>();
+    private LoadBalancing loadBalancing = LoadBalancing.ROUND_ROBIN;
+    private int ejectionThreshold = 5;
+    private Duration ejectionTime = Duration.ofSeconds(30);
+    private String healthCheckPath;
+    private Duration healthCheckInterval;
+    private int maxConcurrentPerHost;
+    private Duration priorityAging;
+    private Tracing tracing;
+    private SlowRequestLog slowRequestLog;
 
     ClientSettings() {
         this.baseURL = "";
@@ -65,6 +98,213 @@ final class ClientSettings {
         return this.entityMapper;
     }
 
+    /**
+     * Get the executor that is used to perform asynchronous requests
+     *
+     * @return Executor, or {@code null} if the client should create its own
+     */
+    @Nullable Executor getExecutor() {
+        return this.executor;
+    }
+
+    /**
+     * Get the amount of selector threads used by the non-blocking transport
+     *
+     * @return Selector threads, or {@code 0} if the non-blocking transport is disabled
+     */
+    int getSelectorThreads() {
+        return this.selectorThreads;
+    }
+
+    /**
+     * Get the resolver that is used by the non-blocking transport
+     *
+     * @return Resolver, or {@code null} if the resolver of the JVM is used without additional caching
+     */
+    @Nullable DnsResolver getDnsResolver() {
+        return this.dnsResolver;
+    }
+
+    /**
+     * Get how addresses are chosen when a host resolves to multiple addresses
+     *
+     * @return Address selection
+     */
+    @NotNull AddressSelection getAddressSelection() {
+        return this.addressSelection;
+    }
+
+    /**
+     * Get the amount of connections that are opened to each prewarmed URL
+     *
+     * @return Connections per URL, or {@code 0} if no connections are prewarmed
+     */
+    int getPrewarmConnections() {
+        return this.prewarmConnections;
+    }
+
+    /**
+     * Get the URLs to which connections are opened when the client is built
+     *
+     * @return Unmodifiable list of URLs. If it is empty, the base URL is used
+     */
+    @NotNull List<String> getPrewarmURLs() {
+        return Collections.unmodifiableList(this.prewarmURLs);
+    }
+
+    /**
+     * Get the warm-up that runs once the client is built
+     *
+     * @return Warm-up, or {@code null}
+     */
+    @Nullable Consumer<HttpClient> getWarmUp() {
+        return this.warmUp;
+    }
+
+    /**
+     * Get the SSL context that is shared by all HTTPS requests
+     *
+     * @return SSL context, or {@code null}
+     */
+    @Nullable SSLContext getSSLContext() {
+        return this.sslContext;
+    }
+
+    /**
+     * Get the socket factory that is shared by all HTTPS requests
+     *
+     * @return Socket factory, or {@code null}
+     */
+    @Nullable SSLSocketFactory getSSLSocketFactory() {
+        return this.sslSocketFactory;
+    }
+
+    /**
+     * Get the hostname verifier used by all HTTPS requests
+     *
+     * @return Hostname verifier, or {@code null} if the default verifier is used
+     */
+    @Nullable HostnameVerifier getHostnameVerifier() {
+        return this.hostnameVerifier;
+    }
+
+    /**
+     * Get the base URLs that requests are balanced across
+     *
+     * @return Unmodifiable list of base URLs, which is empty if requests are not balanced
+     */
+    @NotNull List<String> getBaseURLs() {
+        return Collections.unmodifiableList(this.baseURLs);
+    }
+
+    /**
+     * Get the strategy that selects the base URL of a request
+     *
+     * @return Load balancing strategy
+     */
+    @NotNull LoadBalancing getLoadBalancing() {
+        return this.loadBalancing;
+    }
+
+    /**
+     * Get the amount of consecutive failures after which an endpoint is ejected
+     *
+     * @return Failure threshold
+     */
+    int getEjectionThreshold() {
+        return this.ejectionThreshold;
+    }
+
+    /**
+     * Get how long an endpoint is ejected for the first time
+     *
+     * @return Base ejection time
+     */
+    @NotNull Duration getEjectionTime() {
+        return this.ejectionTime;
+    }
+
+    /**
+     * Get the path that is requested to check the health of an endpoint
+     *
+     * @return Health check path, or {@code null} if endpoints are not actively checked
+     */
+    @Nullable String getHealthCheckPath() {
+        return this.healthCheckPath;
+    }
+
+    /**
+     * Get the interval between health checks
+     *
+     * @return Health check interval
+     */
+    @Nullable Duration getHealthCheckInterval() {
+        return this.healthCheckInterval;
+    }
+
+    /**
+     * Get the maximum amount of concurrent asynchronous requests to a host
+     *
+     * @return Concurrency limit, or {@code 0} if requests are not scheduled
+     */
+    int getMaxConcurrentPerHost() {
+        return this.maxConcurrentPerHost;
+    }
+
+    /**
+     * Get the wait time after which a queued request is promoted by one priority
+     *
+     * @return Aging interval, or {@code null} if requests are not scheduled
+     */
+    @Nullable Duration getPriorityAging() {
+        return this.priorityAging;
+    }
+
+    /**
+     * Check whether response bodies are buffered in pooled buffers
+     *
+     * @return {@code true} if response buffers are pooled
+     */
+    boolean isPooledResponseBuffers() {
+        return this.pooledResponseBuffers;
+    }
+
+    /**
+     * Check whether pooled response buffers are allocated outside of the heap
+     *
+     * @return {@code true} if the buffers are direct
+     */
+    boolean isDirectResponseBuffers() {
+        return this.directResponseBuffers;
+    }
+
+    /**
+     * Check whether responses that are not closed should be reported
+     *
+     * @return {@code true} if leak detection is enabled
+     */
+    boolean isLeakDetection() {
+        return this.leakDetection;
+    }
+
+    /**
+     * Get the maximum amount of cached TLS sessions
+     *
+     * @return Session cache size, {@code 0} for no limit, or {@code -1} if the session cache is not configured
+     */
+    int getSessionCacheSize() {
+        return this.sessionCacheSize;
+    }
+
+    /**
+     * Get how long cached TLS sessions may be resumed
+     *
+     * @return Session timeout, or {@code null} if the session cache is not configured
+     */
+    @Nullable Duration getSessionTimeout() {
+        return this.sessionTimeout;
+    }
+
     /**
      * Get all registered request decorators
      *
@@ -74,6 +314,33 @@ final class ClientSettings {
         return Collections.unmodifiableCollection(this.decorators);
     }
 
+    /**
+     * Get all registered interceptors, in the order in which they were registered
+     *
+     * @return Unmodifiable list of interceptors
+     */
+    @NotNull List<Interceptor> getInterceptors() {
+        return Collections.unmodifiableList(this.interceptors);
+    }
+
+    /**
+     * Get the tracing configuration
+     *
+     * @return Tracing, or {@code null} if requests are not traced
+     */
+    @Nullable Tracing getTracing() {
+        return this.tracing;
+    }
+
+    /**
+     * Get the slow request log
+     *
+     * @return Slow request log, or {@code null} if slow requests are not recorded
+     */
+    @Nullable SlowRequestLog getSlowRequestLog() {
+        return this.slowRequestLog;
+    }
+
     /**
      * Set the base URL, that is prepended to
      * the URL of each request
@@ -82,6 +349,7 @@ final class ClientSettings {
      */
     void setBaseURL(@NotNull final String baseURL) {
         this.baseURL = Objects.requireNonNull(baseURL, "Base URL may not be null");
+        this.baseURLs.clear();
     }
 
     /**
@@ -94,6 +362,159 @@ final class ClientSettings {
         this.entityMapper = entityMapper;
     }
 
+    /**
+     * Set the executor that is used to perform asynchronous requests
+     *
+     * @param executor Executor
+     */
+    void setExecutor(@Nullable final Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Set the amount of selector threads used by the non-blocking transport
+     *
+     * @param selectorThreads Selector threads, or {@code 0} to disable the non-blocking transport
+     */
+    void setSelectorThreads(final int selectorThreads) {
+        this.selectorThreads = selectorThreads;
+    }
+
+    /**
+     * Set the resolver that is used by the non-blocking transport
+     *
+     * @param dnsResolver Resolver
+     */
+    void setDnsResolver(@Nullable final DnsResolver dnsResolver) {
+        this.dnsResolver = dnsResolver;
+    }
+
+    /**
+     * Set how addresses are chosen when a host resolves to multiple addresses
+     *
+     * @param addressSelection Address selection
+     */
+    void setAddressSelection(@NotNull final AddressSelection addressSelection) {
+        this.addressSelection = Objects.requireNonNull(addressSelection, "Address selection may not be null");
+    }
+
+    /**
+     * Set the connections that are opened when the client is built
+     *
+     * @param connections Connections per URL
+     * @param urls        URLs. If empty, the base URL is used
+     */
+    void setPrewarm(final int connections, @NotNull final Collection<String> urls) {
+        this.prewarmConnections = connections;
+        this.prewarmURLs.clear();
+        this.prewarmURLs.addAll(urls);
+    }
+
+    /**
+     * Set the warm-up that runs once the client is built
+     *
+     * @param warmUp Warm-up
+     */
+    void setWarmUp(@Nullable final Consumer<HttpClient> warmUp) {
+        this.warmUp = warmUp;
+    }
+
+    /**
+     * Balance requests across multiple base URLs. The first URL is also used as the base URL
+     *
+     * @param loadBalancing Load balancing strategy
+     * @param baseURLs      Base URLs, without trailing slashes
+     */
+    void setBaseURLs(@NotNull final LoadBalancing loadBalancing, @NotNull final List<String> baseURLs) {
+        this.loadBalancing = Objects.requireNonNull(loadBalancing, "Load balancing may not be null");
+        this.baseURLs.clear();
+        this.baseURLs.addAll(baseURLs);
+        this.baseURL = baseURLs.get(0);
+    }
+
+    /**
+     * Configure when endpoints are ejected
+     *
+     * @param ejectionThreshold Consecutive failures after which an endpoint is ejected
+     * @param ejectionTime      How long an endpoint is ejected for the first time
+     */
+    void setOutlierEjection(final int ejectionThreshold, @NotNull final Duration ejectionTime) {
+        this.ejectionThreshold = ejectionThreshold;
+        this.ejectionTime = Objects.requireNonNull(ejectionTime, "Ejection time may not be null");
+    }
+
+    /**
+     * Actively check the health of endpoints
+     *
+     * @param healthCheckPath     Path that is requested
+     * @param healthCheckInterval Interval between health checks
+     */
+    void setHealthCheck(@NotNull final String healthCheckPath, @NotNull final Duration healthCheckInterval) {
+        this.healthCheckPath = Objects.requireNonNull(healthCheckPath, "Health check path may not be null");
+        this.healthCheckInterval = Objects.requireNonNull(healthCheckInterval, "Health check interval may not be null");
+    }
+
+    /**
+     * Schedule asynchronous requests by priority
+     *
+     * @param maxConcurrentPerHost Maximum amount of concurrent asynchronous requests to a host
+     * @param priorityAging        Wait time after which a queued request is promoted by one priority
+     */
+    void setPriorityScheduling(final int maxConcurrentPerHost, @NotNull final Duration priorityAging) {
+        this.maxConcurrentPerHost = maxConcurrentPerHost;
+        this.priorityAging = Objects.requireNonNull(priorityAging, "Aging interval may not be null");
+    }
+
+    /**
+     * Enable pooled response buffers
+     *
+     * @param direct      Whether the buffers are allocated outside of the heap
+     * @param detectLeaks Whether responses that are not closed should be reported
+     */
+    void setPooledResponseBuffers(final boolean direct, final boolean detectLeaks) {
+        this.pooledResponseBuffers = true;
+        this.directResponseBuffers = direct;
+        this.leakDetection = detectLeaks;
+    }
+
+    /**
+     * Set the SSL context that is shared by all HTTPS requests
+     *
+     * @param sslContext SSL context
+     */
+    void setSSLContext(@Nullable final SSLContext sslContext) {
+        this.sslContext = sslContext;
+    }
+
+    /**
+     * Set the socket factory that is shared by all HTTPS requests
+     *
+     * @param sslSocketFactory Socket factory
+     */
+    void setSSLSocketFactory(@Nullable final SSLSocketFactory sslSocketFactory) {
+        this.sslSocketFactory = sslSocketFactory;
+    }
+
+    /**
+     * Set the hostname verifier used by all HTTPS requests
+     *
+     * @param hostnameVerifier Hostname verifier
+     */
+    void setHostnameVerifier(@Nullable final HostnameVerifier hostnameVerifier) {
+        this.hostnameVerifier = hostnameVerifier;
+    }
+
+    /**
+     * Configure the TLS session cache
+     *
+     * @param sessionCacheSize Maximum amount of cached sessions, or {@code 0} for no limit
+     * @param sessionTimeout   How long cached sessions may be resumed
+     */
+    void setSessionCache(final int sessionCacheSize, @NotNull final Duration sessionTimeout) {
+        this.sessionCacheSize = sessionCacheSize;
+        this.sessionTimeout = Objects.requireNonNull(sessionTimeout, "Session timeout may not be null");
+    }
+
     /**
      * Add a new request decorator. This will have the opportunity
      * to decorate every request made by this client
@@ -104,4 +525,31 @@ final class ClientSettings {
         this.decorators.add(Objects.requireNonNull(decorator, "Decorator may not be null"));
     }
 
+    /**
+     * Trace the requests made by the client
+     *
+     * @param tracing Tracing configuration
+     */
+    void setTracing(@NotNull final Tracing tracing) {
+        this.tracing = Objects.requireNonNull(tracing, "Tracing may not be null");
+    }
+
+    /**
+     * Record the slow requests made by the client
+     *
+     * @param slowRequestLog Slow request log
+     */
+    void setSlowRequestLog(@NotNull final SlowRequestLog slowRequestLog) {
+        this.slowRequestLog = Objects.requireNonNull(slowRequestLog, "Slow request log may not be null");
+    }
+
+    /**
+     * Add an interceptor, which is invoked after the previously added interceptors
+     *
+     * @param interceptor Interceptor
+     */
+    void addInterceptor(@NotNull final Interceptor interceptor) {
+        this.interceptors.add(Objects.requireNonNull(interceptor, "Interceptor may not be null"));
+    }
+
 }
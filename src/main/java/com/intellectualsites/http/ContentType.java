@@ -26,45 +26,283 @@ package com.intellectualsites.http;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.HashMap;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
- * Wrapper for Content-Type header values
+ * Wrapper for Content-Type header values. Values are parsed into
+ * a type, a subtype and a set of parameters, as described by RFC 7231
  */
 public final class ContentType {
 
-    private static final Map<String, ContentType> internalMap = new HashMap<>();
+    /**
+     * The maximum amount of distinct header values that will be interned. Only values without
+     * parameters other than {@code charset} are interned. Values that are looked up once the
+     * cache is full are parsed, but not stored
+     */
+    private static final int MAX_INTERNED = 256;
+    private static final String TOKEN_SYMBOLS = "!#$%&'*+-.^_`|~";
+
+    private static final ConcurrentMap<String, ContentType> internalMap = new ConcurrentHashMap<>();
 
     public static final ContentType JSON = of("application/json; charset=UTF-8");
     public static final ContentType XML = of("application/xml");
     public static final ContentType DUMMY = of("application/*");
     public static final ContentType STRING_UTF8 = of("text/html; charset=UTF-8");
+    public static final ContentType OCTET_STREAM = of("application/octet-stream");
+    public static final ContentType CBOR = of("application/cbor");
 
     private final String type;
+    private final String subtype;
+    private final Map<String, String> parameters;
+    private final String value;
+    @Nullable private final Charset charset;
 
-    private ContentType(@NotNull final String type) {
+    private ContentType(@NotNull final String type, @NotNull final String subtype,
+        @NotNull final Map<String, String> parameters) {
         this.type = type;
+        this.subtype = subtype;
+        this.parameters = parameters;
+        final StringBuilder builder = new StringBuilder(type).append('/').append(subtype);
+        for (final Map.Entry<String, String> parameter : parameters.entrySet()) {
+            builder.append("; ").append(parameter.getKey()).append('=');
+            appendParameterValue(builder, parameter.getValue());
+        }
+        this.value = builder.toString();
+        this.charset = resolveCharset(parameters.get("charset"));
+    }
+
+    private ContentType(@NotNull final String value) {
+        this.type = value;
+        this.subtype = "";
+        this.parameters = Collections.emptyMap();
+        this.value = value;
+        this.charset = null;
     }
 
     /**
-     * Get the MIME type instance corresponding to the IANA template name
+     * Get the MIME type instance corresponding to the IANA template name. Values that are not
+     * valid media types are accepted as well, and are kept as a lower case type without a subtype.
+     * Use {@link #parse(String)} to reject them
      *
      * @param type MIME type
      * @return MIME type instance
      */
     @NotNull public static ContentType of(@NotNull final String type) {
-        return internalMap.computeIfAbsent(Objects.requireNonNull(type,
-            "Type may not be null").toLowerCase(), ContentType::new);
+        Objects.requireNonNull(type, "Type may not be null");
+        final ContentType interned = internalMap.get(type);
+        if (interned != null) {
+            return interned;
+        }
+        final ContentType contentType = parseValue(type);
+        if (contentType == null) {
+            return new ContentType(type.trim().toLowerCase(Locale.ROOT));
+        }
+        return intern(type, contentType);
     }
 
-    @Override public String toString() {
+    /**
+     * Parse a Content-Type header value
+     *
+     * @param value Header value
+     * @return MIME type instance
+     * @throws IllegalArgumentException If the value is not a valid media type
+     */
+    @NotNull public static ContentType parse(@NotNull final String value) {
+        Objects.requireNonNull(value, "Value may not be null");
+        final ContentType interned = internalMap.get(value);
+        if (interned != null) {
+            return interned;
+        }
+        final ContentType contentType = parseValue(value);
+        if (contentType == null) {
+            throw new IllegalArgumentException(String.format("'%s' is not a valid media type", value));
+        }
+        return intern(value, contentType);
+    }
+
+    @NotNull private static ContentType intern(@NotNull final String value, @NotNull final ContentType contentType) {
+        // Parameters such as boundaries are mostly unique, and would fill the cache with values that are never reused
+        final int parameters = contentType.parameters.size();
+        if (parameters > (contentType.charset == null ? 0 : 1) || internalMap.size() >= MAX_INTERNED) {
+            return contentType;
+        }
+        final ContentType previous = internalMap.putIfAbsent(value, contentType);
+        return previous == null ? contentType : previous;
+    }
+
+    private static void appendParameterValue(@NotNull final StringBuilder builder, @NotNull final String value) {
+        boolean token = !value.isEmpty();
+        for (int i = 0; i < value.length() && token; i++) {
+            final char character = value.charAt(i);
+            token = character < 0x7F && (Character.isLetterOrDigit(character) || TOKEN_SYMBOLS.indexOf(character) != -1);
+        }
+        if (token) {
+            builder.append(value);
+            return;
+        }
+        builder.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char character = value.charAt(i);
+            if (character == '"' || character == '\\') {
+                builder.append('\\');
+            }
+            builder.append(character);
+        }
+        builder.append('"');
+    }
+
+    @Nullable private static ContentType parseValue(@NotNull final String value) {
+        final int length = value.length();
+        int index = value.indexOf(';');
+        final String mimeType = (index == -1 ? value : value.substring(0, index)).trim();
+        final int slash = mimeType.indexOf('/');
+        if (slash <= 0 || slash == mimeType.length() - 1) {
+            return null;
+        }
+        final String type = mimeType.substring(0, slash).trim().toLowerCase(Locale.ROOT);
+        final String subtype = mimeType.substring(slash + 1).trim().toLowerCase(Locale.ROOT);
+
+        final Map<String, String> parameters = new LinkedHashMap<>();
+        while (index != -1 && index < length) {
+            // index points at the ';' preceding the parameter
+            int start = index + 1;
+            final int equals = value.indexOf('=', start);
+            final int nextSeparator = value.indexOf(';', start);
+            if (equals == -1 || (nextSeparator != -1 && nextSeparator < equals)) {
+                // Parameter without a value, which we ignore
+                index = nextSeparator;
+                continue;
+            }
+            final String name = value.substring(start, equals).trim().toLowerCase(Locale.ROOT);
+            start = equals + 1;
+            while (start < length && value.charAt(start) == ' ') {
+                start++;
+            }
+            final String parameterValue;
+            if (start < length && value.charAt(start) == '"') {
+                final StringBuilder quoted = new StringBuilder();
+                int position = start + 1;
+                for (; position < length; position++) {
+                    final char character = value.charAt(position);
+                    if (character == '\\' && position + 1 < length) {
+                        quoted.append(value.charAt(++position));
+                    } else if (character == '"') {
+                        break;
+                    } else {
+                        quoted.append(character);
+                    }
+                }
+                parameterValue = quoted.toString();
+                index = value.indexOf(';', position);
+            } else {
+                parameterValue = (nextSeparator == -1 ? value.substring(start) :
+                    value.substring(start, nextSeparator)).trim();
+                index = nextSeparator;
+            }
+            if ("charset".equals(name)) {
+                // Charset names are case-insensitive
+                parameters.put(name, parameterValue.toLowerCase(Locale.ROOT));
+            } else if (!name.isEmpty()) {
+                parameters.put(name, parameterValue);
+            }
+        }
+        return new ContentType(type, subtype, parameters.isEmpty() ? Collections.emptyMap() :
+            Collections.unmodifiableMap(parameters));
+    }
+
+    @Nullable private static Charset resolveCharset(@Nullable final String name) {
+        if (name == null || name.isEmpty()) {
+            return null;
+        }
+        try {
+            return Charset.forName(name);
+        } catch (final IllegalCharsetNameException | UnsupportedCharsetException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Get the primary type, such as {@code application} in {@code application/json}
+     *
+     * @return Lower case type
+     */
+    @NotNull public String getType() {
         return this.type;
     }
 
+    /**
+     * Get the subtype, such as {@code json} in {@code application/json}
+     *
+     * @return Lower case subtype, or an empty string if the value is not a valid media type
+     */
+    @NotNull public String getSubtype() {
+        return this.subtype;
+    }
+
+    /**
+     * Get the media type without any parameters, such as {@code application/json}
+     *
+     * @return Lower case media type
+     */
+    @NotNull public String getMimeType() {
+        return this.subtype.isEmpty() ? this.type : this.type + '/' + this.subtype;
+    }
+
+    /**
+     * Get all parameters. Parameter names are lower case, values are
+     * kept as they were supplied
+     *
+     * @return Unmodifiable map of parameters
+     */
+    @NotNull public Map<String, String> getParameters() {
+        return this.parameters;
+    }
+
+    /**
+     * Get the value of a parameter
+     *
+     * @param name Parameter name (case-insensitive)
+     * @return Parameter value, or {@code null}
+     */
+    @Nullable public String getParameter(@NotNull final String name) {
+        return this.parameters.get(Objects.requireNonNull(name, "Name may not be null")
+            .toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Get the charset specified by the {@code charset} parameter
+     *
+     * @return Charset, or {@code null} if none was specified or if it is unsupported
+     */
+    @Nullable public Charset getCharset() {
+        return this.charset;
+    }
+
+    /**
+     * Get the charset specified by the {@code charset} parameter
+     *
+     * @param defaultCharset Charset to return if none is specified, or if it is unsupported
+     * @return Charset
+     */
+    @NotNull public Charset getCharset(@NotNull final Charset defaultCharset) {
+        return this.charset == null ? defaultCharset : this.charset;
+    }
+
+    @Override public String toString() {
+        return this.value;
+    }
+
     @Override public int hashCode() {
-        return this.type.hashCode();
+        return this.value.hashCode();
     }
 
     @Override public boolean equals(@Nullable final Object o) {
@@ -75,7 +313,7 @@ public final class ContentType {
             return false;
         }
         final ContentType mimeType = (ContentType) o;
-        return Objects.equals(type, mimeType.type);
+        return Objects.equals(value, mimeType.value);
     }
 
 }
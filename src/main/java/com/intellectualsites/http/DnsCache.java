@@ -0,0 +1,214 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 IntellectualSites
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.intellectualsites.http;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Caches resolutions for as long as their time-to-live allows. Resolutions are refreshed
+ * in the background shortly before they expire, so that requests to busy hosts never wait
+ * for DNS. Concurrent lookups of an uncached host share a single resolution. Time-to-lives
+ * are capped at one day
+ */
+final class DnsCache {
+
+    private static final int MAX_ENTRIES = 1024;
+    private static final long MIN_TTL = 1000000000L;
+    private static final Duration MAX_TTL = Duration.ofDays(1);
+
+    private final DnsResolver resolver;
+    private final AddressSelection selection;
+    private final Executor executor;
+    private final LongSupplier clock;
+    private final ConcurrentMap<String, CompletableFuture<Entry>> entries = new ConcurrentHashMap<>();
+
+    DnsCache(@NotNull final DnsResolver resolver, @NotNull final AddressSelection selection,
+        @NotNull final Executor executor) {
+        this(resolver, selection, executor, System::nanoTime);
+    }
+
+    DnsCache(@NotNull final DnsResolver resolver, @NotNull final AddressSelection selection,
+        @NotNull final Executor executor, @NotNull final LongSupplier clock) {
+        this.resolver = resolver;
+        this.selection = selection;
+        this.executor = executor;
+        this.clock = clock;
+    }
+
+    /**
+     * Get the addresses of a host, ordered by the address selection. The list contains every
+     * address of the host, so that the remaining addresses can be tried if the first one fails
+     *
+     * @param host Host name or address literal
+     * @return Addresses
+     * @throws UnknownHostException If the host could not be resolved
+     */
+    @NotNull List<InetAddress> lookup(@NotNull final String host) throws UnknownHostException {
+        if (isLiteral(host)) {
+            final List<InetAddress> addresses = new ArrayList<>(1);
+            addresses.add(InetAddress.getByName(host));
+            return addresses;
+        }
+        while (true) {
+            final long now = this.clock.getAsLong();
+            final CompletableFuture<Entry> future = this.entries.get(host);
+            if (future != null && !future.isDone()) {
+                // Another thread is resolving the host
+                return this.await(future).select(this.selection);
+            }
+            final Entry entry = future == null || future.isCompletedExceptionally() ? null : future.join();
+            if (entry != null && now - entry.expiresAt < 0) {
+                if (now - entry.refreshAt >= 0 && entry.refreshing.compareAndSet(false, true)) {
+                    this.refresh(host, future);
+                }
+                return entry.select(this.selection);
+            }
+            final CompletableFuture<Entry> created = new CompletableFuture<>();
+            if (future == null ? this.entries.putIfAbsent(host, created) != null
+                : !this.entries.replace(host, future, created)) {
+                continue;
+            }
+            if (this.entries.size() > MAX_ENTRIES) {
+                this.evictExpired(now);
+            }
+            try {
+                created.complete(this.resolve(host));
+            } catch (final Throwable throwable) {
+                // Failures are not cached, so the next lookup tries again
+                this.entries.remove(host, created);
+                created.completeExceptionally(throwable);
+            }
+            return this.await(created).select(this.selection);
+        }
+    }
+
+    private void refresh(@NotNull final String host, @NotNull final CompletableFuture<Entry> current) {
+        try {
+            this.executor.execute(() -> {
+                try {
+                    this.entries.replace(host, current, CompletableFuture.completedFuture(this.resolve(host)));
+                } catch (final Throwable throwable) {
+                    // Keep using the current addresses until they expire
+                    current.join().refreshing.set(false);
+                }
+            });
+        } catch (final Throwable throwable) {
+            current.join().refreshing.set(false);
+        }
+    }
+
+    @NotNull private Entry resolve(@NotNull final String host) throws UnknownHostException {
+        final DnsResolver.Resolution resolution = this.resolver.resolve(host);
+        // Clamp before converting, as huge TTLs do not fit in a long of nanoseconds
+        final Duration clamped = resolution.getTtl().compareTo(MAX_TTL) > 0 ? MAX_TTL : resolution.getTtl();
+        final long ttl = Math.max(MIN_TTL, clamped.toNanos());
+        final long now = this.clock.getAsLong();
+        // Refresh once 80% of the time-to-live has passed
+        return new Entry(resolution.getAddresses(), now + ttl - ttl / 5, now + ttl);
+    }
+
+    @NotNull private Entry await(@NotNull final CompletableFuture<Entry> future) throws UnknownHostException {
+        try {
+            return future.join();
+        } catch (final CompletionException e) {
+            if (e.getCause() instanceof UnknownHostException) {
+                throw (UnknownHostException) e.getCause();
+            }
+            final UnknownHostException exception = new UnknownHostException(e.getCause() == null ? null
+                : e.getCause().getMessage());
+            exception.initCause(e.getCause());
+            throw exception;
+        }
+    }
+
+    int size() {
+        return this.entries.size();
+    }
+
+    private void evictExpired(final long now) {
+        for (final Map.Entry<String, CompletableFuture<Entry>> mapEntry : this.entries.entrySet()) {
+            final CompletableFuture<Entry> future = mapEntry.getValue();
+            if (future.isDone() && !future.isCompletedExceptionally() && now - future.join().expiresAt >= 0) {
+                this.entries.remove(mapEntry.getKey(), future);
+            }
+        }
+    }
+
+    private static boolean isLiteral(@NotNull final String host) {
+        if (host.indexOf(':') != -1) {
+            return true;
+        }
+        for (int i = 0; i < host.length(); i++) {
+            final char c = host.charAt(i);
+            if ((c < '0' || c > '9') && c != '.') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    private static final class Entry {
+
+        private final List<InetAddress> addresses;
+        private final long refreshAt;
+        private final long expiresAt;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+        private final AtomicInteger next = new AtomicInteger();
+
+        private Entry(@NotNull final List<InetAddress> addresses, final long refreshAt, final long expiresAt) {
+            this.addresses = addresses;
+            this.refreshAt = refreshAt;
+            this.expiresAt = expiresAt;
+        }
+
+        @NotNull private List<InetAddress> select(@NotNull final AddressSelection selection) {
+            final int size = this.addresses.size();
+            final int first = selection == AddressSelection.ROUND_ROBIN
+                ? Math.floorMod(this.next.getAndIncrement(), size) : 0;
+            final List<InetAddress> selected = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                selected.add(this.addresses.get((first + i) % size));
+            }
+            return selected;
+        }
+
+    }
+
+}
@@ -0,0 +1,124 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 IntellectualSites
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.intellectualsites.http;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Resolves host names to addresses. Resolutions are cached by the client
+ * for as long as their time-to-live allows
+ *
+ * @see HttpClient.Builder#withDnsResolver(DnsResolver, AddressSelection)
+ */
+@FunctionalInterface
+public interface DnsResolver {
+
+    /**
+     * Create a resolver that uses the resolver of the JVM. The JVM does not expose
+     * the time-to-live of DNS records, so a fixed time-to-live is used instead
+     *
+     * @param ttl Time-to-live of each resolution
+     * @return Resolver
+     */
+    @NotNull static DnsResolver system(@NotNull final Duration ttl) {
+        Objects.requireNonNull(ttl, "TTL may not be null");
+        return host -> Resolution.of(Arrays.asList(InetAddress.getAllByName(host)), ttl);
+    }
+
+    /**
+     * Resolve all addresses of a host. This is called by the client whenever
+     * a cached resolution is about to expire, so it may be called from any thread
+     *
+     * @param host Host name
+     * @return Resolution
+     * @throws UnknownHostException If the host could not be resolved
+     */
+    @NotNull Resolution resolve(@NotNull String host) throws UnknownHostException;
+
+
+    /**
+     * Addresses of a host, and how long they may be cached
+     */
+    final class Resolution {
+
+        private final List<InetAddress> addresses;
+        private final Duration ttl;
+
+        private Resolution(@NotNull final List<InetAddress> addresses, @NotNull final Duration ttl) {
+            this.addresses = addresses;
+            this.ttl = ttl;
+        }
+
+        /**
+         * Create a new resolution
+         *
+         * @param addresses Addresses of the host, in order of preference. May not be empty
+         * @param ttl       How long the addresses may be cached
+         * @return Resolution
+         */
+        @NotNull public static Resolution of(@NotNull final List<InetAddress> addresses, @NotNull final Duration ttl) {
+            Objects.requireNonNull(addresses, "Addresses may not be null");
+            Objects.requireNonNull(ttl, "TTL may not be null");
+            if (addresses.isEmpty()) {
+                throw new IllegalArgumentException("A resolution must contain at least one address");
+            }
+            if (ttl.isNegative()) {
+                throw new IllegalArgumentException("TTL may not be negative");
+            }
+            for (final InetAddress address : addresses) {
+                Objects.requireNonNull(address, "Addresses may not be null");
+            }
+            return new Resolution(Collections.unmodifiableList(new ArrayList<>(addresses)), ttl);
+        }
+
+        /**
+         * Get the addresses of the host
+         *
+         * @return Unmodifiable list of addresses
+         */
+        @NotNull public List<InetAddress> getAddresses() {
+            return this.addresses;
+        }
+
+        /**
+         * Get how long the addresses may be cached
+         *
+         * @return Time-to-live
+         */
+        @NotNull public Duration getTtl() {
+            return this.ttl;
+        }
+
+    }
+
+}
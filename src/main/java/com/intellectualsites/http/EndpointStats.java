@@ -0,0 +1,182 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 IntellectualSites
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.intellectualsites.http;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statistics of one of the base URLs of a client that
+ * {@link HttpClient.Builder#withBaseURLs(LoadBalancing, String...) balances} its requests
+ *
+ * @see HttpClient#getEndpointStats()
+ */
+public final class EndpointStats {
+
+    /**
+     * Weight of the latest sample in the average latency
+     */
+    private static final double LATENCY_WEIGHT = 0.2;
+    private static final int MAX_EJECTION_MULTIPLIER = 10;
+
+    private final String baseURL;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private volatile double latency;
+    private volatile long ejectedUntil;
+    private volatile boolean ejected;
+    private volatile int ejections;
+
+    EndpointStats(@NotNull final String baseURL) {
+        this.baseURL = baseURL;
+    }
+
+    void start() {
+        this.inFlight.incrementAndGet();
+    }
+
+    /**
+     * Record the outcome of a request
+     *
+     * @param nanos            Duration of the request
+     * @param failed           Whether the request failed
+     * @param failureThreshold Consecutive failures after which the endpoint is ejected
+     * @param ejectionTime     Base ejection time, in nanoseconds
+     */
+    void finish(final long nanos, final boolean failed, final int failureThreshold, final long ejectionTime) {
+        this.inFlight.decrementAndGet();
+        this.requests.increment();
+        synchronized (this) {
+            this.latency = this.latency == 0 ? nanos : this.latency + LATENCY_WEIGHT * (nanos - this.latency);
+        }
+        if (!failed) {
+            this.consecutiveFailures.set(0);
+            return;
+        }
+        this.failures.increment();
+        if (this.consecutiveFailures.incrementAndGet() >= failureThreshold) {
+            this.eject(ejectionTime);
+        }
+    }
+
+    /**
+     * Stop sending requests to the endpoint. Every ejection lasts longer than the previous one
+     *
+     * @param ejectionTime Base ejection time, in nanoseconds
+     */
+    synchronized void eject(final long ejectionTime) {
+        if (this.isEjected()) {
+            return;
+        }
+        this.consecutiveFailures.set(0);
+        this.ejections = Math.min(this.ejections + 1, MAX_EJECTION_MULTIPLIER);
+        this.ejectedUntil = System.nanoTime() + ejectionTime * this.ejections;
+        this.ejected = true;
+    }
+
+    /**
+     * Return the endpoint to service, after it passed a health check
+     */
+    synchronized void readmit() {
+        this.ejected = false;
+        this.ejections = 0;
+        this.consecutiveFailures.set(0);
+    }
+
+    /**
+     * Get the score used by {@link LoadBalancing#POWER_OF_TWO_CHOICES}. Lower is better
+     *
+     * @return Score
+     */
+    double score() {
+        return (this.latency + 1) * (this.inFlight.get() + 1);
+    }
+
+    /**
+     * Get the base URL of the endpoint
+     *
+     * @return Base URL
+     */
+    @NotNull public String getBaseURL() {
+        return this.baseURL;
+    }
+
+    /**
+     * Get the amount of requests that are currently in flight
+     *
+     * @return Requests in flight
+     */
+    public int getInFlight() {
+        return this.inFlight.get();
+    }
+
+    /**
+     * Get the amount of completed requests
+     *
+     * @return Completed requests
+     */
+    public long getRequests() {
+        return this.requests.sum();
+    }
+
+    /**
+     * Get the amount of requests that failed, or received a 5xx response
+     *
+     * @return Failed requests
+     */
+    public long getFailures() {
+        return this.failures.sum();
+    }
+
+    /**
+     * Get the exponentially weighted moving average of the request latency
+     *
+     * @return Average latency
+     */
+    @NotNull public Duration getLatency() {
+        return Duration.ofNanos((long) this.latency);
+    }
+
+    /**
+     * Check whether the endpoint is currently ejected, and does not receive requests
+     *
+     * @return {@code true} if the endpoint is ejected
+     */
+    public boolean isEjected() {
+        return this.ejected && System.nanoTime() - this.ejectedUntil < 0;
+    }
+
+    @Override public String toString() {
+        return "EndpointStats{baseURL='" + this.baseURL + "', inFlight=" + this.getInFlight() + ", requests="
+            + this.getRequests() + ", failures=" + this.getFailures() + ", latency="
+            + TimeUnit.NANOSECONDS.toMillis((long) this.latency) + "ms, ejected=" + this.isEjected() + '}';
+    }
+
+}
@@ -26,20 +26,31 @@ package com.intellectualsites.http;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 
 /**
- * Utility responsible for serializing and de-serializing HTTP entities
+ * Utility responsible for serializing and de-serializing HTTP entities. A type may have
+ * codecs for several media types, in which case the deserializer is chosen by the
+ * Content-Type of the response, and the serializer by the Content-Type of the request
  */
 public final class EntityMapper {
 
     private final Map<Class<?>, EntitySerializer<?>> serializers = new HashMap<>();
+    private final Map<Class<?>, Map<String, EntitySerializer<?>>> serializersByMediaType = new HashMap<>();
     private final Map<Class<?>, EntityDeserializer<?>> deserializers = new HashMap<>();
+    private final Map<Class<?>, Map<String, EntityDeserializer<?>>> deserializersByMediaType = new LinkedHashMap<>();
+    // Accept header for all types, which is empty if no media type specific deserializers are registered
+    @Nullable private volatile String accept;
 
     @SuppressWarnings("ALL") private static <T> T castUnsafe(@NotNull final Object o) {
         return (T) o;
@@ -58,7 +69,9 @@ public final class EntityMapper {
     }
 
     /**
-     * Register a serializer that maps a given type to an array of bytes
+     * Register a serializer that maps a given type to an array of bytes. The most recently
+     * registered serializer of a type is used by default. Requests that specify a Content-Type
+     * header use the serializer for that media type instead, if there is one
      *
      * @param clazz      Class of type to map
      * @param serializer Serializer that performs the mapping
@@ -70,6 +83,11 @@ public final class EntityMapper {
         Objects.requireNonNull(clazz, "Class may not be null");
         Objects.requireNonNull(serializer, "Serializer may not be null");
         this.serializers.put(clazz, serializer);
+        final ContentType contentType = serializer.getContentType();
+        if (contentType != null) {
+            this.serializersByMediaType.computeIfAbsent(clazz, key -> new HashMap<>())
+                .put(contentType.getMimeType(), serializer);
+        }
         return this;
     }
 
@@ -86,6 +104,30 @@ public final class EntityMapper {
         Objects.requireNonNull(clazz, "Type may not be null");
         Objects.requireNonNull(deserializer, "Deserializer may not be null");
         this.deserializers.put(clazz, deserializer);
+        this.accept = null;
+        return this;
+    }
+
+    /**
+     * Register a deserializer for responses of a specific media type. It takes precedence over
+     * a deserializer registered for all media types, and the media type is listed in the Accept
+     * header of requests. Compact binary media types are preferred over textual ones, so that a
+     * server that supports both responds with the binary format
+     *
+     * @param clazz        Type of the objects produced by the deserializer
+     * @param contentType  Media type. Parameters, such as the charset, are ignored
+     * @param deserializer Deserializer
+     * @param <T>          Type of the objects produces by the deserializer
+     * @return Mapper instance
+     */
+    @NotNull public <T> EntityMapper registerDeserializer(@NotNull final Class<T> clazz,
+        @NotNull final ContentType contentType, @NotNull final EntityDeserializer<T> deserializer) {
+        Objects.requireNonNull(clazz, "Type may not be null");
+        Objects.requireNonNull(contentType, "Content type may not be null");
+        Objects.requireNonNull(deserializer, "Deserializer may not be null");
+        this.deserializersByMediaType.computeIfAbsent(clazz, key -> new LinkedHashMap<>())
+            .put(contentType.getMimeType(), deserializer);
+        this.accept = null;
         return this;
     }
 
@@ -97,7 +139,29 @@ public final class EntityMapper {
      * @return Serializer
      */
     public <T> Optional<EntitySerializer<T>> getSerializer(@NotNull final Class<T> clazz) {
-        final EntitySerializer<?> serializer = this.serializers.get(clazz);
+        return this.getSerializer(clazz, null);
+    }
+
+    /**
+     * Attempt to retrieve the serializer for a given type and media type
+     *
+     * @param clazz       Class
+     * @param contentType Media type, or {@code null} to use the default serializer of the type
+     * @param <T>         Type
+     * @return Serializer for the media type if there is one, otherwise the default serializer
+     */
+    public <T> Optional<EntitySerializer<T>> getSerializer(@NotNull final Class<T> clazz,
+        @Nullable final ContentType contentType) {
+        EntitySerializer<?> serializer = null;
+        if (contentType != null) {
+            final Map<String, EntitySerializer<?>> negotiated = this.serializersByMediaType.get(clazz);
+            if (negotiated != null) {
+                serializer = negotiated.get(contentType.getMimeType());
+            }
+        }
+        if (serializer == null) {
+            serializer = this.serializers.get(clazz);
+        }
         if (serializer == null) {
             return Optional.empty();
         }
@@ -112,11 +176,97 @@ public final class EntityMapper {
      * @return Deserializer
      */
     public <T> Optional<EntityDeserializer<T>> getDeserializer(@NotNull final Class<T> type) {
-        final EntityDeserializer<?> entityDeserializer = this.deserializers.get(type);
+        return this.getDeserializer(type, null);
+    }
+
+    /**
+     * Attempt to retrieve the deserializer for a given type and media type. A deserializer registered
+     * for the exact media type is preferred, followed by one registered for the structured syntax
+     * suffix (such as {@code application/json} for {@code application/problem+json}), and finally
+     * one registered for all media types
+     *
+     * @param type        Content class
+     * @param contentType Media type of the response, or {@code null} if it is unknown
+     * @param <T>         Content type
+     * @return Deserializer
+     */
+    public <T> Optional<EntityDeserializer<T>> getDeserializer(@NotNull final Class<T> type,
+        @Nullable final ContentType contentType) {
+        final Map<String, EntityDeserializer<?>> negotiated = this.deserializersByMediaType.get(type);
+        EntityDeserializer<?> entityDeserializer = null;
+        if (negotiated != null && contentType != null) {
+            entityDeserializer = negotiated.get(contentType.getMimeType());
+            final int suffix = contentType.getSubtype().lastIndexOf('+');
+            if (entityDeserializer == null && suffix != -1) {
+                entityDeserializer = negotiated.get(contentType.getType() + '/' +
+                    contentType.getSubtype().substring(suffix + 1));
+            }
+        }
+        if (entityDeserializer == null) {
+            entityDeserializer = this.deserializers.get(type);
+        }
+        if (entityDeserializer == null && negotiated != null && contentType == null) {
+            // Without a media type, the first registered format is the best guess
+            entityDeserializer = negotiated.values().iterator().next();
+        }
         if (entityDeserializer == null) {
             return Optional.empty();
         }
-        return Optional.of((EntityDeserializer<T>) entityDeserializer);
+        return Optional.of(castUnsafe(entityDeserializer));
+    }
+
+    /**
+     * Get the value of the Accept header, listing the media types that can be deserialized
+     *
+     * @param type Type that the response will be deserialized into, or {@code null} to list the
+     *             media types of all types
+     * @return Header value, or {@code null} if no media type specific deserializers are registered
+     */
+    @Nullable public String getAcceptHeader(@Nullable final Class<?> type) {
+        if (type != null) {
+            final Map<String, EntityDeserializer<?>> negotiated = this.deserializersByMediaType.get(type);
+            if (negotiated == null) {
+                return null;
+            }
+            return acceptHeader(negotiated.keySet(), this.deserializers.containsKey(type));
+        }
+        String accept = this.accept;
+        if (accept == null) {
+            final Set<String> mediaTypes = new LinkedHashSet<>();
+            for (final Map<String, EntityDeserializer<?>> negotiated : this.deserializersByMediaType.values()) {
+                mediaTypes.addAll(negotiated.keySet());
+            }
+            accept = mediaTypes.isEmpty() ? "" : acceptHeader(mediaTypes, !this.deserializers.isEmpty());
+            this.accept = accept;
+        }
+        return accept.isEmpty() ? null : accept;
+    }
+
+    @NotNull private static String acceptHeader(@NotNull final Collection<String> mediaTypes, final boolean wildcard) {
+        final StringBuilder compact = new StringBuilder();
+        final StringBuilder textual = new StringBuilder();
+        for (final String mediaType : mediaTypes) {
+            if (isTextual(mediaType)) {
+                textual.append(textual.length() == 0 ? "" : ", ").append(mediaType).append(";q=0.9");
+            } else {
+                compact.append(compact.length() == 0 ? "" : ", ").append(mediaType);
+            }
+        }
+        if (compact.length() > 0 && textual.length() > 0) {
+            compact.append(", ");
+        }
+        compact.append(textual);
+        if (wildcard) {
+            // Deserializers registered for all media types accept anything
+            compact.append(", */*;q=0.1");
+        }
+        return compact.toString();
+    }
+
+    private static boolean isTextual(@NotNull final String mediaType) {
+        return mediaType.startsWith("text/") || mediaType.endsWith("/json") || mediaType.endsWith("+json")
+            || mediaType.endsWith("/xml") || mediaType.endsWith("+xml") || mediaType.endsWith("/x-ndjson")
+            || mediaType.endsWith("/x-www-form-urlencoded");
     }
 
 
@@ -164,6 +314,23 @@ public final class EntityMapper {
         @NotNull T deserialize(@Nullable final ContentType contentType,
             @NotNull final byte[] input);
 
+        /**
+         * Deserialize the input buffer into an object. This is used for bodies that were read into
+         * {@link HttpClient.Builder#withPooledResponseBuffers(boolean, boolean) pooled buffers}. By
+         * default, the buffer is copied into an array. Implementations may override this to read the
+         * buffer directly. The buffer may not be retained, as it is reused once the response is closed
+         *
+         * @param contentType Optional content type, if supplied by the server
+         * @param input       Input that should be de-serialized
+         * @return De-serialized input
+         */
+        @NotNull default T deserialize(@Nullable final ContentType contentType,
+            @NotNull final ByteBuffer input) {
+            final byte[] bytes = new byte[input.remaining()];
+            input.duplicate().get(bytes);
+            return this.deserialize(contentType, bytes);
+        }
+
     }
 
 
@@ -171,18 +338,18 @@ public final class EntityMapper {
 
         @NotNull @Override public String deserialize(@Nullable final ContentType contentType,
             @NotNull final byte[] input) {
-            final Charset charset;
-            if (contentType != null && contentType.toString().toLowerCase().contains("utf-8")) {
-                charset = StandardCharsets.UTF_8;
-            } else if (contentType != null && contentType.toString().toLowerCase()
-                .contains("utf-16")) {
-                charset = StandardCharsets.UTF_16;
-            } else {
-                charset = StandardCharsets.US_ASCII;
-            }
+            final Charset charset = contentType == null ? StandardCharsets.US_ASCII :
+                contentType.getCharset(StandardCharsets.US_ASCII);
             return new String(input, charset);
         }
 
+        @NotNull @Override public String deserialize(@Nullable final ContentType contentType,
+            @NotNull final ByteBuffer input) {
+            final Charset charset = contentType == null ? StandardCharsets.US_ASCII :
+                contentType.getCharset(StandardCharsets.US_ASCII);
+            return charset.decode(input.duplicate()).toString();
+        }
+
     }
 
 
@@ -0,0 +1,134 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 IntellectualSites
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.intellectualsites.http;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes successful response bodies to a file. The body is written to a temporary
+ * file in the same directory, which replaces the target once the body is complete
+ */
+final class FileBodyHandler implements BodyHandler {
+
+    private static final long TRANSFER_SIZE = 8 * 1024 * 1024;
+
+    private final Path target;
+
+    FileBodyHandler(@NotNull final Path target) {
+        this.target = target.toAbsolutePath();
+    }
+
+    @Override public boolean accepts(final int status) {
+        return status >= 200 && status < 300;
+    }
+
+    @Override public void transfer(@NotNull final InputStream stream, final long contentLength) throws IOException {
+        final Path temporary = this.createTemporaryFile();
+        try (final FileChannel file = FileChannel.open(temporary, StandardOpenOption.WRITE);
+             final ReadableByteChannel source = Channels.newChannel(stream)) {
+            long position = 0;
+            long transferred;
+            while ((transferred = file.transferFrom(source, position, TRANSFER_SIZE)) > 0) {
+                position += transferred;
+            }
+            this.complete(file, temporary, position, contentLength);
+        } catch (final IOException | RuntimeException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+    }
+
+    @NotNull @Override public ResponseParser.BodyConsumer consumer(final long contentLength) throws IOException {
+        final Path temporary = this.createTemporaryFile();
+        final FileChannel file;
+        try {
+            file = FileChannel.open(temporary, StandardOpenOption.WRITE);
+        } catch (final IOException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        return new ResponseParser.BodyConsumer() {
+
+            private long position;
+
+            @Override public void onBody(@NotNull final ByteBuffer data) throws IOException {
+                while (data.hasRemaining()) {
+                    this.position += file.write(data);
+                }
+            }
+
+            @Override public void onComplete() throws IOException {
+                try {
+                    complete(file, temporary, this.position, contentLength);
+                } catch (final IOException | RuntimeException e) {
+                    this.abort();
+                    throw e;
+                }
+            }
+
+            @Override public void abort() {
+                try {
+                    file.close();
+                    Files.deleteIfExists(temporary);
+                } catch (final IOException ignored) {
+                }
+            }
+
+        };
+    }
+
+    @NotNull private Path createTemporaryFile() throws IOException {
+        final Path directory = this.target.getParent();
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+        return Files.createTempFile(directory, this.target.getFileName().toString() + '.', ".part");
+    }
+
+    private void complete(@NotNull final FileChannel file, @NotNull final Path temporary, final long length,
+        final long contentLength) throws IOException {
+        if (contentLength >= 0 && length != contentLength) {
+            throw new IOException(String.format("Expected %d bytes, but received %d", contentLength, length));
+        }
+        file.close();
+        try {
+            Files.move(temporary, this.target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (final AtomicMoveNotSupportedException e) {
+            Files.move(temporary, this.target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+}
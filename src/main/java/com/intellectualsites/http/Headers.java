@@ -26,24 +26,48 @@ package com.intellectualsites.http;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiConsumer;
 
 /**
- * Container for HTTP headers
+ * Container for HTTP headers. Response headers are read from the native header
+ * structure of the transport, and are only copied into the container once they
+ * are first accessed
  */
 final class Headers {
 
+    /**
+     * Headers that are commonly read from responses. Their values are cached, and
+     * can be looked up without copying all headers into the container
+     */
+    private static final Set<String> WELL_KNOWN = new HashSet<>(Arrays.asList("content-type",
+        "content-length", "content-encoding", "etag", "last-modified", "location", "accept-ranges",
+        "retry-after", "cache-control"));
+    private static final String ABSENT = new String();
+
     private final Map<String, List<String>> headers = new HashMap<>();
+    private final ConcurrentMap<String, String> wellKnown = new ConcurrentHashMap<>();
+    @Nullable private volatile Source source;
 
     private Headers() {
     }
 
+    private Headers(@NotNull final Source source) {
+        this.source = source;
+    }
+
     /**
      * Return an empty {@link Headers} instance
      *
@@ -53,23 +77,86 @@ final class Headers {
         return new Headers();
     }
 
+    /**
+     * Return a {@link Headers} instance that reads its headers from the source
+     * once they are first accessed
+     *
+     * @param source Header source
+     * @return Headers instance
+     */
+    static Headers lazy(@NotNull final Source source) {
+        return new Headers(Objects.requireNonNull(source, "Source may not be null"));
+    }
+
+    /**
+     * Copy the headers of the source into the container, if that has not happened yet
+     */
+    private void materialize() {
+        if (this.source == null) {
+            return;
+        }
+        synchronized (this) {
+            final Source source = this.source;
+            if (source != null) {
+                source.forEach(this::put);
+                this.source = null;
+            }
+        }
+    }
+
+    private void put(@NotNull final String key, @NotNull final String value) {
+        this.headers.computeIfAbsent(key.toLowerCase(Locale.ROOT), k -> new LinkedList<>()).add(value);
+    }
+
+    /**
+     * Create a copy of this instance. Modifications made to
+     * the copy will not affect this instance
+     *
+     * @return Headers instance
+     */
+    @NotNull Headers copy() {
+        this.materialize();
+        final Headers copy = new Headers();
+        for (final Map.Entry<String, List<String>> entry : this.headers.entrySet()) {
+            copy.headers.put(entry.getKey(), new LinkedList<>(entry.getValue()));
+        }
+        return copy;
+    }
+
     /**
      * Add a header to the header collection
      *
      * @param key   Header name
      * @param value Header value
      */
-    void addHeader(@NotNull String key, @NotNull final String value) {
+    void addHeader(@NotNull final String key, @NotNull final String value) {
         Objects.requireNonNull(key, "Key may not be null");
         Objects.requireNonNull(value, "Value may not be null");
-        key = key.toLowerCase();
-        if (this.headers.containsKey(key)) {
-            this.headers.get(key).add(value);
-        } else {
-            final List<String> headers = new LinkedList<>();
-            headers.add(value);
-            this.headers.put(key, headers);
-        }
+        this.materialize();
+        this.put(key, value);
+        this.wellKnown.remove(key.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Remove all values of a header
+     *
+     * @param key Header name
+     */
+    void removeHeader(@NotNull final String key) {
+        Objects.requireNonNull(key, "Key may not be null");
+        this.materialize();
+        final String normalized = key.toLowerCase(Locale.ROOT);
+        this.headers.remove(normalized);
+        this.wellKnown.remove(normalized);
+    }
+
+    /**
+     * Remove all headers from the collection
+     */
+    void clear() {
+        this.source = null;
+        this.headers.clear();
+        this.wellKnown.clear();
     }
 
     /**
@@ -80,7 +167,8 @@ final class Headers {
      */
     @NotNull List<String> getHeaders(@NotNull final String key) {
         Objects.requireNonNull(key, "Key may not be null");
-        final List<String> headers = this.headers.get(key.toLowerCase());
+        this.materialize();
+        final List<String> headers = this.headers.get(key.toLowerCase(Locale.ROOT));
         if (headers == null) {
             return Collections.emptyList();
         }
@@ -109,20 +197,65 @@ final class Headers {
      * @return Header value, or the default value
      */
     @Nullable String getOrDefault(@NotNull final String key, @Nullable final String defaultString) {
-        final List<String> headers = this.getHeaders(key);
+        Objects.requireNonNull(key, "Key may not be null");
+        final String normalized = key.toLowerCase(Locale.ROOT);
+        if (WELL_KNOWN.contains(normalized)) {
+            final String value = this.wellKnown.computeIfAbsent(normalized, this::findLast);
+            return value == ABSENT ? defaultString : value;
+        }
+        final List<String> headers = this.getHeaders(normalized);
         if (headers.isEmpty()) {
             return defaultString;
         }
         return headers.get(headers.size() - 1);
     }
 
+    /**
+     * Find the last value of a header, without copying the source into the container
+     *
+     * @param key Lower case header key
+     * @return Header value, or {@link #ABSENT}
+     */
+    @NotNull private String findLast(@NotNull final String key) {
+        final Source source = this.source;
+        if (source == null) {
+            final List<String> headers = this.getHeaders(key);
+            return headers.isEmpty() ? ABSENT : headers.get(headers.size() - 1);
+        }
+        final String[] last = {ABSENT};
+        source.forEach((name, value) -> {
+            if (name.equalsIgnoreCase(key)) {
+                last[0] = value;
+            }
+        });
+        return last[0];
+    }
+
     /**
      * Get the name of all headers in the collection
      *
      * @return Unmodifiable collection
      */
     @NotNull Collection<String> getHeaders() {
+        this.materialize();
         return Collections.unmodifiableSet(this.headers.keySet());
     }
 
+
+    /**
+     * Native header structure of a transport
+     */
+    @FunctionalInterface
+    interface Source {
+
+        /**
+         * Pass every header to the action, in the order in which they were received.
+         * This may be called more than once
+         *
+         * @param action Action that receives the header name and value
+         */
+        void forEach(@NotNull BiConsumer<String, String> action);
+
+    }
+
 }
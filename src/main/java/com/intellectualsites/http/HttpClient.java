@@ -26,24 +26,208 @@ package com.intellectualsites.http;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
 /**
  * A simple Java HTTP client
  */
-public final class HttpClient {
+public final class HttpClient implements AutoCloseable {
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
 
     private final EntityMapper mapper = new EntityMapper();
     private final ClientSettings settings;
+    private final Executor executor;
+    @Nullable private final ExecutorService ownedExecutor;
+    @Nullable private final NioTransport transport;
+    private final TlsConfiguration tlsConfiguration;
+    private final BufferPoolMetrics bufferPoolMetrics = new BufferPoolMetrics();
+    @Nullable private final ResponseBufferPool responsePool;
+    private final CompletableFuture<Void> warm = new CompletableFuture<>();
+    private final Consumer<WrappedRequestBuilder>[] decorators;
+    private final Interceptor[] interceptors;
+    @Nullable private final LoadBalancer balancer;
+    @Nullable private final RequestScheduler scheduler;
+    @Nullable private final Tracing tracing;
+    @Nullable private final SlowRequestLog slowRequestLog;
+    private final RequestListener.Factory[] listeners;
 
+    @SuppressWarnings({"unchecked", "rawtypes"})
     private HttpClient(@NotNull final ClientSettings settings) {
         this.settings = Objects.requireNonNull(settings);
+        // Compiled once, so that requests do not have to copy or iterate the settings collections
+        this.decorators = settings.getRequestDecorators().toArray(new Consumer[0]);
+        final List<Interceptor> interceptors = new ArrayList<>();
+        if (settings.getBaseURLs().isEmpty()) {
+            this.balancer = null;
+        } else {
+            this.balancer = new LoadBalancer(settings.getBaseURLs(), settings.getLoadBalancing(),
+                settings.getEjectionThreshold(), settings.getEjectionTime());
+            interceptors.add(this.balancer);
+        }
+        interceptors.addAll(settings.getInterceptors());
+        if (settings.getMaxConcurrentPerHost() > 0) {
+            this.scheduler = new RequestScheduler(settings.getMaxConcurrentPerHost(),
+                Objects.requireNonNull(settings.getPriorityAging()));
+        } else {
+            this.scheduler = null;
+        }
+        this.interceptors = interceptors.toArray(new Interceptor[0]);
+        final List<RequestListener.Factory> listeners = new ArrayList<>();
+        this.tracing = settings.getTracing();
+        if (this.tracing != null) {
+            listeners.add(this.tracing);
+        }
+        this.slowRequestLog = settings.getSlowRequestLog();
+        if (this.slowRequestLog != null) {
+            listeners.add(this.slowRequestLog);
+        }
+        final RequestListener.Factory flightRecorder = FlightRecorderEvents.factory();
+        if (flightRecorder != null) {
+            listeners.add(flightRecorder);
+        }
+        this.listeners = listeners.toArray(new RequestListener.Factory[0]);
+        try {
+            this.tlsConfiguration = TlsConfiguration.create(settings);
+        } catch (final GeneralSecurityException e) {
+            throw new RuntimeException(e);
+        }
+        if (settings.isPooledResponseBuffers()) {
+            this.responsePool = new ResponseBufferPool(this.bufferPoolMetrics, settings.isDirectResponseBuffers(),
+                settings.isLeakDetection());
+        } else {
+            this.responsePool = null;
+        }
+        if (settings.getExecutor() != null) {
+            this.executor = settings.getExecutor();
+            this.ownedExecutor = null;
+        } else {
+            final AtomicInteger threadId = new AtomicInteger();
+            this.ownedExecutor = Executors.newCachedThreadPool(runnable -> {
+                final Thread thread = new Thread(runnable, "HTTP4J-Worker-" + threadId.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.executor = this.ownedExecutor;
+        }
+        if (settings.getSelectorThreads() > 0) {
+            try {
+                final DnsCache dnsCache = settings.getDnsResolver() == null ? null
+                    : new DnsCache(settings.getDnsResolver(), settings.getAddressSelection(), this.executor);
+                this.transport = new NioTransport(settings.getSelectorThreads(), dnsCache);
+            } catch (final IOException e) {
+                throw new RuntimeException(e);
+            }
+        } else {
+            this.transport = null;
+        }
+    }
+
+    /**
+     * Start probing the health of the endpoints, if configured
+     */
+    private void startHealthChecks() {
+        final String path = this.settings.getHealthCheckPath();
+        if (this.balancer == null || path == null) {
+            return;
+        }
+        this.balancer.startHealthChecks(Objects.requireNonNull(this.settings.getHealthCheckInterval()), baseURL -> {
+            try {
+                final HttpResponse response = HttpRequest.newBuilder().withMethod(HttpMethod.GET)
+                    .withURL(new URL(baseURL + path)).withMapper(this.mapper).withTlsConfiguration(this.tlsConfiguration)
+                    .onException(throwable -> {
+                    }).build().executeRequest();
+                return response != null && response.getStatusCode() < 400;
+            } catch (final IOException e) {
+                return false;
+            }
+        });
+    }
+
+    /**
+     * Open the connections that should be prewarmed, and run the warm-up. This happens once the
+     * client has been constructed, as the warm-up receives the client
+     */
+    @SuppressWarnings("rawtypes")
+    private void prewarm() {
+        final List<CompletableFuture<Void>> connections = new ArrayList<>();
+        if (this.settings.getPrewarmConnections() > 0) {
+            final List<String> urls = new ArrayList<>(this.settings.getPrewarmURLs());
+            if (urls.isEmpty()) {
+                urls.addAll(this.settings.getBaseURLs());
+            }
+            if (urls.isEmpty()) {
+                if (this.settings.getBaseURL().isEmpty()) {
+                    throw new IllegalStateException("Connections can only be prewarmed if there is a base URL");
+                }
+                urls.add(this.settings.getBaseURL());
+            }
+            for (final String spec : urls) {
+                final URL url;
+                try {
+                    url = new URL(spec);
+                } catch (final MalformedURLException e) {
+                    throw new RuntimeException(e);
+                }
+                if (this.transport != null && this.transport.supports(url)) {
+                    connections.add(this.transport.prewarm(url, this.settings.getPrewarmConnections()));
+                    continue;
+                }
+                // HttpURLConnection only keeps connections alive once a response has been
+                // read, so a HEAD request is performed on each connection
+                for (int i = 0; i < this.settings.getPrewarmConnections(); i++) {
+                    connections.add(CompletableFuture.runAsync(() -> {
+                        try {
+                            HttpRequest.newBuilder().withMethod(HttpMethod.HEAD).withURL(url).withMapper(this.mapper)
+                                .withTlsConfiguration(this.tlsConfiguration).onException(throwable -> {
+                                }).build().executeRequest();
+                        } catch (final IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                    }, this.executor));
+                }
+            }
+        }
+        final Consumer<HttpClient> warmUp = this.settings.getWarmUp();
+        // Failures are ignored, as the connections are simply opened again once they are needed
+        CompletableFuture.allOf(connections.toArray(new CompletableFuture[0]))
+            .handle((ignored, throwable) -> null)
+            .thenRunAsync(() -> {
+                if (warmUp != null) {
+                    warmUp.accept(this);
+                }
+            }, this.executor)
+            .whenComplete((ignored, throwable) -> this.warm.complete(null));
     }
 
     /**
@@ -121,6 +305,138 @@ public final class HttpClient {
         return new WrappedRequestBuilder(HttpMethod.PATCH, url);
     }
 
+    /**
+     * Prepare a reusable request template. The URL is parsed and the client
+     * {@link Builder#withDecorator(Consumer) decorators} are applied once, when the template
+     * is prepared, rather than every time a request is made. The path and query may contain
+     * variables, such as {@code /users/{id}?page={page}}, which are expanded and percent-encoded
+     * when a request is created using {@link RequestTemplate#newRequest(Object...)}
+     *
+     * @param method      HTTP method
+     * @param urlTemplate URL template, relative to the base URL
+     * @return Created template
+     * @throws IllegalArgumentException If the template is malformed
+     */
+    @NotNull public RequestTemplate prepare(@NotNull final HttpMethod method, @NotNull final String urlTemplate) {
+        Objects.requireNonNull(method, "Method may not be null");
+        Objects.requireNonNull(urlTemplate, "URL template may not be null");
+        return new RequestTemplate(method, urlTemplate);
+    }
+
+    /**
+     * Execute a batch of requests concurrently, and wait for all of them to complete.
+     * Execution stops as soon as any request fails
+     *
+     * @param requests    Requests to execute
+     * @param parallelism Maximum amount of requests in flight at the same time
+     * @return The responses, in the same order as the requests
+     * @throws BatchException If any request failed
+     * @see #executeAll(Collection, int, BatchMode)
+     */
+    @NotNull public List<HttpResponse> executeAll(@NotNull final Collection<WrappedRequestBuilder> requests,
+        final int parallelism) {
+        return this.executeAll(requests, parallelism, BatchMode.FAIL_FAST);
+    }
+
+    /**
+     * Execute a batch of requests concurrently, and wait for all of them to complete.
+     * The requests are performed using the client {@link Builder#withExecutor(Executor) executor}.
+     * Requests that have an {@link WrappedRequestBuilder#onException(Consumer) exception handler}
+     * handle their own failures, and will have a {@code null} response
+     *
+     * @param requests    Requests to execute
+     * @param parallelism Maximum amount of requests in flight at the same time
+     * @param mode        How failures are handled
+     * @return The responses, in the same order as the requests
+     * @throws BatchException If any request failed
+     */
+    @NotNull public List<HttpResponse> executeAll(@NotNull final Collection<WrappedRequestBuilder> requests,
+        final int parallelism, @NotNull final BatchMode mode) {
+        final HttpResponse[] responses = new HttpResponse[requests.size()];
+        this.executeAll(requests, parallelism, mode, (index, response) -> responses[index] = response);
+        return Arrays.asList(responses);
+    }
+
+    /**
+     * Execute a batch of requests concurrently, and pass each response to a consumer as soon as
+     * it arrives. The consumer is invoked by the calling thread, one response at a time, and receives
+     * the index of the request in the collection along with its response. This method returns once all
+     * requests have completed
+     *
+     * @param requests         Requests to execute
+     * @param parallelism      Maximum amount of requests in flight at the same time
+     * @param mode             How failures are handled
+     * @param responseConsumer Consumer that receives the request index and its response
+     * @throws BatchException If any request failed, if the consumer threw an exception, or if the calling
+     *                        thread was interrupted. An interrupt cancels the requests in flight, and
+     *                        becomes the {@link BatchException#getCause() cause} of the exception
+     */
+    public void executeAll(@NotNull final Collection<WrappedRequestBuilder> requests, final int parallelism,
+        @NotNull final BatchMode mode, @NotNull final BiConsumer<Integer, HttpResponse> responseConsumer) {
+        Objects.requireNonNull(requests, "Requests may not be null");
+        Objects.requireNonNull(mode, "Mode may not be null");
+        Objects.requireNonNull(responseConsumer, "Consumer may not be null");
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive");
+        }
+        final List<WrappedRequestBuilder> pending = new ArrayList<>(requests);
+        final HttpResponse[] responses = new HttpResponse[pending.size()];
+        final Map<Integer, Throwable> failures = new TreeMap<>();
+        final BlockingQueue<BatchCompletion> completions = new LinkedBlockingQueue<>();
+        final boolean[] completed = new boolean[pending.size()];
+        int submitted = 0;
+        int inFlight = 0;
+        try {
+            while (inFlight > 0 || (submitted < pending.size() && (failures.isEmpty() || mode != BatchMode.FAIL_FAST))) {
+                while (inFlight < parallelism && submitted < pending.size()
+                    && (failures.isEmpty() || mode != BatchMode.FAIL_FAST)) {
+                    final int index = submitted++;
+                    final WrappedRequestBuilder request = pending.get(index);
+                    try {
+                        this.executor.execute(() -> {
+                            try {
+                                completions.add(new BatchCompletion(index, request.execute(), null));
+                            } catch (final Throwable throwable) {
+                                completions.add(new BatchCompletion(index, null, throwable));
+                            }
+                        });
+                        inFlight++;
+                    } catch (final RejectedExecutionException e) {
+                        completed[index] = true;
+                        failures.put(index, e);
+                    }
+                }
+                if (inFlight == 0) {
+                    continue;
+                }
+                final BatchCompletion completion = completions.take();
+                completed[completion.index] = true;
+                inFlight--;
+                if (completion.throwable != null) {
+                    failures.put(completion.index, completion.throwable);
+                    continue;
+                }
+                responses[completion.index] = completion.response;
+                try {
+                    responseConsumer.accept(completion.index, completion.response);
+                } catch (final RuntimeException e) {
+                    failures.put(completion.index, e);
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            for (int i = 0; i < submitted; i++) {
+                if (!completed[i]) {
+                    pending.get(i).cancel();
+                }
+            }
+            throw new BatchException(Arrays.asList(responses), failures, e);
+        }
+        if (!failures.isEmpty()) {
+            throw new BatchException(Arrays.asList(responses), failures);
+        }
+    }
+
     /**
      * Get the entity mapper used by the client
      *
@@ -130,6 +446,123 @@ public final class HttpClient {
         return this.mapper;
     }
 
+    /**
+     * Get the TLS handshake metrics of the client. A high rate of full handshakes indicates
+     * that the {@link Builder#withTlsSessionCache(int, Duration) session cache} is too small,
+     * or that sessions expire too early
+     *
+     * @return Handshake metrics
+     */
+    @NotNull public TlsMetrics getTlsMetrics() {
+        return this.tlsConfiguration.getMetrics();
+    }
+
+    /**
+     * Get the metrics of the {@link Builder#withPooledResponseBuffers(boolean, boolean) response buffer pool}.
+     * The metrics remain empty if the client does not pool its response buffers
+     *
+     * @return Buffer pool metrics
+     */
+    @NotNull public BufferPoolMetrics getBufferPoolMetrics() {
+        return this.bufferPoolMetrics;
+    }
+
+    /**
+     * Get the statistics of the base URLs that requests are
+     * {@link Builder#withBaseURLs(LoadBalancing, String...) balanced} across
+     *
+     * @return Unmodifiable list of endpoint statistics, which is empty if requests are not balanced
+     */
+    @NotNull public List<EndpointStats> getEndpointStats() {
+        return this.balancer == null ? Collections.emptyList() : this.balancer.getEndpoints();
+    }
+
+    /**
+     * Get the queue statistics of each request priority, if the client uses
+     * {@link Builder#withPriorityScheduling(int, Duration) priority scheduling}
+     *
+     * @return Unmodifiable map of queue statistics, which is empty if requests are not scheduled
+     */
+    @NotNull public Map<RequestPriority, QueueStats> getQueueStats() {
+        return this.scheduler == null ? Collections.emptyMap() : this.scheduler.getStats();
+    }
+
+    /**
+     * Get a snapshot of the {@link Builder#withSlowRequestLog(int, Duration) slow request log}
+     *
+     * @return Slow requests, oldest first, which is empty if slow requests are not recorded
+     */
+    @NotNull public List<SlowRequest> getSlowRequests() {
+        return this.slowRequestLog == null ? Collections.emptyList() : this.slowRequestLog.snapshot();
+    }
+
+    /**
+     * Get a future that completes once the connections opened by
+     * {@link Builder#prewarm(int, String...)} have been established, and the
+     * {@link Builder#withWarmUp(Consumer) warm-up} has run. The future never
+     * completes exceptionally, as failures only mean that requests have to open
+     * their own connections
+     *
+     * @return Future
+     */
+    @NotNull public CompletableFuture<Void> whenWarm() {
+        return this.warm;
+    }
+
+    /**
+     * Close the client. This stops the threads created by the client, and closes
+     * all connections held by the non-blocking transport. Requests that are in flight
+     * on the non-blocking transport complete exceptionally
+     */
+    @Override public void close() {
+        if (this.balancer != null) {
+            this.balancer.close();
+        }
+        if (this.transport != null) {
+            this.transport.close();
+        }
+        if (this.ownedExecutor != null) {
+            this.ownedExecutor.shutdown();
+        }
+    }
+
+    @NotNull private String resolveURL(@NotNull String url) {
+        if (url.startsWith("/")) {
+            if (url.length() == 1) {
+                url = "";
+            } else {
+                url = url.substring(1);
+            }
+        }
+        return this.settings.getBaseURL() + '/' + url;
+    }
+
+    @NotNull private static URL toURL(@NotNull final String url) {
+        try {
+            return new URL(url);
+        } catch (final MalformedURLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Percent-encode a value, so that it may be used as a single path segment or query component.
+     * All characters except for the unreserved characters of RFC 3986 are encoded
+     *
+     * @param builder Builder to append the encoded value to
+     * @param value   Value to encode
+     */
+    private static void percentEncode(@NotNull final StringBuilder builder, @NotNull final String value) {
+        for (final byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            if ((b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9')
+                || b == '-' || b == '.' || b == '_' || b == '~') {
+                builder.append((char) b);
+            } else {
+                builder.append('%').append(HEX_DIGITS[(b >> 4) & 0xF]).append(HEX_DIGITS[b & 0xF]);
+            }
+        }
+    }
+
 
     /**
      * Builder for {@link HttpClient}. Use {@link #newBuilder()} to create
@@ -160,6 +593,96 @@ public final class HttpClient {
             return this;
         }
 
+        /**
+         * Spread requests across multiple base URLs, which serve the same content. Requests are created
+         * relative to the first base URL, and are moved to the selected base URL when they are executed.
+         * Endpoints that fail {@link #withOutlierEjection(int, Duration) repeatedly} are ejected for a while
+         *
+         * @param loadBalancing Strategy that selects the base URL of a request
+         * @param baseURLs      Base URLs
+         * @return Builder instance
+         * @see HttpClient#getEndpointStats()
+         */
+        @NotNull public Builder withBaseURLs(@NotNull final LoadBalancing loadBalancing,
+            @NotNull final String... baseURLs) {
+            Objects.requireNonNull(loadBalancing, "Load balancing may not be null");
+            if (baseURLs.length == 0) {
+                throw new IllegalArgumentException("At least one base URL must be specified");
+            }
+            final List<String> normalized = new ArrayList<>(baseURLs.length);
+            for (final String baseURL : baseURLs) {
+                Objects.requireNonNull(baseURL, "Base URL may not be null");
+                normalized.add(baseURL.endsWith("/") ? baseURL.substring(0, baseURL.length() - 1) : baseURL);
+            }
+            this.settings.setBaseURLs(loadBalancing, normalized);
+            return this;
+        }
+
+        /**
+         * Configure when an endpoint is ejected. Requests that fail or receive a 5xx response count as
+         * failures. Each ejection of the same endpoint lasts longer than the previous one, up to ten
+         * times the ejection time. By default, endpoints are ejected for 30 seconds after 5 consecutive failures
+         *
+         * @param consecutiveFailures Consecutive failures after which an endpoint is ejected
+         * @param ejectionTime        How long an endpoint is ejected for the first time
+         * @return Builder instance
+         */
+        @NotNull public Builder withOutlierEjection(final int consecutiveFailures, @NotNull final Duration ejectionTime) {
+            Objects.requireNonNull(ejectionTime, "Ejection time may not be null");
+            if (consecutiveFailures < 1) {
+                throw new IllegalArgumentException("Failure threshold must be positive");
+            }
+            if (ejectionTime.isNegative()) {
+                throw new IllegalArgumentException("Ejection time may not be negative");
+            }
+            this.settings.setOutlierEjection(consecutiveFailures, ejectionTime);
+            return this;
+        }
+
+        /**
+         * Periodically request a path on every {@link #withBaseURLs(LoadBalancing, String...) base URL}.
+         * Endpoints that do not respond with a status below 400 are ejected, and ejected endpoints that
+         * do are readmitted
+         *
+         * @param path     Path, relative to the base URL
+         * @param interval Interval between checks
+         * @return Builder instance
+         */
+        @NotNull public Builder withHealthCheck(@NotNull final String path, @NotNull final Duration interval) {
+            Objects.requireNonNull(path, "Path may not be null");
+            Objects.requireNonNull(interval, "Interval may not be null");
+            if (interval.isNegative() || interval.isZero()) {
+                throw new IllegalArgumentException("Interval must be positive");
+            }
+            this.settings.setHealthCheck(path.startsWith("/") ? path : '/' + path, interval);
+            return this;
+        }
+
+        /**
+         * Limit the amount of concurrent {@link WrappedRequestBuilder#executeAsync() asynchronous} requests to each
+         * host. Requests that exceed the limit are queued, and are executed in order of their
+         * {@link WrappedRequestBuilder#withPriority(RequestPriority) priority} once a request to the same host
+         * completes. This reserves connections and executor threads for high-priority requests. A queued request
+         * is treated as one priority higher for every aging interval that it waits, so that low-priority requests
+         * are eventually executed. Synchronous requests are not queued, as they already occupy the calling thread
+         *
+         * @param maxConcurrentPerHost Maximum amount of concurrent asynchronous requests to a host
+         * @param aging                Wait time after which a queued request is promoted by one priority
+         * @return Builder instance
+         * @see HttpClient#getQueueStats()
+         */
+        @NotNull public Builder withPriorityScheduling(final int maxConcurrentPerHost, @NotNull final Duration aging) {
+            Objects.requireNonNull(aging, "Aging interval may not be null");
+            if (maxConcurrentPerHost < 1) {
+                throw new IllegalArgumentException("Concurrency limit must be positive");
+            }
+            if (aging.isNegative() || aging.isZero()) {
+                throw new IllegalArgumentException("Aging interval must be positive");
+            }
+            this.settings.setPriorityScheduling(maxConcurrentPerHost, aging);
+            return this;
+        }
+
         /**
          * Set the default entity mapper that is used
          * by all requests, unless otherwise specified
@@ -172,6 +695,249 @@ public final class HttpClient {
             return this;
         }
 
+        /**
+         * Set the executor that is used to perform asynchronous and batched requests.
+         * By default, the client creates a cached thread pool with daemon threads
+         *
+         * @param executor Executor
+         * @return Builder instance
+         */
+        @NotNull public Builder withExecutor(@NotNull final Executor executor) {
+            this.settings.setExecutor(Objects.requireNonNull(executor, "Executor may not be null"));
+            return this;
+        }
+
+        /**
+         * Use a non-blocking transport for plain HTTP requests. Connections are multiplexed
+         * over a fixed amount of selector threads, so that requests made using
+         * {@link WrappedRequestBuilder#executeAsync()} do not occupy a thread while they
+         * are in flight. HTTPS requests are still performed using {@link java.net.HttpURLConnection}
+         *
+         * @param selectorThreads Amount of selector threads
+         * @return Builder instance
+         */
+        @NotNull public Builder withNonBlockingTransport(final int selectorThreads) {
+            if (selectorThreads < 1) {
+                throw new IllegalArgumentException("Selector thread count must be positive");
+            }
+            this.settings.setSelectorThreads(selectorThreads);
+            return this;
+        }
+
+        /**
+         * Resolve host names using the given resolver, rather than the resolver of the JVM. Resolutions
+         * are cached for as long as their time-to-live allows, and are refreshed in the background
+         * before they expire. When a host has multiple addresses, connections are spread across them
+         * or fail over between them, depending on the address selection. Connection attempts to an
+         * address that fails are retried using the next address.
+         * <p>
+         * This only applies to the {@link #withNonBlockingTransport(int) non-blocking transport}, as
+         * {@link java.net.HttpURLConnection} always resolves hosts using the resolver of the JVM
+         *
+         * @param resolver  Resolver, for example {@link DnsResolver#system(java.time.Duration)}
+         * @param selection How addresses are chosen
+         * @return Builder instance
+         */
+        @NotNull public Builder withDnsResolver(@NotNull final DnsResolver resolver,
+            @NotNull final AddressSelection selection) {
+            this.settings.setDnsResolver(Objects.requireNonNull(resolver, "Resolver may not be null"));
+            this.settings.setAddressSelection(Objects.requireNonNull(selection, "Address selection may not be null"));
+            return this;
+        }
+
+        /**
+         * Set the SSL context that is used by every HTTPS request of the client. Sharing a context
+         * lets requests resume TLS sessions that were established by earlier requests, rather than
+         * performing a full handshake. This replaces any socket factory that was set previously
+         *
+         * @param sslContext SSL context
+         * @return Builder instance
+         */
+        @NotNull public Builder withSSLContext(@NotNull final SSLContext sslContext) {
+            this.settings.setSSLContext(Objects.requireNonNull(sslContext, "SSL context may not be null"));
+            this.settings.setSSLSocketFactory(null);
+            return this;
+        }
+
+        /**
+         * Set the socket factory that is used by every HTTPS request of the client. This
+         * replaces any SSL context that was set previously
+         *
+         * @param sslSocketFactory Socket factory
+         * @return Builder instance
+         */
+        @NotNull public Builder withSSLSocketFactory(@NotNull final SSLSocketFactory sslSocketFactory) {
+            this.settings.setSSLSocketFactory(Objects.requireNonNull(sslSocketFactory, "Socket factory may not be null"));
+            this.settings.setSSLContext(null);
+            return this;
+        }
+
+        /**
+         * Set the hostname verifier that is used by every HTTPS request of the client. As with
+         * {@link javax.net.ssl.HttpsURLConnection#setHostnameVerifier(HostnameVerifier)}, the verifier
+         * is only consulted when the host name does not match the certificate of the server
+         *
+         * @param hostnameVerifier Hostname verifier
+         * @return Builder instance
+         */
+        @NotNull public Builder withHostnameVerifier(@NotNull final HostnameVerifier hostnameVerifier) {
+            this.settings.setHostnameVerifier(Objects.requireNonNull(hostnameVerifier, "Hostname verifier may not be null"));
+            return this;
+        }
+
+        /**
+         * Configure the client-side TLS session cache. Cached sessions are resumed with an abbreviated
+         * handshake when a new connection is made to the same host. This modifies the session context of
+         * the {@link #withSSLContext(SSLContext) SSL context}. If no context was set, the client creates its
+         * own, as the default context is shared by the entire JVM. The cache can not be configured when
+         * a {@link #withSSLSocketFactory(SSLSocketFactory) socket factory} is used
+         *
+         * @param size    Maximum amount of cached sessions, or {@code 0} for no limit
+         * @param timeout How long a cached session may be resumed
+         * @return Builder instance
+         * @see HttpClient#getTlsMetrics()
+         */
+        @NotNull public Builder withTlsSessionCache(final int size, @NotNull final Duration timeout) {
+            Objects.requireNonNull(timeout, "Timeout may not be null");
+            if (size < 0) {
+                throw new IllegalArgumentException("Session cache size may not be negative");
+            }
+            if (timeout.isNegative()) {
+                throw new IllegalArgumentException("Session timeout may not be negative");
+            }
+            this.settings.setSessionCache(size, timeout);
+            return this;
+        }
+
+        /**
+         * Buffer response bodies in pooled buffers, instead of allocating a new array for every response.
+         * Buffers are reused once their response has been {@link HttpResponse#close() closed}, so every
+         * response must be closed after its body has been read. This reduces the allocation rate of
+         * clients that receive many large responses. Bodies that are larger than 1 MiB are not pooled
+         *
+         * @param direct      Whether the buffers are allocated outside of the heap. Direct buffers avoid a
+         *                    copy when the body is read by the non-blocking transport, but are slower to
+         *                    access from Java
+         * @param detectLeaks Whether to report responses that are garbage collected without being closed.
+         *                    This records where every response is created, and should only be used while
+         *                    debugging. Leaks are reported through {@link BufferPoolMetrics#getLastLeak()}
+         * @return Builder instance
+         * @see HttpClient#getBufferPoolMetrics()
+         */
+        @NotNull public Builder withPooledResponseBuffers(final boolean direct, final boolean detectLeaks) {
+            this.settings.setPooledResponseBuffers(direct, detectLeaks);
+            return this;
+        }
+
+        /**
+         * Add an interceptor that wraps the execution of every request made by this client.
+         * Interceptors are invoked in the order in which they are added, after the
+         * {@link #withDecorator(Consumer) decorators} have been applied
+         *
+         * @param interceptor Interceptor
+         * @return Builder instance
+         */
+        @NotNull public Builder withInterceptor(@NotNull final Interceptor interceptor) {
+            this.settings.addInterceptor(Objects.requireNonNull(interceptor, "Interceptor may not be null"));
+            return this;
+        }
+
+        /**
+         * Trace the requests made by this client. Each execution of a sampled request is recorded as a
+         * {@link Span}, with an event for each {@link RequestPhase phase}, and the W3C {@code traceparent}
+         * header is added to the request. If the request already has a {@code traceparent} header, the
+         * span becomes a child of that trace. Requests that are not sampled are not recorded, and only
+         * propagate the header they were given
+         *
+         * @param sampler  Decides which requests are traced, such as {@link Sampler#ratio(double)}
+         * @param exporter Receives the spans of traced requests
+         * @return Builder instance
+         */
+        @NotNull public Builder withTracing(@NotNull final Sampler sampler, @NotNull final SpanExporter exporter) {
+            this.settings.setTracing(new Tracing(sampler, exporter, null));
+            return this;
+        }
+
+        /**
+         * Trace the requests made by this client, as children of the current trace of the application.
+         * The parent supplier is called on the thread that executes (or asynchronously submits) the
+         * request, so that it can read the context of a tracing library, which is typically thread-local
+         *
+         * @param sampler        Decides which requests are traced, such as
+         *                       {@link Sampler#parentBased(Sampler)}
+         * @param exporter       Receives the spans of traced requests
+         * @param parentSupplier Supplies the current trace context, or {@code null} if there is none
+         * @return Builder instance
+         * @see #withTracing(Sampler, SpanExporter)
+         */
+        @NotNull public Builder withTracing(@NotNull final Sampler sampler, @NotNull final SpanExporter exporter,
+            @NotNull final Supplier<TraceContext> parentSupplier) {
+            this.settings.setTracing(new Tracing(sampler, exporter,
+                Objects.requireNonNull(parentSupplier, "Parent supplier may not be null")));
+            return this;
+        }
+
+        /**
+         * Keep the most recent requests that took longer than a threshold, with the time spent in each
+         * {@link RequestPhase phase}, so that latency spikes can be attributed to specific calls. The log
+         * is a fixed-size ring buffer, which is written without locking, and can be read using
+         * {@link HttpClient#getSlowRequests()}
+         *
+         * @param capacity  Amount of requests to keep
+         * @param threshold Minimum duration of a recorded request
+         * @return Builder instance
+         * @throws IllegalArgumentException If the capacity is not positive, or the threshold is negative
+         */
+        @NotNull public Builder withSlowRequestLog(final int capacity, @NotNull final Duration threshold) {
+            this.settings.setSlowRequestLog(new SlowRequestLog(capacity,
+                Objects.requireNonNull(threshold, "Threshold may not be null")));
+            return this;
+        }
+
+        /**
+         * Open keep-alive connections in the background when the client is built, so that the first
+         * requests after startup do not have to wait for connections to be established. Connections
+         * to HTTPS hosts, or made without the {@link #withNonBlockingTransport(int) non-blocking transport},
+         * are established using a HEAD request, which also performs the TLS handshake. Note that
+         * {@link java.net.HttpURLConnection} keeps at most {@code http.maxConnections} (5 by default)
+         * idle connections per host
+         *
+         * @param connections Amount of connections to open to each URL
+         * @param urls        URLs of the hosts to connect to. If none are given, the base URL is used
+         * @return Builder instance
+         * @see HttpClient#whenWarm()
+         */
+        @NotNull public Builder prewarm(final int connections, @NotNull final String... urls) {
+            Objects.requireNonNull(urls, "URLs may not be null");
+            if (connections < 1) {
+                throw new IllegalArgumentException("Connection count must be positive");
+            }
+            for (final String url : urls) {
+                try {
+                    new URL(Objects.requireNonNull(url, "URL may not be null"));
+                } catch (final MalformedURLException e) {
+                    throw new IllegalArgumentException(e);
+                }
+            }
+            this.settings.setPrewarm(connections, Arrays.asList(urls));
+            return this;
+        }
+
+        /**
+         * Run a warm-up once the client is built, after the {@link #prewarm(int, String...) prewarmed}
+         * connections have been established. This is typically used to perform a representative request,
+         * so that serialization and deserialization code is loaded and compiled before it is needed.
+         * The warm-up runs on the client executor, and any exception it throws is ignored
+         *
+         * @param warmUp Warm-up, which receives the built client
+         * @return Builder instance
+         * @see HttpClient#whenWarm()
+         */
+        @NotNull public Builder withWarmUp(@NotNull final Consumer<HttpClient> warmUp) {
+            this.settings.setWarmUp(Objects.requireNonNull(warmUp, "Warm-up may not be null"));
+            return this;
+        }
+
         /**
          * Add a new request decorator. This will have the opportunity
          * to decorate every request made by this client
@@ -191,7 +957,15 @@ public final class HttpClient {
          * @return Created client
          */
         public HttpClient build() {
-            return new HttpClient(settings);
+            final HttpClient client = new HttpClient(settings);
+            try {
+                client.startHealthChecks();
+                client.prewarm();
+            } catch (final RuntimeException e) {
+                client.close();
+                throw e;
+            }
+            return client;
         }
 
     }
@@ -209,33 +983,48 @@ public final class HttpClient {
      */
     public final class WrappedRequestBuilder {
 
-        private final HttpRequest.Builder builder = HttpRequest.newBuilder();
-        private final Map<Integer, Consumer<HttpResponse>> consumers = new HashMap<>();
+        private final HttpRequest.Builder builder;
+        private final Map<Integer, Consumer<HttpResponse>> consumers;
+        private final CancellationToken cancellation = new CancellationToken();
         private Consumer<HttpResponse> other = response -> {
         };
         private Consumer<Throwable> exceptionHandler = null;
+        private boolean decorated = false;
+        private boolean routed = false;
+        private boolean parentResolved = false;
+        @Nullable private EndpointStats endpoint;
+        private RequestPriority priority = RequestPriority.NORMAL;
 
-        private WrappedRequestBuilder(@NotNull final HttpMethod method, @NotNull String url) {
-            if (url.startsWith("/")) {
-                if (url.length() == 1) {
-                    url = "";
-                } else {
-                    url = url.substring(1);
-                }
-            }
-            url = HttpClient.this.settings.getBaseURL() + '/' + url;
-            try {
-                final URL javaURL = new URL(url);
-                builder.withURL(javaURL);
-            } catch (MalformedURLException e) {
-                throw new RuntimeException(e);
-            }
+        private WrappedRequestBuilder(@NotNull final HttpMethod method, @NotNull final String url) {
+            this(method, toURL(resolveURL(url)));
+        }
+
+        private WrappedRequestBuilder(@NotNull final HttpMethod method, @NotNull final URL url) {
+            this.builder = HttpRequest.newBuilder().withCancellation(this.cancellation);
+            this.consumers = new HashMap<>();
+            builder.withURL(url);
             builder.withMethod(method);
+            builder.withTlsConfiguration(tlsConfiguration);
+            if (responsePool != null) {
+                builder.withResponsePool(responsePool);
+            }
             if (settings.getEntityMapper() != null) {
                 builder.withMapper(settings.getEntityMapper());
             }
         }
 
+        private WrappedRequestBuilder(@NotNull final WrappedRequestBuilder other, @NotNull final URL url) {
+            this.builder = other.builder.copy().withURL(url).withCancellation(this.cancellation);
+            this.consumers = new HashMap<>(other.consumers);
+            this.other = other.other;
+            this.exceptionHandler = other.exceptionHandler;
+            this.decorated = other.decorated;
+            this.routed = other.routed;
+            this.parentResolved = other.parentResolved;
+            this.endpoint = other.endpoint;
+            this.priority = other.priority;
+        }
+
         /**
          * Specify an input supplier which will be used to write to the connection, if it
          * established correctly. This requires that there is a {@link com.intellectualsites.http.EntityMapper.EntitySerializer}
@@ -249,6 +1038,18 @@ public final class HttpClient {
             return this;
         }
 
+        /**
+         * Specify a body source which will be streamed to the connection, if it established
+         * correctly. Unlike {@link #withInput(Supplier)}, the body is not serialized into memory
+         *
+         * @param bodySource Body source, such as {@link BodySource#ofFile(java.nio.file.Path)}
+         * @return Builder instance
+         */
+        @NotNull public WrappedRequestBuilder withInput(@NotNull final BodySource bodySource) {
+            builder.withBody(bodySource);
+            return this;
+        }
+
         /**
          * Specify the entity mapper used by the request
          *
@@ -261,11 +1062,14 @@ public final class HttpClient {
         }
 
         /**
-         * Add a header to the request
+         * Add a header to the request. Headers that frame the message, such as {@code Content-Length},
+         * {@code Transfer-Encoding} and {@code Connection}, are managed by the transport and are ignored
          *
          * @param key   Header key
          * @param value Header value
          * @return Builder instance
+         * @throws IllegalArgumentException If the key is not a valid header name, or the value contains
+         *                                  a carriage return, line feed or NUL character
          */
         @NotNull public WrappedRequestBuilder withHeader(@NotNull final String key,
             @NotNull final String value) {
@@ -273,6 +1077,34 @@ public final class HttpClient {
             return this;
         }
 
+        /**
+         * Deserialize the response entity on the thread that reads the response, before the response
+         * consumers are invoked. With the {@link Builder#withNonBlockingTransport(int) non-blocking transport},
+         * this moves deserialization off the client executor, so that consumers receive a ready entity from
+         * {@link HttpResponse#getResponseEntity(Class)}. Deserialization failures are thrown once the entity
+         * is requested
+         *
+         * @param type Entity type
+         * @return Builder instance
+         */
+        @NotNull public WrappedRequestBuilder withEagerEntity(@NotNull final Class<?> type) {
+            builder.withEagerEntity(type);
+            return this;
+        }
+
+        /**
+         * Specify the priority of the request. This only has an effect if the client uses
+         * {@link Builder#withPriorityScheduling(int, Duration) priority scheduling}, and
+         * the request is executed {@link #executeAsync() asynchronously}
+         *
+         * @param priority Request priority
+         * @return Builder instance
+         */
+        @NotNull public WrappedRequestBuilder withPriority(@NotNull final RequestPriority priority) {
+            this.priority = Objects.requireNonNull(priority, "Priority may not be null");
+            return this;
+        }
+
         /**
          * Add a consumer that acts on a specific status code
          *
@@ -319,15 +1151,28 @@ public final class HttpClient {
          *         the method will return {@code null}
          */
         @Nullable public HttpResponse execute() {
-            for (final Consumer<WrappedRequestBuilder> decorator : settings.getRequestDecorators()) {
-                decorator.accept(this);
+            this.decorate();
+            if (interceptors.length > 0) {
+                final HttpResponse response;
+                try {
+                    response = new InterceptorChain(interceptors, this, this::send).proceed().join();
+                } catch (final Throwable throwable) {
+                    return this.handle(null, throwable);
+                }
+                return this.handle(response, null);
             }
             try {
                 final Throwable[] throwables = new Throwable[1];
                 if (this.exceptionHandler == null) {
                     builder.onException(e -> throwables[0] = e);
                 }
-                final HttpResponse response = this.builder.build().executeRequest();
+                final HttpRequest request = this.buildRequest();
+                final HttpResponse response;
+                if (transport != null && transport.supports(request.getURL())) {
+                    response = request.executeRequest(transport);
+                } else {
+                    response = request.executeRequest();
+                }
                 if (response != null) {
                     final Consumer<HttpResponse> responseConsumer = this.consumers.getOrDefault(response.getStatusCode(), this.other);
                     responseConsumer.accept(response);
@@ -351,6 +1196,511 @@ public final class HttpClient {
             return null;
         }
 
+        /**
+         * Cancel the request. A request that is in flight has its connection closed immediately,
+         * rather than waiting for the response, and requests that have not started yet are not
+         * sent at all. Either way, the {@link #onException(Consumer) exception handler} receives a
+         * {@link RequestCancelledException}. This may be called from any thread, for example to
+         * abort a blocking {@link #execute()}. Cancelling the future returned by
+         * {@link #executeAsync()} has the same effect
+         *
+         * @return {@code true} if the request had not been cancelled before
+         */
+        public boolean cancel() {
+            return this.cancellation.cancel();
+        }
+
+        /**
+         * Perform the request on the calling thread, without invoking the response consumers
+         *
+         * @return Completed future
+         */
+        @NotNull private CompletableFuture<HttpResponse> send() {
+            final CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+            this.builder.onException(future::completeExceptionally);
+            try {
+                final HttpRequest request = this.buildRequest();
+                final HttpResponse response;
+                if (transport != null && transport.supports(request.getURL())) {
+                    response = request.executeRequest(transport);
+                } else {
+                    response = request.executeRequest();
+                }
+                if (response != null) {
+                    future.complete(response);
+                }
+            } catch (final IOException e) {
+                future.completeExceptionally(e);
+            }
+            if (!future.isDone()) {
+                future.completeExceptionally(new IllegalStateException("The request did not produce a response"));
+            }
+            return future;
+        }
+
+        /**
+         * Perform the request, and write the body of a successful (2xx) response to a file.
+         * The body is streamed to a temporary file in the same directory, which atomically
+         * replaces the target once the body is complete and matches the Content-Length
+         * header. The body of other responses is buffered in memory, and the target is left
+         * untouched
+         *
+         * @param target File to write the body to
+         * @return The response, with an empty body if it was written to the file. If any exception
+         *         was handled, the method will return {@code null}
+         * @see #execute()
+         */
+        @Nullable public HttpResponse executeToFile(@NotNull final Path target) {
+            this.builder.withBodyHandler(new FileBodyHandler(Objects.requireNonNull(target, "Target may not be null")));
+            return this.execute();
+        }
+
+        /**
+         * Download the body of a GET request to a file, using multiple connections. A HEAD request
+         * determines the size of the file, which is then split into byte ranges that are requested
+         * concurrently, and written to their position in a {@code .part} file next to the target.
+         * Progress is recorded in a {@code .progress} file, so that an interrupted download resumes
+         * where it left off when it is performed again, provided that the file did not change.
+         * If the server does not support ranges, the file is downloaded as a single stream
+         *
+         * @param target   File to write the body to
+         * @param segments Maximum amount of ranges that are requested concurrently
+         * @return The response to the HEAD request. If any exception was handled,
+         *         the method will return {@code null}
+         * @see #executeToFile(Path)
+         */
+        @Nullable public HttpResponse executeToFile(@NotNull final Path target, final int segments) {
+            Objects.requireNonNull(target, "Target may not be null");
+            if (segments < 1) {
+                throw new IllegalArgumentException("Segment count must be positive");
+            }
+            if (segments == 1) {
+                return this.executeToFile(target);
+            }
+            this.decorate();
+            final HttpResponse response;
+            try {
+                response = new SegmentedDownload(HttpClient.this, this, target, segments).run();
+            } catch (final Throwable throwable) {
+                return this.handle(null, throwable);
+            }
+            return this.handle(response, null);
+        }
+
+        /**
+         * Consume a {@code text/event-stream} (server-sent events) response incrementally. Each event
+         * is passed to the consumer as soon as it has been received, and only a single event is held
+         * in memory at a time. When the stream ends or the connection fails, the request is repeated
+         * after the delay requested by the server (3 seconds by default), with the {@code Last-Event-ID}
+         * header set to the ID of the last received event. This continues until the server responds with
+         * a status other than 200, or until the returned future is cancelled.
+         * <p>
+         * The consumer is invoked by the thread that reads the connection, which is a selector thread
+         * when the {@link Builder#withNonBlockingTransport(int) non-blocking transport} is used.
+         * It should therefore not block.
+         * <p>
+         * Cancelling the returned future {@link #cancel() cancels} the request, which closes its connection
+         * right away. Note that {@link java.net.HttpURLConnection} can not abort a read that is blocked
+         * in the response body, so without the non-blocking transport, the connection of an idle stream
+         * is only released once the server sends more data
+         *
+         * @param consumer Event consumer
+         * @return Future that completes once the stream has ended for good. Cancel it to close the stream
+         */
+        @NotNull public CompletableFuture<Void> executeEventStream(@NotNull final Consumer<ServerSentEvent> consumer) {
+            Objects.requireNonNull(consumer, "Consumer may not be null");
+            return StreamingRequest.events(this, this.getMapper(), consumer);
+        }
+
+        /**
+         * Consume a newline-delimited (NDJSON) response incrementally. Each non-empty line is mapped to
+         * the given type using the entity mapper, and passed to the consumer as soon as it has been received.
+         * Only a single line is held in memory at a time. The consumer is invoked by the thread that reads the
+         * connection, and should not block. Cancelling the returned future closes the connection, as
+         * described by {@link #executeEventStream(Consumer)}
+         *
+         * @param type     Record type
+         * @param consumer Record consumer
+         * @param <T>      Record type
+         * @return Future that completes once the stream has ended. Cancel it to close the stream
+         * @throws IllegalStateException If no mapper exists for the type
+         */
+        @NotNull public <T> CompletableFuture<Void> executeRecordStream(@NotNull final Class<T> type,
+            @NotNull final Consumer<T> consumer) {
+            Objects.requireNonNull(type, "Type may not be null");
+            Objects.requireNonNull(consumer, "Consumer may not be null");
+            return StreamingRequest.records(this, this.getMapper(), type, consumer);
+        }
+
+        /**
+         * Create an undecorated copy of the request, without any response
+         * consumers or exception handler. The copy is cancelled together with this request
+         *
+         * @param method HTTP method of the copy
+         * @return Created builder
+         */
+        @NotNull WrappedRequestBuilder derive(@NotNull final HttpMethod method) {
+            this.decorate();
+            final WrappedRequestBuilder derived = new WrappedRequestBuilder(this, Objects.requireNonNull(this.builder.getURL()));
+            derived.builder.withMethod(method);
+            derived.consumers.clear();
+            derived.other = response -> {
+            };
+            derived.exceptionHandler = null;
+            this.cancellation.bind(derived.cancellation::cancel);
+            return derived;
+        }
+
+        @NotNull WrappedRequestBuilder withBodyHandler(@NotNull final BodyHandler bodyHandler) {
+            this.builder.withBodyHandler(bodyHandler);
+            return this;
+        }
+
+        @NotNull URL getURL() {
+            return Objects.requireNonNull(this.builder.getURL());
+        }
+
+        @NotNull HttpMethod getMethod() {
+            return Objects.requireNonNull(this.builder.getMethod());
+        }
+
+        /**
+         * Get the underlying request builder, which lets the interceptors of this
+         * package inspect the request, or send it to another origin
+         *
+         * @return Request builder
+         */
+        @NotNull HttpRequest.Builder getBuilder() {
+            return this.builder;
+        }
+
+        /**
+         * Move the request to the base URL selected by the load balancer. This happens
+         * once, so that derived requests are sent to the same endpoint
+         */
+        private void route() {
+            if (this.routed) {
+                return;
+            }
+            this.routed = true;
+            if (balancer != null) {
+                final LoadBalancer.Route route = balancer.route(this.getURL());
+                this.endpoint = route.getEndpoint();
+                this.builder.withURL(route.getURL());
+            }
+        }
+
+        @Nullable EndpointStats getEndpoint() {
+            return this.endpoint;
+        }
+
+        @NotNull EntityMapper getMapper() {
+            return Objects.requireNonNull(this.builder.getMapper(), "No mapper was supplied");
+        }
+
+        /**
+         * Perform the request asynchronously. If the client uses the
+         * {@link Builder#withNonBlockingTransport(int) non-blocking transport}, no thread is
+         * occupied while the request is in flight. Otherwise, the request is performed using
+         * the client {@link Builder#withExecutor(Executor) executor}. Either way, the response
+         * consumers are invoked by the client executor
+         *
+         * @return Future that completes with the value returned by {@link #execute()}, or
+         *         exceptionally with the exception thrown by it. Cancelling the future
+         *         {@link #cancel() cancels} the request
+         */
+        @NotNull public CompletableFuture<HttpResponse> executeAsync() {
+            // Decorate first, as the request may be moved to another base URL
+            this.decorate();
+            final CompletableFuture<HttpResponse> future;
+            if (scheduler != null) {
+                final URL url = this.getURL();
+                future = scheduler.submit(url.getProtocol() + "://" + url.getAuthority(), this.priority,
+                    this.cancellation, this::dispatch);
+            } else {
+                future = this.dispatch();
+            }
+            // Cancelling the future that invokes the response consumers would skip the exception
+            // handler, so callers get a separate future that cancels the request instead
+            final CompletableFuture<HttpResponse> result = new CompletableFuture<>();
+            future.whenComplete((response, throwable) -> {
+                if (throwable != null) {
+                    result.completeExceptionally(throwable);
+                } else {
+                    result.complete(response);
+                }
+            });
+            result.whenComplete((response, throwable) -> {
+                if (result.isCancelled()) {
+                    this.cancellation.cancel();
+                }
+            });
+            return result;
+        }
+
+        /**
+         * Execute the request asynchronously, once it has been scheduled
+         *
+         * @return Future that completes once the response consumers have been invoked
+         */
+        @NotNull private CompletableFuture<HttpResponse> dispatch() {
+            if (transport == null || !transport.supports(this.builder.getURL())) {
+                return CompletableFuture.supplyAsync(this::execute, executor);
+            }
+            final CompletableFuture<HttpResponse> future;
+            if (interceptors.length > 0) {
+                future = new InterceptorChain(interceptors, this, () -> transport.execute(this.buildRequest()))
+                    .proceed();
+            } else {
+                try {
+                    future = transport.execute(this.buildRequest());
+                } catch (final RuntimeException e) {
+                    return this.handleAsync(null, e);
+                }
+            }
+            return future.handleAsync(this::handle, executor);
+        }
+
+        @NotNull private CompletableFuture<HttpResponse> handleAsync(@Nullable final HttpResponse response,
+            @Nullable final Throwable throwable) {
+            final CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+            try {
+                future.complete(this.handle(response, throwable));
+            } catch (final Throwable handlerThrowable) {
+                future.completeExceptionally(handlerThrowable);
+            }
+            return future;
+        }
+
+        /**
+         * Handle the outcome of a request in the same way as {@link #execute()}
+         *
+         * @param response  Response, if the request succeeded
+         * @param throwable Failure, if the request failed
+         * @return Response, or {@code null} if a failure was handled by the exception handler
+         */
+        @Nullable private HttpResponse handle(@Nullable final HttpResponse response, @Nullable Throwable throwable) {
+            if (throwable instanceof CompletionException && throwable.getCause() != null) {
+                throwable = throwable.getCause();
+            }
+            try {
+                if (throwable != null) {
+                    if (this.exceptionHandler == null) {
+                        throw throwable;
+                    }
+                    this.exceptionHandler.accept(throwable);
+                    return null;
+                }
+                this.consumers.getOrDefault(Objects.requireNonNull(response).getStatusCode(), this.other)
+                    .accept(response);
+                return response;
+            } catch (final Throwable e) {
+                if (this.exceptionHandler == null) {
+                    if (e instanceof RuntimeException) {
+                        throw (RuntimeException) e;
+                    }
+                    throw new RuntimeException(e);
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Build the request for a single execution, with the listeners of the client
+         *
+         * @return Request
+         */
+        @NotNull private HttpRequest buildRequest() {
+            RequestListener listener = null;
+            for (final RequestListener.Factory factory : listeners) {
+                listener = RequestListener.combine(listener, factory.create(this.builder));
+            }
+            return this.builder.withListener(listener).build();
+        }
+
+        private void decorate() {
+            this.route();
+            if (!this.decorated) {
+                this.decorated = true;
+                for (final Consumer<WrappedRequestBuilder> decorator : decorators) {
+                    decorator.accept(this);
+                }
+                final EntityMapper mapper = this.builder.getMapper();
+                if (mapper != null && !this.builder.hasHeader("Accept")) {
+                    final String accept = mapper.getAcceptHeader(this.builder.getEagerEntity());
+                    if (accept != null) {
+                        this.builder.withHeader("Accept", accept);
+                    }
+                }
+            }
+            if (tracing != null && !this.parentResolved) {
+                this.parentResolved = true;
+                tracing.resolveParent(this.builder);
+            }
+        }
+
+    }
+
+
+    private static final class BatchCompletion {
+
+        private final int index;
+        private final HttpResponse response;
+        private final Throwable throwable;
+
+        private BatchCompletion(final int index, @Nullable final HttpResponse response,
+            @Nullable final Throwable throwable) {
+            this.index = index;
+            this.response = response;
+            this.throwable = throwable;
+        }
+
+    }
+
+
+    /**
+     * Immutable, reusable request template. Use {@link #prepare(HttpMethod, String)}
+     * to create a new template
+     */
+    public final class RequestTemplate {
+
+        private final URL origin;
+        private final String[] literals;
+        private final String[] variables;
+        private final WrappedRequestBuilder prototype;
+
+        private RequestTemplate(@NotNull final HttpMethod method, @NotNull final String urlTemplate) {
+            final String url = resolveURL(urlTemplate);
+            final int schemeEnd = url.indexOf("://");
+            int pathStart = schemeEnd == -1 ? -1 : url.length();
+            for (int i = schemeEnd + 3; schemeEnd != -1 && i < url.length(); i++) {
+                final char character = url.charAt(i);
+                if (character == '/' || character == '?' || character == '#') {
+                    pathStart = i;
+                    break;
+                }
+            }
+            if (pathStart == -1 || url.lastIndexOf('{', pathStart) != -1) {
+                throw new IllegalArgumentException(String.format("Template '%s' must be an absolute URL, with "
+                    + "variables only in the path and query", url));
+            }
+            try {
+                this.origin = new URL(url.substring(0, pathStart) + '/');
+            } catch (final MalformedURLException e) {
+                throw new IllegalArgumentException(e);
+            }
+            final String file = url.substring(pathStart);
+            final List<String> literals = new ArrayList<>();
+            final List<String> variables = new ArrayList<>();
+            int position = 0;
+            while (position < file.length()) {
+                final int open = file.indexOf('{', position);
+                if (open == -1) {
+                    break;
+                }
+                final int close = file.indexOf('}', open);
+                if (close == -1 || close == open + 1) {
+                    throw new IllegalArgumentException(String.format("Malformed variable in template '%s'", url));
+                }
+                literals.add(file.substring(position, open));
+                variables.add(file.substring(open + 1, close));
+                position = close + 1;
+            }
+            literals.add(file.substring(position));
+            this.literals = literals.toArray(new String[0]);
+            this.variables = variables.toArray(new String[0]);
+            this.prototype = new WrappedRequestBuilder(method, this.origin);
+            this.prototype.builder.withURLTemplate(file);
+            // Requests created from the template are routed, and get their trace parent, when they are executed
+            this.prototype.routed = true;
+            this.prototype.parentResolved = true;
+            this.prototype.decorate();
+        }
+
+        private RequestTemplate(@NotNull final RequestTemplate other, @NotNull final WrappedRequestBuilder prototype) {
+            this.origin = other.origin;
+            this.literals = other.literals;
+            this.variables = other.variables;
+            this.prototype = prototype;
+        }
+
+        /**
+         * Create a new template that adds a header to every request
+         *
+         * @param key   Header key
+         * @param value Header value
+         * @return New template instance
+         */
+        @NotNull public RequestTemplate withHeader(@NotNull final String key, @NotNull final String value) {
+            final WrappedRequestBuilder prototype = new WrappedRequestBuilder(this.prototype, this.origin);
+            prototype.withHeader(key, value);
+            return new RequestTemplate(this, prototype);
+        }
+
+        /**
+         * Get the names of the variables in the template, in the order they appear
+         *
+         * @return Unmodifiable list of variable names
+         */
+        @NotNull public List<String> getVariables() {
+            return Collections.unmodifiableList(Arrays.asList(this.variables));
+        }
+
+        /**
+         * Create a new request by expanding the template variables in the order they appear
+         *
+         * @param values Variable values. These are converted using {@link String#valueOf(Object)}
+         * @return Created builder
+         * @throws IllegalArgumentException If the amount of values does not match the amount of variables
+         */
+        @NotNull public WrappedRequestBuilder newRequest(@NotNull final Object... values) {
+            Objects.requireNonNull(values, "Values may not be null");
+            if (values.length != this.variables.length) {
+                throw new IllegalArgumentException(String.format("Expected %d values, got %d",
+                    this.variables.length, values.length));
+            }
+            return this.expand(values);
+        }
+
+        /**
+         * Create a new request by expanding the template variables by name
+         *
+         * @param values Variable values. These are converted using {@link String#valueOf(Object)}
+         * @return Created builder
+         * @throws IllegalArgumentException If a variable is missing
+         */
+        @NotNull public WrappedRequestBuilder newRequest(@NotNull final Map<String, ?> values) {
+            Objects.requireNonNull(values, "Values may not be null");
+            final Object[] ordered = new Object[this.variables.length];
+            for (int i = 0; i < this.variables.length; i++) {
+                final Object value = values.get(this.variables[i]);
+                if (value == null) {
+                    throw new IllegalArgumentException(String.format("No value supplied for variable '%s'",
+                        this.variables[i]));
+                }
+                ordered[i] = value;
+            }
+            return this.expand(ordered);
+        }
+
+        @NotNull private WrappedRequestBuilder expand(@NotNull final Object[] values) {
+            final StringBuilder file = new StringBuilder(64);
+            for (int i = 0; i < values.length; i++) {
+                file.append(this.literals[i]);
+                percentEncode(file, String.valueOf(Objects.requireNonNull(values[i], "Values may not be null")));
+            }
+            file.append(this.literals[values.length]);
+            try {
+                final WrappedRequestBuilder request = new WrappedRequestBuilder(this.prototype,
+                    new URL(this.origin, file.toString()));
+                request.routed = false;
+                request.parentResolved = false;
+                return request;
+            } catch (final MalformedURLException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
     }
 
 }
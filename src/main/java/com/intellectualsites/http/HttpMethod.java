@@ -26,7 +26,7 @@ package com.intellectualsites.http;
 /**
  * HTTP methods
  */
-enum HttpMethod {
+public enum HttpMethod {
 
     /**
      * Post requests are used to handle data
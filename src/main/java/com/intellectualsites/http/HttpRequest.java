@@ -26,16 +26,24 @@ package com.intellectualsites.http;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import javax.net.ssl.HttpsURLConnection;
 import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
@@ -46,6 +54,7 @@ import java.util.function.Supplier;
 final class HttpRequest {
 
     private static final int READ_TIMEOUT = 3600000;
+    private static final String TOKEN_SYMBOLS = "!#$%&'*+-.^_`|~";
 
     @NotNull private final HttpMethod method;
     @NotNull private final URL url;
@@ -53,16 +62,33 @@ final class HttpRequest {
     @NotNull private final EntityMapper mapper;
     @Nullable private final Supplier<Object> inputSupplier;
     @NotNull private final Consumer<Throwable> throwableConsumer;
+    @Nullable private final BodyHandler bodyHandler;
+    @Nullable private final BodySource bodySource;
+    @Nullable private final TlsConfiguration tlsConfiguration;
+    @Nullable private final ResponseBufferPool responsePool;
+    @Nullable private final Class<?> eagerEntity;
+    @Nullable private final CancellationToken cancellation;
+    @Nullable private final RequestListener listener;
 
     private HttpRequest(@NotNull final HttpMethod method, @NotNull final URL url, @NotNull final Headers headers,
         @Nullable Supplier<Object> inputSupplier, @NotNull final EntityMapper mapper,
-        @NotNull final Consumer<Throwable> throwableConsumer) {
+        @NotNull final Consumer<Throwable> throwableConsumer, @Nullable final BodyHandler bodyHandler,
+        @Nullable final BodySource bodySource, @Nullable final TlsConfiguration tlsConfiguration,
+        @Nullable final ResponseBufferPool responsePool, @Nullable final Class<?> eagerEntity,
+        @Nullable final CancellationToken cancellation, @Nullable final RequestListener listener) {
         this.method = method;
         this.url = url;
         this.headers = headers;
         this.inputSupplier = inputSupplier;
         this.mapper = mapper;
         this.throwableConsumer = throwableConsumer;
+        this.bodyHandler = bodyHandler;
+        this.bodySource = bodySource;
+        this.tlsConfiguration = tlsConfiguration;
+        this.responsePool = responsePool;
+        this.eagerEntity = eagerEntity;
+        this.cancellation = cancellation;
+        this.listener = listener;
     }
 
     /**
@@ -74,9 +100,129 @@ final class HttpRequest {
         return new Builder();
     }
 
+    @NotNull HttpMethod getMethod() {
+        return this.method;
+    }
+
+    @NotNull URL getURL() {
+        return this.url;
+    }
+
+    @NotNull Headers getHeaders() {
+        return this.headers;
+    }
+
+    @NotNull EntityMapper getMapper() {
+        return this.mapper;
+    }
+
+    @Nullable BodyHandler getBodyHandler() {
+        return this.bodyHandler;
+    }
+
+    @Nullable BodySource getBodySource() {
+        return this.bodySource;
+    }
+
+    @Nullable ResponseBufferPool getResponsePool() {
+        return this.responsePool;
+    }
+
+    @Nullable Class<?> getEagerEntity() {
+        return this.eagerEntity;
+    }
+
+    @Nullable CancellationToken getCancellation() {
+        return this.cancellation;
+    }
+
+    @Nullable RequestListener getListener() {
+        return this.listener;
+    }
+
+    /**
+     * Get the request entity, serialized using the entity mapper. If the request has a Content-Type
+     * header, the serializer for that media type is preferred
+     *
+     * @return Serialized entity, or {@code null} if the request has no input
+     * @throws IllegalArgumentException If there is no serializer for the input type
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    @Nullable Entity createEntity() {
+        if (this.inputSupplier == null) {
+            return null;
+        }
+        final Object object = this.inputSupplier.get();
+        if (object == null) {
+            return null;
+        }
+        final EntityMapper.EntitySerializer serializer = this.mapper.getSerializer(object.getClass(),
+            this.getRequestContentType()).orElseThrow(() -> new IllegalArgumentException(String
+                .format("There is no registered serializer for type '%s'",
+                    object.getClass().getCanonicalName())));
+        return new Entity(serializer.getContentType(), serializer.serialize(object));
+    }
+
+    @Nullable private ContentType getRequestContentType() {
+        final String contentType = this.headers.getHeader("Content-Type");
+        if (contentType.isEmpty()) {
+            return null;
+        }
+        try {
+            return ContentType.parse(contentType);
+        } catch (final IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Execute the request using a {@link NioTransport}, blocking until it completes
+     *
+     * @param transport Transport
+     * @return The response, or {@code null} if the request failed
+     */
+    @Nullable HttpResponse executeRequest(@NotNull final NioTransport transport) {
+        try {
+            return transport.execute(this).get();
+        } catch (final ExecutionException e) {
+            throwableConsumer.accept(e.getCause());
+        } catch (final CancellationException e) {
+            throwableConsumer.accept(e);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throwableConsumer.accept(e);
+        }
+        return null;
+    }
+
     @Nullable HttpResponse executeRequest() throws IOException {
-        final HttpURLConnection httpURLConnection = (HttpURLConnection) this.url.openConnection();
+        final RequestListener listener = this.listener;
+        long mark = listener == null ? 0L : System.nanoTime();
+        final HttpURLConnection httpURLConnection;
         try {
+            httpURLConnection = (HttpURLConnection) this.url.openConnection();
+        } catch (final IOException e) {
+            if (listener != null) {
+                listener.complete(0, 0L, 0L, e);
+            }
+            throw e;
+        }
+        // Connections whose response body was read completely are returned to the
+        // keep-alive cache, and should therefore not be disconnected
+        boolean reusable = false;
+        long requestBytes = 0L;
+        // Cancelling closes the socket, which makes the blocked read or write fail. Once the body is
+        // being read, disconnecting waits for the blocked read to return, so it is done on another
+        // thread rather than by the caller of cancel()
+        final Runnable disconnect = () -> Disconnector.INSTANCE.execute(httpURLConnection::disconnect);
+        if (this.cancellation != null) {
+            this.cancellation.bind(disconnect);
+        }
+        try {
+            this.checkCancelled();
+            if (this.tlsConfiguration != null && httpURLConnection instanceof HttpsURLConnection) {
+                this.tlsConfiguration.configure((HttpsURLConnection) httpURLConnection);
+            }
             httpURLConnection.setRequestMethod(this.method.name());
             httpURLConnection.setDoOutput(this.method.hasBody());
             httpURLConnection.setUseCaches(false);
@@ -98,31 +244,57 @@ final class HttpRequest {
                 }
             }
             httpURLConnection.setDoInput(true);
-            httpURLConnection.setDoOutput(this.inputSupplier != null);
-            if (this.inputSupplier != null) {
-                final Object object = this.inputSupplier.get();
-                if (object != null) {
-                    final EntityMapper.EntitySerializer serializer =
-                        this.mapper.getSerializer(object.getClass()).orElseThrow(() -> new IllegalArgumentException(String
-                            .format("There is no registered serializer for type '%s'",
-                                object.getClass().getCanonicalName())));
-                    if (this.headers.getHeader("Content-Type").isEmpty()) {
-                        httpURLConnection.setRequestProperty("Content-Type", serializer.getContentType().toString());
-                    }
-                    final byte[] bytes = serializer.serialize(object);
-                    httpURLConnection.setRequestProperty("Content-Length", Integer.toString(bytes.length));
-                    try (final DataOutputStream dataOutputStream = new DataOutputStream(
-                        httpURLConnection.getOutputStream())) {
-                        dataOutputStream.write(bytes);
-                        dataOutputStream.flush();
-                    }
+            httpURLConnection.setDoOutput(this.inputSupplier != null || this.bodySource != null);
+            final Entity entity = this.createEntity();
+            if (listener != null && entity != null) {
+                mark = phase(listener, RequestPhase.SERIALIZE, mark);
+            }
+            if (this.bodySource != null) {
+                if (this.headers.getHeader("Content-Type").isEmpty()) {
+                    httpURLConnection.setRequestProperty("Content-Type", this.bodySource.contentType().toString());
                 }
+                // Stream the body, so that the connection does not buffer it in memory
+                requestBytes = this.bodySource.contentLength();
+                if (requestBytes >= 0) {
+                    httpURLConnection.setFixedLengthStreamingMode(requestBytes);
+                } else {
+                    httpURLConnection.setChunkedStreamingMode(0);
+                }
+            } else if (entity != null) {
+                if (this.headers.getHeader("Content-Type").isEmpty()) {
+                    httpURLConnection.setRequestProperty("Content-Type", entity.getContentType().toString());
+                }
+                requestBytes = entity.getBytes().length;
+                httpURLConnection.setRequestProperty("Content-Length", Integer.toString(entity.getBytes().length));
             }
             httpURLConnection.connect();
+            this.checkCancelled();
+            if (listener != null) {
+                mark = phase(listener, RequestPhase.CONNECT, mark);
+            }
+            if (this.bodySource != null) {
+                try (final ReadableByteChannel source = this.bodySource.open();
+                     final WritableByteChannel target = Channels.newChannel(httpURLConnection.getOutputStream())) {
+                    BodySource.copy(source, target, requestBytes);
+                }
+            } else if (entity != null) {
+                try (final DataOutputStream dataOutputStream = new DataOutputStream(
+                    httpURLConnection.getOutputStream())) {
+                    dataOutputStream.write(entity.getBytes());
+                    dataOutputStream.flush();
+                }
+            }
+            if (listener != null && (this.bodySource != null || entity != null)) {
+                mark = phase(listener, RequestPhase.SEND, mark);
+            }
 
+            final int status = httpURLConnection.getResponseCode();
+            if (listener != null) {
+                mark = phase(listener, RequestPhase.WAIT, mark);
+            }
             final InputStream stream;
             if (this.method.hasBody()) {
-                if (httpURLConnection.getResponseCode() >= 400) {
+                if (status >= 400) {
                     stream = httpURLConnection.getErrorStream();
                 } else {
                     stream = httpURLConnection.getInputStream();
@@ -132,19 +304,32 @@ final class HttpRequest {
             }
 
             final HttpResponse.Builder builder = HttpResponse.builder()
-                .withStatus(httpURLConnection.getResponseCode())
+                .withStatus(status)
                 .withStatusMessage(httpURLConnection.getResponseMessage())
-                .withEntityMapper(this.mapper);
-            for (final Map.Entry<String, List<String>> entry : httpURLConnection.getHeaderFields().entrySet()) {
-                if (entry.getKey() == null) {
-                    continue;
+                .withEntityMapper(this.mapper)
+                .withBufferPool(this.responsePool)
+                .withHeaders(Headers.lazy(headerSource(httpURLConnection.getHeaderFields())));
+
+            if (stream != null && this.bodyHandler != null && this.bodyHandler.accepts(status)) {
+                try (final InputStream copy = stream) {
+                    this.bodyHandler.transfer(copy, httpURLConnection.getContentLengthLong());
                 }
-                for (final String header : entry.getValue()) {
-                    builder.withHeader(entry.getKey(), header);
+                reusable = true;
+            } else if (stream != null && this.responsePool != null) {
+                final ResponseBufferPool.Lease lease = this.responsePool.lease(httpURLConnection.getContentLengthLong());
+                try (final InputStream copy = stream) {
+                    final byte[] chunk = new byte[8192];
+                    int read;
+                    while ((read = copy.read(chunk)) != -1) {
+                        lease.write(chunk, 0, read);
+                    }
+                } catch (final Throwable throwable) {
+                    lease.release();
+                    throw throwable;
                 }
-            }
-
-            if (stream != null) {
+                builder.withBody(lease);
+                reusable = true;
+            } else if (stream != null) {
                 try (final InputStream copy = stream; final ByteArrayOutputStream bos = new ByteArrayOutputStream()) {
                     int b;
                     while ((b = stream.read()) != -1) {
@@ -152,30 +337,198 @@ final class HttpRequest {
                     }
                     builder.withBody(bos.toByteArray());
                 }
+                reusable = true;
+            }
+            if (listener != null && stream != null) {
+                mark = phase(listener, RequestPhase.RECEIVE, mark);
             }
 
-            return builder.build();
+            final HttpResponse response = builder.build();
+            if (this.eagerEntity != null) {
+                response.prefetchEntity(this.eagerEntity);
+                if (listener != null) {
+                    phase(listener, RequestPhase.DESERIALIZE, mark);
+                }
+            }
+            if (listener != null) {
+                listener.complete(status, requestBytes, response.getBody().remaining(), null);
+            }
+            return response;
         } catch (final Throwable throwable) {
-            throwableConsumer.accept(throwable);
+            final Throwable failure;
+            if (this.cancellation != null && this.cancellation.isCancelled()
+                && !(throwable instanceof RequestCancelledException)) {
+                failure = new RequestCancelledException(throwable);
+            } else {
+                failure = throwable;
+            }
+            if (listener != null) {
+                listener.complete(0, requestBytes, 0L, failure);
+            }
+            throwableConsumer.accept(failure);
         } finally {
-            if (httpURLConnection != null) {
+            if (this.cancellation != null) {
+                this.cancellation.unbind(disconnect);
+            }
+            if (!reusable) {
                 httpURLConnection.disconnect();
             }
         }
         return null;
     }
 
+    /**
+     * Report the end of a phase
+     *
+     * @param listener Listener
+     * @param phase    Phase that ended
+     * @param start    Start of the phase
+     * @return End of the phase, which is the start of the next one
+     */
+    static long phase(@NotNull final RequestListener listener, @NotNull final RequestPhase phase, final long start) {
+        final long end = System.nanoTime();
+        listener.phase(phase, start, end);
+        return end;
+    }
+
+    /**
+     * Validate a request header. Names have to be RFC 7230 tokens, and values may not contain
+     * line breaks, which would otherwise start additional headers, or another request, in the
+     * request head
+     *
+     * @param key   Header key
+     * @param value Header value
+     * @throws IllegalArgumentException If the key or value is invalid
+     */
+    static void checkHeader(@NotNull final String key, @NotNull final String value) {
+        if (key.isEmpty()) {
+            throw new IllegalArgumentException("Header keys may not be empty");
+        }
+        for (int i = 0; i < key.length(); i++) {
+            final char character = key.charAt(i);
+            if (character >= 0x7F || (!Character.isLetterOrDigit(character) && TOKEN_SYMBOLS.indexOf(character) == -1)) {
+                throw new IllegalArgumentException(String.format("Illegal character in header key '%s'", key));
+            }
+        }
+        for (int i = 0; i < value.length(); i++) {
+            final char character = value.charAt(i);
+            if (character == '\r' || character == '\n' || character == '\0') {
+                throw new IllegalArgumentException(String.format("Illegal character in the value of header '%s'", key));
+            }
+        }
+    }
+
+    private void checkCancelled() {
+        if (this.cancellation != null && this.cancellation.isCancelled()) {
+            throw new RequestCancelledException();
+        }
+    }
+
+    /**
+     * Read response headers from the header fields of a {@link HttpURLConnection}. The
+     * status line is stored under the {@code null} key, and is skipped
+     *
+     * @param headerFields Header fields
+     * @return Header source
+     */
+    @NotNull private static Headers.Source headerSource(@NotNull final Map<String, List<String>> headerFields) {
+        return action -> {
+            for (final Map.Entry<String, List<String>> entry : headerFields.entrySet()) {
+                if (entry.getKey() == null) {
+                    continue;
+                }
+                for (final String header : entry.getValue()) {
+                    action.accept(entry.getKey(), header);
+                }
+            }
+        };
+    }
+
+
+    /**
+     * Serialized request entity
+     */
+    static final class Entity {
+
+        private final ContentType contentType;
+        private final byte[] bytes;
+
+        private Entity(@NotNull final ContentType contentType, @NotNull final byte[] bytes) {
+            this.contentType = contentType;
+            this.bytes = bytes;
+        }
+
+        @NotNull ContentType getContentType() {
+            return this.contentType;
+        }
+
+        @NotNull byte[] getBytes() {
+            return this.bytes;
+        }
+
+    }
+
+
+    /**
+     * Disconnects cancelled connections
+     */
+    private static final class Disconnector {
+
+        private static final ExecutorService INSTANCE = Executors.newCachedThreadPool(runnable -> {
+            final Thread thread = new Thread(runnable, "HTTP4J-Disconnector");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+    }
+
 
     static final class Builder {
 
-        private final Headers headers = Headers.newInstance();
+        private final Headers headers;
         private EntityMapper mapper;
         private HttpMethod method;
         private URL url;
         private Supplier<Object> inputSupplier;
         private Consumer<Throwable> throwableConsumer = Throwable::printStackTrace;
+        private BodyHandler bodyHandler;
+        private BodySource bodySource;
+        private TlsConfiguration tlsConfiguration;
+        private ResponseBufferPool responsePool;
+        private Class<?> eagerEntity;
+        private CancellationToken cancellation;
+        private RequestListener listener;
+        private TraceContext traceParent;
+        private String urlTemplate;
 
         private Builder() {
+            this.headers = Headers.newInstance();
+        }
+
+        private Builder(@NotNull final Builder other) {
+            this.headers = other.headers.copy();
+            this.mapper = other.mapper;
+            this.method = other.method;
+            this.url = other.url;
+            this.inputSupplier = other.inputSupplier;
+            this.throwableConsumer = other.throwableConsumer;
+            this.bodyHandler = other.bodyHandler;
+            this.bodySource = other.bodySource;
+            this.tlsConfiguration = other.tlsConfiguration;
+            this.responsePool = other.responsePool;
+            this.eagerEntity = other.eagerEntity;
+            this.traceParent = other.traceParent;
+            this.urlTemplate = other.urlTemplate;
+        }
+
+        /**
+         * Create a copy of this builder. Modifications made to
+         * the copy will not affect this builder
+         *
+         * @return Builder copy
+         */
+        @NotNull Builder copy() {
+            return new Builder(this);
         }
 
         /**
@@ -211,15 +564,94 @@ final class HttpRequest {
             return this;
         }
 
+        @Nullable URL getURL() {
+            return this.url;
+        }
+
+        @Nullable HttpMethod getMethod() {
+            return this.method;
+        }
+
+        @Nullable EntityMapper getMapper() {
+            return this.mapper;
+        }
+
+        @Nullable Class<?> getEagerEntity() {
+            return this.eagerEntity;
+        }
+
+        boolean hasHeader(@NotNull final String key) {
+            return !this.headers.getHeaders(key).isEmpty();
+        }
+
+        @NotNull String getHeader(@NotNull final String key) {
+            return this.headers.getHeader(key);
+        }
+
+        /**
+         * Replace all values of a header
+         *
+         * @param key   Header key
+         * @param value Header value
+         * @return Builder instance
+         */
+        @NotNull Builder setHeader(@NotNull final String key, @NotNull final String value) {
+            this.headers.removeHeader(Objects.requireNonNull(key, "Key may not be null"));
+            return this.withHeader(key, value);
+        }
+
+        /**
+         * Remove all values of a header
+         *
+         * @param key Header key
+         * @return Builder instance
+         */
+        @NotNull Builder removeHeader(@NotNull final String key) {
+            this.headers.removeHeader(Objects.requireNonNull(key, "Key may not be null"));
+            return this;
+        }
+
+        @Nullable String getURLTemplate() {
+            return this.urlTemplate;
+        }
+
+        /**
+         * Specify the template that the URL was expanded from. Copies of the builder share the template
+         *
+         * @param urlTemplate URL template, or {@code null} if the URL was not created from a template
+         * @return Builder instance
+         */
+        @NotNull Builder withURLTemplate(@Nullable final String urlTemplate) {
+            this.urlTemplate = urlTemplate;
+            return this;
+        }
+
+        @Nullable TraceContext getTraceParent() {
+            return this.traceParent;
+        }
+
+        /**
+         * Specify the trace that the request belongs to. Copies of the builder share the parent
+         *
+         * @param traceParent Parent context, or {@code null} if the request starts a new trace
+         * @return Builder instance
+         */
+        @NotNull Builder withTraceParent(@Nullable final TraceContext traceParent) {
+            this.traceParent = traceParent;
+            return this;
+        }
+
         /**
          * Add a header to the request
          *
          * @param key Header key
          * @param value Header value
          * @return Builder instance
+         * @throws IllegalArgumentException If the key is not a token, or the value contains a line break
          */
         @NotNull Builder withHeader(@NotNull final String key, @NotNull final String value) {
-            this.headers.addHeader(Objects.requireNonNull(key, "Key may not be null"), Objects.requireNonNull(value, "Value may not be null"));
+            checkHeader(Objects.requireNonNull(key, "Key may not be null"), Objects.requireNonNull(value, "Value may not be null"));
+            this.headers.addHeader(key, value);
             return this;
         }
 
@@ -231,6 +663,19 @@ final class HttpRequest {
          */
         @NotNull Builder withInput(@NotNull final Supplier<Object> inputSupplier) {
             this.inputSupplier = Objects.requireNonNull(inputSupplier, "Input supplier may not be null");
+            this.bodySource = null;
+            return this;
+        }
+
+        /**
+         * Add a streamed body to the request
+         *
+         * @param bodySource Body source
+         * @return Builder instance
+         */
+        @NotNull Builder withBody(@NotNull final BodySource bodySource) {
+            this.bodySource = Objects.requireNonNull(bodySource, "Body source may not be null");
+            this.inputSupplier = null;
             return this;
         }
 
@@ -245,13 +690,68 @@ final class HttpRequest {
             return this;
         }
 
+        /**
+         * Specify a handler that receives the response body instead of it being buffered
+         *
+         * @param bodyHandler Body handler
+         * @return Builder instance
+         */
+        @NotNull Builder withBodyHandler(@NotNull final BodyHandler bodyHandler) {
+            this.bodyHandler = Objects.requireNonNull(bodyHandler, "Body handler may not be null");
+            return this;
+        }
+
+        @NotNull Builder withTlsConfiguration(@NotNull final TlsConfiguration tlsConfiguration) {
+            this.tlsConfiguration = Objects.requireNonNull(tlsConfiguration, "TLS configuration may not be null");
+            return this;
+        }
+
+        @NotNull Builder withResponsePool(@NotNull final ResponseBufferPool responsePool) {
+            this.responsePool = Objects.requireNonNull(responsePool, "Response pool may not be null");
+            return this;
+        }
+
+        /**
+         * Deserialize the response entity on the thread that reads the response
+         *
+         * @param type Entity type
+         * @return Builder instance
+         */
+        @NotNull Builder withEagerEntity(@NotNull final Class<?> type) {
+            this.eagerEntity = Objects.requireNonNull(type, "Type may not be null");
+            return this;
+        }
+
+        /**
+         * Abort the request once the token is cancelled. Copies of the builder do not share the token
+         *
+         * @param cancellation Cancellation token
+         * @return Builder instance
+         */
+        @NotNull Builder withCancellation(@NotNull final CancellationToken cancellation) {
+            this.cancellation = Objects.requireNonNull(cancellation, "Cancellation token may not be null");
+            return this;
+        }
+
+        /**
+         * Observe the execution of the request. Copies of the builder do not share the listener
+         *
+         * @param listener Listener, or {@code null} to not observe the request
+         * @return Builder instance
+         */
+        @NotNull Builder withListener(@Nullable final RequestListener listener) {
+            this.listener = listener;
+            return this;
+        }
+
         @NotNull HttpRequest build() {
             Objects.requireNonNull(this.method, "No method was supplied");
             Objects.requireNonNull(this.url, "No URL was supplied");
             Objects.requireNonNull(this.mapper, "No mapper was supplied");
             Objects.requireNonNull(this.throwableConsumer, "No throwable consumer was supplied");
             return new HttpRequest(this.method, this.url, this.headers,
-                this.inputSupplier, this.mapper, this.throwableConsumer);
+                this.inputSupplier, this.mapper, this.throwableConsumer, this.bodyHandler, this.bodySource,
+                this.tlsConfiguration, this.responsePool, this.eagerEntity, this.cancellation, this.listener);
         }
 
     }
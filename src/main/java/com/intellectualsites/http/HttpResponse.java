@@ -24,30 +24,54 @@
 package com.intellectualsites.http;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.nio.ByteBuffer;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
- * A HTTP response
+ * A HTTP response. If the client uses {@link HttpClient.Builder#withPooledResponseBuffers(boolean, boolean)
+ * pooled response buffers}, the response must be {@link #close() closed} once its body is no longer
+ * needed, so that the buffer can be reused
  */
-public final class HttpResponse {
+public final class HttpResponse implements AutoCloseable {
+
+    private static final byte[] EMPTY = new byte[0];
 
     private final Headers headers;
     private final EntityMapper entityMapper;
     private final int code;
     private final String status;
     private final byte[] body;
+    @Nullable private final ResponseBufferPool.Lease lease;
+    @Nullable private final ByteBuffer pooledBody;
+    private final ConcurrentMap<Class<?>, Object> entities = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+    private volatile ContentType contentType;
+    private volatile boolean contentTypeResolved;
 
     private HttpResponse(final int code,
                          @NotNull final String status,
                          @NotNull final Headers headers,
                          @NotNull final EntityMapper entityMapper,
-                         @NotNull final byte[] body) {
+                         @NotNull final byte[] body,
+                         @Nullable final ResponseBufferPool.Lease lease) {
         this.status = status;
         this.code = code;
         this.headers = headers;
         this.entityMapper = entityMapper;
-        this.body = body;
+        if (lease == null) {
+            this.body = body;
+            this.lease = null;
+            this.pooledBody = null;
+        } else {
+            this.body = EMPTY;
+            this.lease = lease;
+            this.pooledBody = lease.complete();
+            lease.track(this);
+        }
     }
 
     /**
@@ -78,12 +102,41 @@ public final class HttpResponse {
     }
 
     /**
-     * Get the raw response body
+     * Get the raw response body. If the body is held in a pooled buffer, this
+     * returns a copy of it
      *
      * @return Response body
+     * @throws IllegalStateException If the response was closed, and its body was pooled
      */
     @NotNull public byte[] getRawResponse() {
-        return this.body;
+        if (this.pooledBody == null) {
+            return this.body;
+        }
+        final ByteBuffer body = this.getPooledBody();
+        final byte[] bytes = new byte[body.remaining()];
+        body.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Get a read-only view of the response body. If the body is held in a pooled buffer,
+     * the view is only valid until the response is {@link #close() closed}
+     *
+     * @return Response body
+     * @throws IllegalStateException If the response was closed, and its body was pooled
+     */
+    @NotNull public ByteBuffer getBody() {
+        if (this.pooledBody == null) {
+            return ByteBuffer.wrap(this.body).asReadOnlyBuffer();
+        }
+        return this.getPooledBody().asReadOnlyBuffer();
+    }
+
+    @NotNull private ByteBuffer getPooledBody() {
+        if (this.closed) {
+            throw new IllegalStateException("The response has been closed");
+        }
+        return Objects.requireNonNull(this.pooledBody).duplicate();
     }
 
     /**
@@ -96,7 +149,9 @@ public final class HttpResponse {
     }
 
     /**
-     * Get the response entity and map it to a specific type
+     * Get the response entity and map it to a specific type. The body is only deserialized
+     * once for each type, and later calls return the same instance. Entities that are shared
+     * by multiple consumers should therefore not be modified
      *
      * @param returnType Return type class
      * @param <T> Return type
@@ -104,28 +159,80 @@ public final class HttpResponse {
      * @throws IllegalArgumentException If no mapper exists for the type
      */
     @NotNull public <T> T getResponseEntity(@NotNull final Class<T> returnType) {
-        final String contentTypeString = this.headers.getOrDefault("content-type", null);
-        final ContentType contentType;
-        if (contentTypeString != null) {
-            contentType = ContentType.of(contentTypeString);
-        } else {
-            contentType = null;
+        final Object memoized = this.entities.get(returnType);
+        if (memoized != null) {
+            return returnType.cast(memoized);
         }
-
-        return this.entityMapper.getDeserializer(returnType).map(deserializer ->
-            deserializer.deserialize(contentType, this.getRawResponse()))
+        final ContentType contentType = this.getContentType();
+        final T entity = this.entityMapper.getDeserializer(returnType, contentType).map(deserializer -> this.pooledBody == null ?
+            deserializer.deserialize(contentType, this.body) : deserializer.deserialize(contentType, this.getPooledBody()))
             .orElseThrow(() -> new IllegalStateException(String.format("Could not deserialize response into type '%s'",
                 returnType.getCanonicalName())));
+        // If the entity was deserialized concurrently, the first instance wins
+        final Object previous = this.entities.putIfAbsent(returnType, entity);
+        return previous == null ? entity : returnType.cast(previous);
+    }
+
+    /**
+     * Deserialize the response entity ahead of time, so that a later call to {@link #getResponseEntity(Class)}
+     * returns immediately. Failures are ignored, and are thrown once the entity is requested
+     *
+     * @param type Entity type
+     */
+    void prefetchEntity(@NotNull final Class<?> type) {
+        try {
+            this.getResponseEntity(type);
+        } catch (final RuntimeException ignored) {
+        }
+    }
+
+    /**
+     * Get the parsed content type of the response. The header is only parsed once
+     *
+     * @return Content type, or {@code null} if the server did not send a valid one
+     */
+    @Nullable public ContentType getContentType() {
+        if (!this.contentTypeResolved) {
+            this.contentType = this.parseContentType();
+            this.contentTypeResolved = true;
+        }
+        return this.contentType;
+    }
+
+    @Nullable private ContentType parseContentType() {
+        final String contentTypeString = this.headers.getOrDefault("content-type", null);
+        if (contentTypeString == null) {
+            return null;
+        }
+        try {
+            return ContentType.parse(contentTypeString);
+        } catch (final IllegalArgumentException ignored) {
+            // Malformed content types are treated as if none were sent
+            return null;
+        }
+    }
+
+    /**
+     * Return the pooled body buffer, if any. The body may not be accessed after
+     * the response has been closed. Closing a response more than once has no effect
+     */
+    @Override public void close() {
+        this.closed = true;
+        if (this.lease != null) {
+            this.lease.release();
+        }
     }
 
 
     static class Builder {
 
-        private final Headers headers = Headers.newInstance();
+        private Headers headers = Headers.newInstance();
         private int status;
         private String statusMessage;
         private EntityMapper entityMapper;
-        private byte[] bytes = new byte[0];
+        private byte[] bytes = EMPTY;
+        private ResponseBufferPool bufferPool;
+        private ResponseBufferPool.Lease lease;
 
         private Builder() {
         }
@@ -135,6 +242,10 @@ public final class HttpResponse {
             return this;
         }
 
+        int getStatus() {
+            return this.status;
+        }
+
         @NotNull Builder withStatusMessage(@NotNull final String statusMessage) {
             this.statusMessage = statusMessage;
             return this;
@@ -146,6 +257,11 @@ public final class HttpResponse {
             return this;
         }
 
+        @NotNull Builder withHeaders(@NotNull final Headers headers) {
+            this.headers = Objects.requireNonNull(headers, "Headers may not be null");
+            return this;
+        }
+
         @NotNull Builder withEntityMapper(@NotNull final EntityMapper entityMapper) {
             this.entityMapper = Objects.requireNonNull(entityMapper, "Mapper may not be null");
             return this;
@@ -156,9 +272,23 @@ public final class HttpResponse {
             return this;
         }
 
+        @NotNull Builder withBody(@NotNull final ResponseBufferPool.Lease lease) {
+            this.lease = Objects.requireNonNull(lease, "Lease may not be null");
+            return this;
+        }
+
+        @NotNull Builder withBufferPool(@Nullable final ResponseBufferPool bufferPool) {
+            this.bufferPool = bufferPool;
+            return this;
+        }
+
+        @Nullable ResponseBufferPool getBufferPool() {
+            return this.bufferPool;
+        }
+
         @NotNull HttpResponse build() {
             return new HttpResponse(this.status, this.statusMessage,
-                this.headers, this.entityMapper, this.bytes);
+                this.headers, this.entityMapper, this.bytes, this.lease);
         }
 
     }
@@ -0,0 +1,111 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 IntellectualSites
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.intellectualsites.http;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.net.URL;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Wraps the execution of every request made by a client. Interceptors are invoked in
+ * the order in which they were {@link HttpClient.Builder#withInterceptor(Interceptor) registered},
+ * and each of them decides whether, and when, the rest of the chain is executed. This lets an
+ * interceptor measure how long a request takes, answer it from a cache without contacting the
+ * server, or perform asynchronous work (such as fetching a token) before the request is sent.
+ * <p>
+ * Example of an interceptor that measures the duration of a request:
+ * <pre>{@code
+ * chain -> {
+ *     final long start = System.nanoTime();
+ *     return chain.proceed().whenComplete((response, throwable) ->
+ *         record(chain.getURL(), System.nanoTime() - start));
+ * }
+ * }</pre>
+ * <p>
+ * Interceptors run after the client {@link HttpClient.Builder#withDecorator(java.util.function.Consumer)
+ * decorators}, and before the response consumers. They may be invoked by any thread, and must not
+ * block if the {@link HttpClient.Builder#withNonBlockingTransport(int) non-blocking transport} is used
+ */
+@FunctionalInterface
+public interface Interceptor {
+
+    /**
+     * Intercept a request
+     *
+     * @param chain Remaining chain
+     * @return Future that completes with the response, or exceptionally if the request failed
+     */
+    @NotNull CompletableFuture<HttpResponse> intercept(@NotNull Chain chain);
+
+
+    /**
+     * The part of the chain that follows an interceptor
+     */
+    interface Chain {
+
+        /**
+         * Get the request. Modifications only affect the interceptors that follow,
+         * and must be made before {@link #proceed()} is called
+         *
+         * @return Request builder
+         */
+        @NotNull HttpClient.WrappedRequestBuilder getRequest();
+
+        /**
+         * Get the HTTP method of the request
+         *
+         * @return HTTP method
+         */
+        @NotNull HttpMethod getMethod();
+
+        /**
+         * Get the URL of the request
+         *
+         * @return Request URL
+         */
+        @NotNull URL getURL();
+
+        /**
+         * Execute the rest of the chain, and eventually the request itself
+         *
+         * @return Future that completes with the response
+         */
+        @NotNull CompletableFuture<HttpResponse> proceed();
+
+        /**
+         * Create a response without contacting the server. The response uses
+         * the entity mapper of the request
+         *
+         * @param status      Status code
+         * @param contentType Content type of the body, if any
+         * @param body        Response body
+         * @return Synthetic response
+         */
+        @NotNull HttpResponse respond(int status, @Nullable ContentType contentType, @NotNull byte[] body);
+
+    }
+
+}
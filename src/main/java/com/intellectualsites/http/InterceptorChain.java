@@ -0,0 +1,105 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 IntellectualSites
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.intellectualsites.http;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.net.URL;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Position in the {@link Interceptor interceptor} array of a client. The last
+ * position executes the request itself
+ */
+final class InterceptorChain implements Interceptor.Chain {
+
+    private final Interceptor[] interceptors;
+    private final int index;
+    private final HttpClient.WrappedRequestBuilder request;
+    private final Supplier<CompletableFuture<HttpResponse>> terminal;
+
+    /**
+     * Create a chain that starts at the first interceptor
+     *
+     * @param interceptors Interceptors
+     * @param request      Request
+     * @param terminal     Executes the request, once all interceptors have proceeded
+     */
+    InterceptorChain(@NotNull final Interceptor[] interceptors, @NotNull final HttpClient.WrappedRequestBuilder request,
+        @NotNull final Supplier<CompletableFuture<HttpResponse>> terminal) {
+        this(interceptors, 0, request, terminal);
+    }
+
+    private InterceptorChain(@NotNull final Interceptor[] interceptors, final int index,
+        @NotNull final HttpClient.WrappedRequestBuilder request,
+        @NotNull final Supplier<CompletableFuture<HttpResponse>> terminal) {
+        this.interceptors = interceptors;
+        this.index = index;
+        this.request = request;
+        this.terminal = terminal;
+    }
+
+    @NotNull @Override public HttpClient.WrappedRequestBuilder getRequest() {
+        return this.request;
+    }
+
+    @NotNull @Override public HttpMethod getMethod() {
+        return this.request.getMethod();
+    }
+
+    @NotNull @Override public URL getURL() {
+        return this.request.getURL();
+    }
+
+    @NotNull @Override public CompletableFuture<HttpResponse> proceed() {
+        try {
+            if (this.index == this.interceptors.length) {
+                return this.terminal.get();
+            }
+            return Objects.requireNonNull(this.interceptors[this.index].intercept(new InterceptorChain(this.interceptors,
+                this.index + 1, this.request, this.terminal)), "Interceptor returned null");
+        } catch (final Throwable throwable) {
+            final CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+            future.completeExceptionally(throwable);
+            return future;
+        }
+    }
+
+    @NotNull @Override public HttpResponse respond(final int status, @Nullable final ContentType contentType,
+        @NotNull final byte[] body) {
+        final HttpResponse.Builder builder = HttpResponse.builder()
+            .withStatus(status)
+            .withStatusMessage("")
+            .withEntityMapper(this.request.getMapper())
+            .withBody(Objects.requireNonNull(body, "Body may not be null"));
+        if (contentType != null) {
+            builder.withHeader("Content-Type", contentType.toString());
+        }
+        return builder.build();
+    }
+
+}
@@ -0,0 +1,233 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 IntellectualSites
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.intellectualsites.http;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * Spreads the requests of a client across multiple base URLs. Requests are created using
+ * the primary (first) base URL, and are moved to the selected endpoint before they are
+ * executed. The balancer is the first interceptor of the client, so that it observes the
+ * outcome of every request, and ejects endpoints that fail repeatedly
+ */
+final class LoadBalancer implements Interceptor {
+
+    private final EndpointStats[] endpoints;
+    private final List<EndpointStats> view;
+    private final LoadBalancing strategy;
+    private final int failureThreshold;
+    private final long ejectionTime;
+    private final AtomicInteger next = new AtomicInteger();
+    @Nullable private ScheduledExecutorService healthChecker;
+
+    /**
+     * Create a new balancer
+     *
+     * @param baseURLs         Base URLs, without trailing slashes
+     * @param strategy         Selection strategy
+     * @param failureThreshold Consecutive failures after which an endpoint is ejected
+     * @param ejectionTime     Base ejection time
+     */
+    LoadBalancer(@NotNull final List<String> baseURLs, @NotNull final LoadBalancing strategy,
+        final int failureThreshold, @NotNull final Duration ejectionTime) {
+        this.endpoints = new EndpointStats[baseURLs.size()];
+        for (int i = 0; i < this.endpoints.length; i++) {
+            this.endpoints[i] = new EndpointStats(baseURLs.get(i));
+        }
+        this.view = Collections.unmodifiableList(Arrays.asList(this.endpoints));
+        this.strategy = strategy;
+        this.failureThreshold = failureThreshold;
+        this.ejectionTime = ejectionTime.toNanos();
+    }
+
+    @NotNull List<EndpointStats> getEndpoints() {
+        return this.view;
+    }
+
+    /**
+     * Move a request that was created using the primary base URL to the selected endpoint
+     *
+     * @param url Request URL
+     * @return Selected endpoint, and the URL of the request on that endpoint
+     */
+    @NotNull Route route(@NotNull final URL url) {
+        final EndpointStats endpoint = this.select();
+        final String primary = this.endpoints[0].getBaseURL();
+        final String spec = url.toString();
+        if (endpoint == this.endpoints[0] || !spec.startsWith(primary)) {
+            return new Route(endpoint, url);
+        }
+        try {
+            return new Route(endpoint, new URL(endpoint.getBaseURL() + spec.substring(primary.length())));
+        } catch (final MalformedURLException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    @NotNull private EndpointStats select() {
+        final List<EndpointStats> candidates = this.available();
+        switch (this.strategy) {
+            case LEAST_OUTSTANDING: {
+                // Start at a rotating offset, so that ties are spread evenly
+                final int offset = Math.floorMod(this.next.getAndIncrement(), candidates.size());
+                EndpointStats best = null;
+                for (int i = 0; i < candidates.size(); i++) {
+                    final EndpointStats candidate = candidates.get((offset + i) % candidates.size());
+                    if (best == null || candidate.getInFlight() < best.getInFlight()) {
+                        best = candidate;
+                    }
+                }
+                return best;
+            }
+            case POWER_OF_TWO_CHOICES: {
+                if (candidates.size() == 1) {
+                    return candidates.get(0);
+                }
+                final ThreadLocalRandom random = ThreadLocalRandom.current();
+                final int first = random.nextInt(candidates.size());
+                int second = random.nextInt(candidates.size() - 1);
+                if (second >= first) {
+                    second++;
+                }
+                final EndpointStats a = candidates.get(first);
+                final EndpointStats b = candidates.get(second);
+                return a.score() <= b.score() ? a : b;
+            }
+            default:
+                return candidates.get(Math.floorMod(this.next.getAndIncrement(), candidates.size()));
+        }
+    }
+
+    /**
+     * Get the endpoints that are not ejected. If all endpoints are ejected, they
+     * are all returned, as failing fast would not help anyone
+     *
+     * @return Available endpoints
+     */
+    @NotNull private List<EndpointStats> available() {
+        List<EndpointStats> available = null;
+        for (int i = 0; i < this.endpoints.length; i++) {
+            if (this.endpoints[i].isEjected()) {
+                if (available == null) {
+                    available = new ArrayList<>(Arrays.asList(this.endpoints).subList(0, i));
+                }
+            } else if (available != null) {
+                available.add(this.endpoints[i]);
+            }
+        }
+        if (available == null) {
+            return this.view;
+        }
+        return available.isEmpty() ? this.view : available;
+    }
+
+    @NotNull @Override public CompletableFuture<HttpResponse> intercept(@NotNull final Chain chain) {
+        final EndpointStats endpoint = chain.getRequest().getEndpoint();
+        if (endpoint == null) {
+            return chain.proceed();
+        }
+        final long start = System.nanoTime();
+        endpoint.start();
+        return chain.proceed().whenComplete((response, throwable) -> endpoint.finish(System.nanoTime() - start,
+            throwable != null || response.getStatusCode() >= 500, this.failureThreshold, this.ejectionTime));
+    }
+
+    /**
+     * Periodically probe every endpoint. Endpoints that fail the probe are ejected,
+     * and ejected endpoints that pass it are readmitted
+     *
+     * @param interval Interval between probes
+     * @param probe    Probe, which receives the base URL of the endpoint
+     */
+    void startHealthChecks(@NotNull final Duration interval, @NotNull final Predicate<String> probe) {
+        final AtomicInteger threadId = new AtomicInteger();
+        this.healthChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "HTTP4J-Health-Check-" + threadId.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.healthChecker.scheduleWithFixedDelay(() -> {
+            for (final EndpointStats endpoint : this.endpoints) {
+                boolean healthy;
+                try {
+                    healthy = probe.test(endpoint.getBaseURL());
+                } catch (final RuntimeException e) {
+                    healthy = false;
+                }
+                if (healthy) {
+                    endpoint.readmit();
+                } else {
+                    endpoint.eject(this.ejectionTime);
+                }
+            }
+        }, 0, interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    void close() {
+        if (this.healthChecker != null) {
+            this.healthChecker.shutdownNow();
+        }
+    }
+
+
+    /**
+     * Endpoint selected for a request
+     */
+    static final class Route {
+
+        private final EndpointStats endpoint;
+        private final URL url;
+
+        private Route(@NotNull final EndpointStats endpoint, @NotNull final URL url) {
+            this.endpoint = endpoint;
+            this.url = url;
+        }
+
+        @NotNull EndpointStats getEndpoint() {
+            return this.endpoint;
+        }
+
+        @NotNull URL getURL() {
+            return this.url;
+        }
+
+    }
+
+}
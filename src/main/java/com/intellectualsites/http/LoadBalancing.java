@@ -0,0 +1,51 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 IntellectualSites
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.intellectualsites.http;
+
+/**
+ * Determines which base URL a request is sent to, when a client has multiple.
+ * Endpoints that have been ejected as outliers are skipped, unless all of them are ejected
+ *
+ * @see HttpClient.Builder#withBaseURLs(LoadBalancing, String...)
+ */
+public enum LoadBalancing {
+
+    /**
+     * Send requests to each endpoint in turn
+     */
+    ROUND_ROBIN,
+
+    /**
+     * Send requests to the endpoint with the least requests in flight
+     */
+    LEAST_OUTSTANDING,
+
+    /**
+     * Pick two random endpoints, and send the request to the one with the lower product of
+     * average latency and requests in flight. This adapts to slow endpoints, without the
+     * herd behaviour of always picking the best endpoint
+     */
+    POWER_OF_TWO_CHOICES
+
+}
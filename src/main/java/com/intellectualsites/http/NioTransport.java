@@ -0,0 +1,901 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 IntellectualSites
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.intellectualsites.http;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Non-blocking HTTP/1.1 transport. Connections are multiplexed over a fixed amount
+ * of selector threads, and are kept alive between requests to the same host. Only
+ * plain HTTP is supported, HTTPS requests are performed using {@link java.net.HttpURLConnection}
+ */
+final class NioTransport {
+
+    private static final long CONNECT_TIMEOUT = 10000L;
+    private static final long READ_TIMEOUT = 3600000L;
+    private static final long IDLE_TIMEOUT = 30000L;
+    private static final long TICK_INTERVAL = 1000L;
+    private static final int MAX_IDLE_PER_HOST = 64;
+    private static final int BUFFER_SIZE = 16384;
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] LAST_CHUNK = {'0', '\r', '\n', '\r', '\n'};
+    /**
+     * Headers that frame the message or manage the connection. These are written by the transport,
+     * and user supplied values are ignored, as they are by {@link java.net.HttpURLConnection}
+     */
+    private static final Set<String> FRAMING_HEADERS = new HashSet<>(Arrays.asList("connection", "content-length",
+        "keep-alive", "te", "trailer", "transfer-encoding", "upgrade"));
+
+    private final EventLoop[] loops;
+    private final AtomicInteger nextLoop = new AtomicInteger();
+    private final ConcurrentMap<String, Deque<Connection>> idleConnections = new ConcurrentHashMap<>();
+    private final BufferPool bufferPool;
+    @Nullable private final DnsCache dnsCache;
+    private volatile boolean closed;
+
+    /**
+     * Create a new transport and start its selector threads
+     *
+     * @param threads  Amount of selector threads
+     * @param dnsCache Cache used to resolve hosts, or {@code null} to resolve them using the JVM
+     * @throws IOException If a selector could not be opened
+     */
+    NioTransport(final int threads, @Nullable final DnsCache dnsCache) throws IOException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be positive");
+        }
+        this.bufferPool = new BufferPool(BUFFER_SIZE, threads * 4, true);
+        this.dnsCache = dnsCache;
+        this.loops = new EventLoop[threads];
+        try {
+            for (int i = 0; i < threads; i++) {
+                this.loops[i] = new EventLoop(Selector.open());
+            }
+        } catch (final IOException e) {
+            this.close();
+            throw e;
+        }
+        for (int i = 0; i < threads; i++) {
+            final Thread thread = new Thread(this.loops[i], "HTTP4J-Selector-" + (i + 1));
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Check whether the transport is able to perform a request to the given URL
+     *
+     * @param url URL
+     * @return {@code true} if the transport supports the URL
+     */
+    boolean supports(@NotNull final URL url) {
+        return "http".equalsIgnoreCase(url.getProtocol());
+    }
+
+    /**
+     * Execute a request. The request entity is serialized by the calling thread,
+     * everything else happens on the selector threads
+     *
+     * @param request Request to execute
+     * @return Future that completes with the response. Cancelling it closes the connection of the request
+     */
+    @NotNull CompletableFuture<HttpResponse> execute(@NotNull final HttpRequest request) {
+        final CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+        try {
+            final Exchange exchange = new Exchange(request, future);
+            future.whenComplete((response, throwable) -> {
+                if (throwable instanceof CancellationException) {
+                    exchange.abort();
+                }
+            });
+            final RequestListener listener = request.getListener();
+            if (listener != null) {
+                future.whenComplete((response, throwable) -> {
+                    if (throwable != null) {
+                        listener.complete(0, exchange.requestBytes(), 0L, throwable);
+                    }
+                });
+            }
+            final CancellationToken cancellation = request.getCancellation();
+            if (cancellation != null) {
+                final Runnable cancel = () -> future.completeExceptionally(new RequestCancelledException());
+                cancellation.bind(cancel);
+                future.whenComplete((response, throwable) -> cancellation.unbind(cancel));
+            }
+            if (!future.isDone()) {
+                this.dispatch(exchange, true);
+            }
+        } catch (final Throwable throwable) {
+            future.completeExceptionally(throwable);
+        }
+        return future;
+    }
+
+    /**
+     * Open idle connections to a host, which are then used by subsequent requests
+     *
+     * @param url         URL of the host
+     * @param connections Amount of connections to open
+     * @return Future that completes once all connections have been established
+     */
+    @SuppressWarnings("rawtypes")
+    @NotNull CompletableFuture<Void> prewarm(@NotNull final URL url, final int connections) {
+        final CompletableFuture<?>[] futures = new CompletableFuture[connections];
+        final String host = hostOf(url);
+        final int port = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+        for (int i = 0; i < connections; i++) {
+            final CompletableFuture<Void> future = new CompletableFuture<>();
+            futures[i] = future;
+            try {
+                final InetSocketAddress address = this.resolve(host, port, null);
+                final Connection connection = this.openConnection(host + ':' + port);
+                connection.loop.execute(() -> connection.open(address, future));
+            } catch (final Throwable throwable) {
+                future.completeExceptionally(throwable);
+            }
+        }
+        return CompletableFuture.allOf(futures);
+    }
+
+    /**
+     * Stop the selector threads, and close all connections. Requests that
+     * are in flight complete exceptionally
+     */
+    void close() {
+        this.closed = true;
+        for (final EventLoop loop : this.loops) {
+            if (loop != null) {
+                loop.selector.wakeup();
+            }
+        }
+    }
+
+    private void dispatch(@NotNull final Exchange exchange, final boolean allowReuse) throws IOException {
+        if (this.closed) {
+            throw new ClosedChannelException();
+        }
+        exchange.reset();
+        if (exchange.listener != null) {
+            exchange.mark = System.nanoTime();
+        }
+        if (allowReuse) {
+            final Deque<Connection> idle = this.idleConnections.get(exchange.poolKey);
+            Connection connection;
+            while (idle != null && (connection = idle.pollFirst()) != null) {
+                if (connection.channel.isOpen()) {
+                    final Connection reused = connection;
+                    reused.loop.execute(() -> reused.start(exchange));
+                    return;
+                }
+            }
+        }
+        if (exchange.address == null) {
+            exchange.address = this.resolve(exchange.host, exchange.port, exchange);
+        }
+        final Connection connection = this.openConnection(exchange.poolKey);
+        connection.loop.execute(() -> connection.connect(exchange));
+    }
+
+    @NotNull private InetSocketAddress resolve(@NotNull final String host, final int port,
+        @Nullable final Exchange exchange) throws UnknownHostException {
+        if (this.dnsCache != null) {
+            final List<InetAddress> addresses = this.dnsCache.lookup(host);
+            if (exchange != null) {
+                exchange.addresses = addresses;
+            }
+            return new InetSocketAddress(addresses.get(0), port);
+        }
+        final InetSocketAddress address = new InetSocketAddress(host, port);
+        if (address.isUnresolved()) {
+            throw new UnknownHostException(host);
+        }
+        return address;
+    }
+
+    @NotNull private Connection openConnection(@NotNull final String poolKey) throws IOException {
+        final EventLoop loop = this.loops[Math.floorMod(this.nextLoop.getAndIncrement(), this.loops.length)];
+        final SocketChannel channel = SocketChannel.open();
+        try {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        } catch (final IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new Connection(loop, channel, poolKey);
+    }
+
+    @NotNull private static String hostOf(@NotNull final URL url) {
+        final String host = url.getHost();
+        // IPv6 literals are enclosed in brackets
+        return host.startsWith("[") ? host.substring(1, host.length() - 1) : host;
+    }
+
+
+    /**
+     * A single request/response exchange, which may be attempted twice if a
+     * reused connection turns out to have been closed by the server
+     */
+    private static final class Exchange {
+
+        private final HttpRequest request;
+        private final CompletableFuture<HttpResponse> future;
+        @Nullable private final RequestListener listener;
+        private final String host;
+        private final int port;
+        private final String poolKey;
+        private final byte[] head;
+        @Nullable private final byte[] body;
+        @Nullable private final BodySource bodySource;
+        private long bodyLength;
+        private long bodyPosition;
+        @Nullable private ReadableByteChannel bodyChannel;
+        @Nullable private ByteBuffer pendingBody;
+        @Nullable private ByteBuffer[] pendingChunk;
+        private boolean bodyFinished;
+        private boolean bodyStalled;
+        @Nullable private Runnable onBodyAvailable;
+        @Nullable private InetSocketAddress address;
+        @Nullable private List<InetAddress> addresses;
+        private int addressIndex;
+        private ByteBuffer[] buffers;
+        private ResponseParser parser;
+        private int attempts;
+        private long deadline;
+        private long mark;
+        private boolean received;
+        @Nullable private volatile Connection connection;
+
+        private Exchange(@NotNull final HttpRequest request, @NotNull final CompletableFuture<HttpResponse> future)
+            throws IOException {
+            this.request = request;
+            this.future = future;
+            this.listener = request.getListener();
+            final long start = this.listener == null ? 0L : System.nanoTime();
+            final URL url = request.getURL();
+            final String host = url.getHost();
+            this.host = hostOf(url);
+            this.port = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+            this.poolKey = this.host + ':' + this.port;
+
+            final Headers headers = request.getHeaders();
+            final HttpRequest.Entity entity = request.createEntity();
+            if (this.listener != null && entity != null) {
+                HttpRequest.phase(this.listener, RequestPhase.SERIALIZE, start);
+            }
+            final StringBuilder builder = new StringBuilder(256);
+            builder.append(request.getMethod().name()).append(' ')
+                .append(url.getFile().isEmpty() ? "/" : url.getFile()).append(" HTTP/1.1\r\n");
+            if (headers.getHeaders("host").isEmpty()) {
+                builder.append("host: ").append(host);
+                if (url.getPort() != -1) {
+                    builder.append(':').append(url.getPort());
+                }
+                builder.append("\r\n");
+            }
+            for (final String headerName : headers.getHeaders()) {
+                final List<String> values = headers.getHeaders(headerName);
+                if (!values.isEmpty() && !FRAMING_HEADERS.contains(headerName.toLowerCase(Locale.ROOT))) {
+                    builder.append(headerName).append(": ").append(String.join(",", values)).append("\r\n");
+                }
+            }
+            this.bodySource = request.getBodySource();
+            if (this.bodySource != null) {
+                this.bodyLength = this.bodySource.contentLength();
+                if (headers.getHeader("content-type").isEmpty()) {
+                    builder.append("content-type: ").append(this.bodySource.contentType()).append("\r\n");
+                }
+                if (this.bodyLength < 0) {
+                    builder.append("transfer-encoding: chunked\r\n");
+                } else {
+                    builder.append("content-length: ").append(this.bodyLength).append("\r\n");
+                }
+                this.body = null;
+            } else if (entity != null) {
+                if (headers.getHeader("content-type").isEmpty()) {
+                    builder.append("content-type: ").append(entity.getContentType()).append("\r\n");
+                }
+                builder.append("content-length: ").append(entity.getBytes().length).append("\r\n");
+                this.body = entity.getBytes();
+            } else {
+                if (request.getMethod() == HttpMethod.POST || request.getMethod() == HttpMethod.PUT
+                    || request.getMethod() == HttpMethod.PATCH) {
+                    builder.append("content-length: 0\r\n");
+                }
+                this.body = null;
+            }
+            builder.append("\r\n");
+            this.head = builder.toString().getBytes(StandardCharsets.ISO_8859_1);
+        }
+
+        private void reset() {
+            this.closeBody();
+            this.bodyPosition = 0;
+            this.bodyFinished = false;
+            this.received = false;
+            this.attempts++;
+            this.parser = new ResponseParser(HttpResponse.builder().withEntityMapper(this.request.getMapper())
+                .withBufferPool(this.request.getResponsePool()),
+                this.request.getMethod().hasBody(), this.request.getBodyHandler());
+            if (this.body == null) {
+                this.buffers = new ByteBuffer[] {ByteBuffer.wrap(this.head)};
+            } else {
+                this.buffers = new ByteBuffer[] {ByteBuffer.wrap(this.head), ByteBuffer.wrap(this.body)};
+            }
+        }
+
+        /**
+         * Write as much of the request as the channel accepts
+         *
+         * @param channel Channel to write to
+         * @return {@code true} if the request has been written completely
+         * @throws IOException If the request could not be written
+         */
+        private boolean write(@NotNull final SocketChannel channel) throws IOException {
+            if (this.buffers[this.buffers.length - 1].hasRemaining()) {
+                channel.write(this.buffers);
+                if (this.buffers[this.buffers.length - 1].hasRemaining()) {
+                    return false;
+                }
+            }
+            this.bodyStalled = false;
+            if (this.bodySource == null || (this.bodyLength >= 0 && this.bodyPosition >= this.bodyLength)) {
+                return true;
+            }
+            if (this.bodyChannel == null) {
+                this.bodyChannel = this.bodySource.openNonBlocking(Objects.requireNonNull(this.onBodyAvailable));
+            }
+            if (this.bodyChannel instanceof FileChannel && this.bodyLength >= 0) {
+                // Lets the kernel copy the file directly to the socket, where supported
+                final FileChannel file = (FileChannel) this.bodyChannel;
+                final long transferred = file.transferTo(this.bodyPosition, this.bodyLength - this.bodyPosition, channel);
+                if (transferred == 0 && this.bodyPosition >= file.size()) {
+                    throw new EOFException("The body is shorter than its declared length");
+                }
+                this.bodyPosition += transferred;
+            } else {
+                if (this.pendingBody == null) {
+                    this.pendingBody = ByteBuffer.allocate(BUFFER_SIZE);
+                    this.pendingBody.flip();
+                    this.pendingChunk = new ByteBuffer[] {this.pendingBody};
+                }
+                final ByteBuffer[] chunk = Objects.requireNonNull(this.pendingChunk);
+                if (!chunk[chunk.length - 1].hasRemaining()) {
+                    if (this.bodyFinished) {
+                        return true;
+                    }
+                    this.pendingBody.clear();
+                    if (this.bodyLength >= 0) {
+                        this.pendingBody.limit((int) Math.min(this.pendingBody.capacity(), this.bodyLength - this.bodyPosition));
+                    }
+                    final int read = this.bodyChannel.read(this.pendingBody);
+                    this.pendingBody.flip();
+                    if (read == 0) {
+                        // The source will notify us once it has more data
+                        this.bodyStalled = true;
+                        return false;
+                    } else if (read == -1 && this.bodyLength >= 0) {
+                        throw new EOFException("The body is shorter than its declared length");
+                    } else if (read == -1) {
+                        this.bodyFinished = true;
+                        this.pendingChunk = new ByteBuffer[] {ByteBuffer.wrap(LAST_CHUNK)};
+                    } else if (this.bodyLength < 0) {
+                        this.pendingChunk = new ByteBuffer[] {ByteBuffer.wrap((Integer.toHexString(read) + "\r\n")
+                            .getBytes(StandardCharsets.ISO_8859_1)), this.pendingBody, ByteBuffer.wrap(CRLF)};
+                    } else {
+                        this.pendingChunk = new ByteBuffer[] {this.pendingBody};
+                    }
+                }
+                final long written = channel.write(Objects.requireNonNull(this.pendingChunk));
+                if (this.bodyLength >= 0) {
+                    this.bodyPosition += written;
+                }
+            }
+            if (this.bodyLength < 0) {
+                final ByteBuffer[] chunk = Objects.requireNonNull(this.pendingChunk);
+                return this.bodyFinished && !chunk[chunk.length - 1].hasRemaining();
+            }
+            return this.bodyPosition >= this.bodyLength;
+        }
+
+        /**
+         * Report the end of a phase, if the exchange is observed
+         *
+         * @param phase Phase that ended
+         */
+        private void phase(@NotNull final RequestPhase phase) {
+            if (this.listener != null) {
+                this.mark = HttpRequest.phase(this.listener, phase, this.mark);
+            }
+        }
+
+        private long requestBytes() {
+            return this.bodySource != null ? this.bodyLength : this.body == null ? 0L : this.body.length;
+        }
+
+        /**
+         * Move on to the next address of the host, after failing to connect to the current one
+         *
+         * @return {@code true} if there is another address to try
+         */
+        private boolean nextAddress() {
+            if (this.addresses == null || this.addressIndex + 1 >= this.addresses.size()) {
+                return false;
+            }
+            this.address = new InetSocketAddress(this.addresses.get(++this.addressIndex), this.port);
+            return true;
+        }
+
+        private void closeBody() {
+            if (this.bodyChannel != null) {
+                try {
+                    this.bodyChannel.close();
+                } catch (final IOException ignored) {
+                }
+                this.bodyChannel = null;
+            }
+            this.pendingBody = null;
+            this.pendingChunk = null;
+        }
+
+        /**
+         * Close the connection of a cancelled exchange, instead of waiting for the response
+         */
+        private void abort() {
+            final Connection connection = this.connection;
+            if (connection != null) {
+                connection.loop.execute(() -> connection.abort(this));
+            }
+        }
+
+    }
+
+
+    /**
+     * Keep-alive connection, which is only ever accessed by its event loop
+     */
+    private final class Connection {
+
+        private final EventLoop loop;
+        private final SocketChannel channel;
+        private final String poolKey;
+        private SelectionKey key;
+        @Nullable private Exchange exchange;
+        private boolean reused;
+        private boolean connected;
+        private boolean suspended;
+        private long idleSince;
+        private long connectDeadline;
+        @Nullable private CompletableFuture<Void> opening;
+
+        private Connection(@NotNull final EventLoop loop, @NotNull final SocketChannel channel,
+            @NotNull final String poolKey) {
+            this.loop = loop;
+            this.channel = channel;
+            this.poolKey = poolKey;
+        }
+
+        private void connect(@NotNull final Exchange exchange) {
+            if (!this.bind(exchange)) {
+                return;
+            }
+            exchange.deadline = System.currentTimeMillis() + CONNECT_TIMEOUT;
+            try {
+                if (closed) {
+                    throw new ClosedChannelException();
+                }
+                this.key = this.channel.register(this.loop.selector, 0, this);
+                this.loop.connections.add(this);
+                if (this.channel.connect(exchange.address)) {
+                    this.connected();
+                } else {
+                    this.key.interestOps(SelectionKey.OP_CONNECT);
+                }
+            } catch (final Throwable throwable) {
+                this.fail(throwable);
+            }
+        }
+
+        /**
+         * Connect without an exchange, and add the connection to the pool once it is established
+         *
+         * @param address Address to connect to
+         * @param opened  Future that completes once the connection has been established
+         */
+        private void open(@NotNull final InetSocketAddress address, @NotNull final CompletableFuture<Void> opened) {
+            this.opening = opened;
+            this.connectDeadline = System.currentTimeMillis() + CONNECT_TIMEOUT;
+            try {
+                if (closed) {
+                    throw new ClosedChannelException();
+                }
+                this.key = this.channel.register(this.loop.selector, 0, this);
+                this.loop.connections.add(this);
+                if (this.channel.connect(address)) {
+                    this.connected();
+                } else {
+                    this.key.interestOps(SelectionKey.OP_CONNECT);
+                }
+            } catch (final Throwable throwable) {
+                this.fail(throwable);
+            }
+        }
+
+        private void start(@NotNull final Exchange exchange) {
+            if (!this.bind(exchange)) {
+                return;
+            }
+            this.reused = true;
+            exchange.deadline = System.currentTimeMillis() + READ_TIMEOUT;
+            try {
+                if (closed || !this.channel.isOpen()) {
+                    throw new ClosedChannelException();
+                }
+                this.key.interestOps(SelectionKey.OP_WRITE);
+            } catch (final Throwable throwable) {
+                this.fail(throwable);
+            }
+        }
+
+        /**
+         * Bind an exchange to the connection
+         *
+         * @param exchange Exchange
+         * @return {@code false} if the exchange was cancelled, in which case the connection is closed
+         */
+        private boolean bind(@NotNull final Exchange exchange) {
+            this.exchange = exchange;
+            this.suspended = false;
+            // The connection is published before the future is checked, so that a concurrent
+            // cancellation either sees the connection or is seen here
+            exchange.connection = this;
+            if (exchange.future.isDone()) {
+                this.abort(exchange);
+                return false;
+            }
+            exchange.onBodyAvailable = () -> this.loop.execute(() -> {
+                if (this.exchange == exchange && this.key.isValid() && this.key.interestOps() == 0) {
+                    this.key.interestOps(SelectionKey.OP_WRITE);
+                }
+            });
+            exchange.parser.setReadControl(new ResponseParser.ReadControl() {
+
+                @Override public void suspend() {
+                    if (Connection.this.exchange == exchange && Connection.this.key.isValid()) {
+                        Connection.this.suspended = true;
+                        Connection.this.key.interestOps(0);
+                    }
+                }
+
+                @Override public void resume() {
+                    Connection.this.loop.execute(() -> {
+                        if (Connection.this.exchange == exchange && Connection.this.suspended
+                            && Connection.this.key.isValid()) {
+                            Connection.this.suspended = false;
+                            exchange.deadline = System.currentTimeMillis() + READ_TIMEOUT;
+                            Connection.this.key.interestOps(SelectionKey.OP_READ);
+                        }
+                    });
+                }
+
+            });
+            return true;
+        }
+
+        private void handle(@NotNull final SelectionKey key) {
+            try {
+                if (key.isConnectable() && this.channel.finishConnect()) {
+                    this.connected();
+                }
+                if (key.isValid() && key.isWritable()) {
+                    this.write();
+                }
+                if (key.isValid() && key.isReadable()) {
+                    this.read();
+                }
+            } catch (final Throwable throwable) {
+                this.fail(throwable);
+            }
+        }
+
+        private void connected() {
+            this.connected = true;
+            if (this.opening != null) {
+                final CompletableFuture<Void> opened = this.opening;
+                this.opening = null;
+                this.idle();
+                opened.complete(null);
+                return;
+            }
+            if (this.exchange != null) {
+                this.exchange.deadline = System.currentTimeMillis() + READ_TIMEOUT;
+                this.exchange.phase(RequestPhase.CONNECT);
+            }
+            this.key.interestOps(SelectionKey.OP_WRITE);
+        }
+
+        private void write() throws IOException {
+            final Exchange exchange = this.exchange;
+            if (exchange == null) {
+                this.key.interestOps(SelectionKey.OP_READ);
+                return;
+            }
+            final boolean written = exchange.write(this.channel);
+            exchange.deadline = System.currentTimeMillis() + READ_TIMEOUT;
+            if (written) {
+                exchange.phase(RequestPhase.SEND);
+                exchange.closeBody();
+                this.key.interestOps(SelectionKey.OP_READ);
+            } else if (exchange.bodyStalled) {
+                this.key.interestOps(0);
+            }
+        }
+
+        private void read() throws IOException {
+            final Exchange exchange = this.exchange;
+            final ByteBuffer buffer = bufferPool.acquire();
+            try {
+                final int read = this.channel.read(buffer);
+                if (exchange == null) {
+                    // Idle connections should not receive anything, so the server either
+                    // closed the connection or misbehaved
+                    this.close();
+                    return;
+                }
+                if (read == -1) {
+                    exchange.parser.endOfStream();
+                    this.finish(exchange, false);
+                    return;
+                }
+                exchange.deadline = System.currentTimeMillis() + READ_TIMEOUT;
+                if (!exchange.received) {
+                    exchange.received = true;
+                    exchange.phase(RequestPhase.WAIT);
+                }
+                buffer.flip();
+                // The buffer is parsed completely, even if the body consumer suspends reading
+                if (exchange.parser.parse(buffer)) {
+                    this.finish(exchange, exchange.parser.isKeepAlive() && !buffer.hasRemaining());
+                }
+            } finally {
+                bufferPool.release(buffer);
+            }
+        }
+
+        private void finish(@NotNull final Exchange exchange, final boolean keepAlive) throws IOException {
+            exchange.parser.complete();
+            final HttpResponse response = exchange.parser.getBuilder().build();
+            this.exchange = null;
+            this.suspended = false;
+            if (keepAlive && !closed) {
+                this.idle();
+            } else {
+                this.close();
+            }
+            exchange.phase(RequestPhase.RECEIVE);
+            if (exchange.request.getEagerEntity() != null) {
+                response.prefetchEntity(exchange.request.getEagerEntity());
+                exchange.phase(RequestPhase.DESERIALIZE);
+            }
+            if (exchange.listener != null && !exchange.future.isDone()) {
+                exchange.listener.complete(response.getStatusCode(), exchange.requestBytes(),
+                    response.getBody().remaining(), null);
+            }
+            exchange.future.complete(response);
+        }
+
+        private void idle() {
+            final Deque<Connection> idle = idleConnections.computeIfAbsent(this.poolKey,
+                key -> new ConcurrentLinkedDeque<>());
+            if (idle.size() >= MAX_IDLE_PER_HOST) {
+                this.close();
+                return;
+            }
+            this.idleSince = System.currentTimeMillis();
+            // Keep reading, so that we notice when the server closes the connection
+            this.key.interestOps(SelectionKey.OP_READ);
+            idle.addFirst(this);
+        }
+
+        private void expire(final long now) {
+            final Exchange exchange = this.exchange;
+            if (exchange != null) {
+                // A suspended body consumer is waiting for its subscriber, not for the server
+                if (!this.suspended && now > exchange.deadline) {
+                    this.fail(new SocketTimeoutException(this.connected ? "Read timed out" : "Connect timed out"));
+                }
+            } else if (this.opening != null) {
+                if (now > this.connectDeadline) {
+                    this.fail(new SocketTimeoutException("Connect timed out"));
+                }
+            } else if (now - this.idleSince > IDLE_TIMEOUT) {
+                final Deque<Connection> idle = idleConnections.get(this.poolKey);
+                // If the connection is no longer in the pool, it has been handed to a new exchange
+                if (idle != null && idle.remove(this)) {
+                    this.close();
+                }
+            }
+        }
+
+        private void fail(@NotNull final Throwable throwable) {
+            final Exchange exchange = this.exchange;
+            this.exchange = null;
+            this.close();
+            if (this.opening != null) {
+                this.opening.completeExceptionally(throwable);
+                this.opening = null;
+            }
+            if (exchange == null || exchange.future.isDone()) {
+                return;
+            }
+            exchange.closeBody();
+            exchange.parser.abort();
+            // The host may have other addresses that are reachable
+            if (!this.connected && throwable instanceof IOException && !closed && exchange.nextAddress()) {
+                try {
+                    dispatch(exchange, false);
+                    return;
+                } catch (final Throwable retryThrowable) {
+                    exchange.future.completeExceptionally(retryThrowable);
+                    return;
+                }
+            }
+            // A pooled connection may have been closed by the server just before it was
+            // reused, in which case the request is retried once on a new connection
+            if (this.reused && exchange.attempts == 1 && !exchange.parser.hasStarted()
+                && throwable instanceof IOException && !closed) {
+                try {
+                    dispatch(exchange, false);
+                    return;
+                } catch (final Throwable retryThrowable) {
+                    exchange.future.completeExceptionally(retryThrowable);
+                    return;
+                }
+            }
+            exchange.future.completeExceptionally(throwable);
+        }
+
+        private void abort(@NotNull final Exchange exchange) {
+            if (this.exchange != exchange) {
+                return;
+            }
+            this.exchange = null;
+            this.close();
+            exchange.closeBody();
+            exchange.parser.abort();
+        }
+
+        private void close() {
+            this.loop.connections.remove(this);
+            final Deque<Connection> idle = idleConnections.get(this.poolKey);
+            if (idle != null) {
+                idle.remove(this);
+            }
+            if (this.key != null) {
+                this.key.cancel();
+            }
+            try {
+                this.channel.close();
+            } catch (final IOException ignored) {
+            }
+        }
+
+    }
+
+
+    /**
+     * Selector thread that performs all I/O for the connections registered with it
+     */
+    private final class EventLoop implements Runnable {
+
+        private final Selector selector;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final Set<Connection> connections = new HashSet<>();
+        private long lastTick;
+
+        private EventLoop(@NotNull final Selector selector) {
+            this.selector = selector;
+        }
+
+        private void execute(@NotNull final Runnable task) {
+            this.tasks.add(task);
+            this.selector.wakeup();
+        }
+
+        @Override public void run() {
+            while (!closed) {
+                try {
+                    this.selector.select(TICK_INTERVAL);
+                } catch (final IOException e) {
+                    break;
+                }
+                this.runTasks();
+                final Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    final SelectionKey key = keys.next();
+                    keys.remove();
+                    ((Connection) key.attachment()).handle(key);
+                }
+                final long now = System.currentTimeMillis();
+                if (now - this.lastTick >= TICK_INTERVAL) {
+                    this.lastTick = now;
+                    for (final Connection connection : this.connections.toArray(new Connection[0])) {
+                        connection.expire(now);
+                    }
+                }
+            }
+            this.runTasks();
+            for (final Connection connection : this.connections.toArray(new Connection[0])) {
+                connection.fail(new ClosedChannelException());
+            }
+            try {
+                this.selector.close();
+            } catch (final IOException ignored) {
+            }
+        }
+
+        private void runTasks() {
+            Runnable task;
+            while ((task = this.tasks.poll()) != null) {
+                task.run();
+            }
+        }
+
+    }
+
+}
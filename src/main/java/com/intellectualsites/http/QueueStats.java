@@ -0,0 +1,119 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 IntellectualSites
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.intellectualsites.http;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statistics of the requests of one {@link RequestPriority priority} that were
+ * queued by a client that uses {@link HttpClient.Builder#withPriorityScheduling(int, Duration)
+ * priority scheduling}. Requests that are executed immediately count as dispatched without waiting
+ *
+ * @see HttpClient#getQueueStats()
+ */
+public final class QueueStats {
+
+    private final RequestPriority priority;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final LongAdder dispatched = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAccumulator maxWaitNanos = new LongAccumulator(Math::max, 0);
+
+    QueueStats(@NotNull final RequestPriority priority) {
+        this.priority = priority;
+    }
+
+    void enqueued() {
+        this.queued.incrementAndGet();
+    }
+
+    void dequeued() {
+        this.queued.decrementAndGet();
+    }
+
+    void dispatched(final long waitNanos) {
+        this.dispatched.increment();
+        this.waitNanos.add(waitNanos);
+        this.maxWaitNanos.accumulate(waitNanos);
+    }
+
+    /**
+     * Get the priority of the requests
+     *
+     * @return Request priority
+     */
+    @NotNull public RequestPriority getPriority() {
+        return this.priority;
+    }
+
+    /**
+     * Get the amount of requests that are currently waiting
+     *
+     * @return Queue depth
+     */
+    public int getQueueDepth() {
+        return this.queued.get();
+    }
+
+    /**
+     * Get the amount of requests that have been executed
+     *
+     * @return Dispatched requests
+     */
+    public long getDispatched() {
+        return this.dispatched.sum();
+    }
+
+    /**
+     * Get the average time that requests waited before they were executed
+     *
+     * @return Average wait time
+     */
+    @NotNull public Duration getAverageWait() {
+        final long dispatched = this.getDispatched();
+        return Duration.ofNanos(dispatched == 0 ? 0 : this.waitNanos.sum() / dispatched);
+    }
+
+    /**
+     * Get the longest time that a request waited before it was executed
+     *
+     * @return Maximum wait time
+     */
+    @NotNull public Duration getMaxWait() {
+        return Duration.ofNanos(this.maxWaitNanos.get());
+    }
+
+    @Override public String toString() {
+        return "QueueStats{priority=" + this.priority + ", queueDepth=" + this.getQueueDepth() + ", dispatched="
+            + this.getDispatched() + ", averageWait=" + TimeUnit.NANOSECONDS.toMillis(this.getAverageWait().toNanos())
+            + "ms, maxWait=" + TimeUnit.NANOSECONDS.toMillis(this.getMaxWait().toNanos()) + "ms}";
+    }
+
+}
@@ -0,0 +1,105 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 IntellectualSites
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.intellectualsites.http;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Observes the execution of a single request. Listeners are only created for requests that
+ * are observed, so the transports skip reading the clock entirely when there is no listener.
+ * The callbacks are made by the thread that executes the request, which may be a selector
+ * thread, and must therefore not block
+ */
+interface RequestListener {
+
+    /**
+     * Called once a phase has ended. A phase may be reported more than once,
+     * if the request is retried on a new connection
+     *
+     * @param phase      Phase
+     * @param startNanos {@link System#nanoTime()} at the start of the phase
+     * @param endNanos   {@link System#nanoTime()} at the end of the phase
+     */
+    void phase(@NotNull RequestPhase phase, long startNanos, long endNanos);
+
+    /**
+     * Called once the request has completed, successfully or not
+     *
+     * @param status        Status code, or {@code 0} if there is no response
+     * @param requestBytes  Length of the request body, or {@code -1} if unknown
+     * @param responseBytes Length of the buffered response body
+     * @param throwable     Failure, if there is no response
+     */
+    void complete(int status, long requestBytes, long responseBytes, @Nullable Throwable throwable);
+
+    /**
+     * Combine two listeners
+     *
+     * @param first  First listener, or {@code null}
+     * @param second Second listener, or {@code null}
+     * @return Listener that notifies both, or {@code null} if both are {@code null}
+     */
+    @Nullable static RequestListener combine(@Nullable final RequestListener first,
+        @Nullable final RequestListener second) {
+        if (first == null) {
+            return second;
+        }
+        if (second == null) {
+            return first;
+        }
+        return new RequestListener() {
+
+            @Override public void phase(@NotNull final RequestPhase phase, final long startNanos, final long endNanos) {
+                first.phase(phase, startNanos, endNanos);
+                second.phase(phase, startNanos, endNanos);
+            }
+
+            @Override public void complete(final int status, final long requestBytes, final long responseBytes,
+                @Nullable final Throwable throwable) {
+                first.complete(status, requestBytes, responseBytes, throwable);
+                second.complete(status, requestBytes, responseBytes, throwable);
+            }
+
+        };
+    }
+
+
+    /**
+     * Creates the listener of each request made by a client
+     */
+    @FunctionalInterface
+    interface Factory {
+
+        /**
+         * Create a listener for a request that is about to be executed
+         *
+         * @param request Request builder, which may still be modified
+         * @return Listener, or {@code null} if the request is not observed
+         */
+        @Nullable RequestListener create(@NotNull HttpRequest.Builder request);
+
+    }
+
+}
@@ -0,0 +1,65 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 IntellectualSites
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.intellectualsites.http;
+
+/**
+ * Stage of the execution of a request. Phases are reported in this order, although
+ * not every request goes through all of them. Only requests with an entity are
+ * {@link #SERIALIZE serialized}, and a request that is sent over a reused keep-alive
+ * connection does not {@link #CONNECT connect} with the non-blocking transport
+ */
+public enum RequestPhase {
+
+    /**
+     * Serializing the request entity using the entity mapper
+     */
+    SERIALIZE,
+
+    /**
+     * Resolving the host and establishing the connection, including the TLS handshake
+     */
+    CONNECT,
+
+    /**
+     * Writing the request. The blocking transport only reports this phase for requests
+     * with a body, as it sends the head of other requests once the response is awaited
+     */
+    SEND,
+
+    /**
+     * Waiting for the server to respond, once the request has been sent
+     */
+    WAIT,
+
+    /**
+     * Reading the response body
+     */
+    RECEIVE,
+
+    /**
+     * Deserializing the {@link HttpClient.WrappedRequestBuilder#withEagerEntity(Class) eager entity}
+     */
+    DESERIALIZE
+
+}
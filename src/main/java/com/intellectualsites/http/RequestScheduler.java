@@ -0,0 +1,251 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 IntellectualSites
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.intellectualsites.http;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Limits the amount of concurrent asynchronous requests to each host. Requests that exceed
+ * the limit are queued per priority, and are executed in priority order once a slot is freed.
+ * To prevent starvation, a queued request is treated as one priority higher for every aging
+ * interval that it has waited
+ */
+final class RequestScheduler {
+
+    private static final RequestPriority[] PRIORITIES = RequestPriority.values();
+
+    private final int maxConcurrentPerHost;
+    private final long agingNanos;
+    private final ConcurrentMap<String, Host> hosts = new ConcurrentHashMap<>();
+    private final Map<RequestPriority, QueueStats> stats;
+
+    /**
+     * Create a new scheduler
+     *
+     * @param maxConcurrentPerHost Maximum amount of concurrent requests to a host
+     * @param aging                Wait time after which a queued request is promoted by one priority
+     */
+    RequestScheduler(final int maxConcurrentPerHost, @NotNull final Duration aging) {
+        this.maxConcurrentPerHost = maxConcurrentPerHost;
+        this.agingNanos = Math.max(1, aging.toNanos());
+        final Map<RequestPriority, QueueStats> stats = new EnumMap<>(RequestPriority.class);
+        for (final RequestPriority priority : PRIORITIES) {
+            stats.put(priority, new QueueStats(priority));
+        }
+        this.stats = Collections.unmodifiableMap(stats);
+    }
+
+    @NotNull Map<RequestPriority, QueueStats> getStats() {
+        return this.stats;
+    }
+
+    /**
+     * Execute a request once a slot for the host is available
+     *
+     * @param hostKey      Key that identifies the host
+     * @param priority     Request priority
+     * @param cancellation Cancellation token of the request. A queued request that is cancelled is
+     *                     removed from the queue, and its task is run right away without taking a slot,
+     *                     so that it fails without waiting for its turn
+     * @param task         Executes the request, and returns a future that completes once the slot can be freed
+     * @return Future that completes with the outcome of the task
+     */
+    @NotNull CompletableFuture<HttpResponse> submit(@NotNull final String hostKey, @NotNull final RequestPriority priority,
+        @NotNull final CancellationToken cancellation, @NotNull final Supplier<CompletableFuture<HttpResponse>> task) {
+        final Host host = this.hosts.computeIfAbsent(hostKey, key -> new Host());
+        final Pending pending = new Pending(priority, task, cancellation);
+        final boolean queued;
+        synchronized (host) {
+            queued = host.active >= this.maxConcurrentPerHost;
+            if (queued) {
+                host.queues[priority.ordinal()].add(pending);
+                this.stats.get(priority).enqueued();
+            } else {
+                host.active++;
+            }
+        }
+        if (queued) {
+            // Bound outside of the lock, as the action runs immediately if the request is already cancelled
+            pending.dequeue = () -> {
+                if (this.remove(host, pending)) {
+                    this.run(pending);
+                }
+            };
+            cancellation.bind(pending.dequeue);
+        } else if (this.start(host, pending)) {
+            this.release(host);
+        }
+        return pending.future;
+    }
+
+    /**
+     * Start a request
+     *
+     * @param host    Host of the request
+     * @param pending Request
+     * @return {@code true} if the request completed immediately, in which case the caller has to release the slot
+     */
+    private boolean start(@NotNull final Host host, @NotNull final Pending pending) {
+        this.stats.get(pending.priority).dispatched(System.nanoTime() - pending.enqueued);
+        if (pending.dequeue != null) {
+            pending.cancellation.unbind(pending.dequeue);
+        }
+        final CompletableFuture<HttpResponse> result = this.run(pending);
+        final boolean done = result.isDone();
+        if (!done) {
+            result.whenComplete((response, throwable) -> this.release(host));
+        }
+        return done;
+    }
+
+    /**
+     * Run the task of a request, and complete the future of the request with its outcome
+     *
+     * @param pending Request
+     * @return Future returned by the task
+     */
+    @NotNull private CompletableFuture<HttpResponse> run(@NotNull final Pending pending) {
+        CompletableFuture<HttpResponse> result;
+        try {
+            result = pending.task.get();
+        } catch (final Throwable throwable) {
+            result = new CompletableFuture<>();
+            result.completeExceptionally(throwable);
+        }
+        result.whenComplete((response, throwable) -> {
+            if (throwable != null) {
+                pending.future.completeExceptionally(throwable);
+            } else {
+                pending.future.complete(response);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Free a slot of the host, or pass it on to the next queued request. Requests that
+     * complete immediately are handled in a loop, rather than recursively
+     *
+     * @param host Host
+     */
+    private void release(@NotNull final Host host) {
+        Pending next;
+        do {
+            synchronized (host) {
+                next = this.poll(host);
+                if (next == null) {
+                    host.active--;
+                    return;
+                }
+            }
+        } while (this.start(host, next));
+    }
+
+    private boolean remove(@NotNull final Host host, @NotNull final Pending pending) {
+        synchronized (host) {
+            if (host.queues[pending.priority.ordinal()].remove(pending)) {
+                this.stats.get(pending.priority).dequeued();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Take the queued request with the highest effective priority. A request's effective
+     * priority rises with the time it has waited
+     *
+     * @param host Host, which must be locked
+     * @return Request, or {@code null} if no request is queued
+     */
+    @Nullable private Pending poll(@NotNull final Host host) {
+        final long now = System.nanoTime();
+        ArrayDeque<Pending> best = null;
+        long bestRank = Long.MAX_VALUE;
+        for (final ArrayDeque<Pending> queue : host.queues) {
+            final Pending head = queue.peek();
+            if (head == null) {
+                continue;
+            }
+            final long rank = head.priority.ordinal() - (now - head.enqueued) / this.agingNanos;
+            if (rank < bestRank) {
+                best = queue;
+                bestRank = rank;
+            }
+        }
+        if (best == null) {
+            return null;
+        }
+        final Pending pending = best.poll();
+        this.stats.get(pending.priority).dequeued();
+        return pending;
+    }
+
+
+    private static final class Host {
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private final ArrayDeque<Pending>[] queues = new ArrayDeque[PRIORITIES.length];
+        private int active;
+
+        private Host() {
+            for (int i = 0; i < this.queues.length; i++) {
+                this.queues[i] = new ArrayDeque<>();
+            }
+        }
+
+    }
+
+
+    private static final class Pending {
+
+        private final RequestPriority priority;
+        private final Supplier<CompletableFuture<HttpResponse>> task;
+        private final CancellationToken cancellation;
+        private final CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+        private final long enqueued = System.nanoTime();
+        @Nullable private volatile Runnable dequeue;
+
+        private Pending(@NotNull final RequestPriority priority,
+            @NotNull final Supplier<CompletableFuture<HttpResponse>> task,
+            @NotNull final CancellationToken cancellation) {
+            this.priority = priority;
+            this.task = task;
+            this.cancellation = cancellation;
+        }
+
+    }
+
+}
@@ -0,0 +1,229 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 IntellectualSites
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.intellectualsites.http;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Pool of response body buffers. Buffers are grouped into size classes, each
+ * of which is twice as large as the previous one. Bodies that are larger than
+ * the largest size class are buffered in unpooled buffers
+ */
+final class ResponseBufferPool {
+
+    private static final int MIN_CLASS_SHIFT = 12; // 4 KiB
+    private static final int MAX_CLASS_SHIFT = 20; // 1 MiB
+    private static final int BUFFERS_PER_CLASS = 32;
+    private static final long MAX_PREALLOCATED_BODY = 8 * 1024 * 1024;
+
+    private final BufferPool[] classes = new BufferPool[MAX_CLASS_SHIFT - MIN_CLASS_SHIFT + 1];
+    private final BufferPoolMetrics metrics;
+    private final boolean direct;
+    private final boolean detectLeaks;
+    private final ReferenceQueue<Object> collected = new ReferenceQueue<>();
+    private final Set<LeakTracker> trackers = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    /**
+     * Create a new pool
+     *
+     * @param metrics     Metrics that count pool hits, misses and leaks
+     * @param direct      Whether the buffers are allocated outside of the heap
+     * @param detectLeaks Whether responses that are collected without being closed should be reported
+     */
+    ResponseBufferPool(@NotNull final BufferPoolMetrics metrics, final boolean direct, final boolean detectLeaks) {
+        this.metrics = metrics;
+        this.direct = direct;
+        this.detectLeaks = detectLeaks;
+        for (int i = 0; i < this.classes.length; i++) {
+            this.classes[i] = new BufferPool(1 << (MIN_CLASS_SHIFT + i), BUFFERS_PER_CLASS, direct);
+        }
+    }
+
+    /**
+     * Lease a buffer that will hold a body of the expected size. At most 8 MiB are allocated
+     * up front, as the size is announced by the server, and the buffer grows as data is written
+     *
+     * @param sizeHint Expected body size, or {@code -1} if unknown
+     * @return Buffer lease
+     */
+    @NotNull Lease lease(final long sizeHint) {
+        this.expungeLeaks();
+        return new Lease(this.acquire(sizeHint <= 0 ? 1 : Math.min(MAX_PREALLOCATED_BODY, sizeHint)));
+    }
+
+    @NotNull private ByteBuffer acquire(final long minimumSize) {
+        final int index = classIndex(minimumSize);
+        if (index >= this.classes.length) {
+            this.metrics.recordAcquire(false);
+            final int size = (int) Math.min(Integer.MAX_VALUE - 8, minimumSize);
+            return this.direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+        }
+        final ByteBuffer buffer = this.classes[index].poll();
+        this.metrics.recordAcquire(buffer != null);
+        return buffer == null ? this.classes[index].acquire() : buffer;
+    }
+
+    private void recycle(@NotNull final ByteBuffer buffer) {
+        final int index = classIndex(buffer.capacity());
+        if (index < this.classes.length) {
+            this.classes[index].release(buffer);
+        }
+    }
+
+    private static int classIndex(final long size) {
+        if (size <= 1L << MIN_CLASS_SHIFT) {
+            return 0;
+        }
+        if (size > 1L << MAX_CLASS_SHIFT) {
+            return MAX_CLASS_SHIFT - MIN_CLASS_SHIFT + 1;
+        }
+        return 64 - Long.numberOfLeadingZeros(size - 1) - MIN_CLASS_SHIFT;
+    }
+
+    private void expungeLeaks() {
+        Reference<?> reference;
+        while ((reference = this.collected.poll()) != null) {
+            final LeakTracker tracker = (LeakTracker) reference;
+            this.trackers.remove(tracker);
+            if (tracker.lease.released.compareAndSet(false, true)) {
+                // Views of the buffer may still be reachable, so it is not recycled
+                this.metrics.recordLeak(tracker.allocationSite);
+            }
+        }
+    }
+
+
+    /**
+     * A buffer that is borrowed from the pool until it is released
+     */
+    final class Lease {
+
+        private final AtomicBoolean released = new AtomicBoolean();
+        private ByteBuffer buffer;
+        @Nullable private LeakTracker tracker;
+
+        private Lease(@NotNull final ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        /**
+         * Append data to the buffer, growing it if required
+         *
+         * @param data Data to append
+         */
+        void write(@NotNull final ByteBuffer data) {
+            this.ensureCapacity(data.remaining());
+            this.buffer.put(data);
+        }
+
+        /**
+         * Append data to the buffer, growing it if required
+         *
+         * @param data   Array to read from
+         * @param offset Offset in the array
+         * @param length Amount of bytes to append
+         */
+        void write(@NotNull final byte[] data, final int offset, final int length) {
+            this.ensureCapacity(length);
+            this.buffer.put(data, offset, length);
+        }
+
+        private void ensureCapacity(final int amount) {
+            if (this.buffer.remaining() >= amount) {
+                return;
+            }
+            final ByteBuffer grown = ResponseBufferPool.this.acquire(Math.max((long) this.buffer.position() + amount,
+                2L * this.buffer.capacity()));
+            this.buffer.flip();
+            grown.put(this.buffer);
+            ResponseBufferPool.this.recycle(this.buffer);
+            this.buffer = grown;
+        }
+
+        /**
+         * Stop writing to the lease, and get the written data
+         *
+         * @return Buffer positioned at the start of the data
+         */
+        @NotNull ByteBuffer complete() {
+            this.buffer.flip();
+            return this.buffer;
+        }
+
+        /**
+         * Report the lease as leaked if the owner is garbage collected before the lease is released.
+         * This does nothing if leak detection is disabled
+         *
+         * @param owner Object that is responsible for releasing the lease
+         */
+        void track(@NotNull final Object owner) {
+            if (ResponseBufferPool.this.detectLeaks && this.tracker == null) {
+                this.tracker = new LeakTracker(owner, this, ResponseBufferPool.this.collected);
+                ResponseBufferPool.this.trackers.add(this.tracker);
+            }
+        }
+
+        /**
+         * Return the buffer to the pool. This may be called multiple times
+         */
+        void release() {
+            if (!this.released.compareAndSet(false, true)) {
+                return;
+            }
+            if (this.tracker != null) {
+                ResponseBufferPool.this.trackers.remove(this.tracker);
+                this.tracker.clear();
+            }
+            ResponseBufferPool.this.recycle(this.buffer);
+        }
+
+    }
+
+
+    private static final class LeakTracker extends PhantomReference<Object> {
+
+        private final Lease lease;
+        private final Throwable allocationSite;
+
+        private LeakTracker(@NotNull final Object owner, @NotNull final Lease lease,
+            @NotNull final ReferenceQueue<Object> queue) {
+            super(owner, queue);
+            this.lease = lease;
+            this.allocationSite = new IllegalStateException("A pooled response was not closed before it was "
+                + "garbage collected. It was created at:");
+        }
+
+    }
+
+}
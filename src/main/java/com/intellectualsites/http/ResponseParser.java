@@ -0,0 +1,513 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 IntellectualSites
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.intellectualsites.http;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Incremental HTTP/1.1 response parser. Bytes are fed to the parser as they
+ * arrive, and the parsed status line and headers are written to a
+ * {@link HttpResponse.Builder}, while the body is passed to a {@link BodyConsumer}
+ */
+final class ResponseParser {
+
+    private static final int MAX_LINE_LENGTH = 65536;
+    private static final int MAX_PREALLOCATED_BODY = 8 * 1024 * 1024;
+
+    private final HttpResponse.Builder builder;
+    private final boolean expectBody;
+    @Nullable private final BodyHandler bodyHandler;
+    private BodyConsumer bodyConsumer;
+    @Nullable private ReadControl readControl;
+
+    private State state = State.STATUS_LINE;
+    private byte[] line = new byte[256];
+    private List<String> headerLines = new ArrayList<>();
+    private int lineLength;
+    private boolean started;
+    private boolean keepAlive;
+    private boolean chunked;
+    private long contentLength = -1;
+    private long remaining;
+
+    /**
+     * Create a new parser
+     *
+     * @param builder    Builder that receives the status and headers
+     * @param expectBody  Whether the response may contain a body. This is false for HEAD requests
+     * @param bodyHandler Handler that may receive the body instead of it being buffered
+     */
+    ResponseParser(@NotNull final HttpResponse.Builder builder, final boolean expectBody,
+        @Nullable final BodyHandler bodyHandler) {
+        this.builder = builder;
+        this.expectBody = expectBody;
+        this.bodyHandler = bodyHandler;
+    }
+
+    /**
+     * Parse the remaining bytes in the buffer
+     *
+     * @param buffer Buffer to read from
+     * @return {@code true} if the response is complete
+     * @throws IOException If the response is malformed, or if the body consumer fails
+     */
+    boolean parse(@NotNull final ByteBuffer buffer) throws IOException {
+        if (buffer.hasRemaining()) {
+            this.started = true;
+        }
+        while (buffer.hasRemaining() && this.state != State.DONE) {
+            switch (this.state) {
+                case STATUS_LINE:
+                    if (this.readLine(buffer)) {
+                        this.parseStatusLine(this.takeLine());
+                    }
+                    break;
+                case HEADERS:
+                    if (this.readLine(buffer)) {
+                        final String header = this.takeLine();
+                        if (header.isEmpty()) {
+                            this.endOfHeaders();
+                        } else {
+                            this.parseHeader(header);
+                        }
+                    }
+                    break;
+                case BODY_FIXED:
+                    this.remaining -= this.consume(buffer, this.remaining);
+                    if (this.remaining == 0) {
+                        this.state = State.DONE;
+                    }
+                    break;
+                case CHUNK_SIZE:
+                    if (this.readLine(buffer)) {
+                        this.parseChunkSize(this.takeLine());
+                    }
+                    break;
+                case CHUNK_DATA:
+                    this.remaining -= this.consume(buffer, this.remaining);
+                    if (this.remaining == 0) {
+                        this.state = State.CHUNK_END;
+                    }
+                    break;
+                case CHUNK_END:
+                    if (this.readLine(buffer)) {
+                        if (!this.takeLine().isEmpty()) {
+                            throw new ProtocolException("Missing CRLF after chunk data");
+                        }
+                        this.state = State.CHUNK_SIZE;
+                    }
+                    break;
+                case TRAILERS:
+                    if (this.readLine(buffer) && this.takeLine().isEmpty()) {
+                        this.state = State.DONE;
+                    }
+                    break;
+                case UNTIL_CLOSE:
+                    this.consume(buffer, Long.MAX_VALUE);
+                    break;
+                default:
+                    throw new IllegalStateException("Unexpected state: " + this.state);
+            }
+        }
+        return this.state == State.DONE;
+    }
+
+    /**
+     * Signal that the connection was closed by the server
+     *
+     * @throws IOException If the response was not complete
+     */
+    void endOfStream() throws IOException {
+        if (this.state == State.UNTIL_CLOSE) {
+            this.state = State.DONE;
+        } else if (this.state != State.DONE) {
+            throw new EOFException("Connection closed before the response was complete");
+        }
+    }
+
+    /**
+     * Whether any bytes of the response have been received
+     *
+     * @return {@code true} if the response has started
+     */
+    boolean hasStarted() {
+        return this.started;
+    }
+
+    /**
+     * Whether the connection may be reused once the response is complete
+     *
+     * @return {@code true} if the connection may be reused
+     */
+    boolean isKeepAlive() {
+        return this.keepAlive && this.state == State.DONE;
+    }
+
+    /**
+     * Get the value of the Content-Length header
+     *
+     * @return Content length, or {@code -1} if unknown
+     */
+    long getContentLength() {
+        return this.contentLength;
+    }
+
+    /**
+     * Get the builder that the status line and headers are written to
+     *
+     * @return Response builder
+     */
+    @NotNull HttpResponse.Builder getBuilder() {
+        return this.builder;
+    }
+
+    private long consume(@NotNull final ByteBuffer buffer, final long limit) throws IOException {
+        final int amount = (int) Math.min(limit, buffer.remaining());
+        final ByteBuffer slice = buffer.slice();
+        slice.limit(amount);
+        buffer.position(buffer.position() + amount);
+        this.bodyConsumer.onBody(slice);
+        return amount;
+    }
+
+    private boolean readLine(@NotNull final ByteBuffer buffer) throws ProtocolException {
+        while (buffer.hasRemaining()) {
+            final byte b = buffer.get();
+            if (b == '\n') {
+                if (this.lineLength > 0 && this.line[this.lineLength - 1] == '\r') {
+                    this.lineLength--;
+                }
+                return true;
+            }
+            if (this.lineLength == this.line.length) {
+                if (this.line.length >= MAX_LINE_LENGTH) {
+                    throw new ProtocolException("Response line exceeds " + MAX_LINE_LENGTH + " bytes");
+                }
+                this.line = Arrays.copyOf(this.line, this.line.length * 2);
+            }
+            this.line[this.lineLength++] = b;
+        }
+        return false;
+    }
+
+    @NotNull private String takeLine() {
+        final String value = new String(this.line, 0, this.lineLength, StandardCharsets.ISO_8859_1);
+        this.lineLength = 0;
+        return value;
+    }
+
+    private void parseStatusLine(@NotNull final String statusLine) throws ProtocolException {
+        // HTTP-version SP status-code SP [ reason-phrase ]
+        final int firstSpace = statusLine.indexOf(' ');
+        if (!statusLine.startsWith("HTTP/") || firstSpace == -1 || statusLine.length() < firstSpace + 4) {
+            throw new ProtocolException("Malformed status line: " + statusLine);
+        }
+        final int status;
+        try {
+            status = Integer.parseInt(statusLine.substring(firstSpace + 1, firstSpace + 4));
+        } catch (final NumberFormatException e) {
+            throw new ProtocolException("Malformed status line: " + statusLine);
+        }
+        this.keepAlive = !statusLine.startsWith("HTTP/1.0");
+        this.builder.withStatus(status)
+            .withStatusMessage(statusLine.length() > firstSpace + 5 ? statusLine.substring(firstSpace + 5) : "");
+        this.state = State.HEADERS;
+    }
+
+    private void parseHeader(@NotNull final String header) throws ProtocolException {
+        final int colon = header.indexOf(':');
+        if (colon <= 0) {
+            throw new ProtocolException("Malformed header: " + header);
+        }
+        // Only the headers that frame the message are parsed here. The others are kept
+        // as raw lines, which are split once the response headers are accessed
+        if (isHeader(header, colon, "content-length")) {
+            final String value = header.substring(colon + 1).trim();
+            try {
+                this.contentLength = Long.parseLong(value);
+            } catch (final NumberFormatException e) {
+                throw new ProtocolException("Malformed Content-Length: " + value);
+            }
+        } else if (isHeader(header, colon, "transfer-encoding")) {
+            this.chunked = header.substring(colon + 1).trim().toLowerCase(Locale.ROOT).endsWith("chunked");
+        } else if (isHeader(header, colon, "connection")) {
+            final String connection = header.substring(colon + 1).toLowerCase(Locale.ROOT);
+            if (connection.contains("close")) {
+                this.keepAlive = false;
+            } else if (connection.contains("keep-alive")) {
+                this.keepAlive = true;
+            }
+        }
+        this.headerLines.add(header);
+    }
+
+    private static boolean isHeader(@NotNull final String header, final int colon, @NotNull final String name) {
+        int end = colon;
+        while (end > 0 && header.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return end == name.length() && header.regionMatches(true, 0, name, 0, end);
+    }
+
+    @NotNull private static Headers.Source headerSource(@NotNull final List<String> headerLines) {
+        return action -> {
+            for (final String header : headerLines) {
+                final int colon = header.indexOf(':');
+                action.accept(header.substring(0, colon).trim(), header.substring(colon + 1).trim());
+            }
+        };
+    }
+
+    private void endOfHeaders() throws IOException {
+        final int status = this.builder.getStatus();
+        if (status >= 100 && status < 200 && status != 101) {
+            // Interim response, the final response follows
+            this.headerLines.clear();
+            this.contentLength = -1;
+            this.chunked = false;
+            this.state = State.STATUS_LINE;
+            return;
+        }
+        this.builder.withHeaders(Headers.lazy(headerSource(this.headerLines)));
+        this.headerLines = new ArrayList<>();
+        if (this.bodyHandler != null && this.bodyHandler.accepts(status)) {
+            this.bodyConsumer = this.bodyHandler.consumer(this.chunked ? -1 : this.contentLength);
+            if (this.readControl != null) {
+                this.bodyConsumer.bind(this.readControl);
+            }
+        } else if (this.builder.getBufferPool() != null) {
+            this.bodyConsumer = new PooledBodyConsumer(this.builder, this.builder.getBufferPool(),
+                this.chunked ? -1 : this.contentLength);
+        } else {
+            this.bodyConsumer = new ByteArrayBodyConsumer(this.builder,
+                (int) Math.min(MAX_PREALLOCATED_BODY, Math.max(this.contentLength, 0)));
+        }
+        if (!this.expectBody || status == 204 || status == 304 || status == 101) {
+            this.state = State.DONE;
+        } else if (this.chunked) {
+            this.state = State.CHUNK_SIZE;
+        } else if (this.contentLength >= 0) {
+            this.remaining = this.contentLength;
+            this.state = this.contentLength == 0 ? State.DONE : State.BODY_FIXED;
+        } else {
+            this.keepAlive = false;
+            this.state = State.UNTIL_CLOSE;
+        }
+    }
+
+    private void parseChunkSize(@NotNull final String chunkSize) throws ProtocolException {
+        final int extension = chunkSize.indexOf(';');
+        final String size = (extension == -1 ? chunkSize : chunkSize.substring(0, extension)).trim();
+        try {
+            this.remaining = Long.parseLong(size, 16);
+        } catch (final NumberFormatException e) {
+            throw new ProtocolException("Malformed chunk size: " + chunkSize);
+        }
+        if (this.remaining < 0) {
+            throw new ProtocolException("Malformed chunk size: " + chunkSize);
+        }
+        this.state = this.remaining == 0 ? State.TRAILERS : State.CHUNK_DATA;
+    }
+
+    /**
+     * Set the control that is passed to body handlers, letting them pause reading
+     *
+     * @param readControl Read control
+     */
+    void setReadControl(@NotNull final ReadControl readControl) {
+        this.readControl = readControl;
+    }
+
+    /**
+     * Abort the response, releasing any resources held by the body consumer
+     */
+    void abort() {
+        if (this.bodyConsumer != null && this.state != State.DONE) {
+            this.bodyConsumer.abort();
+        }
+    }
+
+    /**
+     * Finish the response
+     *
+     * @throws IOException If the body consumer fails
+     */
+    void complete() throws IOException {
+        if (this.state != State.DONE) {
+            throw new IllegalStateException("The response is not complete");
+        }
+        this.bodyConsumer.onComplete();
+    }
+
+
+    private enum State {
+        STATUS_LINE,
+        HEADERS,
+        BODY_FIXED,
+        CHUNK_SIZE,
+        CHUNK_DATA,
+        CHUNK_END,
+        TRAILERS,
+        UNTIL_CLOSE,
+        DONE
+    }
+
+
+    /**
+     * Receives the response body as it is parsed
+     */
+    interface BodyConsumer {
+
+        /**
+         * Consume a part of the body. The buffer is only valid for the duration of the call
+         *
+         * @param data Body data
+         * @throws IOException If the data could not be consumed
+         */
+        void onBody(@NotNull ByteBuffer data) throws IOException;
+
+        /**
+         * Called once the complete body has been consumed
+         *
+         * @throws IOException If the body could not be completed
+         */
+        void onComplete() throws IOException;
+
+        /**
+         * Called if the response fails before it is complete
+         */
+        default void abort() {
+        }
+
+        /**
+         * Called before any data is passed to the consumer, if the transport is able to pause
+         * reading from the connection. This lets the consumer apply backpressure
+         *
+         * @param control Read control
+         */
+        default void bind(@NotNull ReadControl control) {
+        }
+
+    }
+
+
+    /**
+     * Pauses and resumes reading from a connection
+     */
+    interface ReadControl {
+
+        /**
+         * Stop reading from the connection. This may only be called from
+         * {@link BodyConsumer#onBody(ByteBuffer)}
+         */
+        void suspend();
+
+        /**
+         * Resume reading from the connection. This may be called from any thread
+         */
+        void resume();
+
+    }
+
+
+    /**
+     * Collects the body into a byte array, which is passed to the response builder
+     */
+    private static final class ByteArrayBodyConsumer implements BodyConsumer {
+
+        private final HttpResponse.Builder builder;
+        private byte[] bytes;
+        private int length;
+
+        private ByteArrayBodyConsumer(@NotNull final HttpResponse.Builder builder, final int initialCapacity) {
+            this.builder = builder;
+            this.bytes = new byte[Math.max(initialCapacity, 64)];
+        }
+
+        @Override public void onBody(@NotNull final ByteBuffer data) {
+            final int amount = data.remaining();
+            if (this.length + amount > this.bytes.length) {
+                this.bytes = Arrays.copyOf(this.bytes, Math.max(this.length + amount, this.bytes.length * 2));
+            }
+            data.get(this.bytes, this.length, amount);
+            this.length += amount;
+        }
+
+        @Override public void onComplete() {
+            this.builder.withBody(this.length == this.bytes.length ? this.bytes : Arrays.copyOf(this.bytes, this.length));
+        }
+
+    }
+
+
+    /**
+     * Collects the body into a pooled buffer, which is passed to the response builder
+     */
+    private static final class PooledBodyConsumer implements BodyConsumer {
+
+        private final HttpResponse.Builder builder;
+        private final ResponseBufferPool pool;
+        private final long sizeHint;
+        private ResponseBufferPool.Lease lease;
+
+        private PooledBodyConsumer(@NotNull final HttpResponse.Builder builder,
+            @NotNull final ResponseBufferPool pool, final long sizeHint) {
+            this.builder = builder;
+            this.pool = pool;
+            this.sizeHint = sizeHint;
+        }
+
+        @Override public void onBody(@NotNull final ByteBuffer data) {
+            if (this.lease == null) {
+                this.lease = this.pool.lease(this.sizeHint);
+            }
+            this.lease.write(data);
+        }
+
+        @Override public void onComplete() {
+            if (this.lease != null) {
+                this.builder.withBody(this.lease);
+            }
+        }
+
+        @Override public void abort() {
+            if (this.lease != null) {
+                this.lease.release();
+            }
+        }
+
+    }
+
+}
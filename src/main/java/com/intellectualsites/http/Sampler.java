@@ -0,0 +1,99 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 IntellectualSites
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.intellectualsites.http;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides which requests are traced. Requests that are not sampled are not recorded,
+ * and do not allocate anything for tracing
+ *
+ * @see HttpClient.Builder#withTracing(Sampler, SpanExporter)
+ */
+@FunctionalInterface
+public interface Sampler {
+
+    /**
+     * Decide whether a request is sampled. This is called for every request,
+     * and should therefore be cheap
+     *
+     * @param parent Context of the trace that the request belongs to, if any
+     * @return {@code true} if the request should be traced
+     */
+    boolean isSampled(@Nullable TraceContext parent);
+
+    /**
+     * Sample every request
+     *
+     * @return Sampler
+     */
+    @NotNull static Sampler always() {
+        return parent -> true;
+    }
+
+    /**
+     * Sample no request
+     *
+     * @return Sampler
+     */
+    @NotNull static Sampler never() {
+        return parent -> false;
+    }
+
+    /**
+     * Sample a random fraction of the requests
+     *
+     * @param ratio Fraction between {@code 0} and {@code 1}
+     * @return Sampler
+     */
+    @NotNull static Sampler ratio(final double ratio) {
+        if (!(ratio >= 0 && ratio <= 1)) {
+            throw new IllegalArgumentException("Ratio must be between 0 and 1");
+        }
+        if (ratio == 0) {
+            return never();
+        }
+        if (ratio == 1) {
+            return always();
+        }
+        return parent -> ThreadLocalRandom.current().nextDouble() < ratio;
+    }
+
+    /**
+     * Follow the sampling decision of the parent, and use another sampler for requests without a parent.
+     * This keeps traces complete, as either all or none of their spans are recorded
+     *
+     * @param root Sampler for requests without a parent
+     * @return Sampler
+     */
+    @NotNull static Sampler parentBased(@NotNull final Sampler root) {
+        Objects.requireNonNull(root, "Root sampler may not be null");
+        return parent -> parent == null ? root.isSampled(null) : parent.isSampled();
+    }
+
+}
@@ -0,0 +1,320 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 IntellectualSites
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.intellectualsites.http;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Downloads a file as multiple byte ranges over separate connections. Progress is
+ * recorded next to the target file, so that an interrupted download can be resumed
+ * by performing it again
+ *
+ * @see HttpClient.WrappedRequestBuilder#executeToFile(Path, int)
+ */
+final class SegmentedDownload {
+
+    private static final long CHECKPOINT_INTERVAL = 8 * 1024 * 1024;
+
+    private final HttpClient client;
+    private final HttpClient.WrappedRequestBuilder request;
+    private final Path target;
+    private final Path partial;
+    private final Path progress;
+    private final int segmentCount;
+    private final List<Segment> segments = new ArrayList<>();
+    private String url;
+    private String validator;
+    private long length;
+
+    SegmentedDownload(@NotNull final HttpClient client, @NotNull final HttpClient.WrappedRequestBuilder request,
+        @NotNull final Path target, final int segmentCount) {
+        this.client = client;
+        this.request = request;
+        this.target = target.toAbsolutePath();
+        this.partial = this.target.resolveSibling(this.target.getFileName() + ".part");
+        this.progress = this.target.resolveSibling(this.target.getFileName() + ".progress");
+        this.segmentCount = segmentCount;
+    }
+
+    /**
+     * Perform the download
+     *
+     * @return The response to the HEAD request
+     * @throws IOException If the download failed. Progress is retained
+     */
+    @NotNull HttpResponse run() throws IOException {
+        final HttpResponse head = this.request.derive(HttpMethod.HEAD).execute();
+        if (head == null || head.getStatusCode() / 100 != 2) {
+            throw new ProtocolException(String.format("HEAD request failed with status %s",
+                head == null ? "unknown" : head.getStatusCode()));
+        }
+        this.url = this.request.getURL().toString();
+        this.length = Long.parseLong(head.getHeaders().getOrDefault("content-length", "-1"));
+        final String etag = head.getHeaders().getOrDefault("etag", null);
+        this.validator = etag != null && !etag.startsWith("W/") ? etag : head.getHeaders().getHeader("last-modified");
+        if (this.length < 0 || !head.getHeaders().getHeader("accept-ranges").equalsIgnoreCase("bytes")) {
+            // The server does not support ranges, so the file is downloaded as a single stream
+            Files.deleteIfExists(this.progress);
+            Files.deleteIfExists(this.partial);
+            final HttpResponse response = this.request.derive(HttpMethod.GET)
+                .withBodyHandler(new FileBodyHandler(this.target)).execute();
+            checkStatus(response);
+            return head;
+        }
+
+        if (!this.loadProgress()) {
+            Files.deleteIfExists(this.partial);
+            final long segmentLength = Math.max(1, (this.length + this.segmentCount - 1) / this.segmentCount);
+            for (long start = 0; start < this.length; start += segmentLength) {
+                this.segments.add(new Segment(start, Math.min(this.length, start + segmentLength) - 1, 0));
+            }
+            this.saveProgress();
+        }
+
+        try (final FileChannel file = FileChannel.open(this.partial, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            // FileChannel#transferFrom does not write past the end of the file,
+            // so the file is extended to its full length up front
+            if (this.length > 0 && file.size() < this.length) {
+                file.write(ByteBuffer.wrap(new byte[1]), this.length - 1);
+            }
+            final List<HttpClient.WrappedRequestBuilder> requests = new ArrayList<>();
+            for (final Segment segment : this.segments) {
+                if (segment.remaining() == 0) {
+                    continue;
+                }
+                final HttpClient.WrappedRequestBuilder rangeRequest = this.request.derive(HttpMethod.GET)
+                    .withHeader("Range", String.format("bytes=%d-%d", segment.position(), segment.end))
+                    .withBodyHandler(new RangeBodyHandler(file, segment));
+                if (!this.validator.isEmpty()) {
+                    rangeRequest.withHeader("If-Range", this.validator);
+                }
+                requests.add(rangeRequest);
+            }
+            try {
+                for (final HttpResponse response : this.client.executeAll(requests, this.segmentCount)) {
+                    checkStatus(response);
+                }
+            } finally {
+                file.force(false);
+                this.saveProgress();
+            }
+        }
+
+        for (final Segment segment : this.segments) {
+            if (segment.remaining() != 0) {
+                throw new EOFException("Segment starting at " + segment.start + " is incomplete");
+            }
+        }
+        try {
+            Files.move(this.partial, this.target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (final AtomicMoveNotSupportedException e) {
+            Files.move(this.partial, this.target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.deleteIfExists(this.progress);
+        return head;
+    }
+
+    private static void checkStatus(@Nullable final HttpResponse response) throws ProtocolException {
+        if (response == null || response.getStatusCode() / 100 != 2) {
+            throw new ProtocolException(String.format("Range request failed with status %s",
+                response == null ? "unknown" : response.getStatusCode()));
+        }
+    }
+
+    /**
+     * Load the progress of a previous attempt, if it downloaded the same version of the same file
+     *
+     * @return {@code true} if the progress was loaded
+     * @throws IOException If the progress record could not be read
+     */
+    private boolean loadProgress() throws IOException {
+        if (!Files.exists(this.progress) || !Files.exists(this.partial)) {
+            return false;
+        }
+        final Properties properties = new Properties();
+        try (final Reader reader = Files.newBufferedReader(this.progress, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        if (!this.url.equals(properties.getProperty("url"))
+            || !Long.toString(this.length).equals(properties.getProperty("length"))
+            || !this.validator.equals(properties.getProperty("validator"))) {
+            return false;
+        }
+        try {
+            final int count = Integer.parseInt(properties.getProperty("segments"));
+            for (int i = 0; i < count; i++) {
+                final String[] parts = properties.getProperty("segment." + i).split(",");
+                this.segments.add(new Segment(Long.parseLong(parts[0]), Long.parseLong(parts[1]),
+                    Long.parseLong(parts[2])));
+            }
+        } catch (final RuntimeException e) {
+            // Corrupt record, start over
+            this.segments.clear();
+            return false;
+        }
+        return true;
+    }
+
+    private synchronized void saveProgress() throws IOException {
+        final Properties properties = new Properties();
+        properties.setProperty("url", this.url);
+        properties.setProperty("length", Long.toString(this.length));
+        properties.setProperty("validator", this.validator);
+        properties.setProperty("segments", Integer.toString(this.segments.size()));
+        for (int i = 0; i < this.segments.size(); i++) {
+            final Segment segment = this.segments.get(i);
+            properties.setProperty("segment." + i, segment.start + "," + segment.end + "," + segment.completed);
+        }
+        final Path temporary = this.progress.resolveSibling(this.progress.getFileName() + ".tmp");
+        try (final Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            properties.store(writer, null);
+        }
+        try {
+            Files.move(temporary, this.progress, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (final AtomicMoveNotSupportedException e) {
+            Files.move(temporary, this.progress, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+
+    /**
+     * Inclusive byte range of the file
+     */
+    private static final class Segment {
+
+        private final long start;
+        private final long end;
+        private volatile long completed;
+
+        private Segment(final long start, final long end, final long completed) {
+            this.start = start;
+            this.end = end;
+            this.completed = completed;
+        }
+
+        private long position() {
+            return this.start + this.completed;
+        }
+
+        private long remaining() {
+            return this.end - this.position() + 1;
+        }
+
+    }
+
+
+    /**
+     * Writes a range response to its position in the file
+     */
+    private final class RangeBodyHandler implements BodyHandler {
+
+        private final FileChannel file;
+        private final Segment segment;
+        private long sinceCheckpoint;
+
+        private RangeBodyHandler(@NotNull final FileChannel file, @NotNull final Segment segment) {
+            this.file = file;
+            this.segment = segment;
+        }
+
+        @Override public boolean accepts(final int status) {
+            return status / 100 == 2;
+        }
+
+        @Override public void transfer(@NotNull final InputStream stream, final long contentLength) throws IOException {
+            this.checkLength(contentLength);
+            final ReadableByteChannel source = Channels.newChannel(stream);
+            while (this.segment.remaining() > 0) {
+                final long transferred = this.file.transferFrom(source, this.segment.position(),
+                    Math.min(CHECKPOINT_INTERVAL, this.segment.remaining()));
+                if (transferred <= 0) {
+                    throw new EOFException("Range response ended prematurely");
+                }
+                this.advance(transferred);
+            }
+        }
+
+        @NotNull @Override public ResponseParser.BodyConsumer consumer(final long contentLength) throws IOException {
+            this.checkLength(contentLength);
+            return new ResponseParser.BodyConsumer() {
+
+                @Override public void onBody(@NotNull final ByteBuffer data) throws IOException {
+                    while (data.hasRemaining()) {
+                        advance(file.write(data, segment.position()));
+                    }
+                }
+
+                @Override public void onComplete() throws IOException {
+                    if (segment.remaining() != 0) {
+                        throw new EOFException("Range response ended prematurely");
+                    }
+                }
+
+            };
+        }
+
+        private void checkLength(final long contentLength) throws IOException {
+            // A full response, sent because the server ignored the range, or because the file changed,
+            // has the wrong length unless the segment happens to cover the whole file
+            if (contentLength != this.segment.remaining()) {
+                throw new ProtocolException(String.format("Expected a range of %d bytes, but got %d",
+                    this.segment.remaining(), contentLength));
+            }
+        }
+
+        private void advance(final long amount) throws IOException {
+            this.segment.completed += amount;
+            this.sinceCheckpoint += amount;
+            if (this.sinceCheckpoint >= CHECKPOINT_INTERVAL) {
+                this.sinceCheckpoint = 0;
+                this.file.force(false);
+                saveProgress();
+            }
+        }
+
+    }
+
+}
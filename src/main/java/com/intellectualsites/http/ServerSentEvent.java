@@ -0,0 +1,100 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 IntellectualSites
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.intellectualsites.http;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/**
+ * An event received from a {@code text/event-stream} response
+ *
+ * @see HttpClient.WrappedRequestBuilder#executeEventStream(java.util.function.Consumer)
+ */
+public final class ServerSentEvent {
+
+    private static final ContentType EVENT_STREAM = ContentType.of("text/event-stream; charset=utf-8");
+
+    private final String id;
+    private final String event;
+    private final String data;
+    private final EntityMapper entityMapper;
+
+    ServerSentEvent(@NotNull final String id, @NotNull final String event, @NotNull final String data,
+        @NotNull final EntityMapper entityMapper) {
+        this.id = id;
+        this.event = event;
+        this.data = data;
+        this.entityMapper = entityMapper;
+    }
+
+    /**
+     * Get the last event ID, which is sent as {@code Last-Event-ID} when reconnecting
+     *
+     * @return Event ID, or {@code ""} if the server has not sent one
+     */
+    @NotNull public String getId() {
+        return this.id;
+    }
+
+    /**
+     * Get the event type
+     *
+     * @return Event type, which is {@code message} unless the server specified another type
+     */
+    @NotNull public String getEvent() {
+        return this.event;
+    }
+
+    /**
+     * Get the event data. Multiple data lines are joined by {@code \n}
+     *
+     * @return Event data
+     */
+    @NotNull public String getData() {
+        return this.data;
+    }
+
+    /**
+     * Get the event data and map it to a specific type
+     *
+     * @param type Type class
+     * @param <T>  Type
+     * @return Mapped data
+     * @throws IllegalStateException If no mapper exists for the type
+     */
+    @NotNull public <T> T getData(@NotNull final Class<T> type) {
+        Objects.requireNonNull(type, "Type may not be null");
+        return this.entityMapper.getDeserializer(type).map(deserializer ->
+            deserializer.deserialize(EVENT_STREAM, this.data.getBytes(StandardCharsets.UTF_8)))
+            .orElseThrow(() -> new IllegalStateException(String.format("Could not deserialize event into type '%s'",
+                type.getCanonicalName())));
+    }
+
+    @Override public String toString() {
+        return "ServerSentEvent{id='" + this.id + "', event='" + this.event + "', data='" + this.data + "'}";
+    }
+
+}
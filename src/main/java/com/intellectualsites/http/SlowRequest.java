@@ -0,0 +1,193 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 IntellectualSites
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.intellectualsites.http;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A request that took longer than the threshold of the
+ * {@link HttpClient.Builder#withSlowRequestLog(int, Duration) slow request log}
+ *
+ * @see HttpClient#getSlowRequests()
+ */
+public final class SlowRequest {
+
+    private static final RequestPhase[] PHASES = RequestPhase.values();
+
+    private final long sequence;
+    private final HttpMethod method;
+    private final String url;
+    private final String urlTemplate;
+    private final Instant startTime;
+    private final long duration;
+    private final int statusCode;
+    private final long requestBytes;
+    private final long responseBytes;
+    @Nullable private final Throwable error;
+    private final long[] phases;
+
+    SlowRequest(final long sequence, @NotNull final HttpMethod method, @NotNull final String url,
+        @NotNull final String urlTemplate, @NotNull final Instant startTime, final long duration,
+        final int statusCode, final long requestBytes, final long responseBytes, @Nullable final Throwable error,
+        @NotNull final long[] phases) {
+        this.sequence = sequence;
+        this.method = method;
+        this.url = url;
+        this.urlTemplate = urlTemplate;
+        this.startTime = startTime;
+        this.duration = duration;
+        this.statusCode = statusCode;
+        this.requestBytes = requestBytes;
+        this.responseBytes = responseBytes;
+        this.error = error;
+        this.phases = phases;
+    }
+
+    long getSequence() {
+        return this.sequence;
+    }
+
+    /**
+     * Get the HTTP method of the request
+     *
+     * @return HTTP method
+     */
+    @NotNull public HttpMethod getMethod() {
+        return this.method;
+    }
+
+    /**
+     * Get the URL of the request
+     *
+     * @return Request URL
+     */
+    @NotNull public String getURL() {
+        return this.url;
+    }
+
+    /**
+     * Get the URL template of the request, which groups the requests made to the same endpoint.
+     * This is the template of requests created using {@link HttpClient#prepare(HttpMethod, String)},
+     * such as {@code /users/{id}}, and the path of the URL for other requests
+     *
+     * @return URL template
+     */
+    @NotNull public String getURLTemplate() {
+        return this.urlTemplate;
+    }
+
+    /**
+     * Get the time at which the request started
+     *
+     * @return Start time
+     */
+    @NotNull public Instant getStartTime() {
+        return this.startTime;
+    }
+
+    /**
+     * Get the duration of the request
+     *
+     * @return Duration
+     */
+    @NotNull public Duration getDuration() {
+        return Duration.ofNanos(this.duration);
+    }
+
+    /**
+     * Get the time spent in a phase of the request
+     *
+     * @param phase Phase
+     * @return Duration, which is zero if the request did not go through the phase
+     */
+    @NotNull public Duration getPhaseDuration(@NotNull final RequestPhase phase) {
+        return Duration.ofNanos(this.phases[phase.ordinal()]);
+    }
+
+    /**
+     * Get the status code of the response
+     *
+     * @return Status code, or {@code 0} if the request failed
+     */
+    public int getStatusCode() {
+        return this.statusCode;
+    }
+
+    /**
+     * Get the length of the request body
+     *
+     * @return Length in bytes, or {@code -1} if unknown
+     */
+    public long getRequestBytes() {
+        return this.requestBytes;
+    }
+
+    /**
+     * Get the length of the response body, as it was held in memory
+     *
+     * @return Length in bytes
+     */
+    public long getResponseBytes() {
+        return this.responseBytes;
+    }
+
+    /**
+     * Get the failure of the request
+     *
+     * @return Failure, or {@code null} if the request received a response
+     */
+    @Nullable public Throwable getError() {
+        return this.error;
+    }
+
+    @Override public String toString() {
+        final StringBuilder builder = new StringBuilder(128).append(this.startTime).append(' ').append(this.method)
+            .append(' ').append(this.urlTemplate).append(' ').append(this.statusCode).append(' ')
+            .append(TimeUnit.NANOSECONDS.toMillis(this.duration)).append(" ms [");
+        boolean first = true;
+        for (final RequestPhase phase : PHASES) {
+            if (this.phases[phase.ordinal()] == 0) {
+                continue;
+            }
+            if (!first) {
+                builder.append(", ");
+            }
+            first = false;
+            builder.append(phase.name().toLowerCase(Locale.ROOT)).append(' ')
+                .append(TimeUnit.NANOSECONDS.toMillis(this.phases[phase.ordinal()])).append(" ms");
+        }
+        builder.append("] ").append(this.requestBytes).append('/').append(this.responseBytes).append(" bytes");
+        if (this.error != null) {
+            builder.append(' ').append(this.error);
+        }
+        return builder.toString();
+    }
+
+}
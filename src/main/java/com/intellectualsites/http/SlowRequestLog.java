@@ -0,0 +1,138 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 IntellectualSites
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.intellectualsites.http;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.net.URL;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed-size ring buffer of the requests that took longer than a threshold. Requests claim
+ * a slot using a counter, so recording never blocks, and the oldest requests are overwritten
+ * once the buffer is full. Requests below the threshold only cost the listener that times
+ * their phases
+ */
+final class SlowRequestLog implements RequestListener.Factory {
+
+    private static final int PHASES = RequestPhase.values().length;
+
+    private final long threshold;
+    private final AtomicReferenceArray<SlowRequest> entries;
+    private final AtomicLong sequence = new AtomicLong();
+
+    SlowRequestLog(final int capacity, @NotNull final Duration threshold) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        if (threshold.isNegative()) {
+            throw new IllegalArgumentException("Threshold may not be negative");
+        }
+        this.threshold = threshold.toNanos();
+        this.entries = new AtomicReferenceArray<>(capacity);
+    }
+
+    @NotNull @Override public RequestListener create(@NotNull final HttpRequest.Builder request) {
+        return new Recorder(Objects.requireNonNull(request.getMethod()), Objects.requireNonNull(request.getURL()),
+            request.getURLTemplate());
+    }
+
+    /**
+     * Copy the requests in the buffer
+     *
+     * @return Slow requests, oldest first
+     */
+    @NotNull List<SlowRequest> snapshot() {
+        final List<SlowRequest> requests = new ArrayList<>(this.entries.length());
+        for (int i = 0; i < this.entries.length(); i++) {
+            final SlowRequest request = this.entries.get(i);
+            if (request != null) {
+                requests.add(request);
+            }
+        }
+        requests.sort(Comparator.comparingLong(SlowRequest::getSequence));
+        return requests;
+    }
+
+    private void record(@NotNull final HttpMethod method, @NotNull final URL url, @Nullable final String urlTemplate,
+        final long duration, final int status, final long requestBytes, final long responseBytes,
+        @Nullable final Throwable throwable, @NotNull final long[] phases) {
+        final long sequence = this.sequence.getAndIncrement();
+        final Instant startTime = Instant.now().minusNanos(duration);
+        this.entries.set((int) (sequence % this.entries.length()), new SlowRequest(sequence, method,
+            url.toExternalForm(), urlTemplate == null ? url.getPath() : urlTemplate, startTime, duration, status,
+            requestBytes, responseBytes, throwable, phases));
+    }
+
+
+    private final class Recorder implements RequestListener {
+
+        private final HttpMethod method;
+        private final URL url;
+        @Nullable private final String urlTemplate;
+        private final long start = System.nanoTime();
+        private final long[] phases = new long[PHASES];
+        private boolean ended;
+
+        private Recorder(@NotNull final HttpMethod method, @NotNull final URL url,
+            @Nullable final String urlTemplate) {
+            this.method = method;
+            this.url = url;
+            this.urlTemplate = urlTemplate;
+        }
+
+        @Override public synchronized void phase(@NotNull final RequestPhase phase, final long startNanos,
+            final long endNanos) {
+            this.phases[phase.ordinal()] += endNanos - startNanos;
+        }
+
+        @Override public void complete(final int status, final long requestBytes, final long responseBytes,
+            @Nullable final Throwable throwable) {
+            final long duration = System.nanoTime() - this.start;
+            if (duration < threshold) {
+                return;
+            }
+            final long[] phases;
+            synchronized (this) {
+                if (this.ended) {
+                    return;
+                }
+                this.ended = true;
+                phases = this.phases.clone();
+            }
+            record(this.method, this.url, this.urlTemplate, duration, status, requestBytes, responseBytes,
+                throwable, phases);
+        }
+
+    }
+
+}
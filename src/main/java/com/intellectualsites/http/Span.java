@@ -0,0 +1,235 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 IntellectualSites
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.intellectualsites.http;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A traced request, which has ended. The span covers a single execution of the request,
+ * from the serialization of its entity until its response has been read, and has an
+ * {@link Event event} for each {@link RequestPhase phase} of the execution
+ *
+ * @see SpanExporter
+ */
+public final class Span {
+
+    private final TraceContext context;
+    @Nullable private final TraceContext parent;
+    private final HttpMethod method;
+    private final String url;
+    private final Instant startTime;
+    private final long duration;
+    private final int statusCode;
+    private final long requestBytes;
+    private final long responseBytes;
+    @Nullable private final Throwable error;
+    private final List<Event> events;
+
+    Span(@NotNull final TraceContext context, @Nullable final TraceContext parent, @NotNull final HttpMethod method,
+        @NotNull final String url, @NotNull final Instant startTime, final long duration, final int statusCode,
+        final long requestBytes, final long responseBytes, @Nullable final Throwable error,
+        @NotNull final List<Event> events) {
+        this.context = context;
+        this.parent = parent;
+        this.method = method;
+        this.url = url;
+        this.startTime = startTime;
+        this.duration = duration;
+        this.statusCode = statusCode;
+        this.requestBytes = requestBytes;
+        this.responseBytes = responseBytes;
+        this.error = error;
+        this.events = Collections.unmodifiableList(events);
+    }
+
+    /**
+     * Get the context of the span, which was sent to the server in the {@code traceparent} header
+     *
+     * @return Trace context
+     */
+    @NotNull public TraceContext getContext() {
+        return this.context;
+    }
+
+    /**
+     * Get the context of the parent span
+     *
+     * @return Parent context, or {@code null} if the span started a new trace
+     */
+    @Nullable public TraceContext getParent() {
+        return this.parent;
+    }
+
+    /**
+     * Get the name of the span, which is the HTTP method, following the
+     * OpenTelemetry conventions for HTTP client spans
+     *
+     * @return Span name
+     */
+    @NotNull public String getName() {
+        return this.method.name();
+    }
+
+    /**
+     * Get the HTTP method of the request
+     *
+     * @return HTTP method
+     */
+    @NotNull public HttpMethod getMethod() {
+        return this.method;
+    }
+
+    /**
+     * Get the URL of the request
+     *
+     * @return Request URL
+     */
+    @NotNull public String getURL() {
+        return this.url;
+    }
+
+    /**
+     * Get the time at which the span started
+     *
+     * @return Start time
+     */
+    @NotNull public Instant getStartTime() {
+        return this.startTime;
+    }
+
+    /**
+     * Get the duration of the span
+     *
+     * @return Duration
+     */
+    @NotNull public Duration getDuration() {
+        return Duration.ofNanos(this.duration);
+    }
+
+    /**
+     * Get the status code of the response
+     *
+     * @return Status code, or {@code 0} if the request failed
+     */
+    public int getStatusCode() {
+        return this.statusCode;
+    }
+
+    /**
+     * Get the length of the request body
+     *
+     * @return Length in bytes, or {@code -1} if unknown
+     */
+    public long getRequestBytes() {
+        return this.requestBytes;
+    }
+
+    /**
+     * Get the length of the response body, as it was held in memory
+     *
+     * @return Length in bytes
+     */
+    public long getResponseBytes() {
+        return this.responseBytes;
+    }
+
+    /**
+     * Get the failure of the request
+     *
+     * @return Failure, or {@code null} if the request received a response
+     */
+    @Nullable public Throwable getError() {
+        return this.error;
+    }
+
+    /**
+     * Get the phases of the request, in the order in which they ended
+     *
+     * @return Unmodifiable list of events
+     */
+    @NotNull public List<Event> getEvents() {
+        return this.events;
+    }
+
+    @Override public String toString() {
+        return String.format("Span{%s %s %s, status=%d, duration=%s}", this.context, this.method, this.url,
+            this.statusCode, this.getDuration());
+    }
+
+
+    /**
+     * A phase of the request, relative to the start of the span
+     */
+    public static final class Event {
+
+        private final RequestPhase phase;
+        private final long offset;
+        private final long duration;
+
+        Event(@NotNull final RequestPhase phase, final long offset, final long duration) {
+            this.phase = phase;
+            this.offset = offset;
+            this.duration = duration;
+        }
+
+        /**
+         * Get the phase
+         *
+         * @return Phase
+         */
+        @NotNull public RequestPhase getPhase() {
+            return this.phase;
+        }
+
+        /**
+         * Get the time between the start of the span and the start of the phase
+         *
+         * @return Offset
+         */
+        @NotNull public Duration getOffset() {
+            return Duration.ofNanos(this.offset);
+        }
+
+        /**
+         * Get the duration of the phase
+         *
+         * @return Duration
+         */
+        @NotNull public Duration getDuration() {
+            return Duration.ofNanos(this.duration);
+        }
+
+        @Override public String toString() {
+            return this.phase + "+" + this.getOffset() + "(" + this.getDuration() + ")";
+        }
+
+    }
+
+}
@@ -0,0 +1,386 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 IntellectualSites
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.intellectualsites.http;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Consumes a response body incrementally, one line at a time, as it arrives. This is used
+ * for {@code text/event-stream} and newline-delimited JSON responses, which may never end.
+ * Memory use is bounded by the length of a single line or event
+ */
+final class StreamingRequest {
+
+    private static final int MAX_LINE_LENGTH = 8 * 1024 * 1024;
+    private static final long DEFAULT_RETRY = 3000L;
+    /**
+     * Lower bound of the reconnection delay, so that a server cannot make a failing stream reconnect in a loop
+     */
+    private static final long MIN_RETRY = 100L;
+
+    private final HttpClient.WrappedRequestBuilder request;
+    private final EntityMapper mapper;
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+    @Nullable private final Consumer<ServerSentEvent> eventConsumer;
+    @Nullable private final LineConsumer recordConsumer;
+    @Nullable private volatile HttpClient.WrappedRequestBuilder connection;
+    private volatile String lastEventId = "";
+    private volatile long retry = DEFAULT_RETRY;
+
+    private StreamingRequest(@NotNull final HttpClient.WrappedRequestBuilder request, @NotNull final EntityMapper mapper,
+        @Nullable final Consumer<ServerSentEvent> eventConsumer, @Nullable final LineConsumer recordConsumer) {
+        this.request = request;
+        this.mapper = mapper;
+        this.eventConsumer = eventConsumer;
+        this.recordConsumer = recordConsumer;
+        // The stream may be idle for a long time, so its connection is closed right away
+        // rather than when the next bytes arrive
+        this.completion.whenComplete((ignored, throwable) -> {
+            final HttpClient.WrappedRequestBuilder connection = this.connection;
+            if (this.completion.isCancelled() && connection != null) {
+                connection.cancel();
+            }
+        });
+    }
+
+    /**
+     * Consume a {@code text/event-stream}. The stream is reconnected whenever it ends or
+     * fails with an I/O error, sending the last received event ID, until the server
+     * responds with a status other than 200, or until the returned future is cancelled
+     *
+     * @param request  Request
+     * @param mapper   Entity mapper
+     * @param consumer Event consumer
+     * @return Future that completes when the stream has ended for good
+     */
+    @NotNull static CompletableFuture<Void> events(@NotNull final HttpClient.WrappedRequestBuilder request,
+        @NotNull final EntityMapper mapper, @NotNull final Consumer<ServerSentEvent> consumer) {
+        final StreamingRequest streamingRequest = new StreamingRequest(request, mapper, consumer, null);
+        streamingRequest.connect();
+        return streamingRequest.completion;
+    }
+
+    /**
+     * Consume a newline-delimited stream of records. Empty lines are skipped
+     *
+     * @param request  Request
+     * @param mapper   Entity mapper
+     * @param type     Record type
+     * @param consumer Record consumer
+     * @param <T>      Record type
+     * @return Future that completes when the stream ends
+     * @throws IllegalStateException If no mapper exists for the type
+     */
+    @NotNull static <T> CompletableFuture<Void> records(@NotNull final HttpClient.WrappedRequestBuilder request,
+        @NotNull final EntityMapper mapper, @NotNull final Class<T> type, @NotNull final Consumer<T> consumer) {
+        final EntityMapper.EntityDeserializer<T> deserializer = mapper.getDeserializer(type).orElseThrow(() ->
+            new IllegalStateException(String.format("Could not deserialize records into type '%s'",
+                type.getCanonicalName())));
+        final StreamingRequest streamingRequest = new StreamingRequest(request, mapper, null,
+            (bytes, length) -> {
+                if (length > 0) {
+                    consumer.accept(deserializer.deserialize(ContentType.JSON, Arrays.copyOf(bytes, length)));
+                }
+            });
+        streamingRequest.connect();
+        return streamingRequest.completion;
+    }
+
+    private void connect() {
+        if (this.completion.isDone()) {
+            return;
+        }
+        final HttpClient.WrappedRequestBuilder connection = this.request.derive(HttpMethod.GET);
+        final LineConsumer lineConsumer;
+        if (this.eventConsumer != null) {
+            connection.withHeader("Accept", "text/event-stream").withHeader("Cache-Control", "no-cache");
+            if (!this.lastEventId.isEmpty()) {
+                connection.withHeader("Last-Event-ID", this.lastEventId);
+            }
+            lineConsumer = new EventParser();
+        } else {
+            connection.withHeader("Accept", "application/x-ndjson, application/json");
+            lineConsumer = this.recordConsumer;
+        }
+        this.connection = connection;
+        if (this.completion.isDone()) {
+            return;
+        }
+        final CompletableFuture<HttpResponse> future;
+        try {
+            future = connection.withBodyHandler(new LineBodyHandler(lineConsumer)).executeAsync();
+        } catch (final Throwable throwable) {
+            this.completion.completeExceptionally(throwable);
+            return;
+        }
+        future.whenComplete((response, throwable) -> {
+            if (this.completion.isDone()) {
+                return;
+            }
+            if (throwable instanceof CompletionException && throwable.getCause() != null) {
+                throwable = throwable.getCause();
+            }
+            if (throwable != null) {
+                final boolean ioFailure = throwable instanceof IOException || throwable.getCause() instanceof IOException;
+                if (this.eventConsumer != null && ioFailure) {
+                    this.reconnect();
+                } else {
+                    this.completion.completeExceptionally(throwable);
+                }
+            } else if (response == null || response.getStatusCode() == 204) {
+                // The server asks the client to stop reconnecting
+                this.completion.complete(null);
+            } else if (response.getStatusCode() / 100 != 2) {
+                this.completion.completeExceptionally(new ProtocolException(String.format(
+                    "Stream request failed with status %d", response.getStatusCode())));
+            } else if (this.eventConsumer != null) {
+                this.reconnect();
+            } else {
+                this.completion.complete(null);
+            }
+        });
+    }
+
+    /**
+     * Check whether a {@code retry} field is valid. Only ASCII digits are allowed, so values
+     * such as {@code -5} or {@code +5} are ignored
+     *
+     * @param value Field value
+     * @return {@code true} if the value consists of digits, and fits into a {@code long}
+     */
+    private static boolean isDigits(@NotNull final String value) {
+        if (value.isEmpty() || value.length() > 18) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) < '0' || value.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void reconnect() {
+        Scheduler.INSTANCE.schedule(this::connect, this.retry, TimeUnit.MILLISECONDS);
+    }
+
+    private void checkCancelled() {
+        if (this.completion.isDone()) {
+            throw new CancellationException("The stream has been closed");
+        }
+    }
+
+
+    /**
+     * Receives complete lines, without their terminator. The array is only valid for the duration of the call
+     */
+    @FunctionalInterface
+    private interface LineConsumer {
+
+        void accept(@NotNull byte[] line, int length);
+
+    }
+
+
+    /**
+     * Splits the body into lines. Lines may be terminated by CRLF, LF or CR
+     */
+    private final class LineBodyHandler implements BodyHandler {
+
+        private final LineConsumer consumer;
+        private byte[] line = new byte[256];
+        private int length;
+        private boolean skipLineFeed;
+
+        private LineBodyHandler(@NotNull final LineConsumer consumer) {
+            this.consumer = consumer;
+        }
+
+        @Override public boolean accepts(final int status) {
+            return status == 200;
+        }
+
+        @Override public void transfer(@NotNull final InputStream stream, final long contentLength) throws IOException {
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                checkCancelled();
+                this.decode(ByteBuffer.wrap(buffer, 0, read));
+            }
+            this.finish();
+        }
+
+        @NotNull @Override public ResponseParser.BodyConsumer consumer(final long contentLength) {
+            return new ResponseParser.BodyConsumer() {
+
+                @Override public void onBody(@NotNull final ByteBuffer data) throws IOException {
+                    checkCancelled();
+                    decode(data);
+                }
+
+                @Override public void onComplete() {
+                    finish();
+                }
+
+            };
+        }
+
+        private void decode(@NotNull final ByteBuffer data) throws IOException {
+            while (data.hasRemaining()) {
+                final byte b = data.get();
+                if (this.skipLineFeed) {
+                    this.skipLineFeed = false;
+                    if (b == '\n') {
+                        continue;
+                    }
+                }
+                if (b == '\n' || b == '\r') {
+                    this.skipLineFeed = b == '\r';
+                    this.consumer.accept(this.line, this.length);
+                    this.length = 0;
+                    continue;
+                }
+                if (this.length == this.line.length) {
+                    if (this.length >= MAX_LINE_LENGTH) {
+                        throw new ProtocolException("Stream line exceeds " + MAX_LINE_LENGTH + " bytes");
+                    }
+                    this.line = Arrays.copyOf(this.line, Math.min(MAX_LINE_LENGTH, this.line.length * 2));
+                }
+                this.line[this.length++] = b;
+            }
+        }
+
+        private void finish() {
+            // A final line without a terminator is only meaningful for records,
+            // as incomplete events are discarded
+            if (this.length > 0 && recordConsumer != null) {
+                this.consumer.accept(this.line, this.length);
+            }
+            this.length = 0;
+        }
+
+    }
+
+
+    /**
+     * Parses {@code text/event-stream} lines into events, as described by the HTML living standard
+     */
+    private final class EventParser implements LineConsumer {
+
+        private final StringBuilder data = new StringBuilder();
+        private String event = "";
+        private boolean first = true;
+
+        @Override public void accept(@NotNull final byte[] bytes, final int length) {
+            String line = new String(bytes, 0, length, StandardCharsets.UTF_8);
+            if (this.first) {
+                this.first = false;
+                if (line.startsWith("\uFEFF")) {
+                    line = line.substring(1);
+                }
+            }
+            if (line.isEmpty()) {
+                this.dispatch();
+                return;
+            }
+            if (line.charAt(0) == ':') {
+                return;
+            }
+            final int colon = line.indexOf(':');
+            final String field = colon == -1 ? line : line.substring(0, colon);
+            String value = colon == -1 ? "" : line.substring(colon + 1);
+            if (value.startsWith(" ")) {
+                value = value.substring(1);
+            }
+            switch (field) {
+                case "event":
+                    this.event = value;
+                    break;
+                case "data":
+                    if (this.data.length() + value.length() > MAX_LINE_LENGTH) {
+                        throw new IllegalStateException("Event data exceeds " + MAX_LINE_LENGTH + " characters");
+                    }
+                    this.data.append(value).append('\n');
+                    break;
+                case "id":
+                    if (value.indexOf('\0') == -1) {
+                        lastEventId = value;
+                    }
+                    break;
+                case "retry":
+                    if (isDigits(value)) {
+                        retry = Math.max(MIN_RETRY, Long.parseLong(value));
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void dispatch() {
+            if (this.data.length() == 0) {
+                this.event = "";
+                return;
+            }
+            this.data.setLength(this.data.length() - 1);
+            final ServerSentEvent serverSentEvent = new ServerSentEvent(lastEventId,
+                this.event.isEmpty() ? "message" : this.event, this.data.toString(), mapper);
+            this.data.setLength(0);
+            this.event = "";
+            Objects.requireNonNull(eventConsumer).accept(serverSentEvent);
+        }
+
+    }
+
+
+    /**
+     * Schedules reconnection attempts
+     */
+    private static final class Scheduler {
+
+        private static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "HTTP4J-Stream-Scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+    }
+
+}
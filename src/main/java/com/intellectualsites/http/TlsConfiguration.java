@@ -0,0 +1,168 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 IntellectualSites
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.intellectualsites.http;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+
+/**
+ * TLS settings that are shared by every HTTPS request of a client. Sharing a single socket factory
+ * lets {@link HttpsURLConnection} reuse keep-alive connections and resume cached sessions
+ */
+final class TlsConfiguration {
+
+    private final SSLSocketFactory socketFactory;
+    @Nullable private final HostnameVerifier hostnameVerifier;
+    private final TlsMetrics metrics = new TlsMetrics();
+
+    private TlsConfiguration(@NotNull final SSLSocketFactory socketFactory,
+        @Nullable final HostnameVerifier hostnameVerifier) {
+        this.socketFactory = new MeteredSocketFactory(socketFactory);
+        this.hostnameVerifier = hostnameVerifier;
+    }
+
+    /**
+     * Create the TLS configuration of a client
+     *
+     * @param settings Client settings
+     * @return Created configuration
+     * @throws GeneralSecurityException If an SSL context had to be created, but could not be
+     */
+    @NotNull static TlsConfiguration create(@NotNull final ClientSettings settings) throws GeneralSecurityException {
+        SSLContext context = settings.getSSLContext();
+        if (settings.getSSLSocketFactory() != null) {
+            if (settings.getSessionCacheSize() >= 0) {
+                throw new IllegalStateException("The session cache can not be configured for a socket factory");
+            }
+            return new TlsConfiguration(settings.getSSLSocketFactory(), settings.getHostnameVerifier());
+        }
+        if (context == null && settings.getSessionCacheSize() >= 0) {
+            // The default context is shared by the entire JVM, so it should not be modified
+            context = SSLContext.getInstance("TLS");
+            context.init(null, null, null);
+        }
+        if (context == null) {
+            return new TlsConfiguration(HttpsURLConnection.getDefaultSSLSocketFactory(), settings.getHostnameVerifier());
+        }
+        if (settings.getSessionCacheSize() >= 0) {
+            final SSLSessionContext sessionContext = context.getClientSessionContext();
+            sessionContext.setSessionCacheSize(settings.getSessionCacheSize());
+            sessionContext.setSessionTimeout((int) Math.min(Integer.MAX_VALUE, settings.getSessionTimeout().getSeconds()));
+        }
+        return new TlsConfiguration(context.getSocketFactory(), settings.getHostnameVerifier());
+    }
+
+    /**
+     * Apply the configuration to a connection
+     *
+     * @param connection Connection
+     */
+    void configure(@NotNull final HttpsURLConnection connection) {
+        connection.setSSLSocketFactory(this.socketFactory);
+        if (this.hostnameVerifier != null) {
+            connection.setHostnameVerifier(this.hostnameVerifier);
+        }
+    }
+
+    @NotNull TlsMetrics getMetrics() {
+        return this.metrics;
+    }
+
+
+    /**
+     * Records whether each handshake resumed a session. A resumed session
+     * was created before the socket that resumes it
+     */
+    private final class MeteredSocketFactory extends SSLSocketFactory {
+
+        private final SSLSocketFactory delegate;
+
+        private MeteredSocketFactory(@NotNull final SSLSocketFactory delegate) {
+            this.delegate = delegate;
+        }
+
+        @NotNull private Socket meter(@NotNull final Socket socket) {
+            if (socket instanceof SSLSocket) {
+                final long created = System.currentTimeMillis();
+                ((SSLSocket) socket).addHandshakeCompletedListener(event ->
+                    metrics.recordHandshake(event.getSession().getCreationTime() < created));
+            }
+            return socket;
+        }
+
+        @Override public String[] getDefaultCipherSuites() {
+            return this.delegate.getDefaultCipherSuites();
+        }
+
+        @Override public String[] getSupportedCipherSuites() {
+            return this.delegate.getSupportedCipherSuites();
+        }
+
+        @Override public Socket createSocket() throws IOException {
+            return this.meter(this.delegate.createSocket());
+        }
+
+        @Override public Socket createSocket(final Socket socket, final String host, final int port,
+            final boolean autoClose) throws IOException {
+            return this.meter(this.delegate.createSocket(socket, host, port, autoClose));
+        }
+
+        @Override public Socket createSocket(final Socket socket, final InputStream consumed,
+            final boolean autoClose) throws IOException {
+            return this.meter(this.delegate.createSocket(socket, consumed, autoClose));
+        }
+
+        @Override public Socket createSocket(final String host, final int port) throws IOException {
+            return this.meter(this.delegate.createSocket(host, port));
+        }
+
+        @Override public Socket createSocket(final String host, final int port, final InetAddress localHost,
+            final int localPort) throws IOException {
+            return this.meter(this.delegate.createSocket(host, port, localHost, localPort));
+        }
+
+        @Override public Socket createSocket(final InetAddress host, final int port) throws IOException {
+            return this.meter(this.delegate.createSocket(host, port));
+        }
+
+        @Override public Socket createSocket(final InetAddress address, final int port, final InetAddress localAddress,
+            final int localPort) throws IOException {
+            return this.meter(this.delegate.createSocket(address, port, localAddress, localPort));
+        }
+
+    }
+
+}
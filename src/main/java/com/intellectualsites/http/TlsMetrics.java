@@ -0,0 +1,84 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 IntellectualSites
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.intellectualsites.http;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the TLS handshakes performed by a client. A resumed handshake reuses
+ * a cached session, which avoids the expensive key exchange of a full handshake
+ *
+ * @see HttpClient#getTlsMetrics()
+ */
+public final class TlsMetrics {
+
+    private final LongAdder fullHandshakes = new LongAdder();
+    private final LongAdder resumedHandshakes = new LongAdder();
+
+    TlsMetrics() {
+    }
+
+    void recordHandshake(final boolean resumed) {
+        if (resumed) {
+            this.resumedHandshakes.increment();
+        } else {
+            this.fullHandshakes.increment();
+        }
+    }
+
+    /**
+     * Get the amount of full handshakes
+     *
+     * @return Full handshakes
+     */
+    public long getFullHandshakes() {
+        return this.fullHandshakes.sum();
+    }
+
+    /**
+     * Get the amount of handshakes that resumed a cached session
+     *
+     * @return Resumed handshakes
+     */
+    public long getResumedHandshakes() {
+        return this.resumedHandshakes.sum();
+    }
+
+    /**
+     * Get the share of handshakes that resumed a cached session
+     *
+     * @return Resumption rate, between {@code 0} and {@code 1}
+     */
+    public double getResumptionRate() {
+        final long resumed = this.getResumedHandshakes();
+        final long total = resumed + this.getFullHandshakes();
+        return total == 0 ? 0 : (double) resumed / total;
+    }
+
+    @Override public String toString() {
+        return "TlsMetrics{fullHandshakes=" + this.getFullHandshakes() + ", resumedHandshakes="
+            + this.getResumedHandshakes() + '}';
+    }
+
+}
@@ -0,0 +1,235 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 IntellectualSites
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.intellectualsites.http;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Identifies a span within a trace, as propagated by the
+ * <a href="https://www.w3.org/TR/trace-context/">W3C Trace Context</a> {@code traceparent} header
+ */
+public final class TraceContext {
+
+    private static final String VERSION = "00";
+
+    private final long traceIdHigh;
+    private final long traceIdLow;
+    private final long spanId;
+    private final boolean sampled;
+    @Nullable private String header;
+
+    private TraceContext(final long traceIdHigh, final long traceIdLow, final long spanId, final boolean sampled,
+        @Nullable final String header) {
+        this.traceIdHigh = traceIdHigh;
+        this.traceIdLow = traceIdLow;
+        this.spanId = spanId;
+        this.sampled = sampled;
+        this.header = header;
+    }
+
+    /**
+     * Parse a {@code traceparent} header
+     *
+     * @param traceParent Header value
+     * @return Trace context, or {@code null} if the header is invalid, as the header should then be ignored
+     */
+    @Nullable public static TraceContext parse(@NotNull final String traceParent) {
+        Objects.requireNonNull(traceParent, "Trace parent may not be null");
+        final String value = traceParent.trim();
+        // version "-" trace-id "-" parent-id "-" trace-flags, and future versions may append fields
+        if (value.length() < 55 || value.charAt(2) != '-' || value.charAt(35) != '-' || value.charAt(52) != '-'
+            || (value.length() > 55 && value.charAt(55) != '-')) {
+            return null;
+        }
+        final int version = hex(value, 0, 2);
+        if (version < 0 || version == 0xFF || (version == 0 && value.length() != 55)) {
+            return null;
+        }
+        final int flags = hex(value, 53, 55);
+        if (flags < 0) {
+            return null;
+        }
+        try {
+            final long traceIdHigh = parseHex(value, 3, 19);
+            final long traceIdLow = parseHex(value, 19, 35);
+            final long spanId = parseHex(value, 36, 52);
+            if ((traceIdHigh == 0 && traceIdLow == 0) || spanId == 0) {
+                return null;
+            }
+            // The header is reused as is, if it is exactly what this context would produce
+            return new TraceContext(traceIdHigh, traceIdLow, spanId, (flags & 1) != 0,
+                version == 0 && flags <= 1 ? value : null);
+        } catch (final NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Create the context of a new trace, without a parent
+     *
+     * @param sampled Whether the trace is sampled
+     * @return Trace context
+     */
+    @NotNull public static TraceContext newTrace(final boolean sampled) {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        long low;
+        do {
+            low = random.nextLong();
+        } while (low == 0);
+        return new TraceContext(random.nextLong(), low, newSpanId(), sampled, null);
+    }
+
+    /**
+     * Create the context of a child span, within the same trace
+     *
+     * @param sampled Whether the child span is sampled
+     * @return Trace context
+     */
+    @NotNull TraceContext newChild(final boolean sampled) {
+        return new TraceContext(this.traceIdHigh, this.traceIdLow, newSpanId(), sampled, null);
+    }
+
+    private static long newSpanId() {
+        long spanId;
+        do {
+            spanId = ThreadLocalRandom.current().nextLong();
+        } while (spanId == 0);
+        return spanId;
+    }
+
+    private static int hex(@NotNull final String value, final int start, final int end) {
+        int result = 0;
+        for (int i = start; i < end; i++) {
+            final int digit = Character.digit(value.charAt(i), 16);
+            if (digit < 0 || Character.isUpperCase(value.charAt(i))) {
+                return -1;
+            }
+            result = (result << 4) | digit;
+        }
+        return result;
+    }
+
+    private static long parseHex(@NotNull final String value, final int start, final int end) {
+        long result = 0;
+        for (int i = start; i < end; i++) {
+            final int digit = Character.digit(value.charAt(i), 16);
+            if (digit < 0 || Character.isUpperCase(value.charAt(i))) {
+                throw new NumberFormatException(value);
+            }
+            result = (result << 4) | digit;
+        }
+        return result;
+    }
+
+    /**
+     * Get the trace ID
+     *
+     * @return 32 lower case hex digits
+     */
+    @NotNull public String getTraceId() {
+        return this.toString().substring(3, 35);
+    }
+
+    /**
+     * Get the span ID
+     *
+     * @return 16 lower case hex digits
+     */
+    @NotNull public String getSpanId() {
+        return this.toString().substring(36, 52);
+    }
+
+    /**
+     * Check whether the span is sampled, which means that it is recorded
+     *
+     * @return {@code true} if the span is sampled
+     */
+    public boolean isSampled() {
+        return this.sampled;
+    }
+
+    /**
+     * Check whether another context belongs to the same trace
+     *
+     * @param other Other context
+     * @return {@code true} if the trace IDs are equal
+     */
+    public boolean isSameTrace(@NotNull final TraceContext other) {
+        return this.traceIdHigh == other.traceIdHigh && this.traceIdLow == other.traceIdLow;
+    }
+
+    long getSpanIdBits() {
+        return this.spanId;
+    }
+
+    /**
+     * Get the {@code traceparent} header of the context
+     *
+     * @return Header value
+     */
+    @Override public String toString() {
+        String header = this.header;
+        if (header == null) {
+            final char[] chars = new char[55];
+            VERSION.getChars(0, 2, chars, 0);
+            chars[2] = '-';
+            writeHex(chars, 3, this.traceIdHigh);
+            writeHex(chars, 19, this.traceIdLow);
+            chars[35] = '-';
+            writeHex(chars, 36, this.spanId);
+            chars[52] = '-';
+            chars[53] = '0';
+            chars[54] = this.sampled ? '1' : '0';
+            this.header = header = new String(chars);
+        }
+        return header;
+    }
+
+    static void writeHex(@NotNull final char[] chars, final int offset, final long value) {
+        for (int i = 0; i < 16; i++) {
+            chars[offset + i] = Character.forDigit((int) (value >>> (60 - 4 * i)) & 0xF, 16);
+        }
+    }
+
+    @Override public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof TraceContext)) {
+            return false;
+        }
+        final TraceContext that = (TraceContext) o;
+        return this.traceIdHigh == that.traceIdHigh && this.traceIdLow == that.traceIdLow
+            && this.spanId == that.spanId && this.sampled == that.sampled;
+    }
+
+    @Override public int hashCode() {
+        return Objects.hash(this.traceIdHigh, this.traceIdLow, this.spanId, this.sampled);
+    }
+
+}
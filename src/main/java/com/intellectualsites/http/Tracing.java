@@ -0,0 +1,132 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 IntellectualSites
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.intellectualsites.http;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * Opens a span for each sampled request, and propagates the trace to the server
+ * using the {@code traceparent} header
+ */
+final class Tracing implements RequestListener.Factory {
+
+    static final String TRACE_PARENT = "traceparent";
+
+    private final Sampler sampler;
+    private final SpanExporter exporter;
+    @Nullable private final Supplier<TraceContext> parentSupplier;
+
+    Tracing(@NotNull final Sampler sampler, @NotNull final SpanExporter exporter,
+        @Nullable final Supplier<TraceContext> parentSupplier) {
+        this.sampler = Objects.requireNonNull(sampler, "Sampler may not be null");
+        this.exporter = Objects.requireNonNull(exporter, "Exporter may not be null");
+        this.parentSupplier = parentSupplier;
+    }
+
+    /**
+     * Determine the parent of a request. This is done once, on the thread that executes the request,
+     * as the parent supplier commonly reads thread-local state. Otherwise, the parent is read from
+     * a {@code traceparent} header that was added to the request
+     *
+     * @param request Request builder
+     */
+    void resolveParent(@NotNull final HttpRequest.Builder request) {
+        TraceContext parent = this.parentSupplier == null ? null : this.parentSupplier.get();
+        if (parent == null && request.hasHeader(TRACE_PARENT)) {
+            parent = TraceContext.parse(request.getHeader(TRACE_PARENT));
+        }
+        request.withTraceParent(parent);
+    }
+
+    @Nullable @Override public RequestListener create(@NotNull final HttpRequest.Builder request) {
+        final TraceContext parent = request.getTraceParent();
+        if (!this.sampler.isSampled(parent)) {
+            // Propagate the decision, so that the server does not record an orphaned span
+            if (parent != null) {
+                request.setHeader(TRACE_PARENT, parent.toString());
+            } else if (request.hasHeader(TRACE_PARENT)) {
+                request.removeHeader(TRACE_PARENT);
+            }
+            return null;
+        }
+        final TraceContext context = parent == null ? TraceContext.newTrace(true) : parent.newChild(true);
+        request.setHeader(TRACE_PARENT, context.toString());
+        return new Recorder(context, parent, Objects.requireNonNull(request.getMethod()),
+            Objects.requireNonNull(request.getURL()).toExternalForm());
+    }
+
+
+    /**
+     * Records the phases of a sampled request, and exports its span once it has completed
+     */
+    private final class Recorder implements RequestListener {
+
+        private final TraceContext context;
+        @Nullable private final TraceContext parent;
+        private final HttpMethod method;
+        private final String url;
+        private final Instant startTime = Instant.now();
+        private final long start = System.nanoTime();
+        private final List<Span.Event> events = new ArrayList<>(RequestPhase.values().length);
+        private boolean ended;
+
+        private Recorder(@NotNull final TraceContext context, @Nullable final TraceContext parent,
+            @NotNull final HttpMethod method, @NotNull final String url) {
+            this.context = context;
+            this.parent = parent;
+            this.method = method;
+            this.url = url;
+        }
+
+        @Override public synchronized void phase(@NotNull final RequestPhase phase, final long startNanos,
+            final long endNanos) {
+            if (!this.ended) {
+                this.events.add(new Span.Event(phase, startNanos - this.start, endNanos - startNanos));
+            }
+        }
+
+        @Override public void complete(final int status, final long requestBytes, final long responseBytes,
+            @Nullable final Throwable throwable) {
+            final Span span;
+            synchronized (this) {
+                if (this.ended) {
+                    return;
+                }
+                this.ended = true;
+                span = new Span(this.context, this.parent, this.method, this.url, this.startTime,
+                    System.nanoTime() - this.start, status, requestBytes, responseBytes, throwable, this.events);
+            }
+            exporter.export(span);
+        }
+
+    }
+
+}
@@ -0,0 +1,298 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 IntellectualSites
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.intellectualsites.http;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * {@link Interceptor} that records every request, its response and how long it took,
+ * so that the traffic can later be served by a {@link TrafficReplay}. The recording is
+ * written in a compact, compressed binary format.
+ * <p>
+ * Requests are identified by their method, the path and query of their URL, the headers that
+ * select a representation ({@code Accept}, {@code Content-Type}, {@code Range} and the conditional
+ * headers) and a SHA-256 hash of their body. The body entity is serialized an extra time to compute
+ * the hash. Streamed {@link HttpClient.WrappedRequestBuilder#withInput(BodySource) body sources} are
+ * not read, and are identified by their content type and length instead.
+ * <p>
+ * The recorder should be the last interceptor of the client, so that the recorded latency
+ * only covers the request itself. Records are written by the thread that completes the
+ * request, and the recording is only complete once the recorder is {@link #close() closed}
+ *
+ * @see HttpClient.Builder#withInterceptor(Interceptor)
+ */
+public final class TrafficRecorder implements Interceptor, Closeable {
+
+    static final int MAGIC = 0x48344A54;
+    static final int VERSION = 2;
+    static final int RESPONSE = 1;
+    static final int FAILURE = 2;
+    static final int KEY_LENGTH = 32;
+
+    private static final String[] MATCHED_HEADERS = {"accept", "accept-encoding", "accept-language",
+        "content-type", "if-match", "if-modified-since", "if-none-match", "if-range", "if-unmodified-since", "range"};
+
+    private final DataOutputStream output;
+    private final long start = System.nanoTime();
+    private boolean closed;
+    private IOException failure;
+
+    private TrafficRecorder(@NotNull final OutputStream output) throws IOException {
+        this.output = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(output, 8192), 65536));
+        this.output.writeInt(MAGIC);
+        this.output.writeByte(VERSION);
+    }
+
+    /**
+     * Create a recorder that writes to a file, replacing it if it already exists
+     *
+     * @param file Recording file
+     * @return Recorder
+     * @throws IOException If the file could not be created
+     */
+    @NotNull public static TrafficRecorder create(@NotNull final Path file) throws IOException {
+        return create(Files.newOutputStream(Objects.requireNonNull(file, "File may not be null")));
+    }
+
+    /**
+     * Create a recorder that writes to a stream. The stream is closed with the recorder
+     *
+     * @param output Output stream
+     * @return Recorder
+     * @throws IOException If the stream could not be written to
+     */
+    @NotNull public static TrafficRecorder create(@NotNull final OutputStream output) throws IOException {
+        return new TrafficRecorder(Objects.requireNonNull(output, "Output may not be null"));
+    }
+
+    @NotNull @Override public CompletableFuture<HttpResponse> intercept(@NotNull final Chain chain) {
+        final long started = System.nanoTime();
+        final String method = chain.getMethod().name();
+        final String url = chain.getURL().toExternalForm();
+        final byte[] key;
+        try {
+            key = requestKey(chain.getRequest().getBuilder().build());
+        } catch (final RuntimeException e) {
+            // The request can not be serialized, and will fail without a response
+            return chain.proceed();
+        }
+        return chain.proceed().whenComplete((response, throwable) -> {
+            final long latency = System.nanoTime() - started;
+            try {
+                if (response != null) {
+                    this.record(started - this.start, latency, method, url, key, response);
+                } else {
+                    this.record(started - this.start, latency, method, url, key, throwable);
+                }
+            } catch (final IOException e) {
+                this.fail(e);
+            }
+        });
+    }
+
+    /**
+     * Compute the key that identifies a request in a recording
+     *
+     * @param request Request
+     * @return SHA-256 hash of the method, path, matched headers and body of the request
+     */
+    @NotNull static byte[] requestKey(@NotNull final HttpRequest request) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        final URL url = request.getURL();
+        update(digest, request.getMethod().name());
+        update(digest, url.getFile());
+        for (final String header : MATCHED_HEADERS) {
+            for (final String value : request.getHeaders().getHeaders(header)) {
+                update(digest, header);
+                update(digest, value);
+            }
+        }
+        final BodySource source = request.getBodySource();
+        if (source != null) {
+            long length;
+            try {
+                length = source.contentLength();
+            } catch (final IOException e) {
+                length = -1;
+            }
+            update(digest, source.contentType().toString());
+            update(digest, Long.toString(length));
+        } else {
+            final HttpRequest.Entity entity = request.createEntity();
+            if (entity != null) {
+                update(digest, entity.getContentType().toString());
+                digest.update(entity.getBytes());
+            }
+        }
+        return digest.digest();
+    }
+
+    private static void update(@NotNull final MessageDigest digest, @NotNull final String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        // Separate the values, so that they can not be shifted into each other
+        digest.update((byte) 0);
+    }
+
+    private void record(final long offset, final long latency, @NotNull final String method, @NotNull final String url,
+        @NotNull final byte[] requestKey, @NotNull final HttpResponse response) throws IOException {
+        final byte[] body;
+        try {
+            body = response.getRawResponse();
+        } catch (final IllegalStateException e) {
+            // The body was pooled, and released by an earlier interceptor
+            return;
+        }
+        final Headers headers = response.getHeaders();
+        int count = 0;
+        for (final String key : headers.getHeaders()) {
+            for (final String value : headers.getHeaders(key)) {
+                if (!encodable(key) || !encodable(value)) {
+                    return;
+                }
+                count++;
+            }
+        }
+        if (!encodable(url) || !encodable(response.getStatus()) || count > 0xFFFF) {
+            return;
+        }
+        synchronized (this) {
+            if (this.closed || this.failure != null) {
+                return;
+            }
+            this.writeRequest(RESPONSE, offset, latency, method, url, requestKey);
+            this.output.writeShort(response.getStatusCode());
+            this.output.writeUTF(response.getStatus());
+            this.output.writeShort(count);
+            for (final String key : headers.getHeaders()) {
+                for (final String value : headers.getHeaders(key)) {
+                    this.output.writeUTF(key);
+                    this.output.writeUTF(value);
+                }
+            }
+            this.output.writeInt(body.length);
+            this.output.write(body);
+        }
+    }
+
+    private void record(final long offset, final long latency, @NotNull final String method, @NotNull final String url,
+        @NotNull final byte[] requestKey, @NotNull final Throwable throwable) throws IOException {
+        Throwable cause = throwable;
+        while (cause.getCause() != null && (cause instanceof CompletionException
+            || cause instanceof ExecutionException)) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof RequestCancelledException) {
+            return;
+        }
+        final String message = cause.getMessage() == null ? cause.getClass().getName() : cause.getMessage();
+        if (!encodable(url)) {
+            return;
+        }
+        synchronized (this) {
+            if (this.closed || this.failure != null) {
+                return;
+            }
+            this.writeRequest(FAILURE, offset, latency, method, url, requestKey);
+            this.output.writeUTF(message.length() > 1024 ? message.substring(0, 1024) : message);
+        }
+    }
+
+    private void writeRequest(final int type, final long offset, final long latency, @NotNull final String method,
+        @NotNull final String url, @NotNull final byte[] key) throws IOException {
+        this.output.writeByte(type);
+        this.output.writeLong(offset);
+        this.output.writeLong(latency);
+        this.output.writeUTF(method);
+        this.output.writeUTF(url);
+        this.output.write(key);
+    }
+
+    /**
+     * Check whether a string fits in the modified UTF-8 encoding used by the recording
+     *
+     * @param value String
+     * @return {@code true} if the string can be written
+     */
+    private static boolean encodable(@NotNull final String value) {
+        if (value.length() <= 0xFFFF / 3) {
+            return true;
+        }
+        long length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            length += c >= 0x01 && c <= 0x7F ? 1 : c <= 0x7FF ? 2 : 3;
+        }
+        return length <= 0xFFFF;
+    }
+
+    private synchronized void fail(@NotNull final IOException exception) {
+        if (this.failure == null) {
+            this.failure = exception;
+        }
+    }
+
+    /**
+     * Finish the recording. Requests that complete afterwards are not recorded
+     *
+     * @throws IOException If the recording could not be written
+     */
+    @Override public synchronized void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        try {
+            this.output.writeByte(0);
+            this.output.close();
+        } catch (final IOException e) {
+            this.fail(e);
+        }
+        if (this.failure != null) {
+            throw this.failure;
+        }
+    }
+
+}
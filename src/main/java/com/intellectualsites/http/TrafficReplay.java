@@ -0,0 +1,504 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 IntellectualSites
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.intellectualsites.http;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.MalformedURLException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * {@link Interceptor} that answers requests from a recording made by a {@link TrafficRecorder}.
+ * The replay runs a minimal HTTP/1.1 server on the loopback interface, and sends every request
+ * to it instead of to its origin, so that replayed traffic goes through the transport, response
+ * parsing and buffer pooling of the client like real traffic does. Each response is delayed by the
+ * latency that was recorded for it, so that load tests see the latency distribution of the recorded traffic.
+ * <p>
+ * Requests are matched in the same way as they are {@link TrafficRecorder recorded}. When a request was
+ * recorded more than once, the recorded exchanges are replayed in turn. Requests that were never recorded
+ * fail with an {@link IOException}, and so do requests that failed while they were recorded, as their
+ * connection is closed without a response. Requests are sent over plain HTTP, even if they were recorded
+ * over HTTPS. The replay should be the last interceptor of the client, and must be {@link #close() closed}
+ * once it is no longer used
+ *
+ * @see HttpClient.Builder#withInterceptor(Interceptor)
+ */
+public final class TrafficReplay implements Interceptor, Closeable {
+
+    private static final String EXCHANGE_HEADER = "X-Traffic-Replay";
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+
+    private final List<Exchange> exchanges;
+    private final Map<String, Exchanges> byRequest = new HashMap<>();
+    private final ServerSocket server;
+    private final Set<Socket> sockets = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private final ExecutorService connections = Executors.newCachedThreadPool(runnable -> {
+        final Thread thread = new Thread(runnable, "HTTP4J-Replay");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile double latencyScale = 1.0D;
+
+    private TrafficReplay(@NotNull final List<Exchange> exchanges) throws IOException {
+        this.exchanges = Collections.unmodifiableList(exchanges);
+        for (final Exchange exchange : exchanges) {
+            this.byRequest.computeIfAbsent(Base64.getEncoder().encodeToString(exchange.key), key -> new Exchanges())
+                .list.add(exchange);
+        }
+        this.server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        this.connections.execute(this::accept);
+    }
+
+    /**
+     * Read a recording from a file
+     *
+     * @param file Recording file
+     * @return Replay
+     * @throws IOException If the file could not be read, or is not a recording
+     */
+    @NotNull public static TrafficReplay read(@NotNull final Path file) throws IOException {
+        try (final InputStream input = Files.newInputStream(Objects.requireNonNull(file, "File may not be null"))) {
+            return read(input);
+        }
+    }
+
+    /**
+     * Read a recording from a stream. The stream is not closed
+     *
+     * @param input Input stream
+     * @return Replay
+     * @throws IOException If the stream could not be read, or does not contain a recording
+     */
+    @NotNull public static TrafficReplay read(@NotNull final InputStream input) throws IOException {
+        final DataInputStream data = new DataInputStream(new BufferedInputStream(
+            new GZIPInputStream(Objects.requireNonNull(input, "Input may not be null"), 8192), 65536));
+        if (data.readInt() != TrafficRecorder.MAGIC) {
+            throw new IOException("Not a traffic recording");
+        }
+        final int version = data.readUnsignedByte();
+        if (version != TrafficRecorder.VERSION) {
+            throw new IOException(String.format("Unsupported recording version %d", version));
+        }
+        final List<Exchange> exchanges = new ArrayList<>();
+        try {
+            for (int type = data.readUnsignedByte(); type != 0; type = data.readUnsignedByte()) {
+                exchanges.add(Exchange.read(type, data, exchanges.size()));
+            }
+        } catch (final EOFException e) {
+            // The recorder was not closed, so the last exchange may be incomplete
+        }
+        return new TrafficReplay(exchanges);
+    }
+
+    /**
+     * Get the recorded exchanges, in the order in which they completed. Load tests can use
+     * the {@link Exchange#getOffset(TimeUnit) offsets} to send requests at the recorded rate
+     *
+     * @return Unmodifiable list of exchanges
+     */
+    @NotNull public List<Exchange> getExchanges() {
+        return this.exchanges;
+    }
+
+    /**
+     * Scale the replayed latency. {@code 0} answers requests immediately,
+     * and {@code 2} makes every request take twice as long as it was recorded
+     *
+     * @param latencyScale Latency scale
+     * @return The replay instance
+     */
+    @NotNull public TrafficReplay withLatencyScale(final double latencyScale) {
+        if (!(latencyScale >= 0) || Double.isInfinite(latencyScale)) {
+            throw new IllegalArgumentException("Latency scale must be a finite, non-negative number");
+        }
+        this.latencyScale = latencyScale;
+        return this;
+    }
+
+    @NotNull @Override public CompletableFuture<HttpResponse> intercept(@NotNull final Chain chain) {
+        final HttpRequest.Builder builder = chain.getRequest().getBuilder();
+        final CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+        final Exchanges exchanges;
+        final URL url;
+        try {
+            exchanges = this.byRequest.get(Base64.getEncoder().encodeToString(
+                TrafficRecorder.requestKey(builder.build())));
+            url = new URL("http", this.server.getInetAddress().getHostAddress(), this.server.getLocalPort(),
+                chain.getURL().getFile());
+        } catch (final RuntimeException | MalformedURLException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+        if (exchanges == null) {
+            future.completeExceptionally(new IOException(String.format("No recorded exchange for %s %s",
+                chain.getMethod(), chain.getURL())));
+            return future;
+        }
+        // Only the origin changes, so the request is matched again if it is executed again
+        builder.withURL(url).setHeader(EXCHANGE_HEADER, Integer.toString(exchanges.next().index));
+        return chain.proceed();
+    }
+
+    /**
+     * Stop the server. Requests that are still being answered fail
+     */
+    @Override public void close() {
+        try {
+            this.server.close();
+        } catch (final IOException ignored) {
+        }
+        for (final Socket socket : this.sockets) {
+            try {
+                socket.close();
+            } catch (final IOException ignored) {
+            }
+        }
+        this.connections.shutdownNow();
+    }
+
+    private void accept() {
+        while (!this.server.isClosed()) {
+            final Socket socket;
+            try {
+                socket = this.server.accept();
+            } catch (final IOException e) {
+                return;
+            }
+            this.sockets.add(socket);
+            try {
+                this.connections.execute(() -> this.serve(socket));
+            } catch (final RejectedExecutionException e) {
+                this.sockets.remove(socket);
+                try {
+                    socket.close();
+                } catch (final IOException ignored) {
+                }
+                return;
+            }
+        }
+    }
+
+    private void serve(@NotNull final Socket socket) {
+        try (final Socket connection = socket) {
+            final InputStream input = new BufferedInputStream(connection.getInputStream());
+            final OutputStream output = new BufferedOutputStream(connection.getOutputStream());
+            for (String line = readLine(input); line != null; line = readLine(input)) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                final boolean head = line.startsWith("HEAD ");
+                long length = 0;
+                boolean chunked = false;
+                boolean close = false;
+                int index = -1;
+                for (String header = readLine(input); header != null && !header.isEmpty(); header = readLine(input)) {
+                    final int colon = header.indexOf(':');
+                    if (colon <= 0) {
+                        continue;
+                    }
+                    final String name = header.substring(0, colon).trim();
+                    final String value = header.substring(colon + 1).trim();
+                    if (name.equalsIgnoreCase("Content-Length")) {
+                        length = Long.parseLong(value);
+                    } else if (name.equalsIgnoreCase("Transfer-Encoding")) {
+                        chunked = value.toLowerCase(Locale.ROOT).contains("chunked");
+                    } else if (name.equalsIgnoreCase("Connection")) {
+                        close = value.equalsIgnoreCase("close");
+                    } else if (name.equalsIgnoreCase(EXCHANGE_HEADER)) {
+                        index = Integer.parseInt(value);
+                    }
+                }
+                if (chunked) {
+                    skipChunks(input);
+                } else {
+                    skip(input, length);
+                }
+                final Exchange exchange = index >= 0 && index < this.exchanges.size() ? this.exchanges.get(index) : null;
+                if (exchange == null || exchange.failure != null) {
+                    // Closing the connection without a response fails the request
+                    return;
+                }
+                final long delay = (long) (exchange.latency * this.latencyScale);
+                if (delay > 0) {
+                    TimeUnit.NANOSECONDS.sleep(delay);
+                }
+                exchange.write(output, head);
+                output.flush();
+                if (close) {
+                    return;
+                }
+            }
+        } catch (final IOException | NumberFormatException e) {
+            // The connection was closed, or the request was malformed
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            this.sockets.remove(socket);
+        }
+    }
+
+    @Nullable private static String readLine(@NotNull final InputStream input) throws IOException {
+        final StringBuilder line = new StringBuilder();
+        for (int read = input.read(); read != -1; read = input.read()) {
+            if (read == '\n') {
+                final int length = line.length();
+                return line.substring(0, length > 0 && line.charAt(length - 1) == '\r' ? length - 1 : length);
+            }
+            if (line.length() >= MAX_LINE_LENGTH) {
+                throw new IOException("Line is too long");
+            }
+            line.append((char) read);
+        }
+        return null;
+    }
+
+    private static void skip(@NotNull final InputStream input, long length) throws IOException {
+        while (length > 0) {
+            final long skipped = input.skip(length);
+            if (skipped > 0) {
+                length -= skipped;
+            } else if (input.read() == -1) {
+                throw new EOFException();
+            } else {
+                length--;
+            }
+        }
+    }
+
+    private static void skipChunks(@NotNull final InputStream input) throws IOException {
+        while (true) {
+            final String size = readLine(input);
+            if (size == null) {
+                throw new EOFException();
+            }
+            final int extension = size.indexOf(';');
+            final long length = Long.parseLong((extension == -1 ? size : size.substring(0, extension)).trim(), 16);
+            if (length == 0) {
+                // Skip the trailers
+                String trailer;
+                do {
+                    trailer = readLine(input);
+                } while (trailer != null && !trailer.isEmpty());
+                return;
+            }
+            skip(input, length + 2);
+        }
+    }
+
+
+    /**
+     * Exchanges recorded for the same request, replayed in turn
+     */
+    private static final class Exchanges {
+
+        private final List<Exchange> list = new ArrayList<>(1);
+        private final AtomicInteger next = new AtomicInteger();
+
+        @NotNull private Exchange next() {
+            if (this.list.size() == 1) {
+                return this.list.get(0);
+            }
+            return this.list.get(Math.floorMod(this.next.getAndIncrement(), this.list.size()));
+        }
+
+    }
+
+
+    /**
+     * A recorded request, and its response or failure
+     */
+    public static final class Exchange {
+
+        private final int index;
+        private final long offset;
+        private final long latency;
+        private final String method;
+        private final String url;
+        private final byte[] key;
+        private final int status;
+        private final String statusMessage;
+        private final String[] headers;
+        private final byte[] body;
+        @Nullable private final String failure;
+
+        private Exchange(final int index, final long offset, final long latency, @NotNull final String method,
+            @NotNull final String url, @NotNull final byte[] key, final int status, @NotNull final String statusMessage,
+            @NotNull final String[] headers, @NotNull final byte[] body, @Nullable final String failure) {
+            this.index = index;
+            this.offset = offset;
+            this.latency = latency;
+            this.method = method;
+            this.url = url;
+            this.key = key;
+            this.status = status;
+            this.statusMessage = statusMessage;
+            this.headers = headers;
+            this.body = body;
+            this.failure = failure;
+        }
+
+        @NotNull private static Exchange read(final int type, @NotNull final DataInputStream input, final int index)
+            throws IOException {
+            final long offset = input.readLong();
+            final long latency = input.readLong();
+            final String method = input.readUTF();
+            final String url = input.readUTF();
+            final byte[] key = new byte[TrafficRecorder.KEY_LENGTH];
+            input.readFully(key);
+            if (type == TrafficRecorder.FAILURE) {
+                return new Exchange(index, offset, latency, method, url, key, 0, "", new String[0], new byte[0],
+                    input.readUTF());
+            }
+            if (type != TrafficRecorder.RESPONSE) {
+                throw new IOException(String.format("Unknown record type %d", type));
+            }
+            final int status = input.readUnsignedShort();
+            final String statusMessage = input.readUTF();
+            final String[] headers = new String[input.readUnsignedShort() * 2];
+            for (int i = 0; i < headers.length; i++) {
+                headers[i] = input.readUTF();
+            }
+            final int length = input.readInt();
+            if (length < 0) {
+                throw new IOException("Negative body length");
+            }
+            final byte[] body = new byte[length];
+            input.readFully(body);
+            return new Exchange(index, offset, latency, method, url, key, status, statusMessage, headers, body, null);
+        }
+
+        private void write(@NotNull final OutputStream output, final boolean head) throws IOException {
+            final boolean bodyless = head || this.status == 204 || this.status == 304;
+            final StringBuilder builder = new StringBuilder("HTTP/1.1 ").append(this.status).append(' ')
+                .append(this.statusMessage).append("\r\n");
+            for (int i = 0; i < this.headers.length; i += 2) {
+                final String key = this.headers[i].toLowerCase(Locale.ROOT);
+                // The body is framed by its length here, whatever the recorded framing was. Responses
+                // to HEAD requests keep the recorded length, as it describes the body they would have
+                if (key.equals("transfer-encoding") || key.equals("connection") || key.equals("keep-alive")
+                    || key.equals("content-length") && !bodyless) {
+                    continue;
+                }
+                builder.append(this.headers[i]).append(": ").append(this.headers[i + 1]).append("\r\n");
+            }
+            if (!bodyless) {
+                builder.append("Content-Length: ").append(this.body.length).append("\r\n");
+            }
+            output.write(builder.append("\r\n").toString().getBytes(StandardCharsets.ISO_8859_1));
+            if (!bodyless) {
+                output.write(this.body);
+            }
+        }
+
+        /**
+         * Get the time at which the request was sent, relative to the start of the recording
+         *
+         * @param unit Time unit
+         * @return Offset
+         */
+        public long getOffset(@NotNull final TimeUnit unit) {
+            return unit.convert(this.offset, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Get the time it took to complete the request
+         *
+         * @param unit Time unit
+         * @return Latency
+         */
+        public long getLatency(@NotNull final TimeUnit unit) {
+            return unit.convert(this.latency, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Get the HTTP method of the request
+         *
+         * @return HTTP method
+         */
+        @NotNull public String getMethod() {
+            return this.method;
+        }
+
+        /**
+         * Get the URL of the request
+         *
+         * @return Request URL
+         */
+        @NotNull public String getURL() {
+            return this.url;
+        }
+
+        /**
+         * Get the recorded status code
+         *
+         * @return Status code, or {@code 0} if the request failed
+         */
+        public int getStatusCode() {
+            return this.status;
+        }
+
+        /**
+         * Check whether the request failed without a response
+         *
+         * @return {@code true} if the request failed
+         */
+        public boolean isFailure() {
+            return this.failure != null;
+        }
+
+    }
+
+}
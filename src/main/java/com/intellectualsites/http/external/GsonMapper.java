@@ -24,13 +24,27 @@
 package com.intellectualsites.http.external;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.intellectualsites.http.CborMapper;
 import com.intellectualsites.http.ContentType;
 import com.intellectualsites.http.EntityMapper;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.CharArrayReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Class containing {@link EntityMapper mappers} for {@link Gson} objects
@@ -63,6 +77,93 @@ public final class GsonMapper {
         return new GsonDeserializer<>(clazz, gson);
     }
 
+    /**
+     * Create a new serializer that encodes the Gson representation of objects as {@link CborMapper CBOR}
+     *
+     * @param clazz Input class
+     * @param gson  Gson instance
+     * @param <T>   Input type
+     * @return Serializer for the input type
+     */
+    @NotNull public static <T> EntityMapper.EntitySerializer<T> cborSerializer(@NotNull final Class<T> clazz,
+        @NotNull final Gson gson) {
+        return CborMapper.serializer(clazz, input -> fromJson(gson.toJsonTree(input, clazz)));
+    }
+
+    /**
+     * Create a new deserializer that decodes {@link CborMapper CBOR} into the Gson representation of objects.
+     * Byte strings are mapped to Base64 encoded strings
+     *
+     * @param clazz Output class
+     * @param gson  Gson instance
+     * @param <T>   Output type
+     * @return Deserializer for the output type
+     */
+    @NotNull public static <T> EntityMapper.EntityDeserializer<T> cborDeserializer(@NotNull final Class<T> clazz,
+        @NotNull final Gson gson) {
+        return CborMapper.deserializer(clazz, value -> gson.fromJson(toJson(value), clazz));
+    }
+
+    @Nullable private static Object fromJson(@NotNull final JsonElement element) {
+        if (element.isJsonObject()) {
+            final Map<String, Object> map = new LinkedHashMap<>();
+            for (final Map.Entry<String, JsonElement> entry : element.getAsJsonObject().entrySet()) {
+                map.put(entry.getKey(), fromJson(entry.getValue()));
+            }
+            return map;
+        } else if (element.isJsonArray()) {
+            final List<Object> list = new ArrayList<>();
+            for (final JsonElement item : element.getAsJsonArray()) {
+                list.add(fromJson(item));
+            }
+            return list;
+        } else if (element.isJsonPrimitive()) {
+            final JsonPrimitive primitive = element.getAsJsonPrimitive();
+            if (primitive.isBoolean()) {
+                return primitive.getAsBoolean();
+            } else if (primitive.isString()) {
+                return primitive.getAsString();
+            }
+            final Number number = primitive.getAsNumber();
+            if (number instanceof Long || number instanceof Integer || number instanceof Short
+                || number instanceof Byte || number instanceof Double || number instanceof Float) {
+                return number;
+            }
+            // Lazily parsed numbers are kept as integers where possible
+            try {
+                return Long.parseLong(number.toString());
+            } catch (final NumberFormatException e) {
+                return number.doubleValue();
+            }
+        }
+        return null;
+    }
+
+    @NotNull private static JsonElement toJson(@Nullable final Object value) {
+        if (value == null) {
+            return JsonNull.INSTANCE;
+        } else if (value instanceof Map) {
+            final JsonObject object = new JsonObject();
+            for (final Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                object.add(String.valueOf(entry.getKey()), toJson(entry.getValue()));
+            }
+            return object;
+        } else if (value instanceof List) {
+            final JsonArray array = new JsonArray();
+            for (final Object item : (List<?>) value) {
+                array.add(toJson(item));
+            }
+            return array;
+        } else if (value instanceof Boolean) {
+            return new JsonPrimitive((Boolean) value);
+        } else if (value instanceof Number) {
+            return new JsonPrimitive((Number) value);
+        } else if (value instanceof byte[]) {
+            return new JsonPrimitive(Base64.getEncoder().encodeToString((byte[]) value));
+        }
+        return new JsonPrimitive(value.toString());
+    }
+
 
     private static final class GsonSerializer<T> implements EntityMapper.EntitySerializer<T> {
 
@@ -97,18 +198,21 @@ public final class GsonMapper {
 
         @NotNull @Override
         public T deserialize(@Nullable final ContentType contentType, @NotNull final byte[] input) {
-            final Charset charset;
-            if (contentType != null && contentType.toString().toLowerCase().contains("utf-8")) {
-                charset = StandardCharsets.UTF_8;
-            } else if (contentType != null && contentType.toString().toLowerCase()
-                .contains("utf-16")) {
-                charset = StandardCharsets.UTF_16;
-            } else {
-                charset = StandardCharsets.US_ASCII;
-            }
+            // JSON text exchanged between systems must be UTF-8 encoded (RFC 8259)
+            final Charset charset = contentType == null ? StandardCharsets.UTF_8 :
+                contentType.getCharset(StandardCharsets.UTF_8);
             return gson.fromJson(new String(input, charset), this.clazz);
         }
 
+        @NotNull @Override
+        public T deserialize(@Nullable final ContentType contentType, @NotNull final ByteBuffer input) {
+            final Charset charset = contentType == null ? StandardCharsets.UTF_8 :
+                contentType.getCharset(StandardCharsets.UTF_8);
+            final CharBuffer chars = charset.decode(input.duplicate());
+            return gson.fromJson(new CharArrayReader(chars.array(), chars.arrayOffset() + chars.position(),
+                chars.remaining()), this.clazz);
+        }
+
     }
 
 }
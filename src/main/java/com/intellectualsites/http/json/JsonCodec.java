@@ -0,0 +1,89 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 IntellectualSites
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.intellectualsites.http.json;
+
+import com.intellectualsites.http.ContentType;
+import com.intellectualsites.http.EntityMapper;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Maps objects to and from JSON without reflection. Implementations are generated
+ * for classes annotated with {@link JsonEntity}, and are stateless
+ *
+ * @param <T> Object type
+ */
+public interface JsonCodec<T> extends EntityMapper.EntitySerializer<T>, EntityMapper.EntityDeserializer<T> {
+
+    /**
+     * Get the type mapped by the codec
+     *
+     * @return Object type
+     */
+    @NotNull Class<T> getType();
+
+    /**
+     * Write an object as a JSON value
+     *
+     * @param writer Writer
+     * @param value  Object
+     */
+    void write(@NotNull JsonWriter writer, @NotNull T value);
+
+    /**
+     * Read an object from a JSON value
+     *
+     * @param reader Reader, positioned at the value
+     * @return Object
+     * @throws IllegalArgumentException If the JSON is malformed, or does not match the type
+     */
+    @NotNull T read(@NotNull JsonReader reader);
+
+    @Override @NotNull default byte[] serialize(@NotNull final T input) {
+        final JsonWriter writer = new JsonWriter();
+        this.write(writer, input);
+        return writer.toByteArray();
+    }
+
+    @Override default ContentType getContentType() {
+        return ContentType.JSON;
+    }
+
+    @Override @NotNull default T deserialize(@Nullable final ContentType contentType, @NotNull final byte[] input) {
+        final JsonReader reader = new JsonReader(input, 0, input.length);
+        final T value = this.read(reader);
+        reader.end();
+        return value;
+    }
+
+    @Override @NotNull default T deserialize(@Nullable final ContentType contentType, @NotNull final ByteBuffer input) {
+        final JsonReader reader = JsonReader.of(input);
+        final T value = this.read(reader);
+        reader.end();
+        return value;
+    }
+
+}
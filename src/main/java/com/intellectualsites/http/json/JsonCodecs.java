@@ -0,0 +1,86 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 IntellectualSites
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.intellectualsites.http.json;
+
+import com.intellectualsites.http.ContentType;
+import com.intellectualsites.http.EntityMapper;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Objects;
+import java.util.ServiceLoader;
+
+/**
+ * Registers {@link JsonCodec codecs} with an {@link EntityMapper}
+ */
+public final class JsonCodecs {
+
+    private JsonCodecs() {
+    }
+
+    /**
+     * Register a codec as the serializer of its type, and as the deserializer of its type for JSON
+     * responses. It is also used for responses that have no deserializer for their media type
+     *
+     * @param mapper Entity mapper
+     * @param codec  Codec
+     * @param <T>    Object type
+     * @return The entity mapper
+     */
+    @NotNull public static <T> EntityMapper register(@NotNull final EntityMapper mapper,
+        @NotNull final JsonCodec<T> codec) {
+        Objects.requireNonNull(mapper, "Mapper may not be null");
+        Objects.requireNonNull(codec, "Codec may not be null");
+        return mapper.registerSerializer(codec.getType(), codec)
+            .registerDeserializer(codec.getType(), codec)
+            .registerDeserializer(codec.getType(), ContentType.JSON, codec);
+    }
+
+    /**
+     * Register the codecs of all {@link JsonEntity} classes that are visible to the context class loader,
+     * such as {@code JsonCodecs.registerAll(EntityMapper.newInstance())}
+     *
+     * @param mapper Entity mapper
+     * @return The entity mapper
+     */
+    @NotNull public static EntityMapper registerAll(@NotNull final EntityMapper mapper) {
+        final ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        return registerAll(mapper, classLoader == null ? JsonCodecs.class.getClassLoader() : classLoader);
+    }
+
+    /**
+     * Register the codecs of all {@link JsonEntity} classes that are visible to a class loader
+     *
+     * @param mapper      Entity mapper
+     * @param classLoader Class loader
+     * @return The entity mapper
+     */
+    @NotNull public static EntityMapper registerAll(@NotNull final EntityMapper mapper,
+        @NotNull final ClassLoader classLoader) {
+        for (final JsonCodec<?> codec : ServiceLoader.load(JsonCodec.class, classLoader)) {
+            register(mapper, codec);
+        }
+        return mapper;
+    }
+
+}
@@ -0,0 +1,50 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 IntellectualSites
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.intellectualsites.http.json;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Generate a {@link JsonCodec} for the annotated class at compile time. The codec of a class
+ * {@code User} is named {@code UserJsonCodec}, and is placed in the same package. Nested classes
+ * are named after their enclosing classes, such as {@code Outer_InnerJsonCodec}.
+ * <p>
+ * All non-static, non-transient fields are mapped, including those of superclasses. Fields
+ * that are not accessible from the package of the class need a getter and a setter. The class
+ * needs a no-argument constructor that is accessible from its package. Supported field types are
+ * primitives and their wrappers, {@link String}, enums, other {@link JsonEntity} classes, and
+ * {@link java.util.List}, {@link java.util.Set}, {@link java.util.Collection} or
+ * {@link java.util.Map} (with {@link String} keys) of these
+ *
+ * @see JsonCodecs#registerAll(com.intellectualsites.http.EntityMapper)
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface JsonEntity {
+}
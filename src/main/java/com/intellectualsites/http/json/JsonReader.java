@@ -0,0 +1,484 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 IntellectualSites
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.intellectualsites.http.json;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Pull parser that reads JSON directly from UTF-8 bytes. Separators are consumed
+ * automatically, so that callers only read names and values. Malformed input
+ * causes an {@link IllegalArgumentException}
+ */
+public final class JsonReader {
+
+    private static final int MAX_DEPTH = 512;
+
+    private final byte[] buffer;
+    private final int limit;
+    private int position;
+    private int depth;
+    private boolean comma;
+
+    /**
+     * Create a new reader
+     *
+     * @param buffer UTF-8 encoded JSON
+     * @param offset Offset of the JSON in the buffer
+     * @param length Length of the JSON
+     */
+    public JsonReader(@NotNull final byte[] buffer, final int offset, final int length) {
+        if (offset < 0 || length < 0 || offset + length > buffer.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        this.buffer = buffer;
+        this.position = offset;
+        this.limit = offset + length;
+    }
+
+    /**
+     * Create a reader for the remaining bytes of a buffer. The position of the buffer is not modified
+     *
+     * @param input UTF-8 encoded JSON
+     * @return Reader
+     */
+    @NotNull public static JsonReader of(@NotNull final ByteBuffer input) {
+        if (input.hasArray()) {
+            return new JsonReader(input.array(), input.arrayOffset() + input.position(), input.remaining());
+        }
+        final byte[] bytes = new byte[input.remaining()];
+        input.duplicate().get(bytes);
+        return new JsonReader(bytes, 0, bytes.length);
+    }
+
+    public void beginObject() {
+        this.begin('{');
+    }
+
+    public void endObject() {
+        this.end('}');
+    }
+
+    public void beginArray() {
+        this.begin('[');
+    }
+
+    public void endArray() {
+        this.end(']');
+    }
+
+    /**
+     * Check whether the current object or array has another member, and consume the separator before it
+     *
+     * @return {@code true} if there is another member
+     */
+    public boolean hasNext() {
+        final int next = this.peek();
+        if (next == '}' || next == ']') {
+            return false;
+        }
+        if (this.comma) {
+            this.expect(',');
+            this.comma = false;
+        }
+        return true;
+    }
+
+    /**
+     * Read the name of an object member, and the colon that follows it
+     *
+     * @return Name
+     */
+    @NotNull public String nextName() {
+        this.expect('"');
+        final String name = this.readString();
+        this.expect(':');
+        this.comma = false;
+        return name;
+    }
+
+    /**
+     * Read a string
+     *
+     * @return String, or {@code null} if the value is {@code null}
+     */
+    @Nullable public String nextString() {
+        if (this.nextNull()) {
+            return null;
+        }
+        this.expect('"');
+        final String value = this.readString();
+        this.comma = true;
+        return value;
+    }
+
+    public boolean nextBoolean() {
+        final int next = this.peek();
+        if (next == 't') {
+            this.literal("true");
+            return true;
+        } else if (next == 'f') {
+            this.literal("false");
+            return false;
+        }
+        throw this.error("Expected a boolean");
+    }
+
+    /**
+     * Consume a {@code null} value, if there is one
+     *
+     * @return {@code true} if a {@code null} value was consumed
+     */
+    public boolean nextNull() {
+        if (this.peek() != 'n') {
+            return false;
+        }
+        this.literal("null");
+        return true;
+    }
+
+    public int nextInt() {
+        final long value = this.nextLong();
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw this.error(value + " does not fit into an int");
+        }
+        return (int) value;
+    }
+
+    public long nextLong() {
+        final int start = this.skipWhitespace();
+        int index = start;
+        final boolean negative = index < this.limit && this.buffer[index] == '-';
+        if (negative) {
+            index++;
+        }
+        long value = 0;
+        final int digits = index;
+        while (index < this.limit && this.buffer[index] >= '0' && this.buffer[index] <= '9') {
+            final int digit = this.buffer[index++] - '0';
+            // Accumulate negatively, so that Long.MIN_VALUE can be represented
+            if (value < (Long.MIN_VALUE + digit) / 10) {
+                throw this.error("Number does not fit into a long");
+            }
+            value = value * 10 - digit;
+        }
+        if (index == digits) {
+            throw this.error("Expected a number");
+        }
+        if (index < this.limit && (this.buffer[index] == '.' || this.buffer[index] == 'e' || this.buffer[index] == 'E')) {
+            // Integral values may be written in decimal or exponent notation, such as 1.0
+            final double number = this.nextDouble();
+            if (number != Math.rint(number) || Math.abs(number) >= 0x1p63) {
+                throw this.error(number + " is not an integer");
+            }
+            return (long) number;
+        }
+        if (!negative && value == Long.MIN_VALUE) {
+            throw this.error("Number does not fit into a long");
+        }
+        this.position = index;
+        this.comma = true;
+        return negative ? value : -value;
+    }
+
+    public double nextDouble() {
+        final int start = this.skipWhitespace();
+        int index = start;
+        while (index < this.limit && isNumberCharacter(this.buffer[index])) {
+            index++;
+        }
+        if (index == start) {
+            throw this.error("Expected a number");
+        }
+        final double value;
+        try {
+            value = Double.parseDouble(new String(this.buffer, start, index - start, StandardCharsets.ISO_8859_1));
+        } catch (final NumberFormatException e) {
+            throw this.error("Malformed number");
+        }
+        this.position = index;
+        this.comma = true;
+        return value;
+    }
+
+    public float nextFloat() {
+        return (float) this.nextDouble();
+    }
+
+    /**
+     * Skip the next value, including any nested objects and arrays
+     */
+    public void skipValue() {
+        switch (this.peek()) {
+            case '{':
+                this.beginObject();
+                while (this.hasNext()) {
+                    this.nextName();
+                    this.skipValue();
+                }
+                this.endObject();
+                break;
+            case '[':
+                this.beginArray();
+                while (this.hasNext()) {
+                    this.skipValue();
+                }
+                this.endArray();
+                break;
+            case '"':
+                this.nextString();
+                break;
+            case 't':
+            case 'f':
+                this.nextBoolean();
+                break;
+            case 'n':
+                this.nextNull();
+                break;
+            default:
+                this.nextDouble();
+        }
+    }
+
+    /**
+     * Verify that only whitespace remains
+     */
+    public void end() {
+        if (this.skipWhitespace() < this.limit) {
+            throw this.error("Unexpected trailing data");
+        }
+    }
+
+    private void begin(final char character) {
+        if (++this.depth > MAX_DEPTH) {
+            throw this.error("JSON is nested too deeply");
+        }
+        this.expect(character);
+        this.comma = false;
+    }
+
+    private void end(final char character) {
+        this.expect(character);
+        this.depth--;
+        this.comma = true;
+    }
+
+    private void literal(@NotNull final String literal) {
+        final int start = this.skipWhitespace();
+        if (start + literal.length() > this.limit) {
+            throw this.error("Expected " + literal);
+        }
+        for (int i = 0; i < literal.length(); i++) {
+            if (this.buffer[start + i] != literal.charAt(i)) {
+                throw this.error("Expected " + literal);
+            }
+        }
+        this.position = start + literal.length();
+        this.comma = true;
+    }
+
+    /**
+     * Read the rest of a string, after the opening quote
+     */
+    @NotNull private String readString() {
+        final int start = this.position;
+        int index = start;
+        while (index < this.limit) {
+            final byte value = this.buffer[index];
+            if (value == '"') {
+                // ASCII without escapes, which is decoded directly
+                this.position = index + 1;
+                return new String(this.buffer, start, index - start, StandardCharsets.ISO_8859_1);
+            }
+            if (value == '\\' || value < 0x20) {
+                break;
+            }
+            index++;
+        }
+        final StringBuilder builder = new StringBuilder(index - start + 16);
+        for (int i = start; i < index; i++) {
+            builder.append((char) this.buffer[i]);
+        }
+        while (index < this.limit) {
+            final int value = this.buffer[index++] & 0xFF;
+            if (value == '"') {
+                this.position = index;
+                return builder.toString();
+            } else if (value == '\\') {
+                index = this.readEscape(builder, index);
+            } else if (value < 0x20) {
+                this.position = index - 1;
+                throw this.error("Unescaped control character in string");
+            } else if (value < 0x80) {
+                builder.append((char) value);
+            } else {
+                index = this.readCodePoint(builder, value, index);
+            }
+        }
+        this.position = index;
+        throw this.error("Unterminated string");
+    }
+
+    private int readEscape(@NotNull final StringBuilder builder, int index) {
+        if (index >= this.limit) {
+            this.position = index;
+            throw this.error("Unterminated string");
+        }
+        final byte escape = this.buffer[index++];
+        switch (escape) {
+            case '"':
+            case '\\':
+            case '/':
+                builder.append((char) escape);
+                break;
+            case 'b':
+                builder.append('\b');
+                break;
+            case 'f':
+                builder.append('\f');
+                break;
+            case 'n':
+                builder.append('\n');
+                break;
+            case 'r':
+                builder.append('\r');
+                break;
+            case 't':
+                builder.append('\t');
+                break;
+            case 'u': {
+                if (index + 4 > this.limit) {
+                    this.position = index;
+                    throw this.error("Truncated unicode escape");
+                }
+                int character = 0;
+                for (int i = 0; i < 4; i++) {
+                    final int digit = Character.digit(this.buffer[index++], 16);
+                    if (digit == -1) {
+                        this.position = index - 1;
+                        throw this.error("Malformed unicode escape");
+                    }
+                    character = character << 4 | digit;
+                }
+                builder.append((char) character);
+                break;
+            }
+            default:
+                this.position = index - 1;
+                throw this.error("Invalid escape");
+        }
+        return index;
+    }
+
+    /**
+     * Decode a multi-byte UTF-8 sequence
+     *
+     * @param builder Target
+     * @param lead    First byte of the sequence
+     * @param index   Index of the second byte
+     * @return Index after the sequence
+     */
+    private int readCodePoint(@NotNull final StringBuilder builder, final int lead, int index) {
+        final int length;
+        int codePoint;
+        if ((lead & 0xE0) == 0xC0) {
+            length = 1;
+            codePoint = lead & 0x1F;
+        } else if ((lead & 0xF0) == 0xE0) {
+            length = 2;
+            codePoint = lead & 0x0F;
+        } else if ((lead & 0xF8) == 0xF0) {
+            length = 3;
+            codePoint = lead & 0x07;
+        } else {
+            this.position = index - 1;
+            throw this.error("Malformed UTF-8");
+        }
+        if (index + length > this.limit) {
+            this.position = index;
+            throw this.error("Truncated UTF-8");
+        }
+        for (int i = 0; i < length; i++) {
+            final int next = this.buffer[index++];
+            if ((next & 0xC0) != 0x80) {
+                this.position = index - 1;
+                throw this.error("Malformed UTF-8");
+            }
+            codePoint = codePoint << 6 | next & 0x3F;
+        }
+        // Reject overlong encodings, surrogates and values beyond the Unicode range
+        if ((length == 1 && codePoint < 0x80) || (length == 2 && codePoint < 0x800)
+            || (length == 3 && codePoint < 0x10000) || codePoint > 0x10FFFF
+            || (codePoint >= 0xD800 && codePoint <= 0xDFFF)) {
+            this.position = index - length - 1;
+            throw this.error("Malformed UTF-8");
+        }
+        builder.appendCodePoint(codePoint);
+        return index;
+    }
+
+    private void expect(final char character) {
+        final int index = this.skipWhitespace();
+        if (index >= this.limit || this.buffer[index] != character) {
+            throw this.error("Expected '" + character + "'");
+        }
+        this.position = index + 1;
+    }
+
+    /**
+     * Get the next non-whitespace character, without consuming it
+     *
+     * @return Character, or {@code -1} at the end of the input
+     */
+    private int peek() {
+        final int index = this.skipWhitespace();
+        return index < this.limit ? this.buffer[index] : -1;
+    }
+
+    private int skipWhitespace() {
+        int index = this.position;
+        while (index < this.limit) {
+            final byte value = this.buffer[index];
+            if (value != ' ' && value != '\n' && value != '\r' && value != '\t') {
+                break;
+            }
+            index++;
+        }
+        this.position = index;
+        return index;
+    }
+
+    private static boolean isNumberCharacter(final byte value) {
+        return (value >= '0' && value <= '9') || value == '-' || value == '+' || value == '.'
+            || value == 'e' || value == 'E';
+    }
+
+    @NotNull private IllegalArgumentException error(@NotNull final String message) {
+        return new IllegalArgumentException(String.format("%s at offset %d", message, this.position));
+    }
+
+}
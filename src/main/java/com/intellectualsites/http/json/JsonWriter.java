@@ -0,0 +1,330 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 IntellectualSites
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.intellectualsites.http.json;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Writes compact JSON directly into a growable UTF-8 byte array. Separators are inserted
+ * automatically, so that callers only emit names and values
+ */
+public final class JsonWriter {
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NULL = {'n', 'u', 'l', 'l'};
+    private static final byte[] TRUE = {'t', 'r', 'u', 'e'};
+    private static final byte[] FALSE = {'f', 'a', 'l', 's', 'e'};
+    private static final byte[] MIN_LONG = Long.toString(Long.MIN_VALUE).getBytes(StandardCharsets.US_ASCII);
+
+    private byte[] buffer;
+    private int size;
+    private boolean comma;
+
+    /**
+     * Create a new writer
+     */
+    public JsonWriter() {
+        this(256);
+    }
+
+    /**
+     * Create a new writer
+     *
+     * @param capacity Initial capacity, in bytes
+     */
+    public JsonWriter(final int capacity) {
+        this.buffer = new byte[Math.max(16, capacity)];
+    }
+
+    /**
+     * Encode an object member name ahead of time, so that it does not have to be escaped every time
+     *
+     * @param name Name
+     * @return Encoded name, including the quotes and the colon
+     */
+    @NotNull public static byte[] encodeName(@NotNull final String name) {
+        final JsonWriter writer = new JsonWriter(name.length() + 8);
+        writer.writeString(name);
+        writer.writeByte(':');
+        return writer.toByteArray();
+    }
+
+    @NotNull public JsonWriter beginObject() {
+        this.separate();
+        this.writeByte('{');
+        this.comma = false;
+        return this;
+    }
+
+    @NotNull public JsonWriter endObject() {
+        this.writeByte('}');
+        this.comma = true;
+        return this;
+    }
+
+    @NotNull public JsonWriter beginArray() {
+        this.separate();
+        this.writeByte('[');
+        this.comma = false;
+        return this;
+    }
+
+    @NotNull public JsonWriter endArray() {
+        this.writeByte(']');
+        this.comma = true;
+        return this;
+    }
+
+    /**
+     * Write the name of an object member
+     *
+     * @param name Name, encoded using {@link #encodeName(String)}
+     * @return Writer instance
+     */
+    @NotNull public JsonWriter name(@NotNull final byte[] name) {
+        this.separate();
+        this.writeBytes(name, name.length);
+        this.comma = false;
+        return this;
+    }
+
+    /**
+     * Write the name of an object member
+     *
+     * @param name Name
+     * @return Writer instance
+     */
+    @NotNull public JsonWriter name(@NotNull final String name) {
+        this.separate();
+        this.writeString(name);
+        this.writeByte(':');
+        this.comma = false;
+        return this;
+    }
+
+    @NotNull public JsonWriter nullValue() {
+        this.separate();
+        this.writeBytes(NULL, NULL.length);
+        this.comma = true;
+        return this;
+    }
+
+    @NotNull public JsonWriter value(@Nullable final String value) {
+        if (value == null) {
+            return this.nullValue();
+        }
+        this.separate();
+        this.writeString(value);
+        this.comma = true;
+        return this;
+    }
+
+    @NotNull public JsonWriter value(final boolean value) {
+        this.separate();
+        this.writeBytes(value ? TRUE : FALSE, value ? TRUE.length : FALSE.length);
+        this.comma = true;
+        return this;
+    }
+
+    @NotNull public JsonWriter value(final long value) {
+        this.separate();
+        if (value == Long.MIN_VALUE) {
+            this.writeBytes(MIN_LONG, MIN_LONG.length);
+        } else {
+            this.ensure(20);
+            long remaining = value;
+            if (remaining < 0) {
+                this.buffer[this.size++] = '-';
+                remaining = -remaining;
+            }
+            final int start = this.size;
+            do {
+                this.buffer[this.size++] = (byte) ('0' + remaining % 10);
+                remaining /= 10;
+            } while (remaining != 0);
+            // Digits were written in reverse order
+            for (int left = start, right = this.size - 1; left < right; left++, right--) {
+                final byte digit = this.buffer[left];
+                this.buffer[left] = this.buffer[right];
+                this.buffer[right] = digit;
+            }
+        }
+        this.comma = true;
+        return this;
+    }
+
+    /**
+     * Write a number
+     *
+     * @param value Number
+     * @return Writer instance
+     * @throws IllegalArgumentException If the number is not finite, as JSON cannot represent it
+     */
+    @NotNull public JsonWriter value(final double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new IllegalArgumentException(value + " is not a valid JSON number");
+        }
+        if (value == (long) value && Math.abs(value) < 1e15) {
+            return this.value((long) value);
+        }
+        return this.rawNumber(Double.toString(value));
+    }
+
+    /**
+     * Write a number, using the shortest representation of its single precision value
+     *
+     * @param value Number
+     * @return Writer instance
+     * @throws IllegalArgumentException If the number is not finite, as JSON cannot represent it
+     */
+    @NotNull public JsonWriter value(final float value) {
+        if (Float.isNaN(value) || Float.isInfinite(value)) {
+            throw new IllegalArgumentException(value + " is not a valid JSON number");
+        }
+        if (value == (long) value && Math.abs(value) < 1e7) {
+            return this.value((long) value);
+        }
+        return this.rawNumber(Float.toString(value));
+    }
+
+    @NotNull private JsonWriter rawNumber(@NotNull final String number) {
+        this.separate();
+        this.ensure(number.length());
+        for (int i = 0; i < number.length(); i++) {
+            this.buffer[this.size++] = (byte) number.charAt(i);
+        }
+        this.comma = true;
+        return this;
+    }
+
+    /**
+     * Get the written JSON
+     *
+     * @return UTF-8 encoded JSON
+     */
+    @NotNull public byte[] toByteArray() {
+        return Arrays.copyOf(this.buffer, this.size);
+    }
+
+    private void separate() {
+        if (this.comma) {
+            this.writeByte(',');
+        }
+    }
+
+    private void writeString(@NotNull final String value) {
+        final int length = value.length();
+        // Every character takes at most three bytes. Escapes take up to six, and reserve their own space
+        this.ensure(length * 3 + 2);
+        this.buffer[this.size++] = '"';
+        for (int i = 0; i < length; i++) {
+            final char character = value.charAt(i);
+            if (character < 0x80) {
+                if (character >= 0x20 && character != '"' && character != '\\') {
+                    this.buffer[this.size++] = (byte) character;
+                } else {
+                    this.writeEscape(character, length - i);
+                }
+            } else if (character < 0x800) {
+                this.buffer[this.size++] = (byte) (0xC0 | character >> 6);
+                this.buffer[this.size++] = (byte) (0x80 | character & 0x3F);
+            } else if (Character.isHighSurrogate(character) && i + 1 < length
+                && Character.isLowSurrogate(value.charAt(i + 1))) {
+                final int codePoint = Character.toCodePoint(character, value.charAt(++i));
+                this.buffer[this.size++] = (byte) (0xF0 | codePoint >> 18);
+                this.buffer[this.size++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                this.buffer[this.size++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                this.buffer[this.size++] = (byte) (0x80 | codePoint & 0x3F);
+            } else if (Character.isSurrogate(character)) {
+                // Unpaired surrogates cannot be encoded as UTF-8, but can be escaped
+                this.writeEscape(character, length - i);
+            } else {
+                this.buffer[this.size++] = (byte) (0xE0 | character >> 12);
+                this.buffer[this.size++] = (byte) (0x80 | character >> 6 & 0x3F);
+                this.buffer[this.size++] = (byte) (0x80 | character & 0x3F);
+            }
+        }
+        this.buffer[this.size++] = '"';
+    }
+
+    /**
+     * Write an escaped character
+     *
+     * @param character Character
+     * @param remaining Characters that remain to be written, including this one
+     */
+    private void writeEscape(final char character, final int remaining) {
+        this.ensure(6 + remaining * 3);
+        this.buffer[this.size++] = '\\';
+        switch (character) {
+            case '"':
+            case '\\':
+                this.buffer[this.size++] = (byte) character;
+                return;
+            case '\n':
+                this.buffer[this.size++] = 'n';
+                return;
+            case '\r':
+                this.buffer[this.size++] = 'r';
+                return;
+            case '\t':
+                this.buffer[this.size++] = 't';
+                return;
+            case '\b':
+                this.buffer[this.size++] = 'b';
+                return;
+            case '\f':
+                this.buffer[this.size++] = 'f';
+                return;
+            default:
+                this.buffer[this.size++] = 'u';
+                this.buffer[this.size++] = HEX[character >> 12 & 0xF];
+                this.buffer[this.size++] = HEX[character >> 8 & 0xF];
+                this.buffer[this.size++] = HEX[character >> 4 & 0xF];
+                this.buffer[this.size++] = HEX[character & 0xF];
+        }
+    }
+
+    private void writeByte(final int value) {
+        this.ensure(1);
+        this.buffer[this.size++] = (byte) value;
+    }
+
+    private void writeBytes(@NotNull final byte[] bytes, final int length) {
+        this.ensure(length);
+        System.arraycopy(bytes, 0, this.buffer, this.size, length);
+        this.size += length;
+    }
+
+    private void ensure(final int length) {
+        if (this.size + length > this.buffer.length) {
+            this.buffer = Arrays.copyOf(this.buffer, Math.max(this.buffer.length * 2, this.size + length));
+        }
+    }
+
+}
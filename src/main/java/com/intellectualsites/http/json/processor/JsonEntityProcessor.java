@@ -0,0 +1,702 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 IntellectualSites
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.intellectualsites.http.json.processor;
+
+import com.intellectualsites.http.json.JsonEntity;
+import com.intellectualsites.http.json.JsonProperty;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Generates a {@link com.intellectualsites.http.json.JsonCodec} for every class annotated with
+ * {@link JsonEntity}, and lists the codecs in {@code META-INF/services}, so that they can be found
+ * by {@link com.intellectualsites.http.json.JsonCodecs#registerAll(com.intellectualsites.http.EntityMapper)}
+ * <p>
+ * The processor is not registered as a service, so that compiling against HTTP4J does not run it.
+ * It has to be put on the annotation processor path and named using {@code -processor}
+ */
+public final class JsonEntityProcessor extends AbstractProcessor {
+
+    private static final String SERVICE_FILE = "META-INF/services/com.intellectualsites.http.json.JsonCodec";
+
+    private final Set<String> codecs = new LinkedHashSet<>();
+
+    @Override public Set<String> getSupportedAnnotationTypes() {
+        return new LinkedHashSet<>(Arrays.asList(JsonEntity.class.getCanonicalName(),
+            JsonProperty.class.getCanonicalName()));
+    }
+
+    @Override public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment environment) {
+        for (final Element element : environment.getElementsAnnotatedWith(JsonEntity.class)) {
+            if (element.getKind() != ElementKind.CLASS) {
+                this.error(element, "@JsonEntity may only be used on classes");
+                continue;
+            }
+            final TypeElement type = (TypeElement) element;
+            final String codec = new Generator(type).generate();
+            if (codec != null) {
+                this.codecs.add(codec);
+            }
+        }
+        if (environment.processingOver() && !this.codecs.isEmpty()) {
+            this.writeServiceFile();
+        }
+        return true;
+    }
+
+    private void writeServiceFile() {
+        try {
+            final FileObject file = this.processingEnv.getFiler()
+                .createResource(StandardLocation.CLASS_OUTPUT, "", SERVICE_FILE);
+            try (final Writer writer = file.openWriter()) {
+                for (final String codec : this.codecs) {
+                    writer.write(codec);
+                    writer.write('\n');
+                }
+            }
+        } catch (final IOException e) {
+            this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                "Failed to write " + SERVICE_FILE + ": " + e.getMessage());
+        }
+    }
+
+    private void error(@NotNull final Element element, @NotNull final String message) {
+        this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    /**
+     * Get the name of the codec of an entity, such as {@code Outer_InnerJsonCodec}
+     *
+     * @param type Entity
+     * @return Simple name of the codec
+     */
+    @NotNull private static String codecName(@NotNull final TypeElement type) {
+        final StringBuilder name = new StringBuilder(type.getSimpleName());
+        Element enclosing = type.getEnclosingElement();
+        while (enclosing instanceof TypeElement) {
+            name.insert(0, '_').insert(0, enclosing.getSimpleName());
+            enclosing = enclosing.getEnclosingElement();
+        }
+        return name.append("JsonCodec").toString();
+    }
+
+    /**
+     * Quote a string as a Java string literal
+     */
+    @NotNull private static String literal(@NotNull final String value) {
+        final StringBuilder literal = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                literal.append('\\').append(c);
+            } else if (c < 0x20 || c > 0x7E) {
+                literal.append(String.format("\\u%04x", (int) c));
+            } else {
+                literal.append(c);
+            }
+        }
+        return literal.append('"').toString();
+    }
+
+    @NotNull private static String packageOf(@NotNull final TypeElement type) {
+        Element element = type;
+        while (!(element instanceof PackageElement)) {
+            element = element.getEnclosingElement();
+        }
+        return ((PackageElement) element).getQualifiedName().toString();
+    }
+
+
+    /**
+     * A mapped field, and the expressions used to access it
+     */
+    private static final class Property {
+
+        private final VariableElement field;
+        private final String name;
+        private final TypeMirror type;
+        private final String getter;
+        private final String setter;
+
+        private Property(@NotNull final VariableElement field, @NotNull final String name, @NotNull final String getter,
+            @NotNull final String setter) {
+            this.field = field;
+            this.name = name;
+            this.type = field.asType();
+            this.getter = getter;
+            this.setter = setter;
+        }
+
+    }
+
+
+    /**
+     * Generates the codec of a single entity
+     */
+    private final class Generator {
+
+        private final TypeElement entity;
+        private final String packageName;
+        private final StringBuilder helpers = new StringBuilder();
+        private Element current;
+        private int helperCount;
+        private boolean characterHelper;
+        private int errors;
+
+        private Generator(@NotNull final TypeElement entity) {
+            this.entity = entity;
+            this.packageName = packageOf(entity);
+            this.current = entity;
+        }
+
+        /**
+         * Generate the codec
+         *
+         * @return Qualified name of the codec, or {@code null} if the entity is not supported
+         */
+        @Nullable private String generate() {
+            this.validateClass();
+            final List<Property> properties = this.collectProperties();
+            final String entityName = this.entity.getQualifiedName().toString();
+            final String codecName = codecName(this.entity);
+            final StringBuilder names = new StringBuilder();
+            final StringBuilder write = new StringBuilder();
+            final StringBuilder read = new StringBuilder();
+            for (int i = 0; i < properties.size(); i++) {
+                final Property property = properties.get(i);
+                this.current = property.field;
+                names.append("    private static final byte[] NAME_").append(i)
+                    .append(" = JsonWriter.encodeName(").append(literal(property.name)).append(");\n");
+                write.append("        writer.name(NAME_").append(i).append(");\n");
+                final int errors = this.errors;
+                write.append(this.writeStatement(property.type, "value." + property.getter, "        "));
+                if (this.errors != errors) {
+                    continue;
+                }
+                read.append("                case ").append(literal(property.name)).append(":\n");
+                read.append("                    value.").append(String.format(property.setter,
+                    this.readExpression(property.type))).append(";\n");
+                read.append("                    break;\n");
+            }
+            if (this.errors > 0) {
+                return null;
+            }
+            final StringBuilder source = new StringBuilder();
+            if (!this.packageName.isEmpty()) {
+                source.append("package ").append(this.packageName).append(";\n\n");
+            }
+            source.append("import com.intellectualsites.http.json.JsonCodec;\n")
+                .append("import com.intellectualsites.http.json.JsonReader;\n")
+                .append("import com.intellectualsites.http.json.JsonWriter;\n\n")
+                .append("/**\n * JSON codec for {@link ").append(entityName)
+                .append("}, generated by {@code JsonEntityProcessor}\n */\n")
+                .append("public final class ").append(codecName).append(" implements JsonCodec<").append(entityName)
+                .append("> {\n\n")
+                .append("    public static final ").append(codecName).append(" INSTANCE = new ").append(codecName)
+                .append("();\n\n")
+                .append(names).append('\n')
+                .append("    @Override public Class<").append(entityName).append("> getType() {\n")
+                .append("        return ").append(entityName).append(".class;\n")
+                .append("    }\n\n")
+                .append("    @Override public void write(final JsonWriter writer, final ").append(entityName)
+                .append(" value) {\n")
+                .append("        writer.beginObject();\n")
+                .append(write)
+                .append("        writer.endObject();\n")
+                .append("    }\n\n")
+                .append("    @Override public ").append(entityName).append(" read(final JsonReader reader) {\n")
+                .append("        final ").append(entityName).append(" value = new ").append(entityName).append("();\n")
+                .append("        reader.beginObject();\n")
+                .append("        while (reader.hasNext()) {\n")
+                .append("            switch (reader.nextName()) {\n")
+                .append(read)
+                .append("                default:\n")
+                .append("                    reader.skipValue();\n")
+                .append("            }\n")
+                .append("        }\n")
+                .append("        reader.endObject();\n")
+                .append("        return value;\n")
+                .append("    }\n")
+                .append(this.helpers)
+                .append("\n}\n");
+            final String qualifiedName = this.packageName.isEmpty() ? codecName : this.packageName + '.' + codecName;
+            try {
+                final JavaFileObject file = processingEnv.getFiler().createSourceFile(qualifiedName, this.entity);
+                try (final Writer writer = file.openWriter()) {
+                    writer.write(source.toString());
+                }
+            } catch (final IOException e) {
+                error(this.entity, "Failed to write " + qualifiedName + ": " + e.getMessage());
+                return null;
+            }
+            return qualifiedName;
+        }
+
+        private void validateClass() {
+            final Set<Modifier> modifiers = this.entity.getModifiers();
+            if (modifiers.contains(Modifier.ABSTRACT)) {
+                this.fail(this.entity, "@JsonEntity classes may not be abstract");
+            }
+            if (this.entity.getNestingKind().isNested() && !modifiers.contains(Modifier.STATIC)) {
+                this.fail(this.entity, "Nested @JsonEntity classes must be static");
+            }
+            for (Element element = this.entity; element instanceof TypeElement; element = element.getEnclosingElement()) {
+                if (element.getModifiers().contains(Modifier.PRIVATE)) {
+                    this.fail(this.entity, "@JsonEntity classes may not be private");
+                }
+            }
+            boolean constructor = false;
+            for (final ExecutableElement candidate : ElementFilter.constructorsIn(this.entity.getEnclosedElements())) {
+                if (candidate.getParameters().isEmpty() && !candidate.getModifiers().contains(Modifier.PRIVATE)) {
+                    constructor = true;
+                }
+            }
+            if (!constructor) {
+                this.fail(this.entity, "@JsonEntity classes need a non-private constructor without parameters");
+            }
+        }
+
+        @NotNull private List<Property> collectProperties() {
+            final List<TypeElement> hierarchy = new ArrayList<>();
+            for (TypeElement type = this.entity; type != null; type = superclass(type)) {
+                hierarchy.add(0, type);
+            }
+            final List<Property> properties = new ArrayList<>();
+            final Set<String> names = new LinkedHashSet<>();
+            for (final TypeElement type : hierarchy) {
+                for (final VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+                    final Set<Modifier> modifiers = field.getModifiers();
+                    if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.TRANSIENT)) {
+                        continue;
+                    }
+                    final JsonProperty annotation = field.getAnnotation(JsonProperty.class);
+                    final String name = annotation == null ? field.getSimpleName().toString() : annotation.value();
+                    if (!names.add(name)) {
+                        this.fail(field, String.format("Duplicate JSON property '%s'", name));
+                        continue;
+                    }
+                    final Property property = this.property(type, field, name);
+                    if (property != null) {
+                        properties.add(property);
+                    }
+                }
+            }
+            return properties;
+        }
+
+        @Nullable private Property property(@NotNull final TypeElement owner, @NotNull final VariableElement field,
+            @NotNull final String name) {
+            final String fieldName = field.getSimpleName().toString();
+            if (field.getModifiers().contains(Modifier.FINAL)) {
+                this.fail(field, "Fields of @JsonEntity classes may not be final");
+                return null;
+            }
+            if (this.accessible(owner, field)) {
+                return new Property(field, name, fieldName, fieldName + " = %s");
+            }
+            final String suffix = Character.toUpperCase(fieldName.charAt(0)) + fieldName.substring(1);
+            ExecutableElement getter = null;
+            ExecutableElement setter = null;
+            for (final ExecutableElement method : ElementFilter.methodsIn(owner.getEnclosedElements())) {
+                if (method.getModifiers().contains(Modifier.STATIC) || !this.accessible(owner, method)) {
+                    continue;
+                }
+                final String methodName = method.getSimpleName().toString();
+                if (method.getParameters().isEmpty() && (methodName.equals("get" + suffix)
+                    || (methodName.equals("is" + suffix) && field.asType().getKind() == TypeKind.BOOLEAN))
+                    && processingEnv.getTypeUtils().isSameType(method.getReturnType(), field.asType())) {
+                    getter = method;
+                } else if (method.getParameters().size() == 1 && methodName.equals("set" + suffix)
+                    && processingEnv.getTypeUtils().isSameType(method.getParameters().get(0).asType(), field.asType())) {
+                    setter = method;
+                }
+            }
+            if (getter == null || setter == null) {
+                this.fail(field, String.format("Field '%s' is not accessible, and has no accessible getter and setter",
+                    fieldName));
+                return null;
+            }
+            return new Property(field, name, getter.getSimpleName() + "()",
+                setter.getSimpleName() + "(%s)");
+        }
+
+        /**
+         * Check whether a member can be accessed by the codec, which is in the package of the entity
+         */
+        private boolean accessible(@NotNull final TypeElement owner, @NotNull final Element member) {
+            final Set<Modifier> modifiers = member.getModifiers();
+            if (modifiers.contains(Modifier.PUBLIC)) {
+                return true;
+            }
+            return !modifiers.contains(Modifier.PRIVATE) && packageOf(owner).equals(this.packageName);
+        }
+
+        /**
+         * Generate statements that write a value
+         *
+         * @param type       Value type
+         * @param expression Expression that evaluates to the value
+         * @param indent     Indentation
+         * @return Statements
+         */
+        @NotNull private String writeStatement(@NotNull final TypeMirror type, @NotNull final String expression,
+            @NotNull final String indent) {
+            switch (type.getKind()) {
+                case BOOLEAN:
+                case INT:
+                case LONG:
+                case SHORT:
+                case BYTE:
+                case DOUBLE:
+                case FLOAT:
+                    return indent + "writer.value(" + expression + ");\n";
+                case CHAR:
+                    return indent + "writer.value(String.valueOf(" + expression + "));\n";
+                case DECLARED:
+                    break;
+                default:
+                    this.fail(this.current, String.format("Unsupported type '%s'", type));
+                    return "";
+            }
+            final TypeElement element = (TypeElement) ((DeclaredType) type).asElement();
+            final String qualifiedName = element.getQualifiedName().toString();
+            if (qualifiedName.equals("java.lang.String")) {
+                return indent + "writer.value(" + expression + ");\n";
+            }
+            final String helper = "write" + this.helperCount++;
+            final String typeName = this.typeName(type);
+            final StringBuilder body = new StringBuilder();
+            body.append("        if (value == null) {\n")
+                .append("            writer.nullValue();\n");
+            if (unboxedKind(qualifiedName) != null) {
+                body.append("        } else {\n")
+                    .append(qualifiedName.equals("java.lang.Character") ? "            writer.value(String.valueOf(value));\n"
+                        : "            writer.value(value);\n");
+            } else if (element.getKind() == ElementKind.ENUM) {
+                body.append("        } else {\n")
+                    .append("            writer.value(value.name());\n");
+            } else if (element.getAnnotation(JsonEntity.class) != null) {
+                body.append("        } else {\n")
+                    .append("            ").append(this.codecReference(element)).append(".INSTANCE.write(writer, value);\n");
+            } else if (this.isCollection(type)) {
+                final TypeMirror item = this.typeArgument(type, 0);
+                if (item == null) {
+                    return "";
+                }
+                body.append("        } else {\n")
+                    .append("            writer.beginArray();\n")
+                    .append("            for (final ").append(this.typeName(item)).append(" item : value) {\n")
+                    .append(this.writeStatement(item, "item", "                "))
+                    .append("            }\n")
+                    .append("            writer.endArray();\n");
+            } else if (this.isMap(type)) {
+                final TypeMirror key = this.typeArgument(type, 0);
+                final TypeMirror item = this.typeArgument(type, 1);
+                if (key == null || item == null) {
+                    return "";
+                }
+                if (!this.isString(key)) {
+                    this.fail(this.current, String.format("Map keys must be strings in '%s'", type));
+                    return "";
+                }
+                body.append("        } else {\n")
+                    .append("            writer.beginObject();\n")
+                    .append("            for (final java.util.Map.Entry<String, ").append(this.typeName(item))
+                    .append("> entry : value.entrySet()) {\n")
+                    .append("                writer.name(entry.getKey());\n")
+                    .append(this.writeStatement(item, "entry.getValue()", "                "))
+                    .append("            }\n")
+                    .append("            writer.endObject();\n");
+            } else {
+                this.fail(this.current, String.format("Unsupported type '%s'", type));
+                return "";
+            }
+            body.append("        }\n");
+            this.helpers.append("\n    private static void ").append(helper).append("(final JsonWriter writer, final ")
+                .append(typeName).append(" value) {\n").append(body).append("    }\n");
+            return indent + helper + "(writer, " + expression + ");\n";
+        }
+
+        /**
+         * Generate an expression that reads a value
+         *
+         * @param type Value type
+         * @return Expression
+         */
+        @NotNull private String readExpression(@NotNull final TypeMirror type) {
+            switch (type.getKind()) {
+                case BOOLEAN:
+                    return "reader.nextBoolean()";
+                case INT:
+                    return "reader.nextInt()";
+                case LONG:
+                    return "reader.nextLong()";
+                case SHORT:
+                    return "(short) reader.nextInt()";
+                case BYTE:
+                    return "(byte) reader.nextInt()";
+                case DOUBLE:
+                    return "reader.nextDouble()";
+                case FLOAT:
+                    return "reader.nextFloat()";
+                case CHAR:
+                    if (!this.characterHelper) {
+                        this.characterHelper = true;
+                        this.helpers.append("\n    private static char readCharacter(final JsonReader reader) {\n")
+                            .append("        final String value = reader.nextString();\n")
+                            .append("        if (value == null || value.length() != 1) {\n")
+                            .append("            throw new IllegalArgumentException(\"Expected a single character\");\n")
+                            .append("        }\n")
+                            .append("        return value.charAt(0);\n")
+                            .append("    }\n");
+                    }
+                    return "readCharacter(reader)";
+                case DECLARED:
+                    break;
+                default:
+                    this.fail(this.current, String.format("Unsupported type '%s'", type));
+                    return "null";
+            }
+            final TypeElement element = (TypeElement) ((DeclaredType) type).asElement();
+            final String qualifiedName = element.getQualifiedName().toString();
+            if (qualifiedName.equals("java.lang.String")) {
+                return "reader.nextString()";
+            }
+            final TypeKind unboxed = unboxedKind(qualifiedName);
+            if (unboxed != null) {
+                final TypeMirror primitive = processingEnv.getTypeUtils().getPrimitiveType(unboxed);
+                return "(reader.nextNull() ? null : " + qualifiedName + ".valueOf(" + this.readExpression(primitive) + "))";
+            }
+            if (element.getKind() == ElementKind.ENUM) {
+                return "(reader.nextNull() ? null : " + qualifiedName + ".valueOf(reader.nextString()))";
+            }
+            if (element.getAnnotation(JsonEntity.class) != null) {
+                return "(reader.nextNull() ? null : " + this.codecReference(element) + ".INSTANCE.read(reader))";
+            }
+            final String helper = "read" + this.helperCount++;
+            final String typeName = this.typeName(type);
+            final StringBuilder body = new StringBuilder();
+            if (this.isCollection(type)) {
+                final TypeMirror item = this.typeArgument(type, 0);
+                if (item == null) {
+                    return "null";
+                }
+                final String implementation = this.isAssignable("java.util.Set", type)
+                    ? "java.util.LinkedHashSet" : "java.util.ArrayList";
+                if (!this.isInterface(type) && !this.isErasure(type, implementation)) {
+                    this.fail(this.current, String.format("Collections must be declared as List, Set or Collection in '%s'",
+                        type));
+                    return "null";
+                }
+                body.append("        final ").append(typeName).append(" value = new ").append(implementation)
+                    .append("<>();\n")
+                    .append("        reader.beginArray();\n")
+                    .append("        while (reader.hasNext()) {\n")
+                    .append("            value.add(").append(this.readExpression(item)).append(");\n")
+                    .append("        }\n")
+                    .append("        reader.endArray();\n");
+            } else if (this.isMap(type)) {
+                final TypeMirror key = this.typeArgument(type, 0);
+                final TypeMirror item = this.typeArgument(type, 1);
+                if (key == null || item == null) {
+                    return "null";
+                }
+                if (!this.isString(key)) {
+                    this.fail(this.current, String.format("Map keys must be strings in '%s'", type));
+                    return "null";
+                }
+                if (!this.isInterface(type) && !this.isErasure(type, "java.util.LinkedHashMap")) {
+                    this.fail(this.current, String.format("Maps must be declared as Map in '%s'", type));
+                    return "null";
+                }
+                body.append("        final ").append(typeName).append(" value = new java.util.LinkedHashMap<>();\n")
+                    .append("        reader.beginObject();\n")
+                    .append("        while (reader.hasNext()) {\n")
+                    .append("            final String key = reader.nextName();\n")
+                    .append("            value.put(key, ").append(this.readExpression(item)).append(");\n")
+                    .append("        }\n")
+                    .append("        reader.endObject();\n");
+            } else {
+                this.fail(this.current, String.format("Unsupported type '%s'", type));
+                return "null";
+            }
+            this.helpers.append("\n    private static ").append(typeName).append(' ').append(helper)
+                .append("(final JsonReader reader) {\n")
+                .append("        if (reader.nextNull()) {\n")
+                .append("            return null;\n")
+                .append("        }\n")
+                .append(body)
+                .append("        return value;\n")
+                .append("    }\n");
+            return helper + "(reader)";
+        }
+
+        @NotNull private String codecReference(@NotNull final TypeElement element) {
+            final String packageName = packageOf(element);
+            return packageName.isEmpty() ? codecName(element) : packageName + '.' + codecName(element);
+        }
+
+        /**
+         * Get the source representation of a type, without any type annotations
+         */
+        @NotNull private String typeName(@NotNull final TypeMirror type) {
+            switch (type.getKind()) {
+                case DECLARED: {
+                    final DeclaredType declared = (DeclaredType) type;
+                    final StringBuilder name = new StringBuilder(
+                        ((TypeElement) declared.asElement()).getQualifiedName());
+                    if (!declared.getTypeArguments().isEmpty()) {
+                        name.append('<');
+                        for (int i = 0; i < declared.getTypeArguments().size(); i++) {
+                            if (i > 0) {
+                                name.append(", ");
+                            }
+                            name.append(this.typeName(declared.getTypeArguments().get(i)));
+                        }
+                        name.append('>');
+                    }
+                    return name.toString();
+                }
+                case WILDCARD:
+                    return "?";
+                default:
+                    return type.getKind().name().toLowerCase(Locale.ROOT);
+            }
+        }
+
+        @Nullable private TypeMirror typeArgument(@NotNull final TypeMirror type, final int index) {
+            final List<? extends TypeMirror> arguments = ((DeclaredType) type).getTypeArguments();
+            if (arguments.size() <= index) {
+                this.fail(this.current, String.format("Raw type '%s' is not supported", type));
+                return null;
+            }
+            final TypeMirror argument = arguments.get(index);
+            if (argument.getKind() != TypeKind.DECLARED) {
+                this.fail(this.current, String.format("Unsupported type argument in '%s'", type));
+                return null;
+            }
+            return argument;
+        }
+
+        private boolean isCollection(@NotNull final TypeMirror type) {
+            return this.isAssignable("java.util.Collection", type) && !this.isMap(type);
+        }
+
+        private boolean isMap(@NotNull final TypeMirror type) {
+            return this.isAssignable("java.util.Map", type);
+        }
+
+        private boolean isString(@NotNull final TypeMirror type) {
+            return type.getKind() == TypeKind.DECLARED && ((TypeElement) ((DeclaredType) type).asElement())
+                .getQualifiedName().contentEquals("java.lang.String");
+        }
+
+        private boolean isInterface(@NotNull final TypeMirror type) {
+            final TypeElement element = (TypeElement) ((DeclaredType) type).asElement();
+            return element.getKind() == ElementKind.INTERFACE && (this.isErasure(type, "java.util.List")
+                || this.isErasure(type, "java.util.Set") || this.isErasure(type, "java.util.Collection")
+                || this.isErasure(type, "java.util.Map"));
+        }
+
+        private boolean isErasure(@NotNull final TypeMirror type, @NotNull final String name) {
+            return ((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().contentEquals(name);
+        }
+
+        private boolean isAssignable(@NotNull final String supertype, @NotNull final TypeMirror type) {
+            final TypeElement element = processingEnv.getElementUtils().getTypeElement(supertype);
+            return element != null && processingEnv.getTypeUtils().isAssignable(
+                processingEnv.getTypeUtils().erasure(type), processingEnv.getTypeUtils().erasure(element.asType()));
+        }
+
+        @Nullable private TypeElement superclass(@NotNull final TypeElement type) {
+            final TypeMirror superclass = type.getSuperclass();
+            if (superclass.getKind() != TypeKind.DECLARED) {
+                return null;
+            }
+            final TypeElement element = (TypeElement) ((DeclaredType) superclass).asElement();
+            return element.getQualifiedName().contentEquals("java.lang.Object") ? null : element;
+        }
+
+        private void fail(@NotNull final Element element, @NotNull final String message) {
+            this.errors++;
+            error(element, message);
+        }
+
+    }
+
+    @Nullable private static TypeKind unboxedKind(@NotNull final String qualifiedName) {
+        switch (qualifiedName) {
+            case "java.lang.Boolean":
+                return TypeKind.BOOLEAN;
+            case "java.lang.Integer":
+                return TypeKind.INT;
+            case "java.lang.Long":
+                return TypeKind.LONG;
+            case "java.lang.Short":
+                return TypeKind.SHORT;
+            case "java.lang.Byte":
+                return TypeKind.BYTE;
+            case "java.lang.Double":
+                return TypeKind.DOUBLE;
+            case "java.lang.Float":
+                return TypeKind.FLOAT;
+            case "java.lang.Character":
+                return TypeKind.CHAR;
+            default:
+                return null;
+        }
+    }
+
+}
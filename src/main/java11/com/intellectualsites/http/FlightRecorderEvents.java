@@ -0,0 +1,56 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 IntellectualSites
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.intellectualsites.http;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Emits JDK Flight Recorder events for the requests made by clients, using {@link FlightRecorderListeners}.
+ * This class has the same API as the one it replaces on Java 8, as required for the versioned entries of
+ * a multi-release jar
+ */
+final class FlightRecorderEvents {
+
+    private FlightRecorderEvents() {
+    }
+
+    /**
+     * Get the factory of the listeners that emit the events
+     *
+     * @return Listener factory, or {@code null} if Flight Recorder is not available
+     */
+    @Nullable static RequestListener.Factory factory() {
+        // The jdk.jfr module may be missing from custom runtime images. The events extend
+        // jdk.jfr.Event, so they are only loaded once the module is known to be present
+        if (ModuleLayer.boot().findModule("jdk.jfr").isEmpty()) {
+            return null;
+        }
+        try {
+            return new FlightRecorderListeners();
+        } catch (final LinkageError e) {
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,129 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 IntellectualSites
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.intellectualsites.http;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.net.URL;
+import java.util.Objects;
+
+/**
+ * Creates the listeners that emit the Flight Recorder events of requests. A {@link RequestEvent}
+ * covers the execution of a request, and a {@link PhaseEvent} covers each of its phases. The
+ * events have a default threshold, which can be changed in the recording settings, and requests
+ * are not observed at all while neither event is enabled
+ */
+final class FlightRecorderListeners implements RequestListener.Factory {
+
+    // Only used to check whether the events are enabled, which does not commit them
+    private static final RequestEvent REQUEST_PROBE = new RequestEvent();
+    private static final PhaseEvent PHASE_PROBE = new PhaseEvent();
+
+    FlightRecorderListeners() {
+    }
+
+    @Nullable @Override public RequestListener create(@NotNull final HttpRequest.Builder request) {
+        final boolean requestEnabled = REQUEST_PROBE.isEnabled();
+        final boolean phaseEnabled = PHASE_PROBE.isEnabled();
+        if (!requestEnabled && !phaseEnabled) {
+            return null;
+        }
+        return new Listener(Objects.requireNonNull(request.getMethod()), Objects.requireNonNull(request.getURL()),
+            requestEnabled, phaseEnabled);
+    }
+
+
+    /**
+     * Emits the events of a single request. Each phase starts where the previous one
+     * ended, so the next phase event is begun as soon as a phase is reported
+     */
+    private static final class Listener implements RequestListener {
+
+        private final HttpMethod method;
+        private final URL url;
+        @Nullable private final RequestEvent request;
+        @Nullable private PhaseEvent phase;
+        private boolean ended;
+
+        private Listener(@NotNull final HttpMethod method, @NotNull final URL url, final boolean requestEnabled,
+            final boolean phaseEnabled) {
+            this.method = method;
+            this.url = url;
+            if (requestEnabled) {
+                this.request = new RequestEvent();
+                this.request.begin();
+            } else {
+                this.request = null;
+            }
+            if (phaseEnabled) {
+                this.phase = new PhaseEvent();
+                this.phase.begin();
+            }
+        }
+
+        @Override public synchronized void phase(@NotNull final RequestPhase phase, final long startNanos,
+            final long endNanos) {
+            final PhaseEvent event = this.phase;
+            if (event == null || this.ended) {
+                return;
+            }
+            event.end();
+            if (event.shouldCommit()) {
+                event.phase = phase.name();
+                event.method = this.method.name();
+                event.host = this.url.getHost();
+                event.url = this.url.toExternalForm();
+                event.commit();
+            }
+            this.phase = new PhaseEvent();
+            this.phase.begin();
+        }
+
+        @Override public synchronized void complete(final int status, final long requestBytes,
+            final long responseBytes, @Nullable final Throwable throwable) {
+            if (this.ended) {
+                return;
+            }
+            this.ended = true;
+            final RequestEvent event = this.request;
+            if (event == null) {
+                return;
+            }
+            event.end();
+            if (event.shouldCommit()) {
+                event.method = this.method.name();
+                event.host = this.url.getHost();
+                event.url = this.url.toExternalForm();
+                event.status = status;
+                event.requestBytes = requestBytes;
+                event.responseBytes = responseBytes;
+                event.error = throwable == null ? null : throwable.toString();
+                event.commit();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 IntellectualSites
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.intellectualsites.http;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.concurrent.Flow;
+
+/**
+ * Adapts request and response bodies to {@link Flow reactive streams}, with backpressure.
+ * This class requires Java 9 or newer, and is published in the jar with the {@code flow} classifier
+ */
+public final class FlowBodies {
+
+    /**
+     * Create a body source that sends the buffers emitted by a publisher. The body is sent
+     * using chunked transfer encoding, as its length is not known in advance
+     *
+     * @param publisher   Body publisher
+     * @param contentType Content type of the body
+     * @return Body source
+     * @see HttpClient.WrappedRequestBuilder#withInput(BodySource)
+     */
+    @NotNull public static BodySource fromPublisher(@NotNull final Flow.Publisher<ByteBuffer> publisher,
+        @NotNull final ContentType contentType) {
+        return fromPublisher(publisher, contentType, -1);
+    }
+
+    /**
+     * Create a body source that sends the buffers emitted by a publisher. Buffers are requested
+     * one at a time, as the connection is able to send them
+     *
+     * @param publisher     Body publisher. It is subscribed to when the request is performed, and
+     *                      may be subscribed to again if the request has to be retried
+     * @param contentType   Content type of the body
+     * @param contentLength Total amount of bytes emitted by the publisher, or {@code -1} if it is not known
+     * @return Body source
+     * @see HttpClient.WrappedRequestBuilder#withInput(BodySource)
+     */
+    @NotNull public static BodySource fromPublisher(@NotNull final Flow.Publisher<ByteBuffer> publisher,
+        @NotNull final ContentType contentType, final long contentLength) {
+        return new PublisherBodySource(Objects.requireNonNull(publisher, "Publisher may not be null"),
+            Objects.requireNonNull(contentType, "Content type may not be null"), contentLength);
+    }
+
+    /**
+     * Create a publisher that performs the request once it is subscribed to, and emits the body of
+     * a successful (2xx) response. The body is read from the connection only as fast as the subscriber
+     * requests it, so a slow subscriber never causes the body to be buffered. Any other response
+     * is signalled as an error. The publisher can only be subscribed to once. Cancelling the
+     * subscription {@link HttpClient.WrappedRequestBuilder#cancel() cancels} the request
+     * <p>
+     * When the {@link HttpClient.Builder#withNonBlockingTransport(int) non-blocking transport} is used,
+     * the subscriber is signalled by a selector thread, and should therefore not block
+     *
+     * @param request Request to perform
+     * @return Body publisher
+     */
+    @NotNull public static Flow.Publisher<ByteBuffer> toPublisher(@NotNull final HttpClient.WrappedRequestBuilder request) {
+        return new ResponsePublisher(Objects.requireNonNull(request, "Request may not be null"));
+    }
+
+}
@@ -0,0 +1,185 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 IntellectualSites
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.intellectualsites.http;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.Flow;
+
+/**
+ * Body source that reads from a {@link Flow.Publisher}, requesting a single buffer at a time
+ */
+final class PublisherBodySource extends BodySource {
+
+    private final Flow.Publisher<ByteBuffer> publisher;
+    private final ContentType contentType;
+    private final long contentLength;
+
+    PublisherBodySource(@NotNull final Flow.Publisher<ByteBuffer> publisher, @NotNull final ContentType contentType,
+        final long contentLength) {
+        this.publisher = publisher;
+        this.contentType = contentType;
+        this.contentLength = contentLength;
+    }
+
+    @NotNull @Override ContentType contentType() {
+        return this.contentType;
+    }
+
+    @Override long contentLength() {
+        return this.contentLength;
+    }
+
+    @NotNull @Override ReadableByteChannel open() {
+        return new PublisherChannel(this.publisher, null);
+    }
+
+    @NotNull @Override ReadableByteChannel openNonBlocking(@NotNull final Runnable onAvailable) {
+        return new PublisherChannel(this.publisher, onAvailable);
+    }
+
+
+    private static final class PublisherChannel implements ReadableByteChannel, Flow.Subscriber<ByteBuffer> {
+
+        @Nullable private final Runnable onAvailable;
+        @Nullable private Flow.Subscription subscription;
+        @Nullable private ByteBuffer current;
+        @Nullable private Throwable error;
+        private boolean requested;
+        private boolean complete;
+        private boolean open = true;
+
+        private PublisherChannel(@NotNull final Flow.Publisher<ByteBuffer> publisher, @Nullable final Runnable onAvailable) {
+            this.onAvailable = onAvailable;
+            publisher.subscribe(this);
+        }
+
+        @Override public void onSubscribe(@NotNull final Flow.Subscription subscription) {
+            synchronized (this) {
+                if (this.subscription != null || !this.open) {
+                    subscription.cancel();
+                    return;
+                }
+                this.subscription = subscription;
+            }
+            this.signal();
+        }
+
+        @Override public void onNext(@NotNull final ByteBuffer item) {
+            synchronized (this) {
+                this.current = item;
+                this.requested = false;
+            }
+            this.signal();
+        }
+
+        @Override public void onError(@NotNull final Throwable throwable) {
+            synchronized (this) {
+                this.error = throwable;
+            }
+            this.signal();
+        }
+
+        @Override public void onComplete() {
+            synchronized (this) {
+                this.complete = true;
+            }
+            this.signal();
+        }
+
+        private void signal() {
+            synchronized (this) {
+                this.notifyAll();
+            }
+            if (this.onAvailable != null) {
+                this.onAvailable.run();
+            }
+        }
+
+        @Override public synchronized int read(@NotNull final ByteBuffer target) throws IOException {
+            while (true) {
+                if (!this.open) {
+                    throw new ClosedChannelException();
+                }
+                if (this.current != null && this.current.hasRemaining()) {
+                    final int length = Math.min(target.remaining(), this.current.remaining());
+                    final ByteBuffer slice = this.current.slice();
+                    slice.limit(length);
+                    target.put(slice);
+                    this.current.position(this.current.position() + length);
+                    return length;
+                }
+                this.current = null;
+                if (this.error != null) {
+                    throw new IOException("The body publisher failed", this.error);
+                }
+                if (this.complete) {
+                    return -1;
+                }
+                if (this.subscription != null && !this.requested) {
+                    this.requested = true;
+                    // The publisher may emit the buffer immediately, on this thread
+                    this.subscription.request(1);
+                    continue;
+                }
+                if (this.onAvailable != null) {
+                    return 0;
+                }
+                try {
+                    this.wait();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for the body publisher");
+                }
+            }
+        }
+
+        @Override public synchronized boolean isOpen() {
+            return this.open;
+        }
+
+        @Override public void close() {
+            final Flow.Subscription subscription;
+            synchronized (this) {
+                if (!this.open) {
+                    return;
+                }
+                this.open = false;
+                subscription = this.complete || this.error != null ? null : this.subscription;
+                this.notifyAll();
+            }
+            if (subscription != null) {
+                subscription.cancel();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,252 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 IntellectualSites
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.intellectualsites.http;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes a response body to a single subscriber. Reads from the connection are driven by
+ * demand: the blocking transport only reads while the subscriber has outstanding demand, and
+ * the non-blocking transport suspends reading while buffers are waiting to be delivered. At
+ * most a single read buffer is therefore held by the publisher
+ */
+final class ResponsePublisher implements Flow.Publisher<ByteBuffer>, Flow.Subscription, BodyHandler {
+
+    private static final int BUFFER_SIZE = 16384;
+
+    private final HttpClient.WrappedRequestBuilder request;
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final AtomicLong demand = new AtomicLong();
+    private final AtomicInteger wip = new AtomicInteger();
+    private final Queue<ByteBuffer> queue = new ConcurrentLinkedQueue<>();
+    private final Object lock = new Object();
+    private Flow.Subscriber<? super ByteBuffer> subscriber;
+    @Nullable private volatile ResponseParser.ReadControl readControl;
+    @Nullable private volatile Throwable error;
+    private volatile boolean accepted;
+    private volatile boolean done;
+    private volatile boolean cancelled;
+    private volatile boolean suspended;
+    private boolean terminated;
+
+    ResponsePublisher(@NotNull final HttpClient.WrappedRequestBuilder request) {
+        this.request = request;
+    }
+
+    @Override public void subscribe(@NotNull final Flow.Subscriber<? super ByteBuffer> subscriber) {
+        Objects.requireNonNull(subscriber, "Subscriber may not be null");
+        if (!this.subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override public void request(final long n) {
+                }
+
+                @Override public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("The response body can only be subscribed to once"));
+            return;
+        }
+        this.subscriber = subscriber;
+        subscriber.onSubscribe(this);
+    }
+
+    @Override public void request(final long n) {
+        if (n <= 0) {
+            this.fail(new IllegalArgumentException("Demand must be positive"));
+            this.cancel();
+            return;
+        }
+        this.demand.getAndAccumulate(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+        if (this.started.compareAndSet(false, true)) {
+            this.start();
+        }
+        this.drain();
+        synchronized (this.lock) {
+            this.lock.notifyAll();
+        }
+    }
+
+    @Override public void cancel() {
+        this.cancelled = true;
+        this.queue.clear();
+        synchronized (this.lock) {
+            this.lock.notifyAll();
+        }
+        // A request that has started is aborted, so that its connection is closed right away
+        // rather than once more data arrives. One that has not started is never sent
+        if (!this.started.compareAndSet(false, true)) {
+            this.request.cancel();
+        }
+    }
+
+    private void start() {
+        final CompletableFuture<HttpResponse> future;
+        try {
+            future = this.request.withBodyHandler(this).executeAsync();
+        } catch (final Throwable throwable) {
+            this.fail(throwable);
+            return;
+        }
+        future.whenComplete((response, throwable) -> {
+            if (throwable instanceof CompletionException && throwable.getCause() != null) {
+                throwable = throwable.getCause();
+            }
+            if (throwable != null) {
+                this.fail(throwable);
+            } else if (!this.accepted) {
+                this.fail(response == null ? new IOException("The request failed") : new ProtocolException(
+                    String.format("Request failed with status %d", response.getStatusCode())));
+            } else {
+                this.done = true;
+                this.drain();
+            }
+        });
+    }
+
+    private void fail(@NotNull final Throwable throwable) {
+        this.error = throwable;
+        this.drain();
+    }
+
+    /**
+     * Deliver queued buffers to the subscriber, for as long as it has demand. Only a single
+     * thread delivers signals at a time
+     */
+    private void drain() {
+        if (this.wip.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            if (this.cancelled || this.terminated) {
+                this.queue.clear();
+            } else if (this.error != null) {
+                this.terminated = true;
+                this.queue.clear();
+                this.subscriber.onError(Objects.requireNonNull(this.error));
+            } else {
+                ByteBuffer buffer;
+                while (this.demand.get() > 0 && (buffer = this.queue.poll()) != null) {
+                    if (this.demand.get() != Long.MAX_VALUE) {
+                        this.demand.decrementAndGet();
+                    }
+                    this.subscriber.onNext(buffer);
+                }
+                if (this.done && this.queue.isEmpty()) {
+                    this.terminated = true;
+                    this.subscriber.onComplete();
+                }
+                final ResponseParser.ReadControl readControl = this.readControl;
+                if (this.suspended && readControl != null && this.queue.isEmpty() && this.demand.get() > 0) {
+                    this.suspended = false;
+                    readControl.resume();
+                }
+            }
+            missed = this.wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void checkCancelled() {
+        if (this.cancelled) {
+            throw new CancellationException("The subscription has been cancelled");
+        }
+    }
+
+    @Override public boolean accepts(final int status) {
+        this.accepted = status / 100 == 2;
+        return this.accepted;
+    }
+
+    @Override public void transfer(@NotNull final InputStream stream, final long contentLength) throws IOException {
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        while (true) {
+            synchronized (this.lock) {
+                while (!this.cancelled && (this.demand.get() == 0 || !this.queue.isEmpty())) {
+                    try {
+                        this.lock.wait();
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted while waiting for demand");
+                    }
+                }
+            }
+            this.checkCancelled();
+            final int read = stream.read(buffer);
+            if (read == -1) {
+                return;
+            }
+            this.queue.add(ByteBuffer.wrap(Arrays.copyOf(buffer, read)));
+            this.drain();
+        }
+    }
+
+    @NotNull @Override public ResponseParser.BodyConsumer consumer(final long contentLength) {
+        return new ResponseParser.BodyConsumer() {
+
+            @Override public void bind(@NotNull final ResponseParser.ReadControl control) {
+                readControl = control;
+            }
+
+            @Override public void onBody(@NotNull final ByteBuffer data) {
+                checkCancelled();
+                final ByteBuffer copy = ByteBuffer.allocate(data.remaining());
+                copy.put(data).flip();
+                queue.add(copy);
+                drain();
+                final ResponseParser.ReadControl control = readControl;
+                if (control != null && !queue.isEmpty()) {
+                    // Mark the connection as suspended before draining again, so that
+                    // demand that arrived in the meantime resumes it
+                    control.suspend();
+                    suspended = true;
+                    drain();
+                }
+            }
+
+            @Override public void onComplete() {
+            }
+
+        };
+    }
+
+}
@@ -0,0 +1,82 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 IntellectualSites
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.intellectualsites.http;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ContentTypeTest {
+
+    @Test void testParse() {
+        final ContentType contentType = ContentType.of("Text/HTML; Charset=\"UTF-8\"; boundary=AbC");
+        assertEquals("text", contentType.getType());
+        assertEquals("html", contentType.getSubtype());
+        assertEquals("text/html", contentType.getMimeType());
+        assertEquals("utf-8", contentType.getParameter("charset"));
+        assertEquals("AbC", contentType.getParameter("BOUNDARY"));
+        assertEquals(StandardCharsets.UTF_8, contentType.getCharset());
+        assertEquals("text/html; charset=utf-8; boundary=AbC", contentType.toString());
+    }
+
+    @Test void testCharsetFallback() {
+        assertNull(ContentType.of("application/octet-stream").getCharset());
+        assertNull(ContentType.of("text/plain; charset=not-a-charset").getCharset());
+        assertEquals(StandardCharsets.UTF_16LE, ContentType.of("text/plain;charset=utf-16le").getCharset());
+        assertEquals(StandardCharsets.ISO_8859_1, ContentType.of("text/plain").getCharset(StandardCharsets.ISO_8859_1));
+    }
+
+    @Test void testEquality() {
+        assertSame(ContentType.JSON, ContentType.of("application/json; charset=UTF-8"));
+        assertEquals(ContentType.JSON, ContentType.of("Application/JSON;charset=utf-8"));
+    }
+
+    @Test void testInvalid() {
+        assertThrows(IllegalArgumentException.class, () -> ContentType.parse("json"));
+        assertThrows(IllegalArgumentException.class, () -> ContentType.parse("application/"));
+        final ContentType lenient = ContentType.of("JSON");
+        assertEquals("json", lenient.getMimeType());
+        assertEquals("", lenient.getSubtype());
+        assertEquals("json", lenient.toString());
+    }
+
+    @Test void testQuoting() {
+        final ContentType contentType = ContentType.parse("multipart/form-data; boundary=\"a;b c\"; name=\"x\\\"y\\\\\"");
+        assertEquals("a;b c", contentType.getParameter("boundary"));
+        assertEquals("x\"y\\", contentType.getParameter("name"));
+        assertEquals("multipart/form-data; boundary=\"a;b c\"; name=\"x\\\"y\\\\\"", contentType.toString());
+        assertEquals(contentType, ContentType.parse(contentType.toString()));
+        assertEquals("text/plain; name=\"\"", ContentType.parse("text/plain; name=\"\"").toString());
+    }
+
+    @Test void testInterning() {
+        assertSame(ContentType.parse("text/plain; charset=utf-8"), ContentType.parse("text/plain; charset=utf-8"));
+        // Values with other parameters are not interned
+        assertNotSame(ContentType.parse("multipart/mixed; boundary=abc"),
+            ContentType.parse("multipart/mixed; boundary=abc"));
+    }
+
+}
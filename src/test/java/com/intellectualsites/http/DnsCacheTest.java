@@ -0,0 +1,187 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 IntellectualSites
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.intellectualsites.http;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DnsCacheTest {
+
+    private static final InetAddress FIRST = address(1);
+    private static final InetAddress SECOND = address(2);
+    private static final InetAddress THIRD = address(3);
+    private static final long SECOND_NANOS = 1000000000L;
+
+    private final AtomicInteger lookups = new AtomicInteger();
+    private final DnsResolver stub = host -> {
+        this.lookups.incrementAndGet();
+        if (!"example.test".equals(host)) {
+            throw new UnknownHostException(host);
+        }
+        return DnsResolver.Resolution.of(Arrays.asList(FIRST, SECOND), Duration.ofMinutes(1));
+    };
+
+    private final AtomicLong clock = new AtomicLong();
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+    private final AtomicReference<List<InetAddress>> current = new AtomicReference<>(Collections.singletonList(FIRST));
+    private final DnsResolver shortLived = host -> {
+        this.lookups.incrementAndGet();
+        final List<InetAddress> addresses = this.current.get();
+        if (addresses == null) {
+            throw new UnknownHostException(host);
+        }
+        return DnsResolver.Resolution.of(addresses, Duration.ofSeconds(10));
+    };
+
+    private DnsCache newCache(final DnsResolver resolver) {
+        return new DnsCache(resolver, AddressSelection.FAILOVER, this.tasks::add, this.clock::get);
+    }
+
+    private void advance(final long seconds) {
+        this.clock.addAndGet(seconds * SECOND_NANOS);
+    }
+
+    private static InetAddress address(final int last) {
+        try {
+            return InetAddress.getByAddress(new byte[] {10, 0, 0, (byte) last});
+        } catch (final UnknownHostException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test void testRoundRobin() throws UnknownHostException {
+        final DnsCache cache = new DnsCache(this.stub, AddressSelection.ROUND_ROBIN, Runnable::run);
+        assertEquals(Arrays.asList(FIRST, SECOND), cache.lookup("example.test"));
+        assertEquals(Arrays.asList(SECOND, FIRST), cache.lookup("example.test"));
+        assertEquals(Arrays.asList(FIRST, SECOND), cache.lookup("example.test"));
+        assertEquals(1, this.lookups.get());
+    }
+
+    @Test void testFailover() throws UnknownHostException {
+        final DnsCache cache = new DnsCache(this.stub, AddressSelection.FAILOVER, Runnable::run);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(Arrays.asList(FIRST, SECOND), cache.lookup("example.test"));
+        }
+        assertEquals(1, this.lookups.get());
+    }
+
+    @Test void testFailuresAreNotCached() {
+        final DnsCache cache = new DnsCache(this.stub, AddressSelection.FAILOVER, Runnable::run);
+        assertThrows(UnknownHostException.class, () -> cache.lookup("unknown.test"));
+        assertThrows(UnknownHostException.class, () -> cache.lookup("unknown.test"));
+        assertEquals(2, this.lookups.get());
+    }
+
+    @Test void testLiteral() throws UnknownHostException {
+        final DnsCache cache = new DnsCache(this.stub, AddressSelection.FAILOVER, Runnable::run);
+        final List<InetAddress> addresses = cache.lookup("127.0.0.1");
+        assertEquals(1, addresses.size());
+        assertTrue(addresses.get(0).isLoopbackAddress());
+        assertEquals(0, this.lookups.get());
+    }
+
+    @Test void testExpiry() throws UnknownHostException {
+        final DnsCache cache = this.newCache(this.shortLived);
+        assertEquals(Collections.singletonList(FIRST), cache.lookup("example.test"));
+        this.current.set(Collections.singletonList(SECOND));
+        this.advance(11);
+        // The entry has expired, so the lookup resolves again without waiting for a refresh
+        assertEquals(Collections.singletonList(SECOND), cache.lookup("example.test"));
+        assertEquals(2, this.lookups.get());
+        assertTrue(this.tasks.isEmpty());
+    }
+
+    @Test void testRefreshAhead() throws UnknownHostException {
+        final DnsCache cache = this.newCache(this.shortLived);
+        cache.lookup("example.test");
+        this.advance(7);
+        cache.lookup("example.test");
+        assertTrue(this.tasks.isEmpty());
+        this.advance(1);
+        // 80% of the TTL has passed: the cached addresses are served while a refresh is scheduled
+        this.current.set(Collections.singletonList(THIRD));
+        assertEquals(Collections.singletonList(FIRST), cache.lookup("example.test"));
+        assertEquals(Collections.singletonList(FIRST), cache.lookup("example.test"));
+        assertEquals(1, this.tasks.size());
+        assertEquals(1, this.lookups.get());
+        this.tasks.poll().run();
+        assertEquals(2, this.lookups.get());
+        assertEquals(Collections.singletonList(THIRD), cache.lookup("example.test"));
+        assertTrue(this.tasks.isEmpty());
+    }
+
+    @Test void testRefreshFailure() throws UnknownHostException {
+        final DnsCache cache = this.newCache(this.shortLived);
+        cache.lookup("example.test");
+        this.advance(8);
+        this.current.set(null);
+        assertEquals(Collections.singletonList(FIRST), cache.lookup("example.test"));
+        this.tasks.poll().run();
+        // The failed refresh keeps the current addresses and is retried by the next lookup
+        assertEquals(Collections.singletonList(FIRST), cache.lookup("example.test"));
+        assertEquals(1, this.tasks.size());
+        this.tasks.clear();
+        this.advance(3);
+        assertThrows(UnknownHostException.class, () -> cache.lookup("example.test"));
+    }
+
+    @Test void testEviction() throws UnknownHostException {
+        final DnsCache cache = this.newCache(this.shortLived);
+        for (int i = 0; i <= 1024; i++) {
+            cache.lookup("host" + i + ".test");
+        }
+        assertEquals(1025, cache.size());
+        this.advance(11);
+        cache.lookup("fresh.test");
+        assertEquals(1, cache.size());
+    }
+
+    @Test void testHugeTtl() throws UnknownHostException {
+        final DnsCache cache = this.newCache(host -> {
+            this.lookups.incrementAndGet();
+            return DnsResolver.Resolution.of(Collections.singletonList(FIRST), Duration.ofSeconds(Long.MAX_VALUE));
+        });
+        assertEquals(Collections.singletonList(FIRST), cache.lookup("example.test"));
+        this.advance(60 * 60 * 24 - 1);
+        cache.lookup("example.test");
+        assertEquals(1, this.lookups.get());
+        this.advance(2);
+        cache.lookup("example.test");
+        assertEquals(2, this.lookups.get());
+    }
+
+}
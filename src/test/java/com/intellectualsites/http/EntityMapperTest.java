@@ -0,0 +1,102 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 IntellectualSites
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.intellectualsites.http;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EntityMapperTest {
+
+    @Test void testNegotiation() {
+        final EntityMapper mapper = EntityMapper.newInstance()
+            .registerDeserializer(String.class, ContentType.CBOR, CborMapper.deserializer(String.class))
+            .registerSerializer(String.class, CborMapper.serializer(String.class));
+        final byte[] cbor = CborMapper.encode("Unicorns");
+        assertEquals("Unicorns", mapper.getDeserializer(String.class, ContentType.CBOR).get()
+            .deserialize(ContentType.CBOR, cbor));
+        assertEquals("Unicorns", mapper.getDeserializer(String.class, ContentType.STRING_UTF8).get()
+            .deserialize(ContentType.STRING_UTF8, "Unicorns".getBytes()));
+        assertEquals(ContentType.CBOR, mapper.getSerializer(String.class).get().getContentType());
+        assertEquals(ContentType.STRING_UTF8, mapper.getSerializer(String.class, ContentType.of("text/html"))
+            .get().getContentType());
+        assertEquals("application/cbor, */*;q=0.1", mapper.getAcceptHeader(String.class));
+        assertNull(EntityMapper.newInstance().getAcceptHeader(null));
+    }
+
+    @Test void testCborVectors() {
+        final Map<String, Object> map = new LinkedHashMap<>();
+        map.put("a", 1L);
+        map.put("b", Arrays.asList(2L, 3L));
+        assertVector(0L, "00");
+        assertVector(1000000L, "1a000f4240");
+        assertVector(-1000L, "3903e7");
+        assertVector(new BigInteger("18446744073709551615"), "1bffffffffffffffff");
+        assertVector(1.5, "fa3fc00000");
+        assertVector(1.1, "fb3ff199999999999a");
+        assertVector(null, "f6");
+        assertVector("IETF", "6449455446");
+        assertVector(map, "a26161016162820203");
+        assertEquals(1.0, CborMapper.decode(ByteBuffer.wrap(bytes("f93c00"))));
+        assertEquals(Arrays.asList(1L, Arrays.asList(2L, 3L), Arrays.asList(4L, 5L)),
+            CborMapper.decode(ByteBuffer.wrap(bytes("9f018202039f0405ffff"))));
+        assertEquals("streaming", CborMapper.decode(ByteBuffer.wrap(bytes("7f657374726561646d696e67ff"))));
+    }
+
+    @Test void testCborMalformed() {
+        for (final String input : new String[] {"", "1a0000", "9b7fffffffffffffff", "ff", "8201", "0000"}) {
+            assertThrows(IllegalArgumentException.class, () -> CborMapper.decode(ByteBuffer.wrap(bytes(input))));
+        }
+        final List<Object> nested = new ArrayList<>();
+        List<Object> current = nested;
+        for (int i = 0; i < 1000; i++) {
+            final List<Object> next = new ArrayList<>();
+            current.add(next);
+            current = next;
+        }
+        assertThrows(IllegalArgumentException.class, () -> CborMapper.encode(nested));
+    }
+
+    private static void assertVector(final Object value, final String hex) {
+        assertArrayEquals(bytes(hex), CborMapper.encode(value));
+        assertEquals(value, CborMapper.decode(ByteBuffer.wrap(bytes(hex))));
+    }
+
+    private static byte[] bytes(final String hex) {
+        final byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        }
+        return bytes;
+    }
+
+}
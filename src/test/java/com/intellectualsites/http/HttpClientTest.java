@@ -27,16 +27,53 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonObject;
 import com.intellectualsites.http.external.GsonMapper;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 import org.mockserver.client.MockServerClient;
 import org.mockserver.integration.ClientAndServer;
 import org.mockserver.mock.action.ExpectationResponseCallback;
 import org.mockserver.model.HttpRequest;
 
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -71,6 +108,16 @@ public class HttpClientTest {
             .respond(org.mockserver.model.HttpResponse.response(GSON.toJson(object)));
         mockServer.when(HttpRequest.request().withPath("/testgson"))
             .respond(new GsonCallBack());
+        mockServer.when(HttpRequest.request().withPath("/events").withHeader("Last-Event-ID", "1"))
+            .respond(org.mockserver.model.HttpResponse.response().withStatusCode(204));
+        mockServer.when(HttpRequest.request().withPath("/events")).respond(org.mockserver.model.HttpResponse.response()
+            .withHeader("Content-Type", "text/event-stream")
+            .withBody(String.format(": comment\nretry: 10\nid: 1\ndata: %s\n\n", GSON.toJson(object))));
+        mockServer.when(HttpRequest.request().withPath("/records")).respond(org.mockserver.model.HttpResponse.response()
+            .withHeader("Content-Type", "application/x-ndjson")
+            .withBody(String.format("%s\r\n\r\n%s", GSON.toJson(object), GSON.toJson(object))));
+        mockServer.when(HttpRequest.request().withPath("/slow")).respond(org.mockserver.model.HttpResponse.response()
+            .withDelay(TimeUnit.SECONDS, 30).withBody(BASE_BODY));
     }
 
 
@@ -95,6 +142,71 @@ public class HttpClientTest {
     }
 
 
+    /**
+     * Serves a file, with support for byte ranges that can be made to fail
+     */
+    public static final class RangeCallBack implements ExpectationResponseCallback {
+
+        private final boolean acceptRanges;
+        private final List<String> ranges = Collections.synchronizedList(new ArrayList<>());
+        private volatile byte[] content;
+        private volatile String etag = "\"v1\"";
+        private volatile int failAt = -1;
+        private volatile int missingBytes;
+
+        private RangeCallBack(final byte[] content, final boolean acceptRanges) {
+            this.content = content;
+            this.acceptRanges = acceptRanges;
+        }
+
+        @Override public org.mockserver.model.HttpResponse handle(HttpRequest httpRequest) {
+            final byte[] content = this.content;
+            final org.mockserver.model.HttpResponse response = org.mockserver.model.HttpResponse.response()
+                .withHeader("ETag", this.etag);
+            if (this.acceptRanges) {
+                response.withHeader("Accept-Ranges", "bytes");
+            }
+            if (httpRequest.getMethod().getValue().equals("HEAD")) {
+                return response.withHeader("Content-Length", Integer.toString(content.length));
+            }
+            final String range = httpRequest.getFirstHeader("Range");
+            final String ifRange = httpRequest.getFirstHeader("If-Range");
+            if (!this.acceptRanges || range.isEmpty() || (!ifRange.isEmpty() && !ifRange.equals(this.etag))) {
+                return response.withBody(content);
+            }
+            this.ranges.add(range);
+            final String[] bounds = range.substring("bytes=".length()).split("-");
+            final int start = Integer.parseInt(bounds[0]);
+            final int end = Integer.parseInt(bounds[1]) + 1 - this.missingBytes;
+            if (start == this.failAt) {
+                this.failAt = -1;
+                return response.withStatusCode(500);
+            }
+            return response.withStatusCode(206)
+                .withHeader("Content-Range", String.format("bytes %d-%d/%d", start, end - 1, content.length))
+                .withBody(Arrays.copyOfRange(content, start, end));
+        }
+
+    }
+
+
+    /**
+     * Records when a request is dispatched, and how it completes
+     */
+    private static final class RequestOutcome implements Interceptor {
+
+        private final CompletableFuture<Void> dispatched = new CompletableFuture<>();
+        private final CompletableFuture<Throwable> failure = new CompletableFuture<>();
+
+        @Override public CompletableFuture<HttpResponse> intercept(final Chain chain) {
+            this.dispatched.complete(null);
+            return chain.proceed().whenComplete((response, throwable) -> this.failure.complete(
+                throwable instanceof CompletionException ? throwable.getCause() : throwable));
+        }
+
+    }
+
+
     @AfterAll static void stopServer() {
         mockServer.stop();
     }
@@ -110,6 +222,22 @@ public class HttpClientTest {
             .build();
     }
 
+    /**
+     * Create a builder for a client of the mock server
+     *
+     * @param nonBlocking Whether the client uses the non-blocking transport
+     * @return Client builder
+     */
+    private static HttpClient.Builder newClient(final boolean nonBlocking) {
+        final HttpClient.Builder builder = HttpClient.newBuilder()
+            .withBaseURL(BASE_PATH)
+            .withEntityMapper(EntityMapper.newInstance());
+        if (nonBlocking) {
+            builder.withNonBlockingTransport(1);
+        }
+        return builder;
+    }
+
     @Test void testSimpleGet() {
         final HttpResponse response = this.client.get("/").execute();
         assertNotNull(response);
@@ -156,6 +284,644 @@ public class HttpClientTest {
     }
 
 
+    @Test void testTemplate() {
+        final HttpClient.RequestTemplate template = this.client.prepare(HttpMethod.POST, "/{path}");
+        for (int i = 0; i < 2; i++) {
+            final HttpResponse response = template.newRequest("echo").withInput(() -> ECHO_CONTENT).execute();
+            assertNotNull(response);
+            assertEquals(ECHO_CONTENT, response.getResponseEntity(String.class));
+            assertEquals(ECHO_HEADER_VALUE, response.getHeaders().getHeader(ECHO_HEADER_KEY));
+        }
+        assertThrows(IllegalArgumentException.class, () -> template.newRequest());
+    }
+
+    @Test void testTemplateDecoration() {
+        final List<String> urls = new ArrayList<>();
+        try (final HttpClient client = HttpClient.newBuilder()
+            .withBaseURL(BASE_PATH)
+            .withEntityMapper(EntityMapper.newInstance())
+            .withDecorator(request -> urls.add(request.getURL().toExternalForm())).build()) {
+            final HttpClient.RequestTemplate template = client.prepare(HttpMethod.GET, "/{path}");
+            assertEquals(BASE_BODY, template.newRequest("").execute().getResponseEntity(String.class));
+        }
+        assertEquals(Collections.singletonList(BASE_PATH + "/"), urls);
+    }
+
+
+    @Test void testBatch() {
+        final List<HttpClient.WrappedRequestBuilder> requests = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            final String input = Integer.toString(i);
+            requests.add(this.client.post("/echo").withInput(() -> input));
+        }
+        final List<HttpResponse> responses = this.client.executeAll(requests, 3);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(Integer.toString(i), responses.get(i).getResponseEntity(String.class));
+        }
+        final BatchException exception = assertThrows(BatchException.class, () -> this.client.executeAll(
+            Arrays.asList(this.client.get("/"), this.client.get("/invalid").onStatus(404, response -> {
+                throw new TestException();
+            })), 2, BatchMode.COLLECT_ALL));
+        assertNotNull(exception.getResponses().get(0));
+        assertInstanceOf(TestException.class, exception.getFailures().get(1));
+    }
+
+    @Test void testBatchInterrupted() {
+        final HttpClient.WrappedRequestBuilder slow = this.client.get("/slow");
+        final Thread thread = Thread.currentThread();
+        final CompletableFuture<Void> interrupt = CompletableFuture.runAsync(thread::interrupt,
+            CompletableFuture.delayedExecutor(200, TimeUnit.MILLISECONDS));
+        final BatchException exception = assertThrows(BatchException.class, () -> this.client.executeAll(
+            Arrays.asList(this.client.get("/"), slow), 2, BatchMode.COLLECT_ALL));
+        interrupt.join();
+        assertTrue(Thread.interrupted());
+        assertInstanceOf(InterruptedException.class, exception.getCause());
+        assertFalse(exception.getFailures().containsKey(2));
+        // The request in flight was cancelled rather than abandoned
+        assertFalse(slow.cancel());
+    }
+
+
+    @Test void testNonBlocking() throws Exception {
+        try (final HttpClient client = HttpClient.newBuilder()
+            .withBaseURL(BASE_PATH)
+            .withEntityMapper(EntityMapper.newInstance())
+            .withDecorator(request -> request.withHeader(ECHO_HEADER_KEY, ECHO_HEADER_VALUE))
+            .withNonBlockingTransport(1)
+            .build()) {
+            final HttpResponse response = client.get("/").execute();
+            assertNotNull(response);
+            assertEquals(BASE_BODY, response.getResponseEntity(String.class));
+            assertEquals(BASE_HEADER_VALUE, response.getHeaders().getHeader(BASE_HEADER_KEY));
+            final List<CompletableFuture<HttpResponse>> futures = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                final String input = Integer.toString(i);
+                futures.add(client.post("/echo").withInput(() -> input).executeAsync());
+            }
+            for (int i = 0; i < 10; i++) {
+                assertEquals(Integer.toString(i), futures.get(i).get().getResponseEntity(String.class));
+            }
+            assertThrows(TestException.class, () -> client.get("/invalid").onStatus(404, ignored -> {
+                throw new TestException();
+            }).execute());
+        }
+    }
+
+
+    @Test void testHeaderValidation() {
+        final HttpClient.WrappedRequestBuilder request = this.client.get("/");
+        assertThrows(IllegalArgumentException.class, () -> request.withHeader("X-Test", "a\r\nX-Injected: 1"));
+        assertThrows(IllegalArgumentException.class, () -> request.withHeader("X-Test", "a\nGET / HTTP/1.1"));
+        assertThrows(IllegalArgumentException.class, () -> request.withHeader("X-Test", "a\0"));
+        assertThrows(IllegalArgumentException.class, () -> request.withHeader("X Test", "a"));
+        assertThrows(IllegalArgumentException.class, () -> request.withHeader("X-Test:", "a"));
+        assertThrows(IllegalArgumentException.class, () -> request.withHeader("", "a"));
+        assertThrows(IllegalArgumentException.class, () -> this.client.prepare(HttpMethod.GET, "/")
+            .withHeader("X-Test", "a\r\n"));
+        assertEquals(BASE_BODY, request.withHeader("X-Test", "a\tb").execute().getResponseEntity(String.class));
+    }
+
+    @Test void testFramingHeaders() throws Exception {
+        try (final HttpClient client = HttpClient.newBuilder()
+            .withBaseURL(BASE_PATH)
+            .withEntityMapper(EntityMapper.newInstance())
+            .withNonBlockingTransport(1)
+            .build()) {
+            // The transport frames the body itself, so that the server does not see conflicting lengths
+            assertEquals(ECHO_CONTENT, client.post("/echo").withInput(() -> ECHO_CONTENT)
+                .withHeader("Content-Length", "1000").withHeader("Transfer-Encoding", "chunked")
+                .withHeader("Connection", "close").execute().getResponseEntity(String.class));
+            assertEquals(BASE_BODY, client.get("/").withHeader("Content-Length", "5").execute()
+                .getResponseEntity(String.class));
+            assertEquals(ECHO_CONTENT, client.post("/echo").withInput(() -> ECHO_CONTENT).execute()
+                .getResponseEntity(String.class));
+        }
+    }
+
+
+    @Test void testDownload(@TempDir final Path directory) throws IOException {
+        final Path target = directory.resolve("download.txt");
+        final HttpResponse response = this.client.get("/").executeToFile(target);
+        assertNotNull(response);
+        assertEquals(200, response.getStatusCode());
+        assertEquals(BASE_BODY, new String(Files.readAllBytes(target), StandardCharsets.UTF_8));
+        final Path missing = directory.resolve("missing.txt");
+        assertEquals(404, Objects.requireNonNull(this.client.get("/invalid").executeToFile(missing)).getStatusCode());
+        assertFalse(Files.exists(missing));
+        try (final Stream<Path> files = Files.list(directory)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+
+    private static byte[] randomContent(final long seed) {
+        final byte[] content = new byte[1000];
+        new Random(seed).nextBytes(content);
+        return content;
+    }
+
+    private static RangeCallBack serveRanges(final String path, final boolean acceptRanges) {
+        final RangeCallBack file = new RangeCallBack(randomContent(1), acceptRanges);
+        mockServer.when(HttpRequest.request().withPath(path)).respond(file);
+        return file;
+    }
+
+    @Test void testSegmentedDownload(@TempDir final Path directory) throws IOException {
+        final RangeCallBack file = serveRanges("/ranges/segmented", true);
+        final Path target = directory.resolve("segmented.bin");
+        final HttpResponse response = this.client.get("/ranges/segmented").executeToFile(target, 4);
+        assertNotNull(response);
+        assertEquals(200, response.getStatusCode());
+        assertArrayEquals(file.content, Files.readAllBytes(target));
+        assertEquals(4, file.ranges.size());
+        assertFalse(Files.exists(directory.resolve("segmented.bin.part")));
+        assertFalse(Files.exists(directory.resolve("segmented.bin.progress")));
+    }
+
+    @Test void testSegmentedDownloadResume(@TempDir final Path directory) throws IOException {
+        final RangeCallBack file = serveRanges("/ranges/resume", true);
+        final Path target = directory.resolve("resume.bin");
+        file.failAt = 500;
+        assertThrows(RuntimeException.class, () -> this.client.get("/ranges/resume").executeToFile(target, 4));
+        assertFalse(Files.exists(target));
+        assertTrue(Files.exists(directory.resolve("resume.bin.progress")));
+        file.ranges.clear();
+        assertNotNull(this.client.get("/ranges/resume").executeToFile(target, 4));
+        // Only the segment that failed is requested again
+        assertEquals(Collections.singletonList("bytes=500-749"), file.ranges);
+        assertArrayEquals(file.content, Files.readAllBytes(target));
+    }
+
+    @Test void testSegmentedDownloadChanged(@TempDir final Path directory) throws IOException {
+        final RangeCallBack file = serveRanges("/ranges/changed", true);
+        final Path target = directory.resolve("changed.bin");
+        file.failAt = 500;
+        assertThrows(RuntimeException.class, () -> this.client.get("/ranges/changed").executeToFile(target, 4));
+        file.content = randomContent(2);
+        file.etag = "\"v2\"";
+        file.ranges.clear();
+        assertNotNull(this.client.get("/ranges/changed").executeToFile(target, 4));
+        // The progress belongs to the old version of the file, so the download starts over
+        assertEquals(4, file.ranges.size());
+        assertArrayEquals(file.content, Files.readAllBytes(target));
+    }
+
+    @Test void testSegmentedDownloadWrongLength(@TempDir final Path directory) {
+        final RangeCallBack file = serveRanges("/ranges/short", true);
+        final Path target = directory.resolve("short.bin");
+        file.missingBytes = 1;
+        assertThrows(RuntimeException.class, () -> this.client.get("/ranges/short").executeToFile(target, 4));
+        assertFalse(Files.exists(target));
+    }
+
+    @Test void testSegmentedDownloadFallback(@TempDir final Path directory) throws IOException {
+        final RangeCallBack file = serveRanges("/ranges/fallback", false);
+        final Path target = directory.resolve("fallback.bin");
+        assertNotNull(this.client.get("/ranges/fallback").executeToFile(target, 4));
+        assertTrue(file.ranges.isEmpty());
+        assertArrayEquals(file.content, Files.readAllBytes(target));
+    }
+
+    @ParameterizedTest @ValueSource(booleans = {false, true})
+    void testSegmentedDownloadCancellation(final boolean nonBlocking, @TempDir final Path directory) throws Exception {
+        final RequestOutcome outcome = new RequestOutcome();
+        try (final HttpClient client = newClient(nonBlocking).withInterceptor(outcome).build()) {
+            final CompletableFuture<Throwable> failure = new CompletableFuture<>();
+            final HttpClient.WrappedRequestBuilder download = client.get("/slow").onException(failure::complete);
+            final CompletableFuture<HttpResponse> result = CompletableFuture.supplyAsync(() ->
+                download.executeToFile(directory.resolve("slow.bin"), 4));
+            outcome.dispatched.get(5, TimeUnit.SECONDS);
+            assertTrue(download.cancel());
+            // The HEAD request is derived from the download, and is aborted with it
+            assertInstanceOf(RequestCancelledException.class, outcome.failure.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(RequestCancelledException.class, failure.get(5, TimeUnit.SECONDS));
+            assertNull(result.get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test void testUpload(@TempDir final Path directory) throws IOException {
+        final Path file = directory.resolve("upload.txt");
+        Files.write(file, ECHO_CONTENT.getBytes(StandardCharsets.UTF_8));
+        final HttpResponse response = this.client.post("/echo").withInput(BodySource.ofFile(file)).execute();
+        assertNotNull(response);
+        assertEquals(ECHO_CONTENT, response.getResponseEntity(String.class));
+    }
+
+    @Test void testEventStream() throws Exception {
+        final List<ServerSentEvent> events = new ArrayList<>();
+        this.client.get("/events").executeEventStream(events::add).get();
+        assertEquals(1, events.size());
+        assertEquals("1", events.get(0).getId());
+        assertEquals("message", events.get(0).getEvent());
+        assertEquals("world", events.get(0).getData(JsonObject.class).get("hello").getAsString());
+        final List<JsonObject> records = new ArrayList<>();
+        this.client.get("/records").executeRecordStream(JsonObject.class, records::add).get();
+        assertEquals(2, records.size());
+        assertEquals("world", records.get(1).get("hello").getAsString());
+    }
+
+    @ParameterizedTest @ValueSource(booleans = {false, true})
+    void testEventStreamCancellation(final boolean nonBlocking) throws Exception {
+        final RequestOutcome outcome = new RequestOutcome();
+        try (final HttpClient client = newClient(nonBlocking).withInterceptor(outcome).build()) {
+            // The server does not send anything for 30 seconds
+            final CompletableFuture<Void> stream = client.get("/slow").executeEventStream(event -> {
+            });
+            outcome.dispatched.get(5, TimeUnit.SECONDS);
+            assertTrue(stream.cancel(true));
+            assertThrows(CancellationException.class, stream::join);
+            // The connection was closed without waiting for the server
+            assertInstanceOf(RequestCancelledException.class, outcome.failure.get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test void testFlow() throws Exception {
+        final SubmissionPublisher<ByteBuffer> publisher = new SubmissionPublisher<>();
+        final CompletableFuture<HttpResponse> upload = CompletableFuture.supplyAsync(() -> this.client.post("/echo")
+            .withInput(FlowBodies.fromPublisher(publisher, ContentType.STRING_UTF8)).execute());
+        while (publisher.getNumberOfSubscribers() == 0) {
+            Thread.sleep(10);
+        }
+        publisher.submit(ByteBuffer.wrap(ECHO_CONTENT.getBytes(StandardCharsets.UTF_8)));
+        publisher.close();
+        assertEquals(ECHO_CONTENT, Objects.requireNonNull(upload.get()).getResponseEntity(String.class));
+
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final CompletableFuture<Void> download = new CompletableFuture<>();
+        FlowBodies.toPublisher(this.client.get("/")).subscribe(new Flow.Subscriber<ByteBuffer>() {
+
+            private Flow.Subscription subscription;
+
+            @Override public void onSubscribe(final Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(1);
+            }
+
+            @Override public void onNext(final ByteBuffer item) {
+                body.write(item.array(), item.arrayOffset() + item.position(), item.remaining());
+                this.subscription.request(1);
+            }
+
+            @Override public void onError(final Throwable throwable) {
+                download.completeExceptionally(throwable);
+            }
+
+            @Override public void onComplete() {
+                download.complete(null);
+            }
+
+        });
+        download.get();
+        assertEquals(BASE_BODY, body.toString(StandardCharsets.UTF_8));
+    }
+
+    @ParameterizedTest @ValueSource(booleans = {false, true})
+    void testFlowCancellation(final boolean nonBlocking) throws Exception {
+        final RequestOutcome outcome = new RequestOutcome();
+        try (final HttpClient client = newClient(nonBlocking).withInterceptor(outcome).build()) {
+            final CompletableFuture<Flow.Subscription> subscription = new CompletableFuture<>();
+            final List<String> signals = Collections.synchronizedList(new ArrayList<>());
+            FlowBodies.toPublisher(client.get("/slow")).subscribe(new Flow.Subscriber<ByteBuffer>() {
+
+                @Override public void onSubscribe(final Flow.Subscription value) {
+                    value.request(1);
+                    subscription.complete(value);
+                }
+
+                @Override public void onNext(final ByteBuffer item) {
+                    signals.add("next");
+                }
+
+                @Override public void onError(final Throwable throwable) {
+                    signals.add("error");
+                }
+
+                @Override public void onComplete() {
+                    signals.add("complete");
+                }
+
+            });
+            outcome.dispatched.get(5, TimeUnit.SECONDS);
+            subscription.get(5, TimeUnit.SECONDS).cancel();
+            // The request was aborted without waiting for the server
+            assertInstanceOf(RequestCancelledException.class, outcome.failure.get(5, TimeUnit.SECONDS));
+            // A cancelled subscriber is not signalled
+            assertEquals(Collections.emptyList(), signals);
+        }
+    }
+
+    @ParameterizedTest @ValueSource(booleans = {false, true})
+    void testPrewarm(final boolean nonBlocking) throws Exception {
+        final List<String> warmUp = new ArrayList<>();
+        try (final HttpClient client = newClient(nonBlocking)
+            .prewarm(2)
+            .withWarmUp(warm -> warmUp.add(warm.get("/").execute().getResponseEntity(String.class)))
+            .build()) {
+            client.whenWarm().get();
+        }
+        assertEquals(Collections.singletonList(BASE_BODY), warmUp);
+    }
+
+    @Test void testTlsSessionCache() throws Exception {
+        final SSLContext context = SSLContext.getInstance("TLS");
+        context.init(null, null, null);
+        try (final HttpClient client = HttpClient.newBuilder().withSSLContext(context)
+            .withTlsSessionCache(16, Duration.ofMinutes(5)).build()) {
+            assertEquals(16, context.getClientSessionContext().getSessionCacheSize());
+            assertEquals(300, context.getClientSessionContext().getSessionTimeout());
+            assertEquals(0, client.getTlsMetrics().getFullHandshakes());
+        }
+        assertThrows(IllegalStateException.class, () -> HttpClient.newBuilder()
+            .withSSLSocketFactory(context.getSocketFactory()).withTlsSessionCache(16, Duration.ofMinutes(5)).build());
+    }
+
+    @Test void testTlsResumption() throws Exception {
+        // The keystore holds a self-signed certificate for localhost
+        final KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        try (final InputStream stream = Objects.requireNonNull(
+            HttpClientTest.class.getResourceAsStream("/localhost.p12"))) {
+            keyStore.load(stream, "password".toCharArray());
+        }
+        final KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagers.init(keyStore, "password".toCharArray());
+        final TrustManagerFactory trustManagers = TrustManagerFactory.getInstance(
+            TrustManagerFactory.getDefaultAlgorithm());
+        trustManagers.init(keyStore);
+        final SSLContext serverContext = SSLContext.getInstance("TLS");
+        serverContext.init(keyManagers.getKeyManagers(), null, null);
+        final SSLContext clientContext = SSLContext.getInstance("TLS");
+        clientContext.init(null, trustManagers.getTrustManagers(), null);
+        try (final SSLServerSocket server = (SSLServerSocket) serverContext.getServerSocketFactory()
+            .createServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            final Thread acceptor = new Thread(() -> {
+                while (!server.isClosed()) {
+                    try (final Socket socket = server.accept()) {
+                        final BufferedReader reader = new BufferedReader(new InputStreamReader(
+                            socket.getInputStream(), StandardCharsets.US_ASCII));
+                        String line;
+                        while ((line = reader.readLine()) != null && !line.isEmpty()) {
+                        }
+                        // Closing the connection makes the client open a new one, which resumes the session
+                        socket.getOutputStream().write(("HTTP/1.1 200 OK\r\nContent-Length: 2\r\n"
+                            + "Connection: close\r\n\r\nok").getBytes(StandardCharsets.US_ASCII));
+                    } catch (final IOException ignored) {
+                    }
+                }
+            });
+            acceptor.setDaemon(true);
+            acceptor.start();
+            try (final HttpClient client = HttpClient.newBuilder()
+                .withBaseURL("https://localhost:" + server.getLocalPort())
+                .withEntityMapper(EntityMapper.newInstance())
+                .withSSLContext(clientContext)
+                .withTlsSessionCache(16, Duration.ofMinutes(5))
+                .build()) {
+                for (int i = 0; i < 2; i++) {
+                    assertEquals("ok", client.get("/").execute().getResponseEntity(String.class));
+                }
+                // Handshake listeners are notified on a separate thread
+                final TlsMetrics metrics = client.getTlsMetrics();
+                final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+                while (metrics.getFullHandshakes() + metrics.getResumedHandshakes() < 2
+                    && System.nanoTime() < deadline) {
+                    Thread.sleep(10);
+                }
+                assertEquals(1, metrics.getFullHandshakes());
+                assertEquals(1, metrics.getResumedHandshakes());
+            }
+        }
+    }
+
+    @Test void testInterceptors() throws Exception {
+        final List<String> order = new ArrayList<>();
+        try (final HttpClient client = HttpClient.newBuilder()
+            .withBaseURL(BASE_PATH)
+            .withEntityMapper(EntityMapper.newInstance())
+            .withInterceptor(chain -> {
+                order.add("outer");
+                return chain.proceed().whenComplete((response, throwable) -> order.add("outer done"));
+            })
+            .withInterceptor(chain -> {
+                order.add("inner");
+                if (chain.getURL().getPath().endsWith("/cached")) {
+                    return CompletableFuture.completedFuture(chain.respond(200, ContentType.of("text/plain"),
+                        "cached".getBytes(StandardCharsets.UTF_8)));
+                }
+                return chain.proceed();
+            }).build()) {
+            assertEquals(BASE_BODY, client.get("/").execute().getResponseEntity(String.class));
+            assertEquals("cached", client.get("/cached").executeAsync().get().getResponseEntity(String.class));
+        }
+        assertEquals(Arrays.asList("outer", "inner", "outer done", "outer", "inner", "outer done"), order);
+    }
+
+    @Test void testPriorityScheduling() throws Exception {
+        try (final HttpClient client = HttpClient.newBuilder()
+            .withBaseURL(BASE_PATH)
+            .withEntityMapper(EntityMapper.newInstance())
+            .withPriorityScheduling(1, Duration.ofSeconds(1)).build()) {
+            final List<CompletableFuture<HttpResponse>> futures = new ArrayList<>();
+            for (final RequestPriority priority : RequestPriority.values()) {
+                futures.add(client.get("/").withPriority(priority).executeAsync());
+            }
+            for (final CompletableFuture<HttpResponse> future : futures) {
+                assertEquals(BASE_BODY, future.get().getResponseEntity(String.class));
+            }
+            for (final QueueStats stats : client.getQueueStats().values()) {
+                assertEquals(1, stats.getDispatched());
+                assertEquals(0, stats.getQueueDepth());
+            }
+        }
+        assertEquals(Arrays.asList("HIGH", "LOW"), dispatchOrder(Duration.ofHours(1), Duration.ZERO));
+        // A low priority request that waited for three aging intervals overtakes a high priority one
+        assertEquals(Arrays.asList("LOW", "HIGH"), dispatchOrder(Duration.ofMillis(100), Duration.ofMillis(300)));
+    }
+
+    /**
+     * Queue a low and a high priority request behind a request that holds the only slot, and
+     * release the slot once both are queued
+     *
+     * @param aging Aging interval
+     * @param wait  Time between queueing the low and the high priority request
+     * @return Priorities of the queued requests, in the order in which they were dispatched
+     */
+    private static List<String> dispatchOrder(final Duration aging, final Duration wait) throws Exception {
+        final List<String> order = Collections.synchronizedList(new ArrayList<>());
+        try (final HttpClient client = HttpClient.newBuilder()
+            .withBaseURL(BASE_PATH)
+            .withEntityMapper(EntityMapper.newInstance())
+            .withPriorityScheduling(1, aging)
+            .withInterceptor(chain -> {
+                if (chain.getURL().getQuery() != null) {
+                    order.add(chain.getURL().getQuery());
+                }
+                return chain.proceed();
+            }).build()) {
+            final HttpClient.WrappedRequestBuilder slow = client.get("/slow");
+            slow.executeAsync();
+            final CompletableFuture<HttpResponse> low = client.get("/?LOW").withPriority(RequestPriority.LOW)
+                .executeAsync();
+            Thread.sleep(wait.toMillis());
+            final CompletableFuture<HttpResponse> high = client.get("/?HIGH").withPriority(RequestPriority.HIGH)
+                .executeAsync();
+            assertEquals(1, client.getQueueStats().get(RequestPriority.LOW).getQueueDepth());
+            assertEquals(1, client.getQueueStats().get(RequestPriority.HIGH).getQueueDepth());
+            assertTrue(order.isEmpty());
+            slow.cancel();
+            assertEquals(BASE_BODY, low.get(5, TimeUnit.SECONDS).getResponseEntity(String.class));
+            assertEquals(BASE_BODY, high.get(5, TimeUnit.SECONDS).getResponseEntity(String.class));
+        }
+        return order;
+    }
+
+    @Test void testQueuedCancellation() throws Exception {
+        try (final HttpClient client = HttpClient.newBuilder()
+            .withBaseURL(BASE_PATH)
+            .withEntityMapper(EntityMapper.newInstance())
+            .withPriorityScheduling(1, Duration.ofHours(1)).build()) {
+            final HttpClient.WrappedRequestBuilder slow = client.get("/slow");
+            slow.executeAsync();
+            final CompletableFuture<Throwable> failure = new CompletableFuture<>();
+            final HttpClient.WrappedRequestBuilder queued = client.get("/").onException(failure::complete);
+            final CompletableFuture<HttpResponse> future = queued.executeAsync();
+            assertEquals(1, client.getQueueStats().get(RequestPriority.NORMAL).getQueueDepth());
+            // The request fails right away, while the slot is still held
+            assertTrue(queued.cancel());
+            assertInstanceOf(RequestCancelledException.class, failure.get(5, TimeUnit.SECONDS));
+            assertNull(future.get(5, TimeUnit.SECONDS));
+            assertEquals(0, client.getQueueStats().get(RequestPriority.NORMAL).getQueueDepth());
+            // Only the request that holds the slot was dispatched
+            assertEquals(1, client.getQueueStats().get(RequestPriority.NORMAL).getDispatched());
+            slow.cancel();
+        }
+    }
+
+    @ParameterizedTest @ValueSource(booleans = {false, true})
+    void testCancellation(final boolean nonBlocking) throws Exception {
+        try (final HttpClient client = newClient(nonBlocking).build()) {
+            final CompletableFuture<Throwable> failure = new CompletableFuture<>();
+            final CompletableFuture<HttpResponse> future = client.get("/slow")
+                .onException(failure::complete).executeAsync();
+            assertTrue(future.cancel(true));
+            assertInstanceOf(RequestCancelledException.class, failure.get(5, TimeUnit.SECONDS));
+
+            final HttpClient.WrappedRequestBuilder request = client.get("/");
+            assertTrue(request.cancel());
+            assertFalse(request.cancel());
+            assertThrows(RequestCancelledException.class, request::execute);
+            assertEquals(BASE_BODY, client.get("/").execute().getResponseEntity(String.class));
+        }
+    }
+
+    @ParameterizedTest @ValueSource(booleans = {false, true})
+    void testEntityMemo(final boolean nonBlocking) {
+        try (final HttpClient client = newClient(nonBlocking).build()) {
+            final HttpResponse response = client.get("/").withEagerEntity(String.class).execute();
+            assertNotNull(response);
+            final String entity = response.getResponseEntity(String.class);
+            assertEquals(BASE_BODY, entity);
+            assertSame(entity, response.getResponseEntity(String.class));
+            assertSame(response.getContentType(), response.getContentType());
+        }
+    }
+
+    @ParameterizedTest @ValueSource(booleans = {false, true})
+    void testTracing(final boolean nonBlocking) {
+        final TraceContext parent = Objects.requireNonNull(
+            TraceContext.parse("00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01"));
+        final InMemorySpanExporter exporter = new InMemorySpanExporter();
+        try (final HttpClient client = newClient(nonBlocking)
+            .withTracing(Sampler.parentBased(Sampler.never()), exporter).build()) {
+            assertEquals(BASE_BODY, client.get("/").execute().getResponseEntity(String.class));
+            assertTrue(exporter.getSpans().isEmpty());
+            assertEquals(ECHO_CONTENT, client.post("/echo").withHeader("traceparent", parent.toString())
+                .withInput(() -> ECHO_CONTENT).execute().getResponseEntity(String.class));
+        }
+        final List<Span> spans = exporter.getSpans();
+        assertEquals(1, spans.size());
+        final Span span = spans.get(0);
+        assertEquals(parent, span.getParent());
+        assertTrue(span.getContext().isSameTrace(parent));
+        assertNotEquals(parent.getSpanId(), span.getContext().getSpanId());
+        assertEquals(200, span.getStatusCode());
+        assertEquals(ECHO_CONTENT.length(), span.getRequestBytes());
+        assertEquals(ECHO_CONTENT.length(), span.getResponseBytes());
+        assertEquals(Arrays.asList(RequestPhase.SERIALIZE, RequestPhase.SEND, RequestPhase.WAIT,
+            RequestPhase.RECEIVE), span.getEvents().stream().map(Span.Event::getPhase)
+            .filter(phase -> phase != RequestPhase.CONNECT).collect(Collectors.toList()));
+        mockServer.verify(HttpRequest.request().withPath("/echo")
+            .withHeader("traceparent", span.getContext().toString()));
+    }
+
+    @Test void testTemplateTracing() {
+        final List<TraceContext> parents = Arrays.asList(TraceContext.newTrace(true), TraceContext.newTrace(true));
+        final AtomicInteger current = new AtomicInteger();
+        final InMemorySpanExporter exporter = new InMemorySpanExporter();
+        try (final HttpClient client = HttpClient.newBuilder()
+            .withBaseURL(BASE_PATH)
+            .withEntityMapper(EntityMapper.newInstance())
+            .withTracing(Sampler.always(), exporter, () -> parents.get(current.get())).build()) {
+            final HttpClient.RequestTemplate template = client.prepare(HttpMethod.GET, "/{path}");
+            for (int i = 0; i < parents.size(); i++) {
+                current.set(i);
+                assertEquals(BASE_BODY, template.newRequest("").execute().getResponseEntity(String.class));
+            }
+        }
+        final List<Span> spans = exporter.getSpans();
+        assertEquals(parents.size(), spans.size());
+        for (int i = 0; i < parents.size(); i++) {
+            assertEquals(parents.get(i), spans.get(i).getParent());
+            assertTrue(spans.get(i).getContext().isSameTrace(parents.get(i)));
+        }
+    }
+
+    @ParameterizedTest @ValueSource(booleans = {false, true})
+    void testFlightRecorderEvents(final boolean nonBlocking, @TempDir final Path directory) throws IOException {
+        final Path file = directory.resolve("recording.jfr");
+        try (final HttpClient client = newClient(nonBlocking).build(); final Recording recording = new Recording()) {
+            recording.enable("com.intellectualsites.http.Request").withThreshold(Duration.ZERO);
+            recording.enable("com.intellectualsites.http.Phase").withThreshold(Duration.ZERO);
+            recording.start();
+            assertEquals(ECHO_CONTENT, client.post("/echo").withInput(() -> ECHO_CONTENT).execute()
+                .getResponseEntity(String.class));
+            recording.stop();
+            recording.dump(file);
+        }
+        final List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        final List<RecordedEvent> requests = events.stream()
+            .filter(event -> event.getEventType().getName().equals("com.intellectualsites.http.Request"))
+            .collect(Collectors.toList());
+        assertEquals(1, requests.size());
+        final RecordedEvent request = requests.get(0);
+        assertEquals("POST", request.getString("method"));
+        assertEquals("localhost", request.getString("host"));
+        assertEquals(200, request.getInt("status"));
+        assertEquals(ECHO_CONTENT.length(), request.getLong("requestBytes"));
+        assertEquals(ECHO_CONTENT.length(), request.getLong("responseBytes"));
+        assertTrue(events.stream()
+            .filter(event -> event.getEventType().getName().equals("com.intellectualsites.http.Phase"))
+            .anyMatch(event -> "WAIT".equals(event.getString("phase"))));
+    }
+
+    @ParameterizedTest @ValueSource(booleans = {false, true})
+    void testPooledResponseBuffers(final boolean nonBlocking) {
+        try (final HttpClient client = newClient(nonBlocking)
+            .withPooledResponseBuffers(nonBlocking, true).build()) {
+            for (int i = 0; i < 3; i++) {
+                try (final HttpResponse response = client.get("/").execute()) {
+                    assertEquals(BASE_BODY, response.getResponseEntity(String.class));
+                    assertEquals(BASE_BODY.length(), response.getBody().remaining());
+                }
+            }
+            final HttpResponse response = client.get("/").execute();
+            response.close();
+            assertThrows(IllegalStateException.class, response::getRawResponse);
+            assertEquals(3, client.getBufferPoolMetrics().getHits());
+            assertEquals(0, client.getBufferPoolMetrics().getLeaks());
+        }
+    }
+
+
     public static class TestException extends RuntimeException {
     }
 
@@ -0,0 +1,99 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 IntellectualSites
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.intellectualsites.http;
+
+import com.intellectualsites.http.json.JsonCodecs;
+import com.intellectualsites.http.json.JsonEntity;
+import com.intellectualsites.http.json.JsonProperty;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JsonCodecTest {
+
+    private static final String JSON = "{\"name\":\"Unicorn \\\"\\u2603\\\"\",\"age\":7,\"score\":1.5,"
+        + "\"e-mail\":null,\"lives\":null,\"tags\":[\"a\",null],\"scores\":{\"b\":[1,2]},\"parent\":{\"name\":\"Parent\","
+        + "\"age\":0,\"score\":0,\"e-mail\":\"p@example.com\",\"lives\":9,\"tags\":null,\"scores\":null,\"parent\":null}}";
+
+    @Test void testRoundTrip() {
+        final EntityMapper mapper = EntityMapper.newInstance();
+        JsonCodecs.registerAll(mapper);
+        final Animal animal = mapper.getDeserializer(Animal.class, ContentType.JSON).get()
+            .deserialize(ContentType.JSON, JSON.getBytes(StandardCharsets.UTF_8));
+        assertEquals("Unicorn \"☃\"", animal.name);
+        assertEquals(7, animal.age);
+        assertEquals(1.5D, animal.getScore());
+        assertNull(animal.email);
+        assertEquals(Arrays.asList("a", null), animal.tags);
+        assertEquals(Collections.singletonMap("b", Arrays.asList(1, 2)), animal.scores);
+        assertEquals("p@example.com", animal.parent.email);
+        assertEquals(Integer.valueOf(9), animal.parent.lives);
+        final byte[] serialized = mapper.getSerializer(Animal.class).get().serialize(animal);
+        assertEquals(JSON.replace("\\u2603", "☃"), new String(serialized, StandardCharsets.UTF_8));
+    }
+
+    @Test void testUnknownProperties() {
+        final Animal animal = JsonCodecTest_AnimalJsonCodec.INSTANCE.deserialize(ContentType.JSON,
+            "{\"unknown\":{\"a\":[1,{},true]},\"age\":2}".getBytes(StandardCharsets.UTF_8));
+        assertEquals(2, animal.age);
+        assertNull(animal.name);
+    }
+
+    @Test void testMalformed() {
+        assertThrows(IllegalArgumentException.class, () -> JsonCodecTest_AnimalJsonCodec.INSTANCE
+            .deserialize(ContentType.JSON, "{\"age\":\"seven\"}".getBytes(StandardCharsets.UTF_8)));
+        assertThrows(IllegalArgumentException.class, () -> JsonCodecTest_AnimalJsonCodec.INSTANCE
+            .deserialize(ContentType.JSON, "{\"age\":7} trailing".getBytes(StandardCharsets.UTF_8)));
+    }
+
+
+    @JsonEntity public static final class Animal {
+
+        String name;
+        int age;
+        private double score;
+        @JsonProperty("e-mail") String email;
+        Integer lives;
+        List<String> tags;
+        Map<String, List<Integer>> scores;
+        Animal parent;
+        transient Object ignored;
+
+        public double getScore() {
+            return this.score;
+        }
+
+        public void setScore(final double score) {
+            this.score = score;
+        }
+
+    }
+
+}
@@ -0,0 +1,78 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 IntellectualSites
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.intellectualsites.http;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.time.Duration;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LoadBalancerTest {
+
+    private static final String FIRST = "http://first.test/api";
+    private static final String SECOND = "http://second.test/api";
+
+    private static LoadBalancer balancer(final LoadBalancing strategy) {
+        return new LoadBalancer(Arrays.asList(FIRST, SECOND), strategy, 2, Duration.ofMinutes(1));
+    }
+
+    @Test void testRoundRobin() throws MalformedURLException {
+        final LoadBalancer balancer = balancer(LoadBalancing.ROUND_ROBIN);
+        final URL url = new URL(FIRST + "/users?id=1");
+        assertEquals(new URL(FIRST + "/users?id=1"), balancer.route(url).getURL());
+        assertEquals(new URL(SECOND + "/users?id=1"), balancer.route(url).getURL());
+        assertEquals(new URL(FIRST + "/users?id=1"), balancer.route(url).getURL());
+    }
+
+    @Test void testLeastOutstanding() throws MalformedURLException {
+        final LoadBalancer balancer = balancer(LoadBalancing.LEAST_OUTSTANDING);
+        final EndpointStats busy = balancer.getEndpoints().get(0);
+        busy.start();
+        for (int i = 0; i < 3; i++) {
+            assertSame(balancer.getEndpoints().get(1), balancer.route(new URL(FIRST)).getEndpoint());
+        }
+        assertEquals(1, busy.getInFlight());
+    }
+
+    @Test void testEjection() throws MalformedURLException {
+        final LoadBalancer balancer = balancer(LoadBalancing.ROUND_ROBIN);
+        final EndpointStats failing = balancer.getEndpoints().get(0);
+        for (int i = 0; i < 2; i++) {
+            failing.start();
+            failing.finish(1000, true, 2, Duration.ofMinutes(1).toNanos());
+        }
+        assertTrue(failing.isEjected());
+        assertEquals(2, failing.getFailures());
+        for (int i = 0; i < 3; i++) {
+            assertNotSame(failing, balancer.route(new URL(FIRST)).getEndpoint());
+        }
+        failing.readmit();
+        assertFalse(failing.isEjected());
+    }
+
+}
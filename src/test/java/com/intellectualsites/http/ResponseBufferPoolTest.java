@@ -0,0 +1,70 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 IntellectualSites
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.intellectualsites.http;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResponseBufferPoolTest {
+
+    @Test void testPreallocationCap() {
+        final ResponseBufferPool pool = new ResponseBufferPool(new BufferPoolMetrics(), false, false);
+        final ResponseBufferPool.Lease lease = pool.lease(Integer.MAX_VALUE);
+        final byte[] data = new byte[1024 * 1024];
+        for (int i = 0; i < 9; i++) {
+            lease.write(data, 0, data.length);
+        }
+        final ByteBuffer body = lease.complete();
+        assertEquals(9 * data.length, body.remaining());
+        // The announced length is not trusted, so the buffer only grows as data arrives
+        assertTrue(body.capacity() <= 16 * 1024 * 1024);
+        lease.release();
+    }
+
+    @Test void testLeakSite() throws InterruptedException {
+        final BufferPoolMetrics metrics = new BufferPoolMetrics();
+        final ResponseBufferPool pool = new ResponseBufferPool(metrics, false, true);
+        this.leak(pool);
+        for (int i = 0; i < 100 && metrics.getLeaks() == 0; i++) {
+            System.gc();
+            Thread.sleep(10L);
+            pool.lease(-1).release();
+        }
+        assertEquals(1, metrics.getLeaks());
+        assertNotNull(metrics.getLastLeak());
+        boolean found = false;
+        for (final StackTraceElement element : metrics.getLastLeak().getStackTrace()) {
+            found |= "leak".equals(element.getMethodName());
+        }
+        assertTrue(found);
+    }
+
+    private void leak(final ResponseBufferPool pool) {
+        pool.lease(-1).track(new Object());
+    }
+
+}
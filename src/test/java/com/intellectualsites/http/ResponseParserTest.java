@@ -0,0 +1,101 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 IntellectualSites
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.intellectualsites.http;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResponseParserTest {
+
+    private static HttpResponse parse(final String response, final boolean expectBody, final boolean byteByByte)
+        throws IOException {
+        final ResponseParser parser = new ResponseParser(HttpResponse.builder()
+            .withEntityMapper(EntityMapper.newInstance()), expectBody, null);
+        final byte[] bytes = response.getBytes(StandardCharsets.ISO_8859_1);
+        boolean complete = false;
+        if (byteByByte) {
+            for (int i = 0; i < bytes.length && !complete; i++) {
+                complete = parser.parse(ByteBuffer.wrap(bytes, i, 1));
+            }
+        } else {
+            complete = parser.parse(ByteBuffer.wrap(bytes));
+        }
+        if (!complete) {
+            parser.endOfStream();
+        }
+        parser.complete();
+        return parser.getBuilder().build();
+    }
+
+    @Test void testFixedLength() throws IOException {
+        for (final boolean byteByByte : new boolean[] {false, true}) {
+            final HttpResponse response = parse("HTTP/1.1 201 Created\r\nContent-Length: 5\r\n"
+                + "Content-Type: text/plain; charset=utf-8\r\n\r\nhello", true, byteByByte);
+            assertEquals(201, response.getStatusCode());
+            assertEquals("Created", response.getStatus());
+            assertEquals("hello", response.getResponseEntity(String.class));
+        }
+    }
+
+    @Test void testChunked() throws IOException {
+        for (final boolean byteByByte : new boolean[] {false, true}) {
+            final HttpResponse response = parse("HTTP/1.1 100 Continue\r\n\r\nHTTP/1.1 200 OK\r\n"
+                + "Transfer-Encoding: chunked\r\n\r\n5;ext=1\r\nhello\r\n7\r\n, world\r\n0\r\nX-Trailer: 1\r\n\r\n",
+                true, byteByByte);
+            assertEquals(200, response.getStatusCode());
+            assertEquals("hello, world", response.getResponseEntity(String.class));
+        }
+    }
+
+    @Test void testHeaders() throws IOException {
+        final HttpResponse response = parse("HTTP/1.1 200 OK\r\nContent-Length: 0\r\nX-Value: a\r\n"
+            + "x-value : b\r\nContent-Type:text/plain\r\n\r\n", true, false);
+        assertEquals("text/plain", response.getHeaders().getHeader("Content-Type"));
+        assertEquals(Arrays.asList("a", "b"), response.getHeaders().getHeaders("X-VALUE"));
+        assertEquals("0", response.getHeaders().getHeader("content-length"));
+        assertEquals("", response.getHeaders().getHeader("etag"));
+    }
+
+    @Test void testUntilClose() throws IOException {
+        final HttpResponse response = parse("HTTP/1.0 200 OK\r\n\r\nbody", true, false);
+        assertEquals("body", response.getResponseEntity(String.class));
+    }
+
+    @Test void testHead() throws IOException {
+        final HttpResponse response = parse("HTTP/1.1 200 OK\r\nContent-Length: 5\r\n\r\n", false, false);
+        assertEquals(0, response.getRawResponse().length);
+    }
+
+    @Test void testTruncated() {
+        assertThrows(EOFException.class, () -> parse("HTTP/1.1 200 OK\r\nContent-Length: 5\r\n\r\nhel", true, false));
+    }
+
+}
@@ -0,0 +1,79 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 IntellectualSites
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.intellectualsites.http;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URL;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SlowRequestLogTest {
+
+    private static RequestListener listener(final SlowRequestLog log, final String url, final String template)
+        throws IOException {
+        return log.create(HttpRequest.newBuilder().withMethod(HttpMethod.GET).withURL(new URL(url))
+            .withURLTemplate(template));
+    }
+
+    @Test void testRingBuffer() throws IOException {
+        final SlowRequestLog log = new SlowRequestLog(2, Duration.ZERO);
+        for (int i = 0; i < 3; i++) {
+            final RequestListener listener = listener(log, "http://localhost/users/" + i + "?full=true",
+                i == 0 ? null : "/users/{id}");
+            listener.phase(RequestPhase.CONNECT, 0, 1_000);
+            listener.phase(RequestPhase.WAIT, 1_000, 3_000);
+            listener.complete(200, -1, i, null);
+            listener.complete(200, -1, i, null);
+        }
+        final List<SlowRequest> requests = log.snapshot();
+        assertEquals(2, requests.size());
+        assertEquals("http://localhost/users/1?full=true", requests.get(0).getURL());
+        assertEquals("/users/{id}", requests.get(0).getURLTemplate());
+        assertEquals(2, requests.get(1).getResponseBytes());
+        assertEquals(Duration.ofNanos(2_000), requests.get(1).getPhaseDuration(RequestPhase.WAIT));
+        assertEquals(Duration.ZERO, requests.get(1).getPhaseDuration(RequestPhase.SEND));
+    }
+
+    @Test void testThreshold() throws IOException {
+        final SlowRequestLog log = new SlowRequestLog(4, Duration.ofMillis(20));
+        listener(log, "http://localhost/fast", null).complete(200, 0, 0, null);
+        final RequestListener slow = listener(log, "http://localhost/slow?id=1", null);
+        try {
+            Thread.sleep(25);
+        } catch (final InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+        slow.complete(0, 0, 0, new IOException("Timed out"));
+        assertEquals(Collections.singletonList("/slow"), log.snapshot().stream().map(SlowRequest::getURLTemplate)
+            .collect(Collectors.toList()));
+        assertThrows(IllegalArgumentException.class, () -> new SlowRequestLog(0, Duration.ZERO));
+    }
+
+}
@@ -0,0 +1,85 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 IntellectualSites
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.intellectualsites.http;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TraceContextTest {
+
+    private static final String TRACE_PARENT = "00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01";
+
+    @Test void testParse() {
+        final TraceContext context = TraceContext.parse(TRACE_PARENT);
+        assertNotNull(context);
+        assertEquals("4bf92f3577b34da6a3ce929d0e0e4736", context.getTraceId());
+        assertEquals("00f067aa0ba902b7", context.getSpanId());
+        assertTrue(context.isSampled());
+        assertEquals(TRACE_PARENT, context.toString());
+        assertFalse(TraceContext.parse(TRACE_PARENT.replace("-01", "-00")).isSampled());
+        // Future versions may append fields
+        assertEquals(TRACE_PARENT, TraceContext.parse("cc" + TRACE_PARENT.substring(2) + "-what").toString());
+    }
+
+    @Test void testInvalid() {
+        assertNull(TraceContext.parse(""));
+        assertNull(TraceContext.parse(TRACE_PARENT + "-extra"));
+        assertNull(TraceContext.parse("ff" + TRACE_PARENT.substring(2)));
+        assertNull(TraceContext.parse(TRACE_PARENT.toUpperCase()));
+        assertNull(TraceContext.parse("00-00000000000000000000000000000000-00f067aa0ba902b7-01"));
+        assertNull(TraceContext.parse("00-4bf92f3577b34da6a3ce929d0e0e4736-0000000000000000-01"));
+        assertNull(TraceContext.parse("00-4bf92f3577b34da6a3ce929d0e0e473g-00f067aa0ba902b7-01"));
+    }
+
+    @Test void testChild() {
+        final TraceContext root = TraceContext.newTrace(true);
+        final TraceContext child = root.newChild(false);
+        assertTrue(child.isSameTrace(root));
+        assertNotEquals(root.getSpanId(), child.getSpanId());
+        assertEquals(child, TraceContext.parse(child.toString()));
+        assertFalse(TraceContext.newTrace(true).isSameTrace(root));
+    }
+
+    @Test void testSamplers() {
+        final TraceContext sampled = TraceContext.newTrace(true);
+        final TraceContext unsampled = TraceContext.newTrace(false);
+        assertTrue(Sampler.always().isSampled(unsampled));
+        assertFalse(Sampler.never().isSampled(sampled));
+        assertTrue(Sampler.parentBased(Sampler.never()).isSampled(sampled));
+        assertFalse(Sampler.parentBased(Sampler.always()).isSampled(unsampled));
+        assertTrue(Sampler.parentBased(Sampler.always()).isSampled(null));
+        assertFalse(Sampler.ratio(0).isSampled(null));
+        assertThrows(IllegalArgumentException.class, () -> Sampler.ratio(1.5));
+        int sampledCount = 0;
+        final Sampler half = Sampler.ratio(0.5);
+        for (int i = 0; i < 10000; i++) {
+            if (half.isSampled(null)) {
+                sampledCount++;
+            }
+        }
+        assertTrue(sampledCount > 4000 && sampledCount < 6000);
+    }
+
+}
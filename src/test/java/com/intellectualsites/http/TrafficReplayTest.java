@@ -0,0 +1,119 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 IntellectualSites
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.intellectualsites.http;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TrafficReplayTest {
+
+    private static final String BASE_URL = "http://localhost:1";
+
+    @ParameterizedTest @ValueSource(booleans = {false, true})
+    void testRecordAndReplay(final boolean nonBlocking) throws Exception {
+        final TrafficReplay replay = TrafficReplay.read(new ByteArrayInputStream(record()));
+        assertEquals(5, replay.getExchanges().size());
+        assertTrue(replay.getExchanges().get(2).isFailure());
+        assertTrue(replay.getExchanges().get(0).getLatency(TimeUnit.MILLISECONDS) >= 50);
+        final HttpClient.Builder builder = HttpClient.newBuilder().withBaseURL(BASE_URL)
+            .withEntityMapper(EntityMapper.newInstance())
+            .withPooledResponseBuffers(false, false)
+            .withInterceptor(replay);
+        if (nonBlocking) {
+            builder.withNonBlockingTransport(1);
+        }
+        try (final TrafficReplay closeable = replay; final HttpClient client = builder.build()) {
+            final long start = System.nanoTime();
+            try (final HttpResponse response = client.get("/first").execute()) {
+                assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+                assertEquals("/first", response.getResponseEntity(String.class));
+                assertEquals(ContentType.JSON, response.getContentType());
+            }
+            // The responses were received by the transport, and buffered by the pool
+            assertTrue(client.getBufferPoolMetrics().getMisses() > 0);
+            assertEquals("/second", client.get("/second").executeAsync().get().getResponseEntity(String.class));
+            assertThrows(ExecutionException.class, () -> client.get("/missing").executeAsync().get());
+            assertThrows(ExecutionException.class, () -> client.get("/unknown").executeAsync().get());
+            replay.withLatencyScale(0);
+            assertEquals("/first", client.get("/first").execute().getResponseEntity(String.class));
+
+            // Requests are told apart by their body and by the headers that select a representation
+            assertEquals("a", client.post("/echo").withInput(() -> "a").execute().getResponseEntity(String.class));
+            assertEquals("b", client.post("/echo").withInput(() -> "b").execute().getResponseEntity(String.class));
+            assertThrows(ExecutionException.class, () -> client.post("/echo").withInput(() -> "c").executeAsync().get());
+            assertThrows(ExecutionException.class, () -> client.get("/first").withHeader("Range", "bytes=0-1")
+                .executeAsync().get());
+        }
+    }
+
+    private static byte[] record() throws Exception {
+        final ByteArrayOutputStream recording = new ByteArrayOutputStream();
+        try (final TrafficRecorder recorder = TrafficRecorder.create(recording);
+             final HttpClient client = HttpClient.newBuilder().withBaseURL(BASE_URL)
+                .withEntityMapper(EntityMapper.newInstance())
+                .withInterceptor(recorder)
+                .withInterceptor(chain -> {
+                    if (chain.getURL().getPath().equals("/missing")) {
+                        final CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+                        future.completeExceptionally(new IOException("Connection refused"));
+                        return future;
+                    }
+                    final HttpRequest.Entity entity = chain.getRequest().getBuilder().build().createEntity();
+                    return CompletableFuture.supplyAsync(() -> {
+                        if (entity != null) {
+                            return chain.respond(200, ContentType.JSON, entity.getBytes());
+                        }
+                        sleep(50);
+                        return chain.respond(200, ContentType.JSON,
+                            chain.getURL().getPath().getBytes(StandardCharsets.UTF_8));
+                    });
+                }).build()) {
+            assertEquals("/first", client.get("/first").execute().getResponseEntity(String.class));
+            assertEquals("/second", client.get("/second").executeAsync().get().getResponseEntity(String.class));
+            assertThrows(ExecutionException.class, () -> client.get("/missing").executeAsync().get());
+            assertEquals("a", client.post("/echo").withInput(() -> "a").execute().getResponseEntity(String.class));
+            assertEquals("b", client.post("/echo").withInput(() -> "b").execute().getResponseEntity(String.class));
+        }
+        return recording.toByteArray();
+    }
+
+    private static void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}